@@ -0,0 +1,250 @@
+/**
+ * FirebaseWalkerDatabase is the WalkerDatabase backed by the Firebase realtime database. Snapshots
+ *  are either decoded right away on the main thread, or handed to a SnapshotPipeline that decodes
+ *  them and calls the listeners on its own thread.
+ */
+package com.kurtlemon.doggo3;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FirebaseWalkerDatabase implements WalkerDatabase {
+
+    /**
+     * Registration passes walkers on to a listener until the listener is removed, so snapshots
+     *  still waiting in the pipeline when it is removed are dropped.
+     */
+    private class Registration implements Listener, ChildEventListener {
+        final Listener listener;
+        boolean active = true;
+
+        Registration(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onWalkerChanged(DogLocation dogLocation) {
+            if(active){
+                listener.onWalkerChanged(dogLocation);
+            }
+        }
+
+        @Override
+        public void onWalkerRemoved(DogLocation dogLocation) {
+            if(active){
+                listener.onWalkerRemoved(dogLocation);
+            }
+        }
+
+        @Override
+        public void onChildAdded(DataSnapshot dataSnapshot, String s) {
+            dispatch(this, dataSnapshot, false);
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot dataSnapshot, String s) {
+            dispatch(this, dataSnapshot, false);
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot dataSnapshot) {
+            dispatch(this, dataSnapshot, true);
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot dataSnapshot, String s) {
+
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+
+        }
+    }
+
+    // Decodes the snapshots handed to the pipeline.
+    private static final SnapshotPipeline.Decoder SNAPSHOT_DECODER =
+            new SnapshotPipeline.Decoder() {
+                @Override
+                public DogLocation decode(Object snapshot) {
+                    return FirebaseWalkerDatabase.decode((DataSnapshot) snapshot);
+                }
+            };
+
+    // Number of times this client has connected, counted by a single listener shared by every
+    // instance, since the connection is too.
+    private static final AtomicLong connectionCount = new AtomicLong();
+    private static boolean countingConnections;
+
+    // The database root all paths are relative to.
+    private final DatabaseReference rootReference;
+
+    // Where snapshots are decoded, or null to decode them on the main thread.
+    private final SnapshotPipeline snapshotPipeline;
+
+    // The registration for each path and listener pair.
+    private final HashMap<String, HashMap<Listener, Registration>> registrations;
+
+    /** Explicit Value Constructor. Listeners are called on the main thread.
+     *
+     * @param rootReference
+     */
+    public FirebaseWalkerDatabase(DatabaseReference rootReference) {
+        this(rootReference, null);
+    }
+
+    /** Explicit Value Constructor. Listeners are called by the pipeline, and listeners must be
+     *      added and removed on the pipeline's thread too.
+     *
+     * @param rootReference
+     * @param snapshotPipeline
+     */
+    public FirebaseWalkerDatabase(DatabaseReference rootReference,
+                                  SnapshotPipeline snapshotPipeline) {
+        this.rootReference = rootReference;
+        this.snapshotPipeline = snapshotPipeline;
+        registrations = new HashMap<>();
+        countConnections(rootReference);
+    }
+
+    /** Starts counting connections, unless they are already counted.
+     *
+     * @param rootReference
+     */
+    private static synchronized void countConnections(DatabaseReference rootReference) {
+        if(countingConnections){
+            return;
+        }
+        countingConnections = true;
+        rootReference.child(".info/connected").addValueEventListener(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                if(Boolean.TRUE.equals(dataSnapshot.getValue(Boolean.class))){
+                    connectionCount.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+
+            }
+        });
+    }
+
+    /** Starts listening to the walkers directly under a path.
+     *
+     * @param path
+     * @param listener
+     */
+    @Override
+    public void addListener(String path, Listener listener) {
+        HashMap<Listener, Registration> pathRegistrations = registrations.get(path);
+        if(pathRegistrations == null){
+            pathRegistrations = new HashMap<>();
+            registrations.put(path, pathRegistrations);
+        }
+        if(pathRegistrations.containsKey(listener)){
+            return;
+        }
+        Registration registration = new Registration(listener);
+        pathRegistrations.put(listener, registration);
+        rootReference.child(path).addChildEventListener(registration);
+    }
+
+    /** Stops listening to a path.
+     *
+     * @param path
+     * @param listener
+     */
+    @Override
+    public void removeListener(String path, Listener listener) {
+        HashMap<Listener, Registration> pathRegistrations = registrations.get(path);
+        if(pathRegistrations == null){
+            return;
+        }
+        Registration registration = pathRegistrations.remove(listener);
+        if(pathRegistrations.isEmpty()){
+            registrations.remove(path);
+        }
+        if(registration != null){
+            registration.active = false;
+            rootReference.child(path).removeEventListener(registration);
+        }
+    }
+
+    /** Passes a snapshot on to a registration, through the pipeline if there is one.
+     *
+     * @param registration
+     * @param dataSnapshot
+     * @param removed
+     */
+    private void dispatch(Registration registration, DataSnapshot dataSnapshot,
+                          boolean removed) {
+        if(snapshotPipeline != null){
+            snapshotPipeline.submit(registration, dataSnapshot.getKey(), dataSnapshot,
+                    SNAPSHOT_DECODER, removed);
+            return;
+        }
+        DogLocation dogLocation = decode(dataSnapshot);
+        if(dogLocation == null){
+            return;
+        }
+        if(removed){
+            registration.onWalkerRemoved(dogLocation);
+        }else{
+            registration.onWalkerChanged(dogLocation);
+        }
+    }
+
+    /** Reads a walker from a snapshot written either as a DogLocation bean or in the
+     *      CompactLocationCodec format, without reflection.
+     *
+     * @param dataSnapshot
+     * @return the walker, or null if the value can't be read
+     */
+    private static DogLocation decode(DataSnapshot dataSnapshot) {
+        return DogLocationCodec.decode(dataSnapshot.getKey(), dataSnapshot.getValue());
+    }
+
+    /** Writes every path in the map in a single atomic update.
+     *
+     * @param values
+     */
+    @Override
+    public void update(Map<String, Object> values) {
+        rootReference.updateChildren(values);
+    }
+
+    /** Has the server write every path in the map at once if this client disconnects.
+     *
+     * @param values
+     */
+    @Override
+    public void updateOnDisconnect(Map<String, Object> values) {
+        rootReference.onDisconnect().updateChildren(values);
+    }
+
+    /** Cancels every disconnect write queued at the root.
+     *
+     */
+    @Override
+    public void cancelOnDisconnect() {
+        rootReference.onDisconnect().cancel();
+    }
+
+    /** Returns the number of times this client has connected, as reported by .info/connected.
+     *
+     * @return
+     */
+    @Override
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+}
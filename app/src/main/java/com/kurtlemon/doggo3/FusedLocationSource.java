@@ -0,0 +1,123 @@
+/**
+ * FusedLocationSource is the one place the app asks Google Play services for the user's location.
+ *  It holds a single FusedLocationProviderClient and LocationCallback for the whole process, tied
+ *  to the application context instead of an activity, and feeds the shared LocationHub that the
+ *  activities subscribe to.
+ */
+package com.kurtlemon.doggo3;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+public class FusedLocationSource implements LocationHub.Source {
+    // Tag for log messages.
+    private static final String TAG = "FusedLocationSource";
+
+    // The hub every activity shares, created the first time it is asked for.
+    private static LocationHub sharedHub;
+
+    // Asks Play services for fixes, and receives them for the hub.
+    private final FusedLocationProviderClient fusedLocationProviderClient;
+    private final LocationCallback locationCallback;
+    private LocationHub locationHub;
+
+    /** Returns the hub every activity shares. Only called on the main thread.
+     *
+     * @param context
+     * @return
+     */
+    public static LocationHub getSharedHub(Context context) {
+        if(sharedHub == null){
+            FusedLocationSource source = new FusedLocationSource(context.getApplicationContext());
+            sharedHub = new LocationHub(source);
+            source.locationHub = sharedHub;
+        }
+        return sharedHub;
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param context the application context, so no activity is held on to
+     */
+    private FusedLocationSource(Context context) {
+        fusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(context);
+        locationCallback = new LocationCallback(){
+            @Override
+            public void onLocationResult(LocationResult locationResult) {
+                // Only the newest fix of a batch matters to the activities.
+                Location location = locationResult.getLastLocation();
+                if(location != null){
+                    locationHub.onFix(location.getLatitude(), location.getLongitude(),
+                            location.getTime());
+                }
+            }
+        };
+    }
+
+    /** Starts the request, delivering fixes on the main thread.
+     *
+     * @param schedule
+     */
+    @Override
+    public void requestUpdates(LocationSchedule schedule) {
+        try{
+            fusedLocationProviderClient.requestLocationUpdates(buildLocationRequest(schedule),
+                    locationCallback, Looper.getMainLooper());
+        }catch(SecurityException e){
+            // The activities ask for permission before subscribing, but it can be revoked.
+            Log.w(TAG, "Location permission missing", e);
+        }
+    }
+
+    /** Stops the request.
+     *
+     */
+    @Override
+    public void removeUpdates() {
+        fusedLocationProviderClient.removeLocationUpdates(locationCallback);
+    }
+
+    /** Hands the last known fix to a consumer, if Play services has one.
+     *
+     * @param consumer
+     */
+    @Override
+    public void requestLastFix(final LocationHub.Consumer consumer) {
+        try{
+            fusedLocationProviderClient.getLastLocation().addOnSuccessListener(
+                    new OnSuccessListener<Location>() {
+                        @Override
+                        public void onSuccess(Location location) {
+                            if(location != null){
+                                consumer.onFix(location.getLatitude(), location.getLongitude(),
+                                        location.getTime());
+                            }
+                        }
+                    });
+        }catch(SecurityException e){
+            Log.w(TAG, "Location permission missing", e);
+        }
+    }
+
+    /** Builds the location request for a schedule.
+     *
+     * @param schedule
+     * @return
+     */
+    static LocationRequest buildLocationRequest(LocationSchedule schedule) {
+        LocationRequest locationRequest = new LocationRequest();
+        locationRequest.setInterval(schedule.getIntervalMillis());
+        locationRequest.setFastestInterval(schedule.getFastestIntervalMillis());
+        locationRequest.setPriority(schedule.getPriority());
+        return locationRequest;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * MarkerAnimator moves the markers of walking dogs along their predicted paths once per display
+ *  frame, and stops asking for frames once no marker is moving.
+ */
+package com.kurtlemon.doggo3;
+
+import android.view.Choreographer;
+
+public class MarkerAnimator implements Choreographer.FrameCallback, MotionPredictor.Mover {
+    // Where the positions come from and the markers they are applied to.
+    private final MotionPredictor motionPredictor;
+    private final MarkerReconciler markerReconciler;
+
+    // Whether a frame callback is posted.
+    private boolean running;
+
+    // Number of frames animated.
+    private long framesAnimated;
+
+    /** Explicit Value Constructor.
+     *
+     * @param motionPredictor
+     * @param markerReconciler
+     */
+    public MarkerAnimator(MotionPredictor motionPredictor, MarkerReconciler markerReconciler) {
+        this.motionPredictor = motionPredictor;
+        this.markerReconciler = markerReconciler;
+    }
+
+    /** Starts animating on the next frame unless already running. Must be called on the main
+     *      thread.
+     *
+     */
+    public void start() {
+        if(!running){
+            running = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /** Stops animating.
+     *
+     */
+    public void stop() {
+        if(running){
+            Choreographer.getInstance().removeFrameCallback(this);
+            running = false;
+        }
+    }
+
+    /** Moves every moving marker to where it is predicted to be, and asks for another frame if
+     *      any still are.
+     *
+     * @param frameTimeNanos
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        running = false;
+        framesAnimated++;
+        // Frame times use the same clock as SystemClock.uptimeMillis().
+        if(motionPredictor.animate(frameTimeNanos / 1000000, this) > 0){
+            start();
+        }
+    }
+
+    /** Moves a single marker.
+     *
+     * @param key
+     * @param latitude
+     * @param longitude
+     */
+    @Override
+    public void onPredicted(String key, double latitude, double longitude) {
+        markerReconciler.move(key, latitude, longitude);
+    }
+
+    /** Returns the number of frames animated.
+     *
+     * @return
+     */
+    public long getFramesAnimated() {
+        return framesAnimated;
+    }
+}
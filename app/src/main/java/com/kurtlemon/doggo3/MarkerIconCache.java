@@ -0,0 +1,180 @@
+/**
+ * MarkerIconCache decodes and scales marker icons once per screen density and zoom level bucket
+ *  and hands out the same BitmapDescriptor to every marker that needs it. Cluster icons are drawn
+ *  once per count label.
+ */
+package com.kurtlemon.doggo3;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+
+public class MarkerIconCache {
+    // Size of a marker icon in density independent pixels when zoomed in.
+    private static final int ICON_SIZE_DP = 25;
+
+    // Zoom levels where the icons shrink, and how much they shrink by below each one.
+    private static final float[] ZOOM_BUCKET_LIMITS = {12f, 15f};
+    private static final float[] ZOOM_BUCKET_SCALES = {0.6f, 0.8f, 1.0f};
+
+    // Size of a cluster icon in density independent pixels, and its colors.
+    private static final int CLUSTER_ICON_SIZE_DP = 36;
+    private static final int CLUSTER_COLOR = Color.rgb(0x8d, 0x5b, 0x2f);
+    private static final int CLUSTER_TEXT_COLOR = Color.WHITE;
+
+    // Smallest count shown for each cluster label. Counts under 10 are shown exactly.
+    private static final int[] CLUSTER_LABEL_COUNTS = {10, 20, 50, 100, 200, 500, 1000};
+
+    // Most icons kept at once.
+    private static final int MAX_ICONS = 32;
+
+    // Marks cluster icon keys so they can't collide with resource icon keys.
+    private static final long CLUSTER_KEY_FLAG = 1L << 62;
+
+    // Where the icons are decoded from.
+    private final Resources resources;
+
+    // Scaled icons keyed by resource, density and zoom bucket, and cluster icons by label.
+    private final LruCache<Long, BitmapDescriptor> cache;
+
+    /** Explicit Value Constructor.
+     *
+     * @param resources
+     */
+    public MarkerIconCache(Resources resources) {
+        this.resources = resources;
+        cache = new LruCache<>(MAX_ICONS);
+    }
+
+    /** Returns the icon for a drawable resource at the given camera zoom, decoding and scaling
+     *      it only if it is not already cached. Must be called on the main thread after the map
+     *      has been initialized.
+     *
+     * @param resourceId
+     * @param zoom
+     * @return
+     */
+    public BitmapDescriptor get(int resourceId, float zoom) {
+        int densityDpi = resources.getDisplayMetrics().densityDpi;
+        int zoomBucket = zoomBucket(zoom);
+        long key = ((long) resourceId << 32) | ((long) densityDpi << 8) | zoomBucket;
+        BitmapDescriptor icon = cache.get(key);
+        if(icon == null){
+            icon = createIcon(resourceId, zoomBucket);
+            cache.put(key, icon);
+        }
+        return icon;
+    }
+
+    /** Returns the icon for a cluster of the given number of dogs. Counts of ten or more share an
+     *      icon with a rounded down label such as "50+". Must be called on the main thread after
+     *      the map has been initialized.
+     *
+     * @param count
+     * @return
+     */
+    public BitmapDescriptor getCluster(int count) {
+        int densityDpi = resources.getDisplayMetrics().densityDpi;
+        int labelCount = clusterLabelCount(count);
+        long key = CLUSTER_KEY_FLAG | ((long) densityDpi << 32) | labelCount;
+        BitmapDescriptor icon = cache.get(key);
+        if(icon == null){
+            String label = labelCount < CLUSTER_LABEL_COUNTS[0] ? String.valueOf(labelCount)
+                    : labelCount + "+";
+            icon = createClusterIcon(label);
+            cache.put(key, icon);
+        }
+        return icon;
+    }
+
+    /** Returns the count shown on the label of a cluster of the given size.
+     *
+     * @param count
+     * @return
+     */
+    public static int clusterLabelCount(int count) {
+        if(count < CLUSTER_LABEL_COUNTS[0]){
+            return count;
+        }
+        int labelCount = CLUSTER_LABEL_COUNTS[0];
+        for(int limit : CLUSTER_LABEL_COUNTS){
+            if(count >= limit){
+                labelCount = limit;
+            }
+        }
+        return labelCount;
+    }
+
+    /** Drops every cached icon.
+     *
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /** Returns which zoom bucket a camera zoom falls in.
+     *
+     * @param zoom
+     * @return
+     */
+    public static int zoomBucket(float zoom) {
+        int bucket = 0;
+        while(bucket < ZOOM_BUCKET_LIMITS.length && zoom >= ZOOM_BUCKET_LIMITS[bucket]){
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /** Decodes a resource and scales it to the icon size for the current density and the given
+     *      zoom bucket.
+     *
+     * @param resourceId
+     * @param zoomBucket
+     * @return
+     */
+    private BitmapDescriptor createIcon(int resourceId, int zoomBucket) {
+        DisplayMetrics displayMetrics = resources.getDisplayMetrics();
+        int size = Math.max(1, Math.round(ICON_SIZE_DP * displayMetrics.density
+                * ZOOM_BUCKET_SCALES[zoomBucket]));
+        Bitmap source = BitmapFactory.decodeResource(resources, resourceId);
+        Bitmap scaled = Bitmap.createScaledBitmap(source, size, size, true);
+        if(scaled != source){
+            source.recycle();
+        }
+        return BitmapDescriptorFactory.fromBitmap(scaled);
+    }
+
+    /** Draws a cluster icon: a filled circle with the label in the middle.
+     *
+     * @param label
+     * @return
+     */
+    private BitmapDescriptor createClusterIcon(String label) {
+        float density = resources.getDisplayMetrics().density;
+        int size = Math.max(1, Math.round(CLUSTER_ICON_SIZE_DP * density));
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circlePaint.setColor(CLUSTER_COLOR);
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f, circlePaint);
+
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(CLUSTER_TEXT_COLOR);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setFakeBoldText(true);
+        textPaint.setTextSize(size * (label.length() > 3 ? 0.3f : 0.4f));
+        float baseline = size / 2f - (textPaint.descent() + textPaint.ascent()) / 2f;
+        canvas.drawText(label, size / 2f, baseline, textPaint);
+
+        return BitmapDescriptorFactory.fromBitmap(bitmap);
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * MarkerReconciler keeps track of the markers on the map by key so changes to the dog locations
+ *  only move, add or remove the markers that changed instead of redrawing the whole map.
+ */
+package com.kurtlemon.doggo3;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+public class MarkerReconciler {
+
+    /**
+     * PlacedMarker is a live marker and what it currently shows, so unchanged markers can be
+     *  skipped. Icons are shared, so they can be compared by reference.
+     */
+    private static final class PlacedMarker {
+        final Marker marker;
+        double latitude;
+        double longitude;
+        String title;
+        BitmapDescriptor icon;
+
+        PlacedMarker(Marker marker) {
+            this.marker = marker;
+        }
+    }
+
+    // The map the markers are drawn on.
+    private final GoogleMap map;
+
+    // Live markers on the map, keyed the same way they were placed.
+    private final HashMap<String, PlacedMarker> markers;
+
+    // Keys placed since the last call to beginPass(), used to sweep away the rest.
+    private final HashSet<String> placedThisPass;
+    private final ArrayList<String> toRemove;
+
+    /** Explicit Value Constructor.
+     *
+     * @param map
+     */
+    public MarkerReconciler(GoogleMap map) {
+        this.map = map;
+        markers = new HashMap<>();
+        placedThisPass = new HashSet<>();
+        toRemove = new ArrayList<>();
+    }
+
+    /** Moves the marker with the given key, or adds it if it is not on the map yet. Nothing is
+     *      changed on the map if the marker already shows the same thing.
+     *
+     * @param key
+     * @param latitude
+     * @param longitude
+     * @param title
+     * @param icon
+     */
+    public void place(String key, double latitude, double longitude, String title,
+                      BitmapDescriptor icon) {
+        placedThisPass.add(key);
+        PlacedMarker placedMarker = markers.get(key);
+        if(placedMarker == null){
+            MarkerOptions markerOptions = new MarkerOptions();
+            markerOptions.position(new LatLng(latitude, longitude))
+                    .title(title)
+                    .icon(icon);
+            placedMarker = new PlacedMarker(map.addMarker(markerOptions));
+            markers.put(key, placedMarker);
+        }else{
+            if(placedMarker.latitude != latitude || placedMarker.longitude != longitude){
+                placedMarker.marker.setPosition(new LatLng(latitude, longitude));
+            }
+            if(!placedMarker.title.equals(title)){
+                placedMarker.marker.setTitle(title);
+            }
+            if(placedMarker.icon != icon){
+                placedMarker.marker.setIcon(icon);
+            }
+        }
+        placedMarker.latitude = latitude;
+        placedMarker.longitude = longitude;
+        placedMarker.title = title;
+        placedMarker.icon = icon;
+    }
+
+    /** Moves an existing marker without changing anything else about it, such as to animate it
+     *      between updates.
+     *
+     * @param key
+     * @param latitude
+     * @param longitude
+     * @return true if there was a marker to move
+     */
+    public boolean move(String key, double latitude, double longitude) {
+        PlacedMarker placedMarker = markers.get(key);
+        if(placedMarker == null){
+            return false;
+        }
+        if(placedMarker.latitude != latitude || placedMarker.longitude != longitude){
+            placedMarker.marker.setPosition(new LatLng(latitude, longitude));
+            placedMarker.latitude = latitude;
+            placedMarker.longitude = longitude;
+        }
+        return true;
+    }
+
+    /** Removes the marker with the given key from the map.
+     *
+     * @param key
+     * @return true if there was a marker to remove
+     */
+    public boolean remove(String key) {
+        placedThisPass.remove(key);
+        PlacedMarker placedMarker = markers.remove(key);
+        if(placedMarker == null){
+            return false;
+        }
+        placedMarker.marker.remove();
+        return true;
+    }
+
+    /** Returns whether there is a marker for the given key.
+     *
+     * @param key
+     * @return
+     */
+    public boolean contains(String key) {
+        return markers.containsKey(key);
+    }
+
+    /** Starts a full pass over the markers that should be on the map. Markers not placed again
+     *      before endPass() are removed.
+     *
+     */
+    public void beginPass() {
+        placedThisPass.clear();
+    }
+
+    /** Ends a full pass, removing every marker that was not placed since beginPass().
+     *
+     * @return the number of markers removed
+     */
+    public int endPass() {
+        toRemove.clear();
+        for(Map.Entry<String, PlacedMarker> entry : markers.entrySet()){
+            if(!placedThisPass.contains(entry.getKey())){
+                toRemove.add(entry.getKey());
+            }
+        }
+        for(String key : toRemove){
+            markers.remove(key).marker.remove();
+        }
+        placedThisPass.clear();
+        return toRemove.size();
+    }
+
+    /** Returns the number of markers on the map.
+     *
+     * @return
+     */
+    public int size() {
+        return markers.size();
+    }
+
+    /** Removes every marker from the map.
+     *
+     */
+    public void clear() {
+        for(PlacedMarker placedMarker : markers.values()){
+            placedMarker.marker.remove();
+        }
+        markers.clear();
+        placedThisPass.clear();
+    }
+
+    /** Returns the marker title for a single dog's position.
+     *
+     * @param latitude
+     * @param longitude
+     * @return
+     */
+    public static String titleFor(double latitude, double longitude) {
+        return "(" + String.format("%.2f", latitude) + ", " + String.format("%.2f", longitude)
+                + ")";
+    }
+}
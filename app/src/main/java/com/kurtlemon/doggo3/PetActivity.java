@@ -11,19 +11,25 @@
 package com.kurtlemon.doggo3;
 
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
-import android.location.Location;
+import android.graphics.Color;
+import android.graphics.Typeface;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.FragmentActivity;
+import android.support.v4.content.ContextCompat;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
 
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.LocationSettingsRequest;
 import com.google.android.gms.location.LocationSettingsResponse;
@@ -32,35 +38,160 @@ import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
-import com.google.firebase.database.ChildEventListener;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PetActivity extends FragmentActivity implements OnMapReadyCallback {
 
+    // Tag for log messages.
+    private static final String TAG = "PetActivity";
+
     // Location request code for Google Maps.
     private static final int LOCATION_REQUEST_CODE = 1;
 
     // Google Maps fields.
     private GoogleMap mMap;
-    private FusedLocationProviderClient mFusedLocationProviderClient;
 
-    // Firebase Database fields.
-    private FirebaseDatabase firebaseDatabase;
-    private DatabaseReference databaseReference;
-    private ChildEventListener childEventListener;
+    // The location hub shared with every other activity.
+    private LocationHub locationHub;
 
-    // List of locations to appear on the map.
-    private ArrayList<DogLocation> dogLocationArrayList;
+    // Firebase Database fields. Only the geohash cells covering the map are listened to. Snapshots
+    //  are decoded on the clustering thread, which is also where the listeners run. The map
+    //  listens through its own scope, which is paused while the activity isn't visible and closed
+    //  with it.
+    private FirebaseDatabase firebaseDatabase;
+    private SnapshotPipeline snapshotPipeline;
+    private WalkerDatabase walkerDatabase;
+    private WalkerSubscriptions walkerSubscriptions;
+    private WalkerSubscriptions.Scope mapScope;
+    private WalkerDatabase.Listener walkerListener;
+    private GeohashSubscriber geohashSubscriber;
+
+    // Fraction of the visible region added on each side when deciding which markers to draw.
+    private static final double VIEWPORT_MARGIN = 0.25;
+
+    // Latest location of each walker, the clusters built from them, and when each is dropped if
+    //  it isn't seen again.
+    private WalkerMap walkerMap;
+
+    // The area markers are drawn for and the camera zoom, updated when the camera settles.
+    private MapViewport mapViewport;
+    private float cameraZoom;
+
+    // Clusters dogs that are close together on screen. The walker map and the geohash subscriber
+    //  are only touched on the clustering thread; only finished cluster deltas, and requests for
+    //  a frame to ask for one, are posted back to the main thread.
+    private ScheduledExecutorService clusterExecutor;
+    private Handler mainHandler;
+    private boolean clusterPassRunning;
+    private boolean clusterPassAgain;
+    private boolean fullClusterPassPending;
+    private boolean destroyed;
+
+    // At most one request for a frame is posted at a time; the map updates made meanwhile are
+    //  counted so the frame can report how many it absorbed.
+    private final AtomicBoolean renderRequestPosted = new AtomicBoolean();
+    private final AtomicInteger pendingMapUpdates = new AtomicInteger();
+    private final Runnable requestRenderTask = new Runnable() {
+        @Override
+        public void run() {
+            renderRequestPosted.set(false);
+            if(!destroyed){
+                // Every update since the last request counts towards the frame.
+                renderScheduler.requestRender(pendingMapUpdates.getAndSet(0));
+            }
+        }
+    };
+
+    // Markers currently on the map and the icons they are drawn with.
+    private MarkerReconciler markerReconciler;
+    private MarkerIconCache markerIconCache;
+    private BitmapDescriptor pawPrintIcon;
+
+    // The walkers nearest the user, listed beside the map nearest first, and the walker each row
+    //  of the list is for.
+    private ArrayAdapter<String> nearestWalkersAdapter;
+    private ArrayList<DogLocation> nearestWalkers;
+
+    // Whether the last few minutes of each walker's path are drawn behind them, from what zoom
+    //  level, and how wide in dp. Trails are kept on the clustering thread and drawn by the
+    //  trail renderer.
+    private static final boolean SHOW_TRAILS = true;
+    private static final float TRAIL_MIN_ZOOM = 14.0f;
+    private static final float TRAIL_WIDTH_DP = 3.0f;
+    private TrailRenderer trailRenderer;
+
+    // Changes waiting for the next frame, and whether the whole viewport needs to be redrawn.
+    private RenderScheduler renderScheduler;
+    private boolean viewportDirty;
+
+    // The last known walkers, saved on the device so the map has something to show as soon as it
+    //  opens. Walkers from the snapshot are provisional until the database confirms them, and are
+    //  removed if it hasn't a while after the first cells are listened to. Only touched on the
+    //  clustering thread.
+    private static final String SNAPSHOT_FILE_NAME = "walkers.snapshot";
+    private static final long SNAPSHOT_SAVE_INTERVAL_MILLIS = 30000;
+    private static final long SNAPSHOT_MAX_AGE_MILLIS = 10 * 60 * 1000;
+    private static final long SNAPSHOT_RECONCILE_MILLIS = 15000;
+    private WalkerSnapshotFile walkerSnapshotFile;
+    private HashMap<String, Long> provisionalWalkers;
+    private ArrayList<DogLocation> snapshotBuffer;
+    private boolean reconcileScheduled;
+
+    // When the activity was created, and how long it took to get the first walker from the
+    //  database and to draw the first marker.
+    private long createdAt;
+    private volatile long firstLiveWalkerMillis = -1;
+    private boolean firstMarkerLogged;
+
+    // Predicts where single walkers are between their updates and animates their markers there.
+    private MotionPredictor motionPredictor;
+    private MarkerAnimator markerAnimator;
+    private final double[] predictedPosition = new double[2];
+
+    // Zoom level the camera follows the user at, and what decides when it has to move.
+    private static final float FOLLOW_ZOOM = 17.0f;
+    private CameraFollowController cameraFollowController;
+
+    // Receives location fixes, and asks for a new schedule as the user speeds up or slows down.
+    //  Only subscribed while the activity is started.
+    private LocationHub.Consumer locationConsumer;
+    private AdaptiveLocationScheduler locationScheduler;
+    private boolean started;
+
+    // Whether latency and redraw metrics are recorded and shown over the map. Walkers need
+    //  WalkActivity.DEBUG_METRICS on as well for the stages before the callback. When off the
+    //  metrics are never created.
+    private static final boolean DEBUG_METRICS = false;
+    private static final long METRICS_OVERLAY_INTERVAL_MILLIS = 1000;
+    private MapMetrics mapMetrics;
+    private TextView metricsOverlay;
+    private final Runnable metricsOverlayTask = new Runnable() {
+        @Override
+        public void run() {
+            if(destroyed){
+                return;
+            }
+            mapMetrics.tick(System.currentTimeMillis());
+            metricsOverlay.setText(mapMetrics.dump());
+            mainHandler.postDelayed(this, METRICS_OVERLAY_INTERVAL_MILLIS);
+        }
+    };
 
     /** onCreate() runs whenever the activity is created.
      *
@@ -71,105 +202,241 @@ public class PetActivity extends FragmentActivity implements OnMapReadyCallback
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_walk);
+        setContentView(R.layout.activity_pet);
         // Setting up google maps and location services.
-        mFusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(this);
+        locationHub = FusedLocationSource.getSharedHub(this);
         // Obtain the SupportMapFragment and get notified when the map is ready to be used.
         SupportMapFragment mapFragment = (SupportMapFragment) getSupportFragmentManager()
                 .findFragmentById(R.id.map);
         mapFragment.getMapAsync(this);
 
-        // Initialize the dog location list.
-        dogLocationArrayList = new ArrayList<>();
+        // Initialize the walker map and clustering.
+        walkerMap = new WalkerMap();
+        mapViewport = new MapViewport();
+        motionPredictor = new MotionPredictor();
+        clusterExecutor = Executors.newSingleThreadScheduledExecutor();
+        mainHandler = new Handler(Looper.getMainLooper());
+        createdAt = SystemClock.uptimeMillis();
 
-        // Set up Firebase Database fields.
-        firebaseDatabase = FirebaseDatabase.getInstance();
-        databaseReference = firebaseDatabase.getReference();
-        childEventListener = new ChildEventListener() {
+        if(SHOW_TRAILS){
+            walkerMap.setWalkerTrails(new WalkerTrails());
+        }
 
-            /** onChildAdded() runs for each child already in the database when the user begins
-             *      querying and for each new child added while the user is engaged with the
-             *      database.
-             *
-             *  Creates a new DogLocation and displays it based on the information in the database.
-             *
-             * @param dataSnapshot
-             * @param s
-             */
+        // Tapping a walker in the list moves the map to them, and stops following the user
+        //  until they ask for their location again.
+        cameraFollowController = new CameraFollowController(
+                getResources().getDisplayMetrics().density);
+        nearestWalkers = new ArrayList<>();
+        nearestWalkersAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        ListView nearestWalkersView = (ListView) findViewById(R.id.nearest_walkers);
+        nearestWalkersView.setAdapter(nearestWalkersAdapter);
+        nearestWalkersView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
-            public void onChildAdded(DataSnapshot dataSnapshot, String s) {
-                // Create new DogLication for the child added, add it to the list and the screen.
-                DogLocation dogLocation = dataSnapshot.getValue(DogLocation.class);
-                dogLocationArrayList.add(dogLocation);
-                fillMarkers();
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                if(mMap != null && position < nearestWalkers.size()){
+                    DogLocation dogLocation = nearestWalkers.get(position);
+                    cameraFollowController.pause();
+                    mMap.moveCamera(CameraUpdateFactory.newLatLng(new LatLng(
+                            dogLocation.getLatitude(), dogLocation.getLongitude())));
+                }
             }
+        });
 
-            /** onChildChanges() should run only when a dog walker moves location and their location
-             *      updates in the database.
-             *
-             *  Replace the existing location that corresponds to that user with a new one in the
-             *      right location.
-             *
-             * @param dataSnapshot
-             * @param s
-             */
+        // Show the metrics over the map while debugging.
+        if(DEBUG_METRICS){
+            mapMetrics = new MapMetrics();
+            metricsOverlay = new TextView(this);
+            metricsOverlay.setTypeface(Typeface.MONOSPACE);
+            metricsOverlay.setTextSize(9);
+            metricsOverlay.setTextColor(Color.WHITE);
+            metricsOverlay.setBackgroundColor(0x99000000);
+            metricsOverlay.setPadding(8, 8, 8, 8);
+            addContentView(metricsOverlay, new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            mainHandler.postDelayed(metricsOverlayTask, METRICS_OVERLAY_INTERVAL_MILLIS);
+        }
+
+        // Show the walkers from last time right away, and keep the snapshot up to date.
+        walkerSnapshotFile = new WalkerSnapshotFile(new File(getFilesDir(), SNAPSHOT_FILE_NAME));
+        provisionalWalkers = new HashMap<>();
+        snapshotBuffer = new ArrayList<>();
+        clusterExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadSnapshot();
+            }
+        });
+        clusterExecutor.scheduleWithFixedDelay(new Runnable() {
             @Override
-            public void onChildChanged(DataSnapshot dataSnapshot, String s) {
-                // Get the new location.
-                DogLocation newDogLocation = dataSnapshot.getValue(DogLocation.class);
-                // Find the location that it corresponds to.
-                ArrayList<DogLocation> toRemove = new ArrayList<>();
-                for(DogLocation dogLocation: dogLocationArrayList){
-                    if(dogLocation.compareTo(newDogLocation) == 0){
-                        // Replace location and refresh map.
-                        toRemove.add(dogLocation);
+            public void run() {
+                saveSnapshot();
+            }
+        }, SNAPSHOT_SAVE_INTERVAL_MILLIS, SNAPSHOT_SAVE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Drop walkers that have gone quiet.
+        clusterExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweepStaleWalkers();
+            }
+        }, WalkerMap.PRESENCE_SWEEP_MILLIS, WalkerMap.PRESENCE_SWEEP_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        // The user's own location is asked for less often while they stand still.
+        locationScheduler = new AdaptiveLocationScheduler(TieredSchedulePolicy.forPetter(),
+                new AdaptiveLocationScheduler.Listener() {
+                    @Override
+                    public void onScheduleChanged(LocationSchedule schedule) {
+                        // Ask the hub for fixes on the new schedule.
+                        if(locationConsumer != null && started){
+                            requestLocationUpdates();
+                        }
                     }
+                });
+
+        // Database callbacks only mark the map dirty; the map itself is updated once per frame.
+        renderScheduler = new RenderScheduler(new RenderScheduler.Renderer() {
+            @Override
+            public void onRender(int coalescedUpdates) {
+                if(mapMetrics != null){
+                    mapMetrics.onFrame(coalescedUpdates);
                 }
-                dogLocationArrayList.removeAll(toRemove);
-                dogLocationArrayList.add(newDogLocation);
-                fillMarkers();
+                renderMarkers();
             }
+        });
 
-            /** When a dog walker leaves or marks that they are no longer available.
+        // Set up Firebase Database fields.
+        firebaseDatabase = FirebaseDatabase.getInstance();
+        snapshotPipeline = new SnapshotPipeline(clusterExecutor,
+                SnapshotPipeline.DEFAULT_CAPACITY);
+        walkerDatabase = new FirebaseWalkerDatabase(firebaseDatabase.getReference(),
+                snapshotPipeline);
+        walkerSubscriptions = new WalkerSubscriptions(walkerDatabase);
+        mapScope = walkerSubscriptions.openScope();
+        walkerListener = new WalkerDatabase.Listener() {
+
+            /** onWalkerChanged() runs on the clustering thread for each walker already in a cell
+             *      when the cell starts being listened to, and whenever a walker in the cell moves
+             *      or arrives.
              *
-             *  Delete the appropriate marker from the map.
+             *  Stores the new location, unless it is out of date or the walker hasn't been seen
+             *      for too long, and updates the map.
              *
-             * @param dataSnapshot
+             * @param dogLocation
              */
             @Override
-            public void onChildRemoved(DataSnapshot dataSnapshot) {
-                // The location to remove.
-                DogLocation newDogLocation = dataSnapshot.getValue(DogLocation.class);
-                // Find and remove the appropriate location from the list and update the map.
-                for(DogLocation dogLocation: dogLocationArrayList){
-                    if(dogLocation.compareTo(newDogLocation) == 0){
-                        dogLocationArrayList.remove(dogLocation);
+            public void onWalkerChanged(DogLocation dogLocation) {
+                long now = System.currentTimeMillis();
+                if(mapMetrics != null){
+                    mapMetrics.onCallback(dogLocation, now);
+                }
+                if(walkerMap.isStale(dogLocation, now)){
+                    return;
+                }
+                provisionalWalkers.remove(dogLocation.getId());
+                if(firstLiveWalkerMillis < 0){
+                    firstLiveWalkerMillis = SystemClock.uptimeMillis() - createdAt;
+                    Log.i(TAG, "First walker from the database after " + firstLiveWalkerMillis
+                            + " ms");
+                }
+                if(walkerMap.apply(dogLocation, now)){
+                    if(mapMetrics != null){
+                        mapMetrics.onApplied(dogLocation, System.nanoTime());
                     }
+                    postRenderRequest();
                 }
-                fillMarkers();
             }
 
-            /** Unused onChildMoved().
+            /** When a dog walker leaves or marks that they are no longer available, or leaves
+             *      the part of the map being listened to. Runs on the clustering thread.
+             *
+             *  Delete the appropriate marker from the map.
              *
-             * @param dataSnapshot
-             * @param s
+             * @param dogLocation
              */
             @Override
-            public void onChildMoved(DataSnapshot dataSnapshot, String s) {
-
+            public void onWalkerRemoved(DogLocation dogLocation) {
+                // Remove the appropriate location from the walker map and update the map.
+                if(walkerMap.remove(dogLocation.getId(), dogLocation.getTime())){
+                    postRenderRequest();
+                }
             }
+        };
+        // Cells are listened to once the map knows what is on screen.
+        geohashSubscriber = new GeohashSubscriber(mapScope, walkerListener);
 
-            /** Unused onCancelled().
-             *
-             * @param databaseError
-             */
+    }
+
+    /** onStart() runs when the activity becomes visible.
+     *
+     *  Passes on the walkers that changed while the map was hidden, and goes back to passing them
+     *      on as they come. Asks for location fixes again if they were stopped with the activity.
+     *
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if(locationConsumer != null){
+            requestLocationUpdates();
+        }
+        clusterExecutor.execute(new Runnable() {
             @Override
-            public void onCancelled(DatabaseError databaseError) {
+            public void run() {
+                mapScope.resume();
+            }
+        });
+    }
 
+    /** onStop() runs when the activity is no longer visible.
+     *
+     *  Holds walker updates instead of drawing them, keeping only the latest for each walker,
+     *      and stops asking for location fixes.
+     *
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        if(locationConsumer != null){
+            locationHub.unsubscribe(locationConsumer);
+        }
+        clusterExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mapScope.pause();
             }
-        };
-        databaseReference.addChildEventListener(childEventListener);
+        });
+    }
 
+    /** onDestroy() runs when the activity is ending.
+     *
+     *  Stops listening to the database, drops any map update still waiting for a frame and
+     *      stops the clustering thread.
+     *
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+        if(locationConsumer != null){
+            locationHub.unsubscribe(locationConsumer);
+        }
+        snapshotPipeline.close();
+        clusterExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Removes every listener the map added, whichever component added it.
+                mapScope.close();
+                saveSnapshot();
+            }
+        });
+        renderScheduler.cancel();
+        mainHandler.removeCallbacks(metricsOverlayTask);
+        if(markerAnimator != null){
+            markerAnimator.stop();
+        }
+        clusterExecutor.shutdown();
     }
 
     /** onMapReady() runs when the map has been built and is available.
@@ -183,6 +450,40 @@ public class PetActivity extends FragmentActivity implements OnMapReadyCallback
         // Map initialization.
         mMap = googleMap;
         mMap.setMapType(GoogleMap.MAP_TYPE_NORMAL);
+        markerReconciler = new MarkerReconciler(mMap);
+        markerAnimator = new MarkerAnimator(motionPredictor, markerReconciler);
+        markerIconCache = new MarkerIconCache(getResources());
+        if(SHOW_TRAILS){
+            trailRenderer = new TrailRenderer(mMap, ContextCompat.getColor(this, R.color.trail),
+                    TRAIL_WIDTH_DP * getResources().getDisplayMetrics().density);
+        }
+        pawPrintIcon = markerIconCache.get(R.mipmap.paw_print_marker_logo,
+                mMap.getCameraPosition().zoom);
+
+        // Only the markers in view are drawn, so redraw whenever the camera settles.
+        mMap.setOnCameraIdleListener(new GoogleMap.OnCameraIdleListener() {
+            @Override
+            public void onCameraIdle() {
+                updateViewport();
+            }
+        });
+
+        // Stop following the user while they pan the map, until they ask for their location again.
+        mMap.setOnCameraMoveStartedListener(new GoogleMap.OnCameraMoveStartedListener() {
+            @Override
+            public void onCameraMoveStarted(int reason) {
+                if(reason == GoogleMap.OnCameraMoveStartedListener.REASON_GESTURE){
+                    cameraFollowController.onUserGesture(SystemClock.elapsedRealtime());
+                }
+            }
+        });
+        mMap.setOnMyLocationButtonClickListener(new GoogleMap.OnMyLocationButtonClickListener() {
+            @Override
+            public boolean onMyLocationButtonClick() {
+                cameraFollowController.resume();
+                return false;
+            }
+        });
 
         // Checking permissions.
         if(ActivityCompat.checkSelfPermission(this,
@@ -234,13 +535,12 @@ public class PetActivity extends FragmentActivity implements OnMapReadyCallback
             ActivityCompat.requestPermissions(this, new String[]
                     {android.Manifest.permission.ACCESS_FINE_LOCATION}, LOCATION_REQUEST_CODE);
         }else{
-            Task<Location> locationTask = mFusedLocationProviderClient.getLastLocation();
-            locationTask.addOnSuccessListener(new OnSuccessListener<Location>() {
+            locationHub.requestLastFix(new LocationHub.Consumer() {
                 @Override
-                public void onSuccess(Location location) {
-                    if(location != null){
-                        LatLng userLatLng = new LatLng(location.getLatitude(),
-                                location.getLongitude());
+                public void onFix(double latitude, double longitude, long time) {
+                    // The fix can arrive after the clustering thread has stopped.
+                    if(!destroyed){
+                        setNearestOrigin(latitude, longitude);
                     }
                 }
             });
@@ -251,14 +551,9 @@ public class PetActivity extends FragmentActivity implements OnMapReadyCallback
      *
      */
     private void setUpUserLocationUpdates(){
-        final LocationRequest locationRequest = new LocationRequest();
-        // Set location request intervals.
-        locationRequest.setInterval(1000);
-        locationRequest.setFastestInterval(500);
-        locationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-
         LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder();
-        builder.addLocationRequest(locationRequest);
+        builder.addLocationRequest(FusedLocationSource.buildLocationRequest(
+                locationScheduler.getSchedule()));
 
         // Use the location services client to update the user's current location.
         SettingsClient client = LocationServices.getSettingsClient(this);
@@ -266,63 +561,331 @@ public class PetActivity extends FragmentActivity implements OnMapReadyCallback
         task.addOnSuccessListener(this, new OnSuccessListener<LocationSettingsResponse>() {
             @Override
             public void onSuccess(LocationSettingsResponse locationSettingsResponse) {
-                LocationCallback locationCallback = new LocationCallback(){
-                    @Override
-                    public void onLocationResult(LocationResult locationResult) {
-                        for (Location location : locationResult.getLocations()){
-                            // Get the user's location and zoom to it.
-                            LatLng latLng = new LatLng(location.getLatitude(),
-                                    location.getLongitude());
-                            mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(latLng, 17.0f));
+                if(locationConsumer == null){
+                    locationConsumer = new LocationHub.Consumer() {
+                        @Override
+                        public void onFix(double latitude, double longitude, long time) {
+                            // Follow the user, unless they are looking elsewhere or the map
+                            //  would barely move.
+                            if(cameraFollowController.shouldMove(latitude, longitude,
+                                    FOLLOW_ZOOM, SystemClock.elapsedRealtime())){
+                                mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(
+                                        new LatLng(latitude, longitude), FOLLOW_ZOOM));
+                            }
+                            locationScheduler.onFix(latitude, longitude, time);
+                            setNearestOrigin(latitude, longitude);
                         }
+                    };
+                }
+                if(started){
+                    requestLocationUpdates();
+                }
+            }
+        });
+    }
+
+    /** Subscribes to the location hub on the scheduler's current schedule, or moves the
+     *      subscription to it.
+     *
+     */
+    private void requestLocationUpdates() {
+        // Check permissions.
+        if (ActivityCompat.checkSelfPermission(PetActivity.this,
+                android.Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED){
+            // Permission not granted.
+            ActivityCompat.requestPermissions(PetActivity.this,
+                    new String[]{android.Manifest.permission.ACCESS_FINE_LOCATION},
+                    LOCATION_REQUEST_CODE);
+        } else {
+            // Permission granted.
+            locationHub.subscribe(locationConsumer, locationScheduler.getSchedule());
+        }
+    }
+
+    /** Asks the main thread for a frame so changed clusters are drawn, unless it has already
+     *      been asked. Runs on the clustering thread.
+     *
+     */
+    private void postRenderRequest(){
+        pendingMapUpdates.incrementAndGet();
+        if(renderRequestPosted.compareAndSet(false, true)){
+            mainHandler.post(requestRenderTask);
+        }
+    }
+
+    /** Reads the snapshot saved last time onto the walker map and draws it. Runs on the clustering
+     *      thread.
+     *
+     */
+    private void loadSnapshot(){
+        snapshotBuffer.clear();
+        long now = System.currentTimeMillis();
+        walkerSnapshotFile.read(now, SNAPSHOT_MAX_AGE_MILLIS, snapshotBuffer);
+        for(DogLocation dogLocation : snapshotBuffer){
+            // Snapshots outlive the presence time to live, so the walkers are shown however
+            //  long ago they were seen, until reconciling removes the ones not confirmed.
+            if(walkerMap.applyProvisional(dogLocation, now)){
+                provisionalWalkers.put(dogLocation.getId(), dogLocation.getTime());
+                postRenderRequest();
+            }
+        }
+        Log.i(TAG, "Loaded " + snapshotBuffer.size() + " walkers from the snapshot after "
+                + (SystemClock.uptimeMillis() - createdAt) + " ms");
+        snapshotBuffer.clear();
+    }
+
+    /** Removes every walker whose presence deadline has passed. Runs on the clustering thread.
+     *
+     */
+    private void sweepStaleWalkers(){
+        if(walkerMap.expire(System.currentTimeMillis(), null) > 0){
+            postRenderRequest();
+        }
+    }
+
+    /** Saves the walkers on the map as the snapshot for next time. Runs on the clustering
+     *      thread.
+     *
+     */
+    private void saveSnapshot(){
+        snapshotBuffer.clear();
+        walkerMap.snapshot(snapshotBuffer);
+        try{
+            walkerSnapshotFile.write(snapshotBuffer, System.currentTimeMillis());
+        }catch(IOException e){
+            Log.w(TAG, "Could not save the walker snapshot", e);
+        }
+        snapshotBuffer.clear();
+    }
+
+    /** Schedules removal of the snapshot walkers the database doesn't confirm, once cells are
+     *      first listened to. Runs on the clustering thread.
+     *
+     */
+    private void scheduleReconcile(){
+        if(reconcileScheduled){
+            return;
+        }
+        reconcileScheduled = true;
+        clusterExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                for(Map.Entry<String, Long> entry : provisionalWalkers.entrySet()){
+                    // Only removed if nothing newer has been stored since.
+                    if(walkerMap.remove(entry.getKey(), entry.getValue())){
+                        postRenderRequest();
                     }
-                };
-                // Check permissions.
-                if (ActivityCompat.checkSelfPermission(PetActivity.this,
-                        android.Manifest.permission.ACCESS_FINE_LOCATION)
-                        != PackageManager.PERMISSION_GRANTED){
-                    // Permission not granted.
-                    ActivityCompat.requestPermissions(PetActivity.this,
-                            new String[]{android.Manifest.permission.ACCESS_FINE_LOCATION},
-                            LOCATION_REQUEST_CODE);
-                } else {
-                    // Permission granted.
-                    mFusedLocationProviderClient.requestLocationUpdates(locationRequest,
-                            locationCallback, null);
                 }
+                provisionalWalkers.clear();
+            }
+        }, SNAPSHOT_RECONCILE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Called when the camera stops moving.
+     *
+     *  Saves the visible region of the map, plus a margin so short pans don't show empty space,
+     *      and the zoom level, listens to the database cells covering it, then redraws every
+     *      marker on the next frame.
+     *
+     */
+    private void updateViewport(){
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        mapViewport.set(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude, VIEWPORT_MARGIN);
+        cameraZoom = mMap.getCameraPosition().zoom;
+        final MapViewport subscribeViewport = new MapViewport(mapViewport);
+        clusterExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                geohashSubscriber.setViewport(subscribeViewport);
+                scheduleReconcile();
+            }
+        });
+        // Pick the icon size for the new zoom level.
+        pawPrintIcon = markerIconCache.get(R.mipmap.paw_print_marker_logo, cameraZoom);
+        viewportDirty = true;
+        renderScheduler.requestRender();
+    }
+
+    /** Called by the render scheduler at most once per frame.
+     *
+     *  Asks the clustering thread for every change since the last frame: every cluster in view if
+     *      the camera moved, otherwise just the clusters that changed.
+     *
+     */
+    private void renderMarkers(){
+        // Nothing can be drawn until the map is ready. Changes stay pending until then.
+        if(mMap == null){
+            return;
+        }
+        fullClusterPassPending |= viewportDirty;
+        viewportDirty = false;
+        if(clusterPassRunning){
+            // Only one pass at a time; go again once the running one is applied.
+            clusterPassAgain = true;
+            return;
+        }
+        clusterPassRunning = true;
+        final boolean full = fullClusterPassPending;
+        fullClusterPassPending = false;
+        final MapViewport passViewport = new MapViewport(mapViewport);
+        final float passZoom = cameraZoom;
+        clusterExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ClusterDelta clusterDelta = new ClusterDelta();
+                walkerMap.emit(passViewport, passZoom, full, clusterDelta);
+                final long[] awaitingDraw = mapMetrics == null ? null
+                        : mapMetrics.takeAwaitingDraw();
+                // Trails are hidden when zoomed out too far to tell them apart.
+                final TrailDelta trailDelta = SHOW_TRAILS ? new TrailDelta() : null;
+                if(trailDelta != null){
+                    walkerMap.emitTrails(passZoom >= TRAIL_MIN_ZOOM ? passViewport
+                            : new MapViewport(), full, trailDelta);
+                }
+                final ArrayList<String> nearestRows = new ArrayList<>();
+                final ArrayList<DogLocation> nearest = takeNearestWalkers(nearestRows);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(nearest != null){
+                            showNearestWalkers(nearest, nearestRows);
+                        }
+                        if(trailDelta != null && !destroyed){
+                            trailRenderer.apply(trailDelta);
+                        }
+                        applyClusterDelta(clusterDelta, awaitingDraw);
+                    }
+                });
             }
         });
     }
 
-    /** Called from database checking functions.
+    /** Measures distances to walkers from the user's latest fix, and updates the list of the
+     *      nearest walkers.
      *
-     *  Updates the map to show markers from each dog in the dog locations list which is drawn from
-     *      the database.
+     * @param latitude
+     * @param longitude
+     */
+    private void setNearestOrigin(final double latitude, final double longitude){
+        clusterExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                walkerMap.getNearestWalkers().setOrigin(latitude, longitude);
+                postRenderRequest();
+            }
+        });
+    }
+
+    /** Called on the clustering thread. Copies the walkers nearest the user, and a row for each
+     *      to list them with, if they have changed since the last copy.
      *
+     * @param rows a row for each walker is added here
+     * @return the nearest walkers, nearest first, or null if they haven't changed
      */
-    private void fillMarkers(){
-        // Delete all existing markers.
-        mMap.clear();
-
-        // Setting up the custom dog markers.
-        int width = 75;
-        int height = 75;
-        for(DogLocation dogLocation : dogLocationArrayList){
-            BitmapDrawable pawPrintBitmapDrawable = (BitmapDrawable) getResources().getDrawable(
-                    R.mipmap.paw_print_marker_logo);
-            Bitmap pawPrintBitmap = pawPrintBitmapDrawable.getBitmap();
-            Bitmap smallPawPrintMarker = Bitmap.createScaledBitmap(pawPrintBitmap, width, height,
-                    false);
-
-            // Assigning the marker and placing it on the map.
-            LatLng latLng = new LatLng(dogLocation.getLatitude(), dogLocation.getLongitude());
-            MarkerOptions pawPrintMarker = new MarkerOptions();
-            pawPrintMarker.position(latLng)
-                    .title("(" + String.format("%.2f", dogLocation.getLatitude()) + ", " + String.format("%.2f", dogLocation.getLongitude()) + ")")
-                    .icon(BitmapDescriptorFactory.fromBitmap(smallPawPrintMarker));
-
-            mMap.addMarker(pawPrintMarker);
+    private ArrayList<DogLocation> takeNearestWalkers(ArrayList<String> rows){
+        NearestWalkers nearest = walkerMap.getNearestWalkers();
+        if(!nearest.takeChanged()){
+            return null;
+        }
+        int count = nearest.getCount();
+        ArrayList<DogLocation> copy = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            copy.add(nearest.get(i));
+            double meters = nearest.getDistance(i);
+            if(meters < 1000){
+                rows.add(getString(R.string.nearest_walker_meters, i + 1, Math.round(meters)));
+            }else{
+                rows.add(getString(R.string.nearest_walker_kilometers, i + 1, meters / 1000));
+            }
+        }
+        return copy;
+    }
 
+    /** Called on the main thread. Replaces the list of nearest walkers beside the map.
+     *
+     * @param nearest the nearest walkers, nearest first
+     * @param rows a row for each walker
+     */
+    private void showNearestWalkers(ArrayList<DogLocation> nearest, ArrayList<String> rows){
+        if(destroyed){
+            return;
+        }
+        nearestWalkers = nearest;
+        nearestWalkersAdapter.clear();
+        nearestWalkersAdapter.addAll(rows);
+    }
+
+    /** Called on the main thread with the result of a clustering pass.
+     *
+     *  Moves, adds and removes only the markers that changed. A full pass also removes every
+     *      marker that scrolled out of view.
+     *
+     * @param clusterDelta
+     * @param awaitingDraw walkers the pass includes, for the metrics, or null
+     */
+    private void applyClusterDelta(ClusterDelta clusterDelta, long[] awaitingDraw){
+        if(destroyed){
+            return;
+        }
+        clusterPassRunning = false;
+        long redrawStart = System.nanoTime();
+        if(clusterDelta.isFull()){
+            markerReconciler.beginPass();
+            motionPredictor.beginPass();
+        }
+        for(String key : clusterDelta.getRemoved()){
+            markerReconciler.remove(key);
+            motionPredictor.remove(key);
+        }
+        long now = SystemClock.uptimeMillis();
+        for(Cluster cluster : clusterDelta.getPlaced()){
+            placeCluster(cluster, now);
+        }
+        if(clusterDelta.isFull()){
+            markerReconciler.endPass();
+            motionPredictor.endPass();
+        }
+        // Walkers that are moving keep moving between updates.
+        markerAnimator.start();
+        if(mapMetrics != null){
+            long drawn = System.nanoTime();
+            mapMetrics.onRedraw(drawn - redrawStart, markerReconciler.size());
+            mapMetrics.onDrawn(awaitingDraw, drawn, System.currentTimeMillis());
+        }
+        if(!firstMarkerLogged && markerReconciler.size() > 0){
+            firstMarkerLogged = true;
+            Log.i(TAG, "First marker drawn after " + (SystemClock.uptimeMillis() - createdAt)
+                    + " ms, " + (firstLiveWalkerMillis < 0 ? "from the snapshot"
+                    : "from the database"));
+        }
+        if(clusterPassAgain){
+            clusterPassAgain = false;
+            renderScheduler.requestRender();
+        }
+    }
+
+    /** Places the marker for a cluster: the paw print for a single dog, or a count for more.
+     *
+     *  A single dog is drawn where it is predicted to be, which is where its latest fix is if the
+     *      fix is new, so markers already animating aren't pulled back by a redraw.
+     *
+     * @param cluster
+     * @param now
+     */
+    private void placeCluster(Cluster cluster, long now){
+        if(cluster.getCount() == 1){
+            motionPredictor.onUpdate(cluster.getKey(), cluster.getLatitude(),
+                    cluster.getLongitude(), cluster.getTime(), now);
+            motionPredictor.predict(cluster.getKey(), now, predictedPosition);
+            markerReconciler.place(cluster.getKey(), predictedPosition[0], predictedPosition[1],
+                    MarkerReconciler.titleFor(cluster.getLatitude(), cluster.getLongitude()),
+                    pawPrintIcon);
+        }else{
+            markerReconciler.place(cluster.getKey(), cluster.getLatitude(),
+                    cluster.getLongitude(), cluster.getCount() + " dogs",
+                    markerIconCache.getCluster(cluster.getCount()));
         }
     }
 
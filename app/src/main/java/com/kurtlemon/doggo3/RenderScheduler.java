@@ -0,0 +1,112 @@
+/**
+ * RenderScheduler collapses bursts of map updates into at most one render per display frame, and
+ *  keeps count of how many updates each frame absorbed.
+ */
+package com.kurtlemon.doggo3;
+
+import android.view.Choreographer;
+
+public class RenderScheduler implements Choreographer.FrameCallback {
+
+    /**
+     * Renderer is told once per frame to apply every update requested since the last frame.
+     */
+    public interface Renderer {
+        void onRender(int coalescedUpdates);
+    }
+
+    // What gets run on each frame.
+    private final Renderer renderer;
+
+    // Whether a frame callback is already posted, and the updates waiting for it.
+    private boolean frameScheduled;
+    private int pendingUpdates;
+
+    // How well updates are being coalesced.
+    private long framesRendered;
+    private long updatesRendered;
+    private int maxCoalescedUpdates;
+
+    /** Explicit Value Constructor.
+     *
+     * @param renderer
+     */
+    public RenderScheduler(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /** Marks the map dirty with a single update. Must be called on the main thread.
+     *
+     */
+    public void requestRender() {
+        requestRender(1);
+    }
+
+    /** Marks the map dirty with a number of updates made elsewhere since the last request. Must
+     *      be called on the main thread.
+     *
+     *  Schedules a render for the next frame unless one is already scheduled.
+     *
+     * @param updates
+     */
+    public void requestRender(int updates) {
+        pendingUpdates += updates;
+        if(!frameScheduled){
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /** Drops any render that is waiting for the next frame.
+     *
+     */
+    public void cancel() {
+        if(frameScheduled){
+            Choreographer.getInstance().removeFrameCallback(this);
+            frameScheduled = false;
+        }
+        pendingUpdates = 0;
+    }
+
+    /** Runs the renderer once, passing it the number of updates requested since the last frame.
+     *
+     * @param frameTimeNanos
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        int coalescedUpdates = pendingUpdates;
+        pendingUpdates = 0;
+
+        framesRendered++;
+        updatesRendered += coalescedUpdates;
+        if(coalescedUpdates > maxCoalescedUpdates){
+            maxCoalescedUpdates = coalescedUpdates;
+        }
+        renderer.onRender(coalescedUpdates);
+    }
+
+    /** Returns the number of frames rendered.
+     *
+     * @return
+     */
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    /** Returns the number of updates rendered over every frame.
+     *
+     * @return
+     */
+    public long getUpdatesRendered() {
+        return updatesRendered;
+    }
+
+    /** Returns the most updates coalesced into a single frame.
+     *
+     * @return
+     */
+    public int getMaxCoalescedUpdates() {
+        return maxCoalescedUpdates;
+    }
+}
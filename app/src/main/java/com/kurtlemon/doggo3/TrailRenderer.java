@@ -0,0 +1,116 @@
+/**
+ * TrailRenderer draws walkers' trails on the map as polylines, keyed by walker ID. Each drawn
+ *  trail keeps the points it was last given, so a TrailDelta only trims and extends them instead
+ *  of the trail being rebuilt from scratch.
+ */
+package com.kurtlemon.doggo3;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class TrailRenderer {
+
+    /**
+     * DrawnTrail is a live polyline and the points it shows.
+     */
+    private static final class DrawnTrail {
+        final Polyline polyline;
+        final ArrayList<LatLng> points;
+
+        DrawnTrail(Polyline polyline, ArrayList<LatLng> points) {
+            this.polyline = polyline;
+            this.points = points;
+        }
+    }
+
+    // The map the trails are drawn on, and how they look.
+    private final GoogleMap map;
+    private final int color;
+    private final float width;
+
+    // Live trails on the map by walker ID.
+    private final HashMap<String, DrawnTrail> trails;
+
+    /** Explicit Value Constructor.
+     *
+     * @param map
+     * @param color
+     * @param width in pixels
+     */
+    public TrailRenderer(GoogleMap map, int color, float width) {
+        this.map = map;
+        this.color = color;
+        this.width = width;
+        trails = new HashMap<>();
+    }
+
+    /** Applies the changes of a pass: removes the trails to remove, then trims and extends the
+     *      trails that changed, adding any that aren't drawn yet.
+     *
+     * @param trailDelta
+     */
+    public void apply(TrailDelta trailDelta) {
+        for(String id : trailDelta.getRemoved()){
+            DrawnTrail drawnTrail = trails.remove(id);
+            if(drawnTrail != null){
+                drawnTrail.polyline.remove();
+            }
+        }
+        for(TrailDelta.Change change : trailDelta.getChanged()){
+            DrawnTrail drawnTrail = trails.get(change.getId());
+            if(drawnTrail == null){
+                ArrayList<LatLng> points = new ArrayList<>();
+                append(change, points);
+                Polyline polyline = map.addPolyline(new PolylineOptions()
+                        .addAll(points)
+                        .color(color)
+                        .width(width));
+                trails.put(change.getId(), new DrawnTrail(polyline, points));
+            }else{
+                List<LatLng> points = drawnTrail.points;
+                points.subList(0, Math.min(change.getTrimmed(), points.size())).clear();
+                points.subList(Math.min(change.getKept(), points.size()), points.size()).clear();
+                append(change, drawnTrail.points);
+                drawnTrail.polyline.setPoints(drawnTrail.points);
+            }
+        }
+    }
+
+    /** Removes every trail from the map.
+     *
+     */
+    public void clear() {
+        for(DrawnTrail drawnTrail : trails.values()){
+            drawnTrail.polyline.remove();
+        }
+        trails.clear();
+    }
+
+    /** Returns the number of trails on the map.
+     *
+     * @return
+     */
+    public int size() {
+        return trails.size();
+    }
+
+    /** Adds the new points of a change to the end of a trail's points.
+     *
+     * @param change
+     * @param points
+     */
+    private static void append(TrailDelta.Change change, ArrayList<LatLng> points) {
+        double[] latitudes = change.getLatitudes();
+        double[] longitudes = change.getLongitudes();
+        points.ensureCapacity(points.size() + latitudes.length);
+        for(int i = 0; i < latitudes.length; i++){
+            points.add(new LatLng(latitudes[i], longitudes[i]));
+        }
+    }
+}
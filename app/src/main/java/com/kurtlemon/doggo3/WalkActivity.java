@@ -11,17 +11,14 @@ package com.kurtlemon.doggo3;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.location.Location;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.FragmentActivity;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.LocationSettingsRequest;
 import com.google.android.gms.location.LocationSettingsResponse;
@@ -33,26 +30,60 @@ import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
-import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class WalkActivity extends FragmentActivity implements OnMapReadyCallback {
 
+    // Tag for log messages.
+    private static final String TAG = "WalkActivity";
     // Location request code for Google Maps.
     private static final int LOCATION_REQUEST_CODE = 1;
 
+    // Whether locations are written in the CompactLocationCodec format instead of as DogLocation
+    //  beans. Readers understand both, so this can be turned on once every installed client does.
+    private static final boolean COMPACT_WIRE_FORMAT = false;
+
+    // Whether writes are stamped with when they were written, so dog petters measuring latency
+    //  can tell the walker's delay from the database's. Costs a few bytes per write.
+    private static final boolean DEBUG_METRICS = false;
+
     // User ID is used to identify the individual user to the database.
     private String userID = "";
 
     // Google Maps fields.
     private GoogleMap mMap;
 
-    // Location services fields.
-    private FusedLocationProviderClient mFusedLocationProviderClient;
+    // Location services fields. The location request is shared with every other activity.
+    private LocationHub locationHub;
 
-    // Firebase Database Fields.
+    // Firebase Database Fields. The user's location is written to its flat entry and to the
+    //  geohash cells it is in; the location writer remembers those cells so they can be cleaned
+    //  up.
     private FirebaseDatabase firebaseDatabase;
-    private DatabaseReference databaseReference;
+    private WalkerDatabase walkerDatabase;
+    private LocationWriter locationWriter;
+
+    // Decides which location fixes are worth writing to the database.
+    private PublishPolicy publishPolicy;
+
+    // Zoom level the camera follows the user at, and what decides when it has to move.
+    private static final float FOLLOW_ZOOM = 17.0f;
+    private CameraFollowController cameraFollowController;
+
+    // Receives location fixes, and asks for a new schedule as the user speeds up or slows down.
+    //  Only subscribed while the activity is started, so nothing is written from the background.
+    private LocationHub.Consumer locationConsumer;
+    private AdaptiveLocationScheduler locationScheduler;
+    private boolean started;
+
+    // The path of the walk so far, saved to the walks directory when the walk ends.
+    private static final String WALKS_DIRECTORY = "walks";
+    private WalkTrajectory walkTrajectory;
 
     /** onCreate() runs when the WalkActivity is started.
      *
@@ -70,8 +101,8 @@ public class WalkActivity extends FragmentActivity implements OnMapReadyCallback
         Intent intent = getIntent();
         userID = intent.getStringExtra("userID");
 
-        // Establishes the location provider client.
-        mFusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(this);
+        // Gets the location hub shared by the activities.
+        locationHub = FusedLocationSource.getSharedHub(this);
 
         // Obtain the SupportMapFragment and get notified when the map is ready to be used.
         SupportMapFragment mapFragment = (SupportMapFragment) getSupportFragmentManager()
@@ -80,7 +111,23 @@ public class WalkActivity extends FragmentActivity implements OnMapReadyCallback
 
         // Initializes the Firebase database fields for later use.
         firebaseDatabase = FirebaseDatabase.getInstance();
-        databaseReference = firebaseDatabase.getReference().child("dogLocation" + userID);
+        walkerDatabase = new FirebaseWalkerDatabase(firebaseDatabase.getReference());
+        locationWriter = new LocationWriter(walkerDatabase, userID, COMPACT_WIRE_FORMAT);
+        locationWriter.setStampWrites(DEBUG_METRICS);
+        publishPolicy = new PublishPolicy();
+        walkTrajectory = new WalkTrajectory();
+        cameraFollowController = new CameraFollowController(
+                getResources().getDisplayMetrics().density);
+        locationScheduler = new AdaptiveLocationScheduler(TieredSchedulePolicy.forWalker(),
+                new AdaptiveLocationScheduler.Listener() {
+                    @Override
+                    public void onScheduleChanged(LocationSchedule schedule) {
+                        // Ask the hub for fixes on the new schedule.
+                        if(locationConsumer != null && started){
+                            requestLocationUpdates();
+                        }
+                    }
+                });
     }
 
 
@@ -95,6 +142,23 @@ public class WalkActivity extends FragmentActivity implements OnMapReadyCallback
         mMap = googleMap;
         mMap.setMapType(GoogleMap.MAP_TYPE_NORMAL);
 
+        // Stop following the user while they pan the map, until they ask for their location again.
+        mMap.setOnCameraMoveStartedListener(new GoogleMap.OnCameraMoveStartedListener() {
+            @Override
+            public void onCameraMoveStarted(int reason) {
+                if(reason == GoogleMap.OnCameraMoveStartedListener.REASON_GESTURE){
+                    cameraFollowController.onUserGesture(SystemClock.elapsedRealtime());
+                }
+            }
+        });
+        mMap.setOnMyLocationButtonClickListener(new GoogleMap.OnMyLocationButtonClickListener() {
+            @Override
+            public boolean onMyLocationButtonClick() {
+                cameraFollowController.resume();
+                return false;
+            }
+        });
+
         // Checking permissions.
         if(ActivityCompat.checkSelfPermission(this,
                 android.Manifest.permission.ACCESS_FINE_LOCATION)
@@ -148,15 +212,11 @@ public class WalkActivity extends FragmentActivity implements OnMapReadyCallback
                     {Manifest.permission.ACCESS_FINE_LOCATION}, LOCATION_REQUEST_CODE);
         }else{
             // The user has given permission
-            // Use the location services client to get last known location.
-            Task<Location> locationTask = mFusedLocationProviderClient.getLastLocation();
-            locationTask.addOnSuccessListener(new OnSuccessListener<Location>() {
+            // Use the location hub to get last known location.
+            locationHub.requestLastFix(new LocationHub.Consumer() {
                 @Override
-                public void onSuccess(Location location) {
-                    if(location != null){
-                        LatLng userLatLng = new LatLng(location.getLatitude(),
-                                location.getLongitude());
-                    }
+                public void onFix(double latitude, double longitude, long time) {
+                    LatLng userLatLng = new LatLng(latitude, longitude);
                 }
             });
         }
@@ -166,14 +226,9 @@ public class WalkActivity extends FragmentActivity implements OnMapReadyCallback
      *
      */
     private void setUpUserLocationUpdates(){
-        final LocationRequest locationRequest = new LocationRequest();
-        // Set location request intervals.
-        locationRequest.setInterval(1000);
-        locationRequest.setFastestInterval(500);
-        locationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-
         LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder();
-        builder.addLocationRequest(locationRequest);
+        builder.addLocationRequest(FusedLocationSource.buildLocationRequest(
+                locationScheduler.getSchedule()));
 
         // Use the location services client to update the user's current location.
         SettingsClient client = LocationServices.getSettingsClient(this);
@@ -181,61 +236,152 @@ public class WalkActivity extends FragmentActivity implements OnMapReadyCallback
         task.addOnSuccessListener(this, new OnSuccessListener<LocationSettingsResponse>() {
             @Override
             public void onSuccess(LocationSettingsResponse locationSettingsResponse) {
-                LocationCallback locationCallback = new LocationCallback(){
-                    @Override
-                    public void onLocationResult(LocationResult locationResult) {
-                        for (Location location : locationResult.getLocations()){
-                            // Get the user's location and zoom to it.
-                            LatLng latLng = new LatLng(location.getLatitude(),
-                                    location.getLongitude());
-                            mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(latLng, 17.0f));
-
-                            // Create a DogLocation object with the user's location and push it to
-                            //  the database.
-                            DogLocation dogLocation = new DogLocation(location.getLatitude(),
-                                    location.getLongitude(), userID);
-                            databaseReference.setValue(dogLocation);
+                if(locationConsumer == null){
+                    locationConsumer = new LocationHub.Consumer() {
+                        @Override
+                        public void onFix(double latitude, double longitude, long time) {
+                            onLocation(latitude, longitude, time);
                         }
-                    }
-                };
-
-                // Check permissions.
-                if (ActivityCompat.checkSelfPermission(WalkActivity.this,
-                        Manifest.permission.ACCESS_FINE_LOCATION)
-                        != PackageManager.PERMISSION_GRANTED){
-                    // Permission not granted.
-                    ActivityCompat.requestPermissions(WalkActivity.this,
-                            new String[]{Manifest.permission.ACCESS_FINE_LOCATION},
-                            LOCATION_REQUEST_CODE);
-                } else {
-                    // Permission is granted.
-                    mFusedLocationProviderClient.requestLocationUpdates(locationRequest,
-                            locationCallback, null);
+                    };
+                }
+                if(started){
+                    requestLocationUpdates();
                 }
             }
         });
     }
 
+    /** Handles the newest location fix: follows it with the camera if it moved far enough on
+     *      screen, writes it to the database if it is worth writing, and lets the scheduler adjust
+     *      how often fixes come in. Nothing is allocated unless the camera moves or the user
+     *      changes geohash cells.
+     *
+     * @param latitude
+     * @param longitude
+     * @param time
+     */
+    private void onLocation(double latitude, double longitude, long time) {
+        if(mMap != null && cameraFollowController.shouldMove(latitude, longitude, FOLLOW_ZOOM,
+                SystemClock.elapsedRealtime())){
+            mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(new LatLng(latitude, longitude),
+                    FOLLOW_ZOOM));
+        }
+
+        locationScheduler.onFix(latitude, longitude, time);
+        walkTrajectory.add(latitude, longitude, time);
+
+        // Skip fixes that barely moved or came too soon after the last write.
+        if(publishPolicy.shouldPublish(latitude, longitude, time)){
+            locationWriter.write(latitude, longitude, time);
+        }
+    }
+
+    /** Subscribes to the location hub on the scheduler's current schedule, or moves the
+     *      subscription to it.
+     *
+     */
+    private void requestLocationUpdates() {
+        // Check permissions.
+        if (ActivityCompat.checkSelfPermission(WalkActivity.this,
+                Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED){
+            // Permission not granted.
+            ActivityCompat.requestPermissions(WalkActivity.this,
+                    new String[]{Manifest.permission.ACCESS_FINE_LOCATION},
+                    LOCATION_REQUEST_CODE);
+        } else {
+            // Permission is granted.
+            locationHub.subscribe(locationConsumer, locationScheduler.getSchedule());
+        }
+    }
+
     /** onDestroy() runs when the activity is ending usually.
      *
-     *  Remove the current marker from the database so the user isn't being tracked any more.
+     *  Remove the current marker from the database so the user isn't being tracked any more,
+     *      and save the walk.
      *
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        databaseReference.removeValue();
+        if(locationConsumer != null){
+            locationHub.unsubscribe(locationConsumer);
+        }
+        removeUserLocation();
+        saveWalk();
+    }
+
+    /** Saves the walk so far to its own file in the walks directory, off the main thread, and
+     *      starts a new one.
+     *
+     */
+    private void saveWalk() {
+        if(walkTrajectory.size() < 2){
+            return;
+        }
+        walkTrajectory.finish();
+        final WalkTrajectory finishedWalk = walkTrajectory;
+        walkTrajectory = new WalkTrajectory();
+        final File directory = new File(getFilesDir(), WALKS_DIRECTORY);
+        final File file = new File(directory, "walk-" + finishedWalk.getTime(0) + ".trk");
+        ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+        saveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    if(!directory.isDirectory() && !directory.mkdirs()){
+                        throw new IOException("Could not create " + directory);
+                    }
+                    new WalkTrajectoryFile(file).write(finishedWalk);
+                    Log.i(TAG, "Saved a walk of " + finishedWalk.getFixCount() + " fixes as "
+                            + finishedWalk.size() + " points, " + finishedWalk.getMemoryBytes()
+                            + " bytes in memory and " + file.length() + " on disk");
+                }catch(IOException e){
+                    Log.w(TAG, "Could not save the walk", e);
+                }
+            }
+        });
+        // The walk is still saved; the thread ends once it is.
+        saveExecutor.shutdown();
+    }
+
+    /** onStart() runs when the activity becomes visible.
+     *
+     *  Asks for location fixes again if they were stopped with the activity.
+     *
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if(locationConsumer != null){
+            requestLocationUpdates();
+        }
     }
 
     /** onStop() always runs when the activity is closed or invisible to the user.
      *
-     *  Remove the current marker from the database so the user isn't being tracked any more.
+     *  Stops asking for location fixes and removes the current marker from the database so the
+     *      user isn't being tracked any more.
      *
      */
     @Override
     protected void onStop() {
         super.onStop();
-        databaseReference.removeValue();
+        started = false;
+        // Unsubscribed first, so no fix can write the location again once it is removed.
+        if(locationConsumer != null){
+            locationHub.unsubscribe(locationConsumer);
+        }
+        removeUserLocation();
+    }
 
+    /** Removes the user's location from the database, along with its geohash cell entries.
+     *
+     */
+    private void removeUserLocation() {
+        locationWriter.remove();
+        // Write the next fix right away if the user comes back.
+        publishPolicy.reset();
     }
-}
\ No newline at end of file
+}
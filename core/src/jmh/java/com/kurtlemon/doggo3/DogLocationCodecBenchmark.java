@@ -0,0 +1,119 @@
+/**
+ * DogLocationCodecBenchmark measures decoding a DogLocation from the map a database snapshot
+ *  holds, with DogLocationCodec and with reflective bean mapping like the database's
+ *  getValue(DogLocation.class), cycling through a thousand and a hundred thousand values.
+ */
+package com.kurtlemon.doggo3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+public class DogLocationCodecBenchmark {
+
+    /**
+     * ReflectiveDecoder maps a value onto a bean the way the database's class mapper does: it
+     *  creates the bean with its no-argument constructor and calls a setter, looked up once per
+     *  class, for each field.
+     */
+    private static final class ReflectiveDecoder {
+        private final HashMap<String, Method> setters = new HashMap<>();
+
+        ReflectiveDecoder(Class<?> beanClass) {
+            for(Method method : beanClass.getMethods()){
+                String name = method.getName();
+                if(name.startsWith("set") && name.length() > 3
+                        && method.getParameterTypes().length == 1){
+                    setters.put(Character.toLowerCase(name.charAt(3)) + name.substring(4),
+                            method);
+                }
+            }
+        }
+
+        DogLocation decode(Map<String, Object> values) throws Exception {
+            DogLocation dogLocation = DogLocation.class.getDeclaredConstructor().newInstance();
+            for(Map.Entry<String, Object> entry : values.entrySet()){
+                Method setter = setters.get(entry.getKey());
+                if(setter == null){
+                    continue;
+                }
+                Class<?> type = setter.getParameterTypes()[0];
+                Object value = entry.getValue();
+                if(type == double.class){
+                    value = ((Number) value).doubleValue();
+                }else if(type == long.class){
+                    value = ((Number) value).longValue();
+                }
+                setter.invoke(dogLocation, value);
+            }
+            return dogLocation;
+        }
+    }
+
+    @Param({"1000", "100000"})
+    public int values;
+
+    // Snapshot values and the keys they are stored under.
+    private ArrayList<Map<String, Object>> snapshots;
+    private String[] keys;
+    private ReflectiveDecoder reflectiveDecoder;
+
+    // Value decoded by the next call.
+    private int next;
+
+    /** Builds values shaped like DogLocation snapshots from the database.
+     *
+     */
+    @Setup
+    public void setUp() {
+        snapshots = new ArrayList<>(values);
+        keys = new String[values];
+        for(int i = 0; i < values; i++){
+            HashMap<String, Object> value = new HashMap<>();
+            value.put(DogLocationCodec.FIELD_LATITUDE, 47.6670 + i * 1e-6);
+            value.put(DogLocationCodec.FIELD_LONGITUDE, -117.4020 - i * 1e-6);
+            value.put(DogLocationCodec.FIELD_ID, String.valueOf(i));
+            value.put(DogLocationCodec.FIELD_TIME, 1512734400000L + i);
+            snapshots.add(value);
+            keys[i] = GeoCellIndex.keyFor(String.valueOf(i));
+        }
+        reflectiveDecoder = new ReflectiveDecoder(DogLocation.class);
+    }
+
+    /** Decodes one value with DogLocationCodec.
+     *
+     * @return
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public DogLocation codec() {
+        next = (next + 1) % values;
+        return DogLocationCodec.decode(keys[next], snapshots.get(next));
+    }
+
+    /** Decodes one value with reflective bean mapping.
+     *
+     * @return
+     * @throws Exception
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public DogLocation reflection() throws Exception {
+        next = (next + 1) % values;
+        return reflectiveDecoder.decode(snapshots.get(next));
+    }
+}
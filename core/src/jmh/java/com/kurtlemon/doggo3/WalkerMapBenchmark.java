@@ -0,0 +1,144 @@
+/**
+ * WalkerMapBenchmark measures the work the dog petter's map does on its clustering thread:
+ *  applying and removing single walkers, emitting the clusters in view, finding the walkers
+ *  nearest the petter, and applying a whole snapshot of walkers, each at 100, 10 thousand and a
+ *  million walkers.
+ */
+package com.kurtlemon.doggo3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+public class WalkerMapBenchmark {
+    // Walkers are spread over a box about 50km across around Spokane.
+    private static final double SOUTH = 47.45;
+    private static final double WEST = -117.75;
+    private static final double SPAN = 0.45;
+
+    // The map shows a few kilometers at street zoom.
+    private static final double VIEW_SPAN = 0.03;
+    private static final float VIEW_ZOOM = 14;
+
+    // Far enough ahead that nothing expires while measuring.
+    private static final long NOW = 1512700000000L;
+
+    @Param({"100", "10000", "1000000"})
+    public int walkers;
+
+    // A map holding every walker, the walkers as first applied, and the viewport queried.
+    private WalkerMap walkerMap;
+    private ArrayList<DogLocation> snapshot;
+    private MapViewport mapViewport;
+    private ClusterDelta clusterDelta;
+
+    // Walker moved or removed by the next call, and the time its update is stamped with.
+    private int next;
+    private long time;
+    private Random random;
+
+    /** Builds the walkers and a map holding all of them.
+     *
+     */
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        snapshot = new ArrayList<>(walkers);
+        for(int i = 0; i < walkers; i++){
+            snapshot.add(new DogLocation(SOUTH + random.nextDouble() * SPAN,
+                    WEST + random.nextDouble() * SPAN, "walker" + i, NOW));
+        }
+        walkerMap = new WalkerMap();
+        walkerMap.applySnapshot(snapshot, NOW);
+        mapViewport = new MapViewport();
+        double south = SOUTH + SPAN / 2;
+        double west = WEST + SPAN / 2;
+        mapViewport.set(south, west, south + VIEW_SPAN, west + VIEW_SPAN, 0);
+        clusterDelta = new ClusterDelta();
+        walkerMap.emit(mapViewport, VIEW_ZOOM, true, clusterDelta);
+        time = NOW;
+    }
+
+    /** Moves one walker a little, as an update from the database would.
+     *
+     * @return
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean upsert() {
+        DogLocation previous = snapshot.get(next);
+        time++;
+        boolean applied = walkerMap.apply(new DogLocation(
+                previous.getLatitude() + (random.nextDouble() - 0.5) * 0.0001,
+                previous.getLongitude() + (random.nextDouble() - 0.5) * 0.0001,
+                previous.getId(), time), NOW);
+        next = (next + 1) % walkers;
+        return applied;
+    }
+
+    /** Removes one walker and adds it back, as a walker leaving and another arriving would.
+     *
+     * @return
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean removeAndApply() {
+        DogLocation dogLocation = walkerMap.get(snapshot.get(next).getId());
+        boolean removed = walkerMap.remove(dogLocation.getId(), dogLocation.getTime());
+        walkerMap.apply(dogLocation, NOW);
+        next = (next + 1) % walkers;
+        return removed;
+    }
+
+    /** Emits every cluster in view, as the full pass after the camera moves does.
+     *
+     * @return
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ClusterDelta viewportQuery() {
+        walkerMap.emit(mapViewport, VIEW_ZOOM, true, clusterDelta);
+        return clusterDelta;
+    }
+
+    /** Finds the walkers nearest the petter from scratch, as after the petter moves.
+     *
+     * @return
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int nearestSearch() {
+        NearestWalkers nearestWalkers = walkerMap.getNearestWalkers();
+        next = (next + 1) % walkers;
+        DogLocation dogLocation = snapshot.get(next);
+        nearestWalkers.setOrigin(dogLocation.getLatitude(), dogLocation.getLongitude());
+        return nearestWalkers.getCount();
+    }
+
+    /** Applies every walker to an empty map, as loading the snapshot or first listening does.
+     *
+     * @return
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public WalkerMap snapshotApply() {
+        WalkerMap emptyMap = new WalkerMap();
+        emptyMap.applySnapshot(snapshot, NOW);
+        return emptyMap;
+    }
+}
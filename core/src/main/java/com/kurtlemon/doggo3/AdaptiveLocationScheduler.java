@@ -0,0 +1,131 @@
+/**
+ * AdaptiveLocationScheduler watches recent location fixes and switches to a less power hungry
+ *  location schedule when the user is standing still or moving slowly, and back again as soon as
+ *  they speed up. Slowing down has to last a while before the schedule changes, so short stops
+ *  don't cause the request to be re-issued over and over.
+ */
+package com.kurtlemon.doggo3;
+
+public class AdaptiveLocationScheduler {
+
+    /**
+     * Listener is told when the location request should be re-issued with a new schedule.
+     */
+    public interface Listener {
+        void onScheduleChanged(LocationSchedule schedule);
+    }
+
+    // Number of recent fixes speed is measured over.
+    private static final int WINDOW_SIZE = 5;
+
+    // The user is stationary after staying within this radius for this long.
+    private static final double STATIONARY_RADIUS_METERS = 10;
+    private static final long STATIONARY_DWELL_MILLIS = 60000;
+
+    // How long a slower schedule has to keep being chosen before switching to it.
+    private static final long RAMP_DOWN_DELAY_MILLIS = 20000;
+
+    // Picks schedules and is told about changes.
+    private final LocationSchedulePolicy policy;
+    private final Listener listener;
+
+    // Ring buffer of recent fixes.
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] times;
+    private int fixCount;
+    private int next;
+
+    // Where the user has been staying, and since when.
+    private double anchorLatitude;
+    private double anchorLongitude;
+    private long anchorTime;
+
+    // The current schedule, and a slower one waiting out the ramp down delay.
+    private LocationSchedule schedule;
+    private LocationSchedule pendingSchedule;
+    private long pendingSince;
+
+    /** Explicit Value Constructor.
+     *
+     * @param policy
+     * @param listener
+     */
+    public AdaptiveLocationScheduler(LocationSchedulePolicy policy, Listener listener) {
+        this.policy = policy;
+        this.listener = listener;
+        latitudes = new double[WINDOW_SIZE];
+        longitudes = new double[WINDOW_SIZE];
+        times = new long[WINDOW_SIZE];
+        schedule = policy.initial();
+    }
+
+    /** Returns the current schedule.
+     *
+     * @return
+     */
+    public LocationSchedule getSchedule() {
+        return schedule;
+    }
+
+    /** Records a fix and changes the schedule if the user's movement calls for it.
+     *
+     * @param latitude
+     * @param longitude
+     * @param timeMillis
+     */
+    public void onFix(double latitude, double longitude, long timeMillis) {
+        // Stationary detection.
+        if(fixCount == 0 || GeoMath.distanceMeters(anchorLatitude, anchorLongitude, latitude,
+                longitude) > STATIONARY_RADIUS_METERS){
+            anchorLatitude = latitude;
+            anchorLongitude = longitude;
+            anchorTime = timeMillis;
+        }
+        boolean stationary = timeMillis - anchorTime >= STATIONARY_DWELL_MILLIS;
+
+        // Add the fix to the window.
+        latitudes[next] = latitude;
+        longitudes[next] = longitude;
+        times[next] = timeMillis;
+        next = (next + 1) % WINDOW_SIZE;
+        if(fixCount < WINDOW_SIZE){
+            fixCount++;
+        }
+        if(fixCount < 2){
+            return;
+        }
+
+        // Speed from the oldest fix in the window to this one.
+        int oldest = fixCount < WINDOW_SIZE ? 0 : next;
+        long elapsed = timeMillis - times[oldest];
+        if(elapsed <= 0){
+            return;
+        }
+        double speed = GeoMath.distanceMeters(latitudes[oldest], longitudes[oldest], latitude,
+                longitude) * 1000 / elapsed;
+
+        LocationSchedule candidate = policy.choose(speed, stationary);
+        if(candidate.equals(schedule)){
+            pendingSchedule = null;
+        }else if(candidate.getIntervalMillis() < schedule.getIntervalMillis()){
+            // Speeding up takes effect right away.
+            changeSchedule(candidate);
+        }else if(!candidate.equals(pendingSchedule)){
+            pendingSchedule = candidate;
+            pendingSince = timeMillis;
+        }else if(timeMillis - pendingSince >= RAMP_DOWN_DELAY_MILLIS){
+            changeSchedule(candidate);
+        }
+    }
+
+    /** Switches to a new schedule and tells the listener.
+     *
+     * @param newSchedule
+     */
+    private void changeSchedule(LocationSchedule newSchedule) {
+        schedule = newSchedule;
+        pendingSchedule = null;
+        listener.onScheduleChanged(newSchedule);
+    }
+}
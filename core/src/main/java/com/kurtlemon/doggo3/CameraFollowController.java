@@ -0,0 +1,147 @@
+/**
+ * CameraFollowController decides when the camera following the user actually needs to move. Fixes
+ *  that would shift the map by less than a few pixels are skipped, and following pauses while the
+ *  user is panning the map by hand or looking at something else.
+ */
+package com.kurtlemon.doggo3;
+
+public class CameraFollowController {
+    // Smallest shift, in pixels, worth moving the camera for.
+    public static final double DEFAULT_THRESHOLD_PIXELS = 8;
+
+    // How long following stays paused after the user last touched the map.
+    public static final long RESUME_AFTER_MILLIS = 15000;
+
+    // Meters per density independent pixel at the equator at zoom level 0.
+    private static final double EQUATOR_METERS_PER_DP = 156543.03392;
+
+    // Screen density, in pixels per density independent pixel, and the shift threshold.
+    private final double density;
+    private final double thresholdPixels;
+
+    // Where the camera was last moved to.
+    private boolean hasTarget;
+    private double targetLatitude;
+    private double targetLongitude;
+
+    // Whether following is paused by a gesture, and until when.
+    private boolean paused;
+    private long pausedUntil;
+
+    // Counters.
+    private long movedCount;
+    private long skippedCount;
+
+    /** Explicit Value Constructor.
+     *
+     * @param density
+     */
+    public CameraFollowController(double density) {
+        this(density, DEFAULT_THRESHOLD_PIXELS);
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param density
+     * @param thresholdPixels
+     */
+    public CameraFollowController(double density, double thresholdPixels) {
+        this.density = density;
+        this.thresholdPixels = thresholdPixels;
+    }
+
+    /** Returns whether the camera should move to a new position of the user, and if so
+     *      remembers it as the camera's position.
+     *
+     * @param latitude
+     * @param longitude
+     * @param zoom
+     * @param nowMillis
+     * @return
+     */
+    public boolean shouldMove(double latitude, double longitude, float zoom, long nowMillis) {
+        if(paused){
+            if(nowMillis < pausedUntil){
+                skippedCount++;
+                return false;
+            }
+            resume();
+        }
+        if(hasTarget && shiftPixels(latitude, longitude, zoom) < thresholdPixels){
+            skippedCount++;
+            return false;
+        }
+        hasTarget = true;
+        targetLatitude = latitude;
+        targetLongitude = longitude;
+        movedCount++;
+        return true;
+    }
+
+    /** Pauses following after the user moved the map by hand. A pause set by pause() is kept.
+     *
+     * @param nowMillis
+     */
+    public void onUserGesture(long nowMillis) {
+        long until = nowMillis + RESUME_AFTER_MILLIS;
+        if(!paused || pausedUntil < until){
+            pausedUntil = until;
+        }
+        paused = true;
+    }
+
+    /** Pauses following until resume() is called, after the user picked somewhere else to look
+     *      at.
+     *
+     */
+    public void pause() {
+        paused = true;
+        pausedUntil = Long.MAX_VALUE;
+    }
+
+    /** Resumes following. The next fix always moves the camera.
+     *
+     */
+    public void resume() {
+        paused = false;
+        hasTarget = false;
+    }
+
+    /** Returns whether following is paused.
+     *
+     * @return
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /** Returns the number of times the camera was moved.
+     *
+     * @return
+     */
+    public long getMovedCount() {
+        return movedCount;
+    }
+
+    /** Returns the number of fixes the camera was not moved for.
+     *
+     * @return
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /** Returns how many pixels the map would shift by moving the camera to a position.
+     *
+     * @param latitude
+     * @param longitude
+     * @param zoom
+     * @return
+     */
+    private double shiftPixels(double latitude, double longitude, float zoom) {
+        double metersPerPixel = EQUATOR_METERS_PER_DP * Math.cos(Math.toRadians(latitude))
+                / Math.pow(2, zoom) / density;
+        return GeoMath.distanceMeters(targetLatitude, targetLongitude, latitude, longitude)
+                / metersPerPixel;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Cluster is a group of dog locations close enough together on screen to be drawn as a single
+ *  marker. A cluster of one is drawn as that dog's own marker and keyed by its ID.
+ */
+package com.kurtlemon.doggo3;
+
+public class Cluster {
+    // Marker key, the position to draw the marker at, and the number of dogs in the cluster.
+    private final String key;
+    private final double latitude;
+    private final double longitude;
+    private final int count;
+
+    // When a single dog's location was recorded, or 0 for a cluster of more than one.
+    private final long time;
+
+    /** Explicit Value Constructor.
+     *
+     * @param key
+     * @param latitude
+     * @param longitude
+     * @param count
+     */
+    public Cluster(String key, double latitude, double longitude, int count) {
+        this(key, latitude, longitude, count, 0);
+    }
+
+    /** Explicit Value Constructor with the time a single dog's location was recorded.
+     *
+     * @param key
+     * @param latitude
+     * @param longitude
+     * @param count
+     * @param time
+     */
+    public Cluster(String key, double latitude, double longitude, int count, long time) {
+        this.key = key;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.count = count;
+        this.time = time;
+    }
+
+    /** Returns the marker key.
+     *
+     * @return
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /** Returns the latitude to draw the marker at.
+     *
+     * @return
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /** Returns the longitude to draw the marker at.
+     *
+     * @return
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /** Returns the number of dogs in the cluster.
+     *
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /** Returns when a single dog's location was recorded, or 0 for a cluster of more than one.
+     *
+     * @return
+     */
+    public long getTime() {
+        return time;
+    }
+}
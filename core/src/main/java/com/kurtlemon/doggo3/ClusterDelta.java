@@ -0,0 +1,73 @@
+/**
+ * ClusterDelta is the set of marker changes produced by one pass of the ClusterEngine, ready to be
+ *  applied to the map.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+
+public class ClusterDelta {
+    // Whether placed holds every cluster in view, so markers not in it should be removed.
+    private boolean full;
+
+    // Clusters to add or move, and keys of markers to remove. Removals are applied first.
+    private final ArrayList<Cluster> placed;
+    private final ArrayList<String> removed;
+
+    /** Default Value Constructor.
+     *
+     */
+    public ClusterDelta() {
+        placed = new ArrayList<>();
+        removed = new ArrayList<>();
+    }
+
+    /** Returns whether this delta holds every cluster in view.
+     *
+     * @return
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /** Sets whether this delta holds every cluster in view.
+     *
+     * @param full
+     */
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    /** Returns the clusters to add or move.
+     *
+     * @return
+     */
+    public ArrayList<Cluster> getPlaced() {
+        return placed;
+    }
+
+    /** Returns the keys of markers to remove.
+     *
+     * @return
+     */
+    public ArrayList<String> getRemoved() {
+        return removed;
+    }
+
+    /** Returns whether there is nothing to apply.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return !full && placed.isEmpty() && removed.isEmpty();
+    }
+
+    /** Empties the delta so it can be reused.
+     *
+     */
+    public void clear() {
+        full = false;
+        placed.clear();
+        removed.clear();
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * ClusterEngine groups dog locations into clusters on a grid of square screen cells for the
+ *  current zoom level, so the number of markers drawn is bounded by the size of the screen
+ *  instead of the number of dogs. Clusters are kept up to date as dogs move, and only the ones
+ *  that changed are emitted. The engine is not thread safe and is meant to be used from a single
+ *  background thread.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+public class ClusterEngine {
+    // Prefix of the marker key of a cluster of more than one dog.
+    public static final String CLUSTER_KEY_PREFIX = "cluster:";
+
+    // Width of a cluster cell in map pixels (256 pixels span the world at zoom 0).
+    private static final int CELL_SIZE_PIXELS = 64;
+
+    // Mercator projection stops short of the poles.
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    /**
+     * Member is the latest position of a single dog and the cell it is in.
+     */
+    private static final class Member {
+        double latitude;
+        double longitude;
+        long time;
+        long cellKey;
+    }
+
+    /**
+     * Cell is the running total of the dogs in one grid cell.
+     */
+    private static final class Cell {
+        final HashSet<String> ids = new HashSet<>();
+        double latitudeSum;
+        double longitudeSum;
+    }
+
+    // Every dog known to the engine.
+    private final HashMap<String, Member> members;
+
+    // Occupied cells at the current zoom level.
+    private final HashMap<Long, Cell> cells;
+
+    // Cells that changed since the last pass, and the marker key last emitted for each cell.
+    private final HashSet<Long> dirtyCells;
+    private final HashMap<Long, String> emittedKeys;
+
+    // Zoom level the cells were built for, and how many cells span the world at that zoom.
+    private int zoom;
+    private double worldCells;
+
+    // Whether the next pass has to emit every cluster in view.
+    private boolean fullPassNeeded;
+
+    /** Default Value Constructor.
+     *
+     */
+    public ClusterEngine() {
+        members = new HashMap<>();
+        cells = new HashMap<>();
+        dirtyCells = new HashSet<>();
+        emittedKeys = new HashMap<>();
+        setZoomFields(0);
+        fullPassNeeded = true;
+    }
+
+    /** Adds a dog or moves it to a new position.
+     *
+     * @param id
+     * @param latitude
+     * @param longitude
+     */
+    public void update(String id, double latitude, double longitude) {
+        update(id, latitude, longitude, 0);
+    }
+
+    /** Adds a dog or moves it to a new position, recorded at the given time.
+     *
+     * @param id
+     * @param latitude
+     * @param longitude
+     * @param time
+     */
+    public void update(String id, double latitude, double longitude, long time) {
+        Member member = members.get(id);
+        if(member == null){
+            member = new Member();
+            members.put(id, member);
+        }else{
+            removeFromCell(id, member);
+        }
+        member.latitude = latitude;
+        member.longitude = longitude;
+        member.time = time;
+        addToCell(id, member);
+    }
+
+    /** Removes a dog.
+     *
+     * @param id
+     * @return true if the dog was known to the engine
+     */
+    public boolean remove(String id) {
+        Member member = members.remove(id);
+        if(member == null){
+            return false;
+        }
+        removeFromCell(id, member);
+        return true;
+    }
+
+    /** Returns the number of dogs known to the engine.
+     *
+     * @return
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /** Returns the zoom level the clusters are built for.
+     *
+     * @return
+     */
+    public int getZoom() {
+        return zoom;
+    }
+
+    /** Re-clusters every dog if the zoom level changed. Rounds the camera zoom down.
+     *
+     * @param cameraZoom
+     */
+    public void setZoom(float cameraZoom) {
+        int newZoom = Math.max(0, (int) Math.floor(cameraZoom));
+        if(newZoom == zoom){
+            return;
+        }
+        setZoomFields(newZoom);
+        cells.clear();
+        dirtyCells.clear();
+        for(Map.Entry<String, Member> entry : members.entrySet()){
+            addToCell(entry.getKey(), entry.getValue());
+        }
+        fullPassNeeded = true;
+    }
+
+    /** Emits the clusters in view. A full pass emits every cluster in view and is done when full
+     *      is true or the zoom level changed; otherwise only clusters that changed since the last
+     *      pass are emitted.
+     *
+     * @param mapViewport
+     * @param full
+     * @param out
+     */
+    public void emit(MapViewport mapViewport, boolean full, ClusterDelta out) {
+        out.clear();
+        if(full || fullPassNeeded){
+            emitFull(mapViewport, out);
+        }else{
+            emitChanged(mapViewport, out);
+        }
+        fullPassNeeded = false;
+        dirtyCells.clear();
+    }
+
+    /** Emits every cluster in view, looking up each cell in view if there are fewer of them than
+     *      occupied cells, and otherwise checking each occupied cell against the view.
+     *
+     * @param mapViewport
+     * @param out
+     */
+    private void emitFull(MapViewport mapViewport, ClusterDelta out) {
+        out.setFull(true);
+        emittedKeys.clear();
+        if(!mapViewport.isSet()){
+            return;
+        }
+        // Rows count down from the north.
+        int firstRow = row(mapViewport.getNorth());
+        int rows = row(mapViewport.getSouth()) - firstRow + 1;
+        int firstColumn = column(mapViewport.getWest());
+        int columns = column(mapViewport.getEast()) - firstColumn + 1;
+        if(columns <= 0){
+            // The viewport crosses the antimeridian.
+            columns += (int) worldCells;
+        }
+        if((long) rows * columns < cells.size()){
+            for(int row = firstRow; row < firstRow + rows; row++){
+                for(int i = 0; i < columns; i++){
+                    long cellKey = cellKey(row, (firstColumn + i) % (int) worldCells);
+                    Cell cell = cells.get(cellKey);
+                    if(cell != null){
+                        emitCell(cellKey, cell, out);
+                    }
+                }
+            }
+            return;
+        }
+        for(Map.Entry<Long, Cell> entry : cells.entrySet()){
+            if(inView(entry.getKey(), mapViewport)){
+                emitCell(entry.getKey(), entry.getValue(), out);
+            }
+        }
+    }
+
+    /** Emits the cluster for a cell as part of a full pass.
+     *
+     * @param cellKey
+     * @param cell
+     * @param out
+     */
+    private void emitCell(long cellKey, Cell cell, ClusterDelta out) {
+        Cluster cluster = toCluster(cellKey, cell);
+        out.getPlaced().add(cluster);
+        emittedKeys.put(cellKey, cluster.getKey());
+    }
+
+    /** Emits the clusters of cells that changed since the last pass, and the keys of markers that
+     *      are no longer needed. A dog that moved to another cell is only placed, so its marker
+     *      moves instead of being removed and added again.
+     *
+     * @param mapViewport
+     * @param out
+     */
+    private void emitChanged(MapViewport mapViewport, ClusterDelta out) {
+        for(Long cellKey : dirtyCells){
+            Cell cell = cells.get(cellKey);
+            Cluster cluster = null;
+            if(cell != null && inView(cellKey, mapViewport)){
+                cluster = toCluster(cellKey, cell);
+            }
+            String oldKey = emittedKeys.get(cellKey);
+            if(oldKey != null && (cluster == null || !oldKey.equals(cluster.getKey()))){
+                // The cell emptied, left the view, or switched between one dog and a cluster.
+                out.getRemoved().add(oldKey);
+                emittedKeys.remove(cellKey);
+            }
+            if(cluster != null){
+                out.getPlaced().add(cluster);
+                emittedKeys.put(cellKey, cluster.getKey());
+            }
+        }
+        if(out.getRemoved().isEmpty()){
+            return;
+        }
+        HashSet<String> placedKeys = new HashSet<>();
+        for(Cluster cluster : out.getPlaced()){
+            placedKeys.add(cluster.getKey());
+        }
+        out.getRemoved().removeAll(placedKeys);
+    }
+
+    /** Builds the cluster for a cell.
+     *
+     * @param cellKey
+     * @param cell
+     * @return
+     */
+    private Cluster toCluster(long cellKey, Cell cell) {
+        int count = cell.ids.size();
+        if(count == 1){
+            // A single dog is drawn where it is, as itself.
+            String id = cell.ids.iterator().next();
+            Member member = members.get(id);
+            return new Cluster(id, member.latitude, member.longitude, 1, member.time);
+        }
+        return new Cluster(CLUSTER_KEY_PREFIX + cellKey, cell.latitudeSum / count,
+                cell.longitudeSum / count, count);
+    }
+
+    /** Adds a dog to the cell for its position.
+     *
+     * @param id
+     * @param member
+     */
+    private void addToCell(String id, Member member) {
+        long cellKey = cellKey(row(member.latitude), column(member.longitude));
+        Cell cell = cells.get(cellKey);
+        if(cell == null){
+            cell = new Cell();
+            cells.put(cellKey, cell);
+        }
+        cell.ids.add(id);
+        cell.latitudeSum += member.latitude;
+        cell.longitudeSum += member.longitude;
+        member.cellKey = cellKey;
+        dirtyCells.add(cellKey);
+    }
+
+    /** Removes a dog from the cell it is in, dropping the cell if it becomes empty.
+     *
+     * @param id
+     * @param member
+     */
+    private void removeFromCell(String id, Member member) {
+        Cell cell = cells.get(member.cellKey);
+        cell.ids.remove(id);
+        if(cell.ids.isEmpty()){
+            cells.remove(member.cellKey);
+        }else{
+            cell.latitudeSum -= member.latitude;
+            cell.longitudeSum -= member.longitude;
+        }
+        dirtyCells.add(member.cellKey);
+    }
+
+    /** Returns whether a cell overlaps the viewport.
+     *
+     * @param cellKey
+     * @param mapViewport
+     * @return
+     */
+    private boolean inView(long cellKey, MapViewport mapViewport) {
+        if(!mapViewport.isSet()){
+            return false;
+        }
+        int row = (int) (cellKey >> 32);
+        int column = (int) cellKey;
+        // Rows count down from the north.
+        if(row < row(mapViewport.getNorth()) || row > row(mapViewport.getSouth())){
+            return false;
+        }
+        int firstColumn = column(mapViewport.getWest());
+        int lastColumn = column(mapViewport.getEast());
+        if(firstColumn > lastColumn){
+            // The viewport crosses the antimeridian.
+            return column >= firstColumn || column <= lastColumn;
+        }
+        return column >= firstColumn && column <= lastColumn;
+    }
+
+    /** Sets the zoom level and the number of cells spanning the world at that zoom.
+     *
+     * @param zoom
+     */
+    private void setZoomFields(int zoom) {
+        this.zoom = zoom;
+        worldCells = 256.0 * Math.pow(2, zoom) / CELL_SIZE_PIXELS;
+    }
+
+    /** Returns the grid row of a latitude, using the Mercator projection so cells are square on
+     *      screen.
+     *
+     * @param latitude
+     * @return
+     */
+    private int row(double latitude) {
+        double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+        double sin = Math.sin(Math.toRadians(clamped));
+        double y = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return (int) Math.min(worldCells - 1, Math.floor(y * worldCells));
+    }
+
+    /** Returns the grid column of a longitude.
+     *
+     * @param longitude
+     * @return
+     */
+    private int column(double longitude) {
+        double x = (longitude + 180) / 360;
+        return (int) Math.min(worldCells - 1, Math.floor(x * worldCells));
+    }
+
+    /** Packs a row and column into a single cell key.
+     *
+     * @param row
+     * @param column
+     * @return
+     */
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * CompactLocationCodec converts DogLocations to and from a compact database value: latitude and
+ *  longitude as integers in units of 1e-7 degrees (about a centimeter), the time in whole seconds
+ *  since the start of 2017, and no ID, since the database key already holds it. The value can
+ *  instead hold the change from a base location both sides already have, which keeps the numbers
+ *  small while walking. A typical value such as {"a":476670123,"o":-1174020123,"t":28944000} is
+ *  less than half the size of the same DogLocation written as a bean.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CompactLocationCodec {
+    // Keys of the compact value.
+    public static final String KEY_LATITUDE = "a";
+    public static final String KEY_LONGITUDE = "o";
+    public static final String KEY_TIME = "t";
+
+    // Only present in a delta value: the time of the base location, in compact seconds.
+    public static final String KEY_BASE_TIME = "b";
+
+    // Only present if the walker records when it wrote the location: milliseconds from the
+    //  location's time, as stored in whole seconds, to the write.
+    public static final String KEY_WRITE_DELAY = "w";
+
+    // Units per degree of the fixed point coordinates.
+    public static final double UNITS_PER_DEGREE = 1e7;
+
+    // Times are counted in seconds from here, 2017-01-01T00:00:00Z.
+    public static final long EPOCH_MILLIS = 1483228800000L;
+
+    /** Not instantiable.
+     *
+     */
+    private CompactLocationCodec() {
+    }
+
+    /** Returns the compact value of a location.
+     *
+     * @param dogLocation
+     * @return
+     */
+    public static Map<String, Object> encode(DogLocation dogLocation) {
+        HashMap<String, Object> values = new HashMap<>();
+        encodeInto(dogLocation, values);
+        return values;
+    }
+
+    /** Writes the compact value of a location into an existing map, replacing its fields.
+     *
+     * @param dogLocation
+     * @param values
+     */
+    public static void encodeInto(DogLocation dogLocation, Map<String, Object> values) {
+        values.remove(KEY_BASE_TIME);
+        values.put(KEY_LATITUDE, toFixed(dogLocation.getLatitude()));
+        values.put(KEY_LONGITUDE, toFixed(dogLocation.getLongitude()));
+        values.put(KEY_TIME, toSeconds(dogLocation.getTime()));
+        putWriteDelay(dogLocation, values);
+    }
+
+    /** Returns the compact value of a location as the change from a base location, which the
+     *      reader must already have to decode it.
+     *
+     * @param dogLocation
+     * @param base the last location the reader is known to have
+     * @return
+     */
+    public static Map<String, Object> encodeDelta(DogLocation dogLocation, DogLocation base) {
+        long baseTime = toSeconds(base.getTime());
+        HashMap<String, Object> values = new HashMap<>();
+        values.put(KEY_BASE_TIME, baseTime);
+        values.put(KEY_LATITUDE, toFixed(dogLocation.getLatitude())
+                - toFixed(base.getLatitude()));
+        values.put(KEY_LONGITUDE, toFixed(dogLocation.getLongitude())
+                - toFixed(base.getLongitude()));
+        values.put(KEY_TIME, toSeconds(dogLocation.getTime()) - baseTime);
+        putWriteDelay(dogLocation, values);
+        return values;
+    }
+
+    /** Returns whether a database value is in the compact format rather than a DogLocation bean.
+     *
+     * @param values
+     * @return
+     */
+    public static boolean isCompact(Map<?, ?> values) {
+        return values.containsKey(KEY_LATITUDE) && values.containsKey(KEY_LONGITUDE);
+    }
+
+    /** Returns whether a compact value is a delta.
+     *
+     * @param values
+     * @return
+     */
+    public static boolean isDelta(Map<?, ?> values) {
+        return values.containsKey(KEY_BASE_TIME);
+    }
+
+    /** Decodes a compact value that is not a delta.
+     *
+     * @param id
+     * @param values
+     * @return the location, or null if the value is a delta or is missing a field
+     */
+    public static DogLocation decode(String id, Map<?, ?> values) {
+        return decode(id, values, null);
+    }
+
+    /** Decodes a compact value, applying it to the base location if it is a delta.
+     *
+     * @param id
+     * @param values
+     * @param base the reader's current location for the ID, or null
+     * @return the location, or null if the value is missing a field or is a delta against a
+     *      location other than base
+     */
+    public static DogLocation decode(String id, Map<?, ?> values, DogLocation base) {
+        Object latitude = values.get(KEY_LATITUDE);
+        Object longitude = values.get(KEY_LONGITUDE);
+        Object time = values.get(KEY_TIME);
+        if(!(latitude instanceof Number) || !(longitude instanceof Number)
+                || !(time instanceof Number)){
+            return null;
+        }
+        long fixedLatitude = ((Number) latitude).longValue();
+        long fixedLongitude = ((Number) longitude).longValue();
+        long seconds = ((Number) time).longValue();
+
+        Object baseTime = values.get(KEY_BASE_TIME);
+        if(baseTime != null){
+            if(base == null || !(baseTime instanceof Number)
+                    || ((Number) baseTime).longValue() != toSeconds(base.getTime())){
+                return null;
+            }
+            fixedLatitude += toFixed(base.getLatitude());
+            fixedLongitude += toFixed(base.getLongitude());
+            seconds += ((Number) baseTime).longValue();
+        }
+        DogLocation dogLocation = new DogLocation(fixedLatitude / UNITS_PER_DEGREE,
+                fixedLongitude / UNITS_PER_DEGREE, id, EPOCH_MILLIS + seconds * 1000);
+        Object writeDelay = values.get(KEY_WRITE_DELAY);
+        if(writeDelay instanceof Number){
+            dogLocation.setWrittenAt(dogLocation.getTime() + ((Number) writeDelay).longValue());
+        }
+        return dogLocation;
+    }
+
+    /** Writes when the location was written, if it is known, as a delay from its stored time.
+     *
+     * @param dogLocation
+     * @param values
+     */
+    private static void putWriteDelay(DogLocation dogLocation, Map<String, Object> values) {
+        if(dogLocation.getWrittenAt() > 0){
+            values.put(KEY_WRITE_DELAY, dogLocation.getWrittenAt()
+                    - (EPOCH_MILLIS + toSeconds(dogLocation.getTime()) * 1000));
+        }else{
+            values.remove(KEY_WRITE_DELAY);
+        }
+    }
+
+    /** Returns a coordinate in fixed point units.
+     *
+     * @param degrees
+     * @return
+     */
+    public static long toFixed(double degrees) {
+        return Math.round(degrees * UNITS_PER_DEGREE);
+    }
+
+    /** Returns a time in compact seconds.
+     *
+     * @param timeMillis
+     * @return
+     */
+    public static long toSeconds(long timeMillis) {
+        return (timeMillis - EPOCH_MILLIS) / 1000;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * DogLocation is a wrapper class that defines the id, latitude, and longitude of a dog
+ * CPSC 312-02, Fall 2017
+ * Programming Assignment Final Project
+ *
+ * @author Kurt Lamon, Andrew Yang
+ * @version v1.0 12/8/17
+ */
+package com.kurtlemon.doggo3;
+
+public class DogLocation implements Comparable<DogLocation>{
+    // Location information
+    private double latitude;
+    private double longitude;
+
+    // The id that ties the location to the correct user.
+    private String id;
+
+    // When the location was recorded, in milliseconds since the epoch. Used to tell newer updates
+    //  from older ones, and as when the walker was last seen, since walkers write at least every
+    //  30 seconds even when standing still.
+    private long time;
+
+    // When the walker wrote the location to the database, in milliseconds since the epoch by the
+    //  walker's clock, or 0 if the walker doesn't record it. Only used to measure latency.
+    private long writtenAt;
+
+    /** Default Value Constructor. Used by DogLocationCodec and the database bean mapping.
+     *
+     */
+    public DogLocation() {
+        latitude = 0;
+        longitude = 0;
+        id = "";
+        time = 0;
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param latitude
+     * @param longitude
+     * @param id
+     */
+    public DogLocation(double latitude, double longitude, String id) {
+        this(latitude, longitude, id, 0);
+    }
+
+    /** Explicit Value Constructor with the time the location was recorded.
+     *
+     * @param latitude
+     * @param longitude
+     * @param id
+     * @param time
+     */
+    public DogLocation(double latitude, double longitude, String id, long time) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.id = id;
+        this.time = time;
+    }
+
+    /** Returns the latitude value.
+     *
+     * @return
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /** Sets the latitude value.
+     *
+     * @param latitude
+     */
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    /** Gets the longitude value.
+     *
+     * @return
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /** Sets the longitude value.
+     *
+     * @param longitude
+     */
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /** Returns the ID value.
+     *
+     * @return
+     */
+    public String getId() {
+        return id;
+    }
+
+    /** Sets the ID value.
+     *
+     * @param id
+     */
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /** Returns the time the location was recorded.
+     *
+     * @return
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /** Sets the time the location was recorded.
+     *
+     * @param time
+     */
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /** Returns when the walker wrote the location.
+     *
+     * @return the time, or 0 if it wasn't recorded
+     */
+    public long getWrittenAt() {
+        return writtenAt;
+    }
+
+    /** Sets when the walker wrote the location.
+     *
+     * @param writtenAt
+     */
+    public void setWrittenAt(long writtenAt) {
+        this.writtenAt = writtenAt;
+    }
+
+    /** Implementation for the comparable interface.
+     *
+     *  Orders locations by ID, so two locations are equal if they have the same ID.
+     *
+     * @param other
+     * @return
+     */
+    public int compareTo(DogLocation other){
+        return this.id.compareTo(other.getId());
+    }
+
+    /** Two locations are equal if they belong to the same user, wherever they are.
+     *
+     * @param other
+     * @return
+     */
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof DogLocation)){
+            return false;
+        }
+        return id.equals(((DogLocation) other).getId());
+    }
+
+    /** Hash code consistent with equals().
+     *
+     * @return
+     */
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+}
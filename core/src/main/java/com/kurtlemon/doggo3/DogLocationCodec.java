@@ -0,0 +1,165 @@
+/**
+ * DogLocationCodec reads DogLocations straight out of the map a database snapshot holds, without
+ *  the reflective bean mapping of DataSnapshot.getValue(DogLocation.class). Values written in the
+ *  CompactLocationCodec format are read as well. Locations are written as a map of the same
+ *  fields, so ones the walker doesn't record are left out instead of sent as 0.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+public class DogLocationCodec {
+    // Field names of a DogLocation written as a bean.
+    public static final String FIELD_LATITUDE = "latitude";
+    public static final String FIELD_LONGITUDE = "longitude";
+    public static final String FIELD_ID = "id";
+    public static final String FIELD_TIME = "time";
+    public static final String FIELD_WRITTEN_AT = "writtenAt";
+
+    // Fields in the order they are written, writtenAt last so it can be left out.
+    private static final String[] FIELDS = {FIELD_LATITUDE, FIELD_LONGITUDE, FIELD_ID, FIELD_TIME,
+            FIELD_WRITTEN_AT};
+
+    /**
+     * BeanValue is a DogLocation as the map of fields it is written as. The fields are read from
+     *  the location whenever the map is, so one BeanValue serves every write of a reused location.
+     */
+    private static final class BeanValue extends AbstractMap<String, Object> {
+        final DogLocation dogLocation;
+
+        BeanValue(DogLocation dogLocation) {
+            this.dogLocation = dogLocation;
+        }
+
+        @Override
+        public int size() {
+            // writtenAt is left out while it is 0, as the compact format leaves out its delay.
+            return dogLocation.getWrittenAt() > 0 ? FIELDS.length : FIELDS.length - 1;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Object get(Object key) {
+            for(int i = 0; i < size(); i++){
+                if(FIELDS[i].equals(key)){
+                    return field(i);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return BeanValue.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < BeanValue.this.size();
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            if(!hasNext()){
+                                throw new NoSuchElementException();
+                            }
+                            int i = next++;
+                            return new AbstractMap.SimpleImmutableEntry<String, Object>(FIELDS[i],
+                                    field(i));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
+        /** Returns the value of one of FIELDS.
+         *
+         * @param i
+         * @return
+         */
+        private Object field(int i) {
+            switch(i){
+                case 0:
+                    return dogLocation.getLatitude();
+                case 1:
+                    return dogLocation.getLongitude();
+                case 2:
+                    return dogLocation.getId();
+                case 3:
+                    return dogLocation.getTime();
+                default:
+                    return dogLocation.getWrittenAt();
+            }
+        }
+    }
+
+    /** Not instantiable.
+     *
+     */
+    private DogLocationCodec() {
+    }
+
+    /** Returns the value a location is written as, a map of its fields. The map reads the
+     *      location's fields as the database reads it, so a location reused for every write only
+     *      needs one. writtenAt is left out while it is 0.
+     *
+     * @param dogLocation
+     * @return
+     */
+    public static Map<String, Object> encode(DogLocation dogLocation) {
+        return new BeanValue(dogLocation);
+    }
+
+    /** Decodes a database value into a new DogLocation.
+     *
+     * @param key the child key the value is stored under
+     * @param value the snapshot's value
+     * @return the location, or null if the value is not a location
+     */
+    public static DogLocation decode(String key, Object value) {
+        if(!(value instanceof Map)){
+            return null;
+        }
+        Map<?, ?> values = (Map<?, ?>) value;
+        if(CompactLocationCodec.isCompact(values)){
+            return CompactLocationCodec.decode(GeoCellIndex.idFromKey(key), values);
+        }
+        Object latitude = values.get(FIELD_LATITUDE);
+        Object longitude = values.get(FIELD_LONGITUDE);
+        if(!(latitude instanceof Number) || !(longitude instanceof Number)){
+            return null;
+        }
+        Object id = values.get(FIELD_ID);
+        Object time = values.get(FIELD_TIME);
+        Object writtenAt = values.get(FIELD_WRITTEN_AT);
+        DogLocation dogLocation = new DogLocation(((Number) latitude).doubleValue(),
+                ((Number) longitude).doubleValue(),
+                id instanceof String ? (String) id : GeoCellIndex.idFromKey(key),
+                time instanceof Number ? ((Number) time).longValue() : 0);
+        dogLocation.setWrittenAt(writtenAt instanceof Number
+                ? ((Number) writtenAt).longValue() : 0);
+        return dogLocation;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * DogLocationStore holds the latest DogLocation for each user ID. Updates that are older than
+ *  what is already stored are dropped, and the store can be read from one thread while another
+ *  applies updates.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class DogLocationStore {
+
+    /**
+     * Entry pairs a stored location with the version it was stored at. Entries are never
+     *  changed once created, so readers always see a consistent pair.
+     */
+    private static final class Entry {
+        final DogLocation dogLocation;
+        final long version;
+
+        Entry(DogLocation dogLocation, long version) {
+            this.dogLocation = dogLocation;
+            this.version = version;
+        }
+    }
+
+    // Latest entry for each user ID.
+    private final ConcurrentHashMap<String, Entry> entries;
+
+    /** Default Value Constructor.
+     *
+     */
+    public DogLocationStore() {
+        entries = new ConcurrentHashMap<>();
+    }
+
+    /** Stores a location, using the time it was recorded as its version.
+     *
+     * @param dogLocation
+     * @return true if the location was stored, false if a newer one was already stored
+     */
+    public boolean upsert(DogLocation dogLocation) {
+        return upsert(dogLocation, dogLocation.getTime());
+    }
+
+    /** Stores a location unless a location with a newer version is already stored for its ID.
+     *      An update with the same version as the stored one replaces it.
+     *
+     *  The location must not be changed after it has been stored.
+     *
+     * @param dogLocation
+     * @param version
+     * @return true if the location was stored, false if a newer one was already stored
+     */
+    public boolean upsert(DogLocation dogLocation, long version) {
+        String id = dogLocation.getId();
+        Entry newEntry = new Entry(dogLocation, version);
+        while(true){
+            Entry oldEntry = entries.get(id);
+            if(oldEntry == null){
+                if(entries.putIfAbsent(id, newEntry) == null){
+                    return true;
+                }
+            }else if(oldEntry.version > version){
+                // Out of order update.
+                return false;
+            }else if(entries.replace(id, oldEntry, newEntry)){
+                return true;
+            }
+            // Another thread got there first, try again.
+        }
+    }
+
+    /** Removes the location stored for an ID regardless of its version.
+     *
+     * @param id
+     * @return the removed location, or null if there was none
+     */
+    public DogLocation remove(String id) {
+        return remove(id, Long.MAX_VALUE);
+    }
+
+    /** Removes the location stored for an ID unless it is newer than the given version, as
+     *      happens when a removal arrives after the user has already moved on.
+     *
+     * @param id
+     * @param version
+     * @return the removed location, or null if there was none or it was newer
+     */
+    public DogLocation remove(String id, long version) {
+        while(true){
+            Entry oldEntry = entries.get(id);
+            if(oldEntry == null || oldEntry.version > version){
+                return null;
+            }
+            if(entries.remove(id, oldEntry)){
+                return oldEntry.dogLocation;
+            }
+            // Another thread got there first, try again.
+        }
+    }
+
+    /** Returns the location stored for an ID.
+     *
+     * @param id
+     * @return the location, or null if there is none
+     */
+    public DogLocation get(String id) {
+        Entry entry = entries.get(id);
+        if(entry == null){
+            return null;
+        }
+        return entry.dogLocation;
+    }
+
+    /** Returns the version stored for an ID.
+     *
+     * @param id
+     * @return the version, or Long.MIN_VALUE if there is no location stored
+     */
+    public long getVersion(String id) {
+        Entry entry = entries.get(id);
+        if(entry == null){
+            return Long.MIN_VALUE;
+        }
+        return entry.version;
+    }
+
+    /** Adds every stored location to out. Updates made while this runs may or may not be seen.
+     *
+     * @param out
+     * @return the number of locations added
+     */
+    public int snapshot(Collection<DogLocation> out) {
+        int added = 0;
+        for(Entry entry : entries.values()){
+            out.add(entry.dogLocation);
+            added++;
+        }
+        return added;
+    }
+
+    /** Returns the number of stored locations.
+     *
+     * @return
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Removes every stored location.
+     *
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
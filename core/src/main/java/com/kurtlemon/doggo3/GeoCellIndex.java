@@ -0,0 +1,136 @@
+/**
+ * GeoCellIndex describes where walkers are indexed by geohash cell in the database: next to the
+ *  flat "walkers/dogLocation" + user ID entry, each walker is also written under "geo/<cell>" for
+ *  the geohash cell it is in at every indexed precision, so petters can listen to just the cells
+ *  on their screen. Older versions kept the flat entries directly under the database root and
+ *  listened to all of it, so they would read both nodes as walkers at (0, 0). The rules in
+ *  database.rules.json deny reading the root, which cancels their listener instead; those users
+ *  see no walkers until they update.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.Map;
+
+public class GeoCellIndex {
+    // Root of the geohash cell index, and of the flat entries.
+    public static final String ROOT = "geo";
+    public static final String WALKERS_ROOT = "walkers";
+
+    // Prefix of a walker's key, followed by the user ID.
+    public static final String KEY_PREFIX = "dogLocation";
+
+    // Geohash precisions the walkers are indexed at, from coarsest to finest. Precision 2 cells
+    //  are about 1250km across and precision 6 cells about 1km.
+    public static final int MIN_PRECISION = 2;
+    public static final int MAX_PRECISION = 6;
+
+    /** Not instantiable.
+     *
+     */
+    private GeoCellIndex() {
+    }
+
+    /** Returns the database key of a walker.
+     *
+     * @param userID
+     * @return
+     */
+    public static String keyFor(String userID) {
+        return KEY_PREFIX + userID;
+    }
+
+    /** Returns the path of a walker's flat entry.
+     *
+     * @param userID
+     * @return
+     */
+    public static String walkerPath(String userID) {
+        return WALKERS_ROOT + "/" + keyFor(userID);
+    }
+
+    /** Returns the user ID of a walker's database key.
+     *
+     * @param key
+     * @return
+     */
+    public static String idFromKey(String key) {
+        return key.startsWith(KEY_PREFIX) ? key.substring(KEY_PREFIX.length()) : key;
+    }
+
+    /** Returns the path listened to for the walkers in a geohash cell.
+     *
+     * @param cell
+     * @return
+     */
+    public static String cellPath(String cell) {
+        return ROOT + "/" + cell;
+    }
+
+    /** Returns the geohash of a position at the finest indexed precision.
+     *
+     * @param latitude
+     * @param longitude
+     * @return
+     */
+    public static String cellOf(double latitude, double longitude) {
+        return GeoHash.encode(latitude, longitude, MAX_PRECISION);
+    }
+
+    /** Adds the paths to write for a walker's new location to values: the flat entry and the
+     *      entry in the cell it is in at each precision. Entries in cells the walker has left are
+     *      deleted.
+     *
+     * @param dogLocation
+     * @param previousCell the cell returned for the last write, or null
+     * @param values
+     * @return the walker's cell, to pass in with the next write
+     */
+    public static String addWrite(DogLocation dogLocation, String previousCell,
+                                  Map<String, Object> values) {
+        return addWrite(dogLocation, previousCell, false, values);
+    }
+
+    /** Adds the paths to write for a walker's new location to values, written either as a
+     *      DogLocation's fields or in the CompactLocationCodec format. The fields are read from
+     *      dogLocation when the values are written, so it can be changed and written again.
+     *
+     * @param dogLocation
+     * @param previousCell the cell returned for the last write, or null
+     * @param compact
+     * @param values
+     * @return the walker's cell, to pass in with the next write
+     */
+    public static String addWrite(DogLocation dogLocation, String previousCell, boolean compact,
+                                  Map<String, Object> values) {
+        String key = keyFor(dogLocation.getId());
+        String cell = cellOf(dogLocation.getLatitude(), dogLocation.getLongitude());
+        Object value = compact ? CompactLocationCodec.encode(dogLocation)
+                : DogLocationCodec.encode(dogLocation);
+        values.put(WALKERS_ROOT + "/" + key, value);
+        for(int precision = MIN_PRECISION; precision <= MAX_PRECISION; precision++){
+            String prefix = cell.substring(0, precision);
+            if(previousCell != null && !previousCell.startsWith(prefix)){
+                values.put(cellPath(previousCell.substring(0, precision)) + "/" + key, null);
+            }
+            values.put(cellPath(prefix) + "/" + key, value);
+        }
+        return cell;
+    }
+
+    /** Adds the paths to delete for a walker that stopped walking to values.
+     *
+     * @param userID
+     * @param previousCell the cell returned for the last write, or null
+     * @param values
+     */
+    public static void addRemoval(String userID, String previousCell, Map<String, Object> values) {
+        String key = keyFor(userID);
+        values.put(WALKERS_ROOT + "/" + key, null);
+        if(previousCell == null){
+            return;
+        }
+        for(int precision = MIN_PRECISION; precision <= MAX_PRECISION; precision++){
+            values.put(cellPath(previousCell.substring(0, precision)) + "/" + key, null);
+        }
+    }
+}
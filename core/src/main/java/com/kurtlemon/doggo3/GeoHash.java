@@ -0,0 +1,199 @@
+/**
+ * GeoHash encodes latitude/longitude positions as geohash strings and finds the geohash cells that
+ *  cover a bounding box. Each extra character splits a cell into 32 smaller ones.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.Collection;
+
+public class GeoHash {
+    // Characters used by geohash strings, five bits each.
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    // Longest geohash this class will produce.
+    public static final int MAX_PRECISION = 12;
+
+    /** Not instantiable.
+     *
+     */
+    private GeoHash() {
+    }
+
+    /** Encodes a position as a geohash of the given number of characters.
+     *
+     * @param latitude
+     * @param longitude
+     * @param precision
+     * @return
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        if(precision < 1 || precision > MAX_PRECISION){
+            throw new IllegalArgumentException("precision must be between 1 and "
+                    + MAX_PRECISION);
+        }
+        double minLatitude = -90;
+        double maxLatitude = 90;
+        double minLongitude = -180;
+        double maxLongitude = 180;
+        char[] hash = new char[precision];
+        boolean longitudeBit = true;
+        for(int i = 0; i < precision; i++){
+            int value = 0;
+            for(int bit = 0; bit < 5; bit++){
+                value <<= 1;
+                if(longitudeBit){
+                    double middle = (minLongitude + maxLongitude) / 2;
+                    if(longitude >= middle){
+                        value |= 1;
+                        minLongitude = middle;
+                    }else{
+                        maxLongitude = middle;
+                    }
+                }else{
+                    double middle = (minLatitude + maxLatitude) / 2;
+                    if(latitude >= middle){
+                        value |= 1;
+                        minLatitude = middle;
+                    }else{
+                        maxLatitude = middle;
+                    }
+                }
+                longitudeBit = !longitudeBit;
+            }
+            hash[i] = BASE32[value];
+        }
+        return new String(hash);
+    }
+
+    /** Returns the height in degrees of a cell of the given precision.
+     *
+     * @param precision
+     * @return
+     */
+    public static double cellHeight(int precision) {
+        return 180.0 / (1L << (5 * precision / 2));
+    }
+
+    /** Returns the width in degrees of a cell of the given precision.
+     *
+     * @param precision
+     * @return
+     */
+    public static double cellWidth(int precision) {
+        return 360.0 / (1L << ((5 * precision + 1) / 2));
+    }
+
+    /** Returns how many cells of the given precision it takes to cover a bounding box. If west is
+     *      greater than east the box is taken to cross the antimeridian.
+     *
+     * @param south
+     * @param west
+     * @param north
+     * @param east
+     * @param precision
+     * @return
+     */
+    public static long countCovering(double south, double west, double north, double east,
+                                     int precision) {
+        long rows = row(north, precision) - row(south, precision) + 1;
+        return rows * columnCount(west, east, precision);
+    }
+
+    /** Adds the geohash of every cell of the given precision that overlaps a bounding box to out,
+     *      keeping to at most maxCells cells around the center of the box. If west is greater
+     *      than east the box is taken to cross the antimeridian.
+     *
+     * @param south
+     * @param west
+     * @param north
+     * @param east
+     * @param precision
+     * @param maxCells
+     * @param out
+     * @return the number of cells added
+     */
+    public static int covering(double south, double west, double north, double east,
+                               int precision, int maxCells, Collection<String> out) {
+        double height = cellHeight(precision);
+        double width = cellWidth(precision);
+        int columnsAround = columnsAround(precision);
+
+        int firstRow = row(south, precision);
+        int lastRow = row(north, precision);
+        int firstColumn = column(west, precision);
+        int columns = (int) columnCount(west, east, precision);
+
+        // Keep to a square of cells around the center if there are too many.
+        int side = Math.max(1, (int) Math.sqrt(maxCells));
+        if((long) (lastRow - firstRow + 1) * columns > maxCells){
+            int rows = Math.min(side, lastRow - firstRow + 1);
+            firstRow = (firstRow + lastRow) / 2 - rows / 2;
+            lastRow = firstRow + rows - 1;
+            if(columns > side){
+                firstColumn += (columns - side) / 2;
+                columns = side;
+            }
+        }
+
+        int added = 0;
+        for(int row = firstRow; row <= lastRow; row++){
+            double latitude = -90 + (row + 0.5) * height;
+            for(int i = 0; i < columns; i++){
+                int column = (firstColumn + i) % columnsAround;
+                double longitude = -180 + (column + 0.5) * width;
+                out.add(encode(latitude, longitude, precision));
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /** Returns the row of cells of the given precision a latitude falls in.
+     *
+     * @param latitude
+     * @param precision
+     * @return
+     */
+    private static int row(double latitude, int precision) {
+        int rowsAround = (int) (1L << (5 * precision / 2));
+        int row = (int) Math.floor((latitude + 90) / cellHeight(precision));
+        return Math.max(0, Math.min(rowsAround - 1, row));
+    }
+
+    /** Returns the column of cells of the given precision a longitude falls in.
+     *
+     * @param longitude
+     * @param precision
+     * @return
+     */
+    private static int column(double longitude, int precision) {
+        int column = (int) Math.floor((longitude + 180) / cellWidth(precision));
+        return Math.max(0, Math.min(columnsAround(precision) - 1, column));
+    }
+
+    /** Returns the number of columns of cells of the given precision around the world.
+     *
+     * @param precision
+     * @return
+     */
+    private static int columnsAround(int precision) {
+        return (int) (1L << ((5 * precision + 1) / 2));
+    }
+
+    /** Returns the number of columns of cells between two longitudes, going east from west.
+     *
+     * @param west
+     * @param east
+     * @param precision
+     * @return
+     */
+    private static long columnCount(double west, double east, int precision) {
+        int firstColumn = column(west, precision);
+        int lastColumn = column(east, precision);
+        if(west > east){
+            // Wrap around the antimeridian.
+            lastColumn += columnsAround(precision);
+        }
+        return Math.min(columnsAround(precision), lastColumn - firstColumn + 1);
+    }
+}
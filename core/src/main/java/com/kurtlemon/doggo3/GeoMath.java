@@ -0,0 +1,35 @@
+/**
+ * GeoMath holds the distance calculations shared by the map and location code.
+ */
+package com.kurtlemon.doggo3;
+
+public class GeoMath {
+    // Mean radius of the earth in meters.
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    /** Not instantiable.
+     *
+     */
+    private GeoMath() {
+    }
+
+    /** Returns the great-circle distance between two positions in meters, using the haversine
+     *      formula.
+     *
+     * @param latitude1
+     * @param longitude1
+     * @param latitude2
+     * @param longitude2
+     * @return
+     */
+    public static double distanceMeters(double latitude1, double longitude1, double latitude2,
+                                        double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinHalfDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinHalfDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfDeltaPhi * sinHalfDeltaPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLambda * sinHalfDeltaLambda;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
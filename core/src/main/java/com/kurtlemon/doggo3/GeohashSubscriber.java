@@ -0,0 +1,197 @@
+/**
+ * GeohashSubscriber listens to only the geohash cells that cover the part of the map on screen,
+ *  adding and dropping cell listeners as the viewport changes. A walker is reported as removed
+ *  once no listened cell holds it any more.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+public class GeohashSubscriber {
+    // Most cells listened to at once.
+    public static final int MAX_CELLS = 16;
+
+    /**
+     * CellListener passes on the walkers of a single cell and remembers which ones it holds.
+     */
+    private class CellListener implements WalkerDatabase.Listener {
+        final String cell;
+        final HashMap<String, DogLocation> walkers = new HashMap<>();
+
+        CellListener(String cell) {
+            this.cell = cell;
+        }
+
+        @Override
+        public void onWalkerChanged(DogLocation dogLocation) {
+            if(walkers.put(dogLocation.getId(), dogLocation) == null){
+                addReference(dogLocation.getId());
+            }
+            listener.onWalkerChanged(dogLocation);
+        }
+
+        @Override
+        public void onWalkerRemoved(DogLocation dogLocation) {
+            if(walkers.remove(dogLocation.getId()) != null){
+                dropReference(dogLocation);
+            }
+        }
+    }
+
+    // Where the cells are listened to, and who is told about the walkers in them.
+    private final WalkerDatabase walkerDatabase;
+    private final WalkerDatabase.Listener listener;
+
+    // Listener of each cell listened to.
+    private final HashMap<String, CellListener> cellListeners;
+
+    // Number of listened cells holding each walker.
+    private final HashMap<String, Integer> referenceCounts;
+
+    // Reused when working out which cells to listen to.
+    private final HashSet<String> wantedCells;
+    private final ArrayList<String> droppedCells;
+
+    // Precision of the cells listened to.
+    private int precision;
+
+    /** Explicit Value Constructor.
+     *
+     * @param walkerDatabase
+     * @param listener
+     */
+    public GeohashSubscriber(WalkerDatabase walkerDatabase, WalkerDatabase.Listener listener) {
+        this.walkerDatabase = walkerDatabase;
+        this.listener = listener;
+        cellListeners = new HashMap<>();
+        referenceCounts = new HashMap<>();
+        wantedCells = new HashSet<>();
+        droppedCells = new ArrayList<>();
+        precision = GeoCellIndex.MAX_PRECISION;
+    }
+
+    /** Listens to the cells covering the viewport and drops the cells that no longer do. New
+     *      cells are added before old ones are dropped so walkers in both are never reported as
+     *      removed.
+     *
+     * @param mapViewport
+     */
+    public void setViewport(MapViewport mapViewport) {
+        if(!mapViewport.isSet()){
+            return;
+        }
+        double south = mapViewport.getSouth();
+        double west = mapViewport.getWest();
+        double north = mapViewport.getNorth();
+        double east = mapViewport.getEast();
+        precision = choosePrecision(south, west, north, east);
+        wantedCells.clear();
+        GeoHash.covering(south, west, north, east, precision, MAX_CELLS, wantedCells);
+
+        for(String cell : wantedCells){
+            if(!cellListeners.containsKey(cell)){
+                CellListener cellListener = new CellListener(cell);
+                cellListeners.put(cell, cellListener);
+                walkerDatabase.addListener(GeoCellIndex.cellPath(cell), cellListener);
+            }
+        }
+        droppedCells.clear();
+        for(String cell : cellListeners.keySet()){
+            if(!wantedCells.contains(cell)){
+                droppedCells.add(cell);
+            }
+        }
+        for(String cell : droppedCells){
+            dropCell(cell);
+        }
+    }
+
+    /** Stops listening to every cell. Walkers are not reported as removed.
+     *
+     */
+    public void clear() {
+        for(CellListener cellListener : cellListeners.values()){
+            walkerDatabase.removeListener(GeoCellIndex.cellPath(cellListener.cell), cellListener);
+        }
+        cellListeners.clear();
+        referenceCounts.clear();
+    }
+
+    /** Returns the cells currently listened to.
+     *
+     * @return
+     */
+    public Set<String> getCells() {
+        return cellListeners.keySet();
+    }
+
+    /** Returns the precision of the cells currently listened to.
+     *
+     * @return
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /** Returns the finest indexed precision that covers the box in at most MAX_CELLS cells, or
+     *      the coarsest indexed precision if none does.
+     *
+     * @param south
+     * @param west
+     * @param north
+     * @param east
+     * @return
+     */
+    public static int choosePrecision(double south, double west, double north, double east) {
+        for(int precision = GeoCellIndex.MAX_PRECISION; precision > GeoCellIndex.MIN_PRECISION;
+                precision--){
+            if(GeoHash.countCovering(south, west, north, east, precision) <= MAX_CELLS){
+                return precision;
+            }
+        }
+        return GeoCellIndex.MIN_PRECISION;
+    }
+
+    /** Stops listening to a cell, reporting walkers no other cell holds as removed.
+     *
+     * @param cell
+     */
+    private void dropCell(String cell) {
+        CellListener cellListener = cellListeners.remove(cell);
+        walkerDatabase.removeListener(GeoCellIndex.cellPath(cell), cellListener);
+        for(DogLocation dogLocation : cellListener.walkers.values()){
+            dropReference(dogLocation);
+        }
+        cellListener.walkers.clear();
+    }
+
+    /** Counts one more listened cell holding a walker.
+     *
+     * @param id
+     */
+    private void addReference(String id) {
+        Integer count = referenceCounts.get(id);
+        referenceCounts.put(id, count == null ? 1 : count + 1);
+    }
+
+    /** Counts one less listened cell holding a walker, reporting it as removed if none are left.
+     *
+     * @param dogLocation
+     */
+    private void dropReference(DogLocation dogLocation) {
+        String id = dogLocation.getId();
+        Integer count = referenceCounts.get(id);
+        if(count == null){
+            return;
+        }
+        if(count > 1){
+            referenceCounts.put(id, count - 1);
+        }else{
+            referenceCounts.remove(id);
+            listener.onWalkerRemoved(dogLocation);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * LatencyHistogram counts values into a fixed set of buckets, so recording is a couple of atomic
+ *  increments with no allocation or locking, from any thread. Buckets are exact below 8 and then
+ *  split each power of two into 8, so percentiles are within 12.5% of the true value.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+    // Buckets per power of two, as a number of bits.
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Enough buckets for any non-negative long.
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    // What is measured, and its unit, for display.
+    private final String name;
+    private final String unit;
+
+    // Count of values in each bucket, and totals.
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /** Explicit Value Constructor.
+     *
+     * @param name
+     * @param unit
+     */
+    public LatencyHistogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+        buckets = new AtomicLongArray(BUCKET_COUNT);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /** Records a value. Negative values, which can come from clocks on different devices, are
+     *      recorded as 0.
+     *
+     * @param value
+     */
+    public void record(long value) {
+        if(value < 0){
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long oldMax = max.get();
+        while(value > oldMax && !max.compareAndSet(oldMax, value)){
+            oldMax = max.get();
+        }
+    }
+
+    /** Returns the number of values recorded.
+     *
+     * @return
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Returns the mean of the values recorded.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /** Returns the largest value recorded.
+     *
+     * @return
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /** Returns a percentile of the values recorded: the top of the bucket it falls in, or the
+     *      largest value recorded if that is lower.
+     *
+     * @param percentile between 0 and 100
+     * @return the value, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if(n == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            seen += buckets.get(i);
+            if(seen >= rank){
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** Returns what is measured.
+     *
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /** Forgets every value recorded.
+     *
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /** Returns the count, percentiles and maximum on one line.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return String.format("%-18s n=%-7d p50=%-6d p95=%-6d p99=%-6d max=%d %s", name,
+                getCount(), getPercentile(50), getPercentile(95), getPercentile(99), getMax(),
+                unit);
+    }
+
+    /** Returns the bucket a value is counted in.
+     *
+     * @param value
+     * @return
+     */
+    static int bucketOf(long value) {
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Returns the largest value counted in a bucket.
+     *
+     * @param bucket
+     * @return
+     */
+    static long upperBoundOf(int bucket) {
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        // The last bucket ends at Long.MAX_VALUE.
+        return lowerBound + (width - 1);
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * LocalWalkerDatabase is an in-memory WalkerDatabase that behaves like the realtime database for a
+ *  single client. Listeners are called right away on the thread doing the write. Used to run the
+ *  map logic without a network.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LocalWalkerDatabase implements WalkerDatabase {
+    // Walkers stored under each parent path, keyed by child key.
+    private final HashMap<String, HashMap<String, DogLocation>> children;
+
+    // Listeners of each parent path.
+    private final HashMap<String, ArrayList<Listener>> listeners;
+
+    // Writes queued for when the client disconnects.
+    private final ArrayList<Map<String, Object>> onDisconnect;
+
+    // Number of times the client has connected.
+    private long connectionCount;
+
+    // Number of listener callbacks made, for comparing how much work a client gets.
+    private long callbackCount;
+
+    /** Default Value Constructor.
+     *
+     */
+    public LocalWalkerDatabase() {
+        children = new HashMap<>();
+        listeners = new HashMap<>();
+        onDisconnect = new ArrayList<>();
+        connectionCount = 1;
+    }
+
+    /** Starts listening to the walkers directly under a path, reporting every walker already
+     *      there.
+     *
+     * @param path
+     * @param listener
+     */
+    @Override
+    public synchronized void addListener(String path, Listener listener) {
+        ArrayList<Listener> pathListeners = listeners.get(path);
+        if(pathListeners == null){
+            pathListeners = new ArrayList<>();
+            listeners.put(path, pathListeners);
+        }
+        if(pathListeners.contains(listener)){
+            return;
+        }
+        pathListeners.add(listener);
+        HashMap<String, DogLocation> pathChildren = children.get(path);
+        if(pathChildren != null){
+            for(DogLocation dogLocation : new ArrayList<>(pathChildren.values())){
+                callbackCount++;
+                listener.onWalkerChanged(copyOf(dogLocation));
+            }
+        }
+    }
+
+    /** Stops listening to a path.
+     *
+     * @param path
+     * @param listener
+     */
+    @Override
+    public synchronized void removeListener(String path, Listener listener) {
+        ArrayList<Listener> pathListeners = listeners.get(path);
+        if(pathListeners != null){
+            pathListeners.remove(listener);
+            if(pathListeners.isEmpty()){
+                listeners.remove(path);
+            }
+        }
+    }
+
+    /** Writes every path in the map, then tells the listeners. Values must be DogLocations,
+     *      values in the CompactLocationCodec format, or null.
+     *
+     * @param values
+     */
+    @Override
+    public synchronized void update(Map<String, Object> values) {
+        for(Map.Entry<String, Object> entry : values.entrySet()){
+            String path = entry.getKey();
+            int split = path.lastIndexOf('/');
+            String parent = split < 0 ? "" : path.substring(0, split);
+            String key = path.substring(split + 1);
+            HashMap<String, DogLocation> pathChildren = children.get(parent);
+
+            if(entry.getValue() == null){
+                DogLocation removed = pathChildren == null ? null : pathChildren.remove(key);
+                if(removed != null){
+                    if(pathChildren.isEmpty()){
+                        children.remove(parent);
+                    }
+                    notifyListeners(parent, removed, true);
+                }
+            }else{
+                DogLocation dogLocation = entry.getValue() instanceof Map
+                        ? DogLocationCodec.decode(key, entry.getValue())
+                        : copyOf((DogLocation) entry.getValue());
+                if(dogLocation == null){
+                    continue;
+                }
+                if(pathChildren == null){
+                    pathChildren = new HashMap<>();
+                    children.put(parent, pathChildren);
+                }
+                pathChildren.put(key, dogLocation);
+                notifyListeners(parent, dogLocation, false);
+            }
+        }
+    }
+
+    /** Queues a write for when disconnect() is called.
+     *
+     * @param values
+     */
+    @Override
+    public synchronized void updateOnDisconnect(Map<String, Object> values) {
+        onDisconnect.add(new HashMap<>(values));
+    }
+
+    /** Cancels every queued disconnect write.
+     *
+     */
+    @Override
+    public synchronized void cancelOnDisconnect() {
+        onDisconnect.clear();
+    }
+
+    /** Returns the number of times the client has connected.
+     *
+     * @return
+     */
+    @Override
+    public synchronized long getConnectionCount() {
+        return connectionCount;
+    }
+
+    /** Acts as if the client lost its connection, making every queued disconnect write. Like the
+     *      real database, the writes are then forgotten.
+     *
+     */
+    public synchronized void disconnect() {
+        for(Map<String, Object> values : onDisconnect){
+            update(values);
+        }
+        onDisconnect.clear();
+    }
+
+    /** Acts as if the client connected again after disconnect().
+     *
+     */
+    public synchronized void reconnect() {
+        connectionCount++;
+    }
+
+    /** Returns the walker stored at a path.
+     *
+     * @param path
+     * @return the walker, or null if there is none
+     */
+    public synchronized DogLocation get(String path) {
+        int split = path.lastIndexOf('/');
+        HashMap<String, DogLocation> pathChildren = children.get(
+                split < 0 ? "" : path.substring(0, split));
+        return pathChildren == null ? null : pathChildren.get(path.substring(split + 1));
+    }
+
+    /** Returns the number of listeners registered over every path.
+     *
+     * @return
+     */
+    public synchronized int getListenerCount() {
+        int count = 0;
+        for(ArrayList<Listener> pathListeners : listeners.values()){
+            count += pathListeners.size();
+        }
+        return count;
+    }
+
+    /** Returns the number of listener callbacks made so far.
+     *
+     * @return
+     */
+    public synchronized long getCallbackCount() {
+        return callbackCount;
+    }
+
+    /** Tells every listener of a path about a change.
+     *
+     * @param path
+     * @param dogLocation
+     * @param removed
+     */
+    private void notifyListeners(String path, DogLocation dogLocation, boolean removed) {
+        ArrayList<Listener> pathListeners = listeners.get(path);
+        if(pathListeners == null){
+            return;
+        }
+        for(Listener listener : new ArrayList<>(pathListeners)){
+            callbackCount++;
+            if(removed){
+                listener.onWalkerRemoved(dogLocation);
+            }else{
+                // Each listener gets its own copy, as it would from the real database.
+                listener.onWalkerChanged(copyOf(dogLocation));
+            }
+        }
+    }
+
+    /** Copies a location so stored values can't be changed from outside.
+     *
+     * @param dogLocation
+     * @return
+     */
+    private static DogLocation copyOf(DogLocation dogLocation) {
+        DogLocation copy = new DogLocation(dogLocation.getLatitude(), dogLocation.getLongitude(),
+                dogLocation.getId(), dogLocation.getTime());
+        copy.setWrittenAt(dogLocation.getWrittenAt());
+        return copy;
+    }
+}
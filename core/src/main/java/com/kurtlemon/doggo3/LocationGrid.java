@@ -0,0 +1,219 @@
+/**
+ * LocationGrid is a spatial index of DogLocations bucketed into fixed size latitude/longitude
+ *  cells so the map only has to look at walkers near the area on screen.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LocationGrid {
+    // Default cell size in degrees, roughly a kilometer at the equator.
+    public static final double DEFAULT_CELL_SIZE = 0.01;
+
+    // Size of each cell in degrees.
+    private final double cellSize;
+
+    // Cells of the grid, keyed by packed row and column. Empty cells are dropped.
+    private final HashMap<Long, HashMap<String, DogLocation>> cells;
+
+    // The cell each location id is currently stored in.
+    private final HashMap<String, Long> cellKeys;
+
+    /** Default Value Constructor.
+     *
+     */
+    public LocationGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param cellSize
+     */
+    public LocationGrid(double cellSize) {
+        if(cellSize <= 0){
+            throw new IllegalArgumentException("cellSize must be positive");
+        }
+        this.cellSize = cellSize;
+        cells = new HashMap<>();
+        cellKeys = new HashMap<>();
+    }
+
+    /** Inserts a location, or moves it if a location with the same ID is already in the grid.
+     *
+     * @param dogLocation
+     */
+    public void put(DogLocation dogLocation) {
+        String id = dogLocation.getId();
+        long cellKey = cellKey(row(dogLocation.getLatitude()), column(dogLocation.getLongitude()));
+        Long oldCellKey = cellKeys.get(id);
+        if(oldCellKey != null && oldCellKey != cellKey){
+            // The location crossed into a different cell.
+            removeFromCell(oldCellKey, id);
+        }
+        HashMap<String, DogLocation> cell = cells.get(cellKey);
+        if(cell == null){
+            cell = new HashMap<>();
+            cells.put(cellKey, cell);
+        }
+        cell.put(id, dogLocation);
+        cellKeys.put(id, cellKey);
+    }
+
+    /** Removes the location with the given ID.
+     *
+     * @param id
+     * @return the removed location, or null if there was none
+     */
+    public DogLocation remove(String id) {
+        Long cellKey = cellKeys.remove(id);
+        if(cellKey == null){
+            return null;
+        }
+        return removeFromCell(cellKey, id);
+    }
+
+    /** Returns the location with the given ID.
+     *
+     * @param id
+     * @return the location, or null if there is none
+     */
+    public DogLocation get(String id) {
+        Long cellKey = cellKeys.get(id);
+        if(cellKey == null){
+            return null;
+        }
+        return cells.get(cellKey).get(id);
+    }
+
+    /** Returns the number of locations in the grid.
+     *
+     * @return
+     */
+    public int size() {
+        return cellKeys.size();
+    }
+
+    /** Removes every location from the grid.
+     *
+     */
+    public void clear() {
+        cells.clear();
+        cellKeys.clear();
+    }
+
+    /** Adds every location inside the bounding box to out. If west is greater than east the box
+     *      is taken to cross the antimeridian.
+     *
+     * @param south
+     * @param west
+     * @param north
+     * @param east
+     * @param out
+     * @return the number of locations added
+     */
+    public int query(double south, double west, double north, double east,
+                     Collection<DogLocation> out) {
+        if(west > east){
+            // Split the box on the antimeridian.
+            return query(south, west, north, 180, out) + query(south, -180, north, east, out);
+        }
+        int firstRow = row(south);
+        int lastRow = row(north);
+        int firstColumn = column(west);
+        int lastColumn = column(east);
+        long cellsInBox = (long) (lastRow - firstRow + 1) * (lastColumn - firstColumn + 1);
+
+        int added = 0;
+        if(cellsInBox > cells.size()){
+            // Zoomed far out, so it is cheaper to look at the occupied cells than the box.
+            for(Map.Entry<Long, HashMap<String, DogLocation>> entry : cells.entrySet()){
+                int row = (int) (entry.getKey() >> 32);
+                int column = (int) (long) entry.getKey();
+                if(row >= firstRow && row <= lastRow
+                        && column >= firstColumn && column <= lastColumn){
+                    added += addInBox(entry.getValue(), south, west, north, east, out);
+                }
+            }
+        }else{
+            for(int row = firstRow; row <= lastRow; row++){
+                for(int column = firstColumn; column <= lastColumn; column++){
+                    HashMap<String, DogLocation> cell = cells.get(cellKey(row, column));
+                    if(cell != null){
+                        added += addInBox(cell, south, west, north, east, out);
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    /** Adds the locations of a single cell that fall inside the bounding box to out.
+     *
+     * @param cell
+     * @param south
+     * @param west
+     * @param north
+     * @param east
+     * @param out
+     * @return the number of locations added
+     */
+    private int addInBox(HashMap<String, DogLocation> cell, double south, double west,
+                         double north, double east, Collection<DogLocation> out) {
+        int added = 0;
+        for(DogLocation dogLocation : cell.values()){
+            double latitude = dogLocation.getLatitude();
+            double longitude = dogLocation.getLongitude();
+            if(latitude >= south && latitude <= north && longitude >= west && longitude <= east){
+                out.add(dogLocation);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /** Removes an ID from a cell, dropping the cell if it becomes empty.
+     *
+     * @param cellKey
+     * @param id
+     * @return the removed location
+     */
+    private DogLocation removeFromCell(long cellKey, String id) {
+        HashMap<String, DogLocation> cell = cells.get(cellKey);
+        DogLocation removed = cell.remove(id);
+        if(cell.isEmpty()){
+            cells.remove(cellKey);
+        }
+        return removed;
+    }
+
+    /** Returns the grid row of a latitude.
+     *
+     * @param latitude
+     * @return
+     */
+    private int row(double latitude) {
+        return (int) Math.floor((latitude + 90) / cellSize);
+    }
+
+    /** Returns the grid column of a longitude.
+     *
+     * @param longitude
+     * @return
+     */
+    private int column(double longitude) {
+        return (int) Math.floor((longitude + 180) / cellSize);
+    }
+
+    /** Packs a row and column into a single cell key.
+     *
+     * @param row
+     * @param column
+     * @return
+     */
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * LocationHub shares one location request between everything in the app that wants the user's
+ *  location. Each consumer subscribes with the schedule it wants, and the hub keeps a single
+ *  request running on the most demanding of them: the shortest interval, the shortest fastest
+ *  interval and the most accurate priority. Fixes are handed to every consumer. When the last
+ *  consumer unsubscribes the request is removed, so a consumer that goes away without being
+ *  replaced, as an activity being recreated does, never leaves a request behind. Not thread safe;
+ *  meant to be used from the main thread, where the fixes are delivered.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+
+public class LocationHub {
+
+    /**
+     * Consumer is handed each fix while it is subscribed.
+     */
+    public interface Consumer {
+        void onFix(double latitude, double longitude, long time);
+    }
+
+    /**
+     * Source is what actually asks the device for its location. The hub only starts a request
+     *  when none is running, and removes the running one before starting one on a new schedule.
+     */
+    public interface Source {
+
+        /** Starts delivering fixes to the hub on a schedule.
+         *
+         * @param schedule
+         */
+        void requestUpdates(LocationSchedule schedule);
+
+        /** Stops the running request.
+         *
+         */
+        void removeUpdates();
+
+        /** Hands the last known fix, if there is one, to a consumer.
+         *
+         * @param consumer
+         */
+        void requestLastFix(Consumer consumer);
+    }
+
+    // Asks the device for its location.
+    private final Source source;
+
+    // Consumers and the schedules they want, at the same indexes.
+    private final ArrayList<Consumer> consumers;
+    private final ArrayList<LocationSchedule> schedules;
+
+    // The consumers as of the last change, so fixes can be handed out while consumers come and go.
+    private Consumer[] delivering;
+
+    // The schedule of the running request, or null if there is none.
+    private LocationSchedule schedule;
+
+    /** Explicit Value Constructor.
+     *
+     * @param source
+     */
+    public LocationHub(Source source) {
+        this.source = source;
+        consumers = new ArrayList<>();
+        schedules = new ArrayList<>();
+        delivering = new Consumer[0];
+    }
+
+    /** Subscribes a consumer to fixes on a schedule, or changes the schedule it wants if it is
+     *      already subscribed.
+     *
+     * @param consumer
+     * @param consumerSchedule
+     */
+    public void subscribe(Consumer consumer, LocationSchedule consumerSchedule) {
+        int index = consumers.indexOf(consumer);
+        if(index >= 0){
+            schedules.set(index, consumerSchedule);
+        }else{
+            consumers.add(consumer);
+            schedules.add(consumerSchedule);
+            delivering = consumers.toArray(new Consumer[consumers.size()]);
+        }
+        updateRequest();
+    }
+
+    /** Unsubscribes a consumer. Does nothing if it isn't subscribed.
+     *
+     * @param consumer
+     */
+    public void unsubscribe(Consumer consumer) {
+        int index = consumers.indexOf(consumer);
+        if(index < 0){
+            return;
+        }
+        consumers.remove(index);
+        schedules.remove(index);
+        delivering = consumers.toArray(new Consumer[consumers.size()]);
+        updateRequest();
+    }
+
+    /** Hands the last known fix, if there is one, to a consumer, whether or not it is subscribed.
+     *
+     * @param consumer
+     */
+    public void requestLastFix(Consumer consumer) {
+        source.requestLastFix(consumer);
+    }
+
+    /** Hands a fix from the source to every consumer.
+     *
+     * @param latitude
+     * @param longitude
+     * @param time
+     */
+    public void onFix(double latitude, double longitude, long time) {
+        Consumer[] current = delivering;
+        for(Consumer consumer : current){
+            // A consumer unsubscribed by an earlier one in this fix doesn't get it.
+            if(consumers.contains(consumer)){
+                consumer.onFix(latitude, longitude, time);
+            }
+        }
+    }
+
+    /** Returns the schedule of the running request, or null if there is none.
+     *
+     * @return
+     */
+    public LocationSchedule getSchedule() {
+        return schedule;
+    }
+
+    /** Returns the number of consumers subscribed.
+     *
+     * @return
+     */
+    public int getConsumerCount() {
+        return consumers.size();
+    }
+
+    /** Starts, replaces or removes the request so it matches what the consumers want.
+     *
+     */
+    private void updateRequest() {
+        LocationSchedule wanted = merge();
+        if(wanted == null ? schedule == null : wanted.equals(schedule)){
+            return;
+        }
+        if(schedule != null){
+            source.removeUpdates();
+        }
+        schedule = wanted;
+        if(wanted != null){
+            source.requestUpdates(wanted);
+        }
+    }
+
+    /** Returns the most demanding of the consumers' schedules, or null if there are no consumers.
+     *
+     * @return
+     */
+    private LocationSchedule merge() {
+        if(schedules.isEmpty()){
+            return null;
+        }
+        long intervalMillis = Long.MAX_VALUE;
+        long fastestIntervalMillis = Long.MAX_VALUE;
+        int priority = Integer.MAX_VALUE;
+        for(LocationSchedule consumerSchedule : schedules){
+            intervalMillis = Math.min(intervalMillis, consumerSchedule.getIntervalMillis());
+            fastestIntervalMillis = Math.min(fastestIntervalMillis,
+                    consumerSchedule.getFastestIntervalMillis());
+            // Lower priority values are more accurate.
+            priority = Math.min(priority, consumerSchedule.getPriority());
+        }
+        return new LocationSchedule(intervalMillis, fastestIntervalMillis, priority);
+    }
+}
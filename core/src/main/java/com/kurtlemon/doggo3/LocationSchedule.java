@@ -0,0 +1,92 @@
+/**
+ * LocationSchedule is how often and how accurately the device is asked for its location.
+ */
+package com.kurtlemon.doggo3;
+
+public class LocationSchedule {
+    // Priorities, with the same values as the LocationRequest priorities.
+    public static final int PRIORITY_HIGH_ACCURACY = 100;
+    public static final int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+    public static final int PRIORITY_LOW_POWER = 104;
+
+    // Requested interval, fastest accepted interval, and priority.
+    private final long intervalMillis;
+    private final long fastestIntervalMillis;
+    private final int priority;
+
+    /** Explicit Value Constructor.
+     *
+     * @param intervalMillis
+     * @param fastestIntervalMillis
+     * @param priority
+     */
+    public LocationSchedule(long intervalMillis, long fastestIntervalMillis, int priority) {
+        this.intervalMillis = intervalMillis;
+        this.fastestIntervalMillis = fastestIntervalMillis;
+        this.priority = priority;
+    }
+
+    /** Returns the requested interval between fixes.
+     *
+     * @return
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /** Returns the fastest interval fixes are accepted at.
+     *
+     * @return
+     */
+    public long getFastestIntervalMillis() {
+        return fastestIntervalMillis;
+    }
+
+    /** Returns the priority.
+     *
+     * @return
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /** Two schedules are equal if they would make the same location request.
+     *
+     * @param other
+     * @return
+     */
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof LocationSchedule)){
+            return false;
+        }
+        LocationSchedule schedule = (LocationSchedule) other;
+        return intervalMillis == schedule.intervalMillis
+                && fastestIntervalMillis == schedule.fastestIntervalMillis
+                && priority == schedule.priority;
+    }
+
+    /** Hash code consistent with equals().
+     *
+     * @return
+     */
+    @Override
+    public int hashCode() {
+        int result = (int) (intervalMillis ^ (intervalMillis >>> 32));
+        result = 31 * result + (int) (fastestIntervalMillis ^ (fastestIntervalMillis >>> 32));
+        return 31 * result + priority;
+    }
+
+    /** Returns a readable description for logging.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return "LocationSchedule(" + intervalMillis + "ms, fastest " + fastestIntervalMillis
+                + "ms, priority " + priority + ")";
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * LocationSchedulePolicy picks the location schedule for how the user is moving. Each activity
+ *  can plug in its own.
+ */
+package com.kurtlemon.doggo3;
+
+public interface LocationSchedulePolicy {
+
+    /** Returns the schedule to start with, before anything is known about movement.
+     *
+     * @return
+     */
+    LocationSchedule initial();
+
+    /** Returns the schedule for the user's recent movement.
+     *
+     * @param speedMetersPerSecond
+     * @param stationary
+     * @return
+     */
+    LocationSchedule choose(double speedMetersPerSecond, boolean stationary);
+}
@@ -0,0 +1,188 @@
+/**
+ * LocationWriter writes the user's location to the database. While the user stays in the same
+ *  geohash cell every write reuses the same DogLocation and the same map of paths, so writing a
+ *  fix allocates nothing in the app's own code. Whenever the paths change, or the client
+ *  reconnects, the database is told to delete them if the user disconnects.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class LocationWriter {
+    // Where the location is written, and whose it is.
+    private final WalkerDatabase walkerDatabase;
+    private final String userID;
+
+    // Whether the location is written in the CompactLocationCodec format.
+    private final boolean compact;
+
+    // Whether each write records when it was made, for measuring latency.
+    private boolean stampWrites;
+
+    // Reused for every write. The database reads them before update() returns.
+    private final DogLocation dogLocation;
+    private final HashMap<String, Object> values;
+
+    // The deletes queued for when the user disconnects, rebuilt with the paths.
+    private final HashMap<String, Object> disconnectValues;
+
+    // The database's connection count when the deletes were last queued.
+    private long disconnectConnection;
+
+    // The compact value every path in values points to, if writing the compact format.
+    private Map<String, Object> compactValue;
+
+    // The finest indexed cell the user is in, as a geohash and as a row and column.
+    private String cell;
+    private long cellRow;
+    private long cellColumn;
+
+    // Whether values still holds deletes for cells the user left.
+    private boolean hasDeletes;
+
+    // Number of writes, and of writes that had to rebuild the paths.
+    private long writeCount;
+    private long rebuildCount;
+
+    /** Explicit Value Constructor.
+     *
+     * @param walkerDatabase
+     * @param userID
+     * @param compact
+     */
+    public LocationWriter(WalkerDatabase walkerDatabase, String userID, boolean compact) {
+        this.walkerDatabase = walkerDatabase;
+        this.userID = userID;
+        this.compact = compact;
+        dogLocation = new DogLocation(0, 0, userID, 0);
+        values = new HashMap<>();
+        disconnectValues = new HashMap<>();
+    }
+
+    /** Writes a location. The paths are only worked out again when the user changes cells.
+     *
+     * @param latitude
+     * @param longitude
+     * @param time
+     */
+    public void write(double latitude, double longitude, long time) {
+        dogLocation.setLatitude(latitude);
+        dogLocation.setLongitude(longitude);
+        dogLocation.setTime(time);
+        if(stampWrites){
+            dogLocation.setWrittenAt(System.currentTimeMillis());
+        }
+
+        int precision = GeoCellIndex.MAX_PRECISION;
+        long row = (long) Math.floor((latitude + 90) / GeoHash.cellHeight(precision));
+        long column = (long) Math.floor((longitude + 180) / GeoHash.cellWidth(precision));
+        if(cell == null || row != cellRow || column != cellColumn){
+            values.clear();
+            String previousCell = cell;
+            cell = GeoCellIndex.addWrite(dogLocation, previousCell, compact, values);
+            cellRow = row;
+            cellColumn = column;
+            hasDeletes = previousCell != null;
+            compactValue = compact ? castValue(values.get(GeoCellIndex.walkerPath(userID))) : null;
+            rebuildCount++;
+
+            // Only the cells the user is in now are deleted on disconnect.
+            disconnectValues.clear();
+            GeoCellIndex.addRemoval(userID, cell, disconnectValues);
+            queueDisconnectValues();
+        }else{
+            if(walkerDatabase.getConnectionCount() != disconnectConnection){
+                // The deletes were made and forgotten when the connection dropped.
+                queueDisconnectValues();
+            }
+            if(hasDeletes){
+                // The old cells were deleted by the last write.
+                Iterator<Object> iterator = values.values().iterator();
+                while(iterator.hasNext()){
+                    if(iterator.next() == null){
+                        iterator.remove();
+                    }
+                }
+                hasDeletes = false;
+            }
+            if(compactValue != null){
+                CompactLocationCodec.encodeInto(dogLocation, compactValue);
+            }
+        }
+        writeCount++;
+        walkerDatabase.update(values);
+    }
+
+    /** Deletes the location and its geohash cell entries, and the deletes queued for when the user
+     *      disconnects. The next write starts over.
+     *
+     */
+    public void remove() {
+        walkerDatabase.cancelOnDisconnect();
+        values.clear();
+        GeoCellIndex.addRemoval(userID, cell, values);
+        walkerDatabase.update(values);
+        values.clear();
+        cell = null;
+        compactValue = null;
+        hasDeletes = false;
+    }
+
+    /** Sets whether each write records when it was made, so petters can measure latency. Off by
+     *      default.
+     *
+     * @param stampWrites
+     */
+    public void setStampWrites(boolean stampWrites) {
+        this.stampWrites = stampWrites;
+        if(!stampWrites){
+            dogLocation.setWrittenAt(0);
+        }
+    }
+
+    /** Returns the finest indexed cell last written to.
+     *
+     * @return the cell, or null if nothing is written
+     */
+    public String getCell() {
+        return cell;
+    }
+
+    /** Returns the number of writes.
+     *
+     * @return
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /** Returns the number of writes that had to work out the paths again.
+     *
+     * @return
+     */
+    public long getRebuildCount() {
+        return rebuildCount;
+    }
+
+    /** Has the database make the deletes in disconnectValues if the user disconnects, in place of
+     *      any queued before.
+     *
+     */
+    private void queueDisconnectValues() {
+        disconnectConnection = walkerDatabase.getConnectionCount();
+        walkerDatabase.cancelOnDisconnect();
+        walkerDatabase.updateOnDisconnect(disconnectValues);
+    }
+
+    /** Casts the compact value written for every path.
+     *
+     * @param value
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castValue(Object value) {
+        return (Map<String, Object>) value;
+    }
+}
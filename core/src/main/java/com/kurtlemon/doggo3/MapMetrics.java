@@ -0,0 +1,271 @@
+/**
+ * MapMetrics measures how long a walker's fix takes to show up on the petter's map, and how much
+ *  work drawing it is. Each update is followed from the walker's fix, to the walker writing it,
+ *  to the petter's callback, to the marker being placed, using the times carried in DogLocation.
+ *  Callbacks per second, redraw time, marker count and the updates each frame absorbed are
+ *  recorded alongside. Only created when
+ *  metrics are turned on, so when they are off the cost is a null check.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MapMetrics {
+    // Shortest window callbacks per second are worked out over.
+    private static final long RATE_WINDOW_MILLIS = 1000;
+
+    // Latency of each stage. Stages that cross devices also include the difference between
+    //  their clocks.
+    private final LatencyHistogram fixToWrite;
+    private final LatencyHistogram writeToCallback;
+    private final LatencyHistogram callbackToVisible;
+    private final LatencyHistogram fixToVisible;
+
+    // Cost of drawing.
+    private final LatencyHistogram redrawMicros;
+    private final LatencyHistogram markerCount;
+    private final LatencyHistogram callbacksPerSecond;
+    private final LatencyHistogram updatesPerFrame;
+
+    // Callbacks so far, and where the current rate window started.
+    private final AtomicLong callbacks;
+    private long windowStart;
+    private long windowCallbacks;
+    private long lastRate;
+
+    // When each walker applied since the last clustering pass was received, and the time of its
+    //  fix, as {receivedNanos, fixTime}. Only touched on the clustering thread.
+    private final HashMap<String, long[]> awaitingDraw;
+
+    /** Default Value Constructor.
+     *
+     */
+    public MapMetrics() {
+        fixToWrite = new LatencyHistogram("fix->write", "ms");
+        writeToCallback = new LatencyHistogram("write->callback", "ms");
+        callbackToVisible = new LatencyHistogram("callback->visible", "ms");
+        fixToVisible = new LatencyHistogram("fix->visible", "ms");
+        redrawMicros = new LatencyHistogram("redraw", "us");
+        markerCount = new LatencyHistogram("markers", "");
+        callbacksPerSecond = new LatencyHistogram("callbacks/s", "");
+        updatesPerFrame = new LatencyHistogram("updates/frame", "");
+        callbacks = new AtomicLong();
+        awaitingDraw = new HashMap<>();
+        windowStart = -1;
+    }
+
+    /** Records a database callback for a walker.
+     *
+     * @param dogLocation
+     * @param nowMillis wall clock time
+     */
+    public void onCallback(DogLocation dogLocation, long nowMillis) {
+        callbacks.incrementAndGet();
+        long writtenAt = dogLocation.getWrittenAt();
+        if(writtenAt <= 0){
+            return;
+        }
+        if(dogLocation.getTime() > 0){
+            fixToWrite.record(writtenAt - dogLocation.getTime());
+        }
+        writeToCallback.record(nowMillis - writtenAt);
+    }
+
+    /** Records that a walker was applied to the map and is waiting to be drawn. A walker applied
+     *      again before it is drawn keeps its first time. Called on the clustering thread.
+     *
+     * @param dogLocation
+     * @param nowNanos
+     */
+    public void onApplied(DogLocation dogLocation, long nowNanos) {
+        if(!awaitingDraw.containsKey(dogLocation.getId())){
+            awaitingDraw.put(dogLocation.getId(),
+                    new long[]{nowNanos, dogLocation.getTime()});
+        }
+    }
+
+    /** Hands over the walkers waiting to be drawn, for the clustering pass that includes them.
+     *      Called on the clustering thread.
+     *
+     * @return {receivedNanos, fixTime} pairs, one after another
+     */
+    public long[] takeAwaitingDraw() {
+        long[] awaiting = new long[awaitingDraw.size() * 2];
+        int i = 0;
+        Iterator<Map.Entry<String, long[]>> iterator = awaitingDraw.entrySet().iterator();
+        while(iterator.hasNext()){
+            long[] times = iterator.next().getValue();
+            awaiting[i++] = times[0];
+            awaiting[i++] = times[1];
+            iterator.remove();
+        }
+        return awaiting;
+    }
+
+    /** Records that the walkers handed over by takeAwaitingDraw() now have their markers placed.
+     *
+     * @param awaiting
+     * @param nowNanos
+     * @param nowMillis wall clock time
+     */
+    public void onDrawn(long[] awaiting, long nowNanos, long nowMillis) {
+        for(int i = 0; i < awaiting.length; i += 2){
+            callbackToVisible.record((nowNanos - awaiting[i]) / 1000000);
+            if(awaiting[i + 1] > 0){
+                fixToVisible.record(nowMillis - awaiting[i + 1]);
+            }
+        }
+    }
+
+    /** Records a redraw of the markers.
+     *
+     * @param durationNanos
+     * @param markers the number of markers on the map afterwards
+     */
+    public void onRedraw(long durationNanos, int markers) {
+        redrawMicros.record(durationNanos / 1000);
+        markerCount.record(markers);
+    }
+
+    /** Records a rendered frame.
+     *
+     * @param coalescedUpdates the number of map updates the frame absorbed
+     */
+    public void onFrame(int coalescedUpdates) {
+        updatesPerFrame.record(coalescedUpdates);
+    }
+
+    /** Works out callbacks per second once at least a second has passed since the last time.
+     *      Called periodically from one thread.
+     *
+     * @param nowMillis
+     * @return the latest rate
+     */
+    public long tick(long nowMillis) {
+        long total = callbacks.get();
+        if(windowStart < 0){
+            windowStart = nowMillis;
+            windowCallbacks = total;
+        }else if(nowMillis - windowStart >= RATE_WINDOW_MILLIS){
+            lastRate = (total - windowCallbacks) * 1000 / (nowMillis - windowStart);
+            callbacksPerSecond.record(lastRate);
+            windowStart = nowMillis;
+            windowCallbacks = total;
+        }
+        return lastRate;
+    }
+
+    /** Returns the number of callbacks recorded.
+     *
+     * @return
+     */
+    public long getCallbacks() {
+        return callbacks.get();
+    }
+
+    /** Returns the time from a walker's fix to the walker writing it, in milliseconds.
+     *
+     * @return
+     */
+    public LatencyHistogram getFixToWrite() {
+        return fixToWrite;
+    }
+
+    /** Returns the time from a walker writing a location to the petter's callback, in
+     *      milliseconds.
+     *
+     * @return
+     */
+    public LatencyHistogram getWriteToCallback() {
+        return writeToCallback;
+    }
+
+    /** Returns the time from the petter's callback to the marker being placed, in
+     *      milliseconds.
+     *
+     * @return
+     */
+    public LatencyHistogram getCallbackToVisible() {
+        return callbackToVisible;
+    }
+
+    /** Returns the time from a walker's fix to the marker being placed, in milliseconds.
+     *
+     * @return
+     */
+    public LatencyHistogram getFixToVisible() {
+        return fixToVisible;
+    }
+
+    /** Returns the time each redraw of the markers took, in microseconds.
+     *
+     * @return
+     */
+    public LatencyHistogram getRedrawMicros() {
+        return redrawMicros;
+    }
+
+    /** Returns the number of markers on the map after each redraw.
+     *
+     * @return
+     */
+    public LatencyHistogram getMarkerCount() {
+        return markerCount;
+    }
+
+    /** Returns the number of callbacks each second.
+     *
+     * @return
+     */
+    public LatencyHistogram getCallbacksPerSecond() {
+        return callbacksPerSecond;
+    }
+
+    /** Returns the number of map updates each rendered frame absorbed.
+     *
+     * @return
+     */
+    public LatencyHistogram getUpdatesPerFrame() {
+        return updatesPerFrame;
+    }
+
+    /** Returns every histogram, one per line.
+     *
+     * @return
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        LatencyHistogram[] histograms = {fixToWrite, writeToCallback, callbackToVisible,
+                fixToVisible, redrawMicros, markerCount, callbacksPerSecond, updatesPerFrame};
+        for(LatencyHistogram histogram : histograms){
+            if(builder.length() > 0){
+                builder.append('\n');
+            }
+            builder.append(histogram);
+        }
+        return builder.toString();
+    }
+
+    /** Forgets everything recorded, including the callbacks counted, the rate window and the
+     *      walkers waiting to be drawn. Called on the clustering thread.
+     *
+     */
+    public void reset() {
+        callbacks.set(0);
+        windowStart = -1;
+        windowCallbacks = 0;
+        lastRate = 0;
+        awaitingDraw.clear();
+        fixToWrite.reset();
+        writeToCallback.reset();
+        callbackToVisible.reset();
+        fixToVisible.reset();
+        redrawMicros.reset();
+        markerCount.reset();
+        callbacksPerSecond.reset();
+        updatesPerFrame.reset();
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * MapViewport is the latitude/longitude box around the visible part of the map that markers are
+ *  drawn for.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.Collection;
+
+public class MapViewport {
+    // Edges of the box. West is greater than east when the box crosses the antimeridian.
+    private double south;
+    private double west;
+    private double north;
+    private double east;
+
+    // Whether the box has been set yet.
+    private boolean set;
+
+    /** Default Value Constructor. The viewport starts out empty.
+     *
+     */
+    public MapViewport() {
+        set = false;
+    }
+
+    /** Copy Constructor.
+     *
+     * @param other
+     */
+    public MapViewport(MapViewport other) {
+        south = other.south;
+        west = other.west;
+        north = other.north;
+        east = other.east;
+        set = other.set;
+    }
+
+    /** Sets the box to the visible region grown by margin times its size on each side.
+     *
+     * @param south
+     * @param west
+     * @param north
+     * @param east
+     * @param margin
+     */
+    public void set(double south, double west, double north, double east, double margin) {
+        double latitudeMargin = (north - south) * margin;
+        double longitudeSpan = east - west;
+        if(longitudeSpan < 0){
+            // The region crosses the antimeridian.
+            longitudeSpan += 360;
+        }
+        double longitudeMargin = longitudeSpan * margin;
+
+        this.south = Math.max(-90, south - latitudeMargin);
+        this.north = Math.min(90, north + latitudeMargin);
+        if(longitudeSpan + 2 * longitudeMargin >= 360){
+            // Zoomed out far enough to see the whole world.
+            this.west = -180;
+            this.east = 180;
+        }else{
+            this.west = wrapLongitude(west - longitudeMargin);
+            this.east = wrapLongitude(east + longitudeMargin);
+        }
+        set = true;
+    }
+
+    /** Returns whether the box has been set.
+     *
+     * @return
+     */
+    public boolean isSet() {
+        return set;
+    }
+
+    /** Returns whether a point is inside the box.
+     *
+     * @param latitude
+     * @param longitude
+     * @return
+     */
+    public boolean contains(double latitude, double longitude) {
+        if(!set || latitude < south || latitude > north){
+            return false;
+        }
+        if(west > east){
+            return longitude >= west || longitude <= east;
+        }
+        return longitude >= west && longitude <= east;
+    }
+
+    /** Adds every location of the grid inside the box to out.
+     *
+     * @param locationGrid
+     * @param out
+     * @return the number of locations added
+     */
+    public int query(LocationGrid locationGrid, Collection<DogLocation> out) {
+        if(!set){
+            return 0;
+        }
+        return locationGrid.query(south, west, north, east, out);
+    }
+
+    /** Returns the south edge.
+     *
+     * @return
+     */
+    public double getSouth() {
+        return south;
+    }
+
+    /** Returns the west edge.
+     *
+     * @return
+     */
+    public double getWest() {
+        return west;
+    }
+
+    /** Returns the north edge.
+     *
+     * @return
+     */
+    public double getNorth() {
+        return north;
+    }
+
+    /** Returns the east edge.
+     *
+     * @return
+     */
+    public double getEast() {
+        return east;
+    }
+
+    /** Wraps a longitude that has been pushed past the antimeridian back into [-180, 180].
+     *
+     * @param longitude
+     * @return
+     */
+    private static double wrapLongitude(double longitude) {
+        if(longitude > 180){
+            return longitude - 360;
+        }
+        if(longitude < -180){
+            return longitude + 360;
+        }
+        return longitude;
+    }
+}
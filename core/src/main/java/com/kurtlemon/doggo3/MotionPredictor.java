@@ -0,0 +1,269 @@
+/**
+ * MotionPredictor estimates where walkers are between their sparse updates. Each walker's
+ *  velocity is worked out from its last few timestamped fixes, and its position is carried
+ *  forward along that velocity from when its latest fix arrived, for a limited time. A new fix
+ *  always replaces the prediction.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+public class MotionPredictor {
+
+    /**
+     * Mover is told the predicted position of each walker that is moving.
+     */
+    public interface Mover {
+        void onPredicted(String key, double latitude, double longitude);
+    }
+
+    // Number of fixes the velocity is worked out from.
+    private static final int HISTORY_SIZE = 3;
+
+    // Fixes further apart than this don't say anything about current velocity.
+    private static final long MAX_FIX_GAP_MILLIS = 30000;
+
+    // How far past the latest fix positions are carried forward.
+    public static final long MAX_EXTRAPOLATION_MILLIS = 10000;
+
+    // Fastest believable speed; faster estimates are scaled down to it.
+    private static final double MAX_SPEED_METERS_PER_SECOND = 5;
+
+    // Most walkers moved per call to animate() by default.
+    public static final int DEFAULT_MAX_ANIMATED = 200;
+
+    /**
+     * Track is a walker's recent fixes, its velocity, and where and when the latest fix arrived.
+     */
+    private static final class Track {
+        final double[] latitudes = new double[HISTORY_SIZE];
+        final double[] longitudes = new double[HISTORY_SIZE];
+        final long[] fixTimes = new long[HISTORY_SIZE];
+        int count;
+        int next;
+
+        // Degrees per millisecond.
+        double latitudeVelocity;
+        double longitudeVelocity;
+
+        // Latest fix and the local time it arrived.
+        double latitude;
+        double longitude;
+        long fixTime;
+        long receivedAt;
+    }
+
+    // Most walkers moved per call to animate().
+    private final int maxAnimated;
+
+    // Track of each walker, keyed by marker key.
+    private final HashMap<String, Track> tracks;
+
+    // Keys updated since beginPass(), used to sweep away the rest.
+    private final HashSet<String> updatedThisPass;
+    private final ArrayList<String> toRemove;
+
+    /** Default Value Constructor.
+     *
+     */
+    public MotionPredictor() {
+        this(DEFAULT_MAX_ANIMATED);
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param maxAnimated
+     */
+    public MotionPredictor(int maxAnimated) {
+        this.maxAnimated = maxAnimated;
+        tracks = new HashMap<>();
+        updatedThisPass = new HashSet<>();
+        toRemove = new ArrayList<>();
+    }
+
+    /** Records a walker's position. The same position with the same fix time is taken to be the
+     *      same fix sent again and doesn't disturb the prediction; older fixes are ignored.
+     *
+     * @param key
+     * @param latitude
+     * @param longitude
+     * @param fixTime when the walker recorded the fix
+     * @param nowMillis local time
+     * @return true if this is a new fix and the prediction snapped to it
+     */
+    public boolean onUpdate(String key, double latitude, double longitude, long fixTime,
+                            long nowMillis) {
+        updatedThisPass.add(key);
+        Track track = tracks.get(key);
+        if(track == null){
+            track = new Track();
+            tracks.put(key, track);
+        }else if(fixTime < track.fixTime || (fixTime == track.fixTime
+                && latitude == track.latitude && longitude == track.longitude)){
+            return false;
+        }
+
+        if(track.count > 0 && fixTime - track.fixTime > MAX_FIX_GAP_MILLIS){
+            track.count = 0;
+            track.next = 0;
+        }
+        track.latitudes[track.next] = latitude;
+        track.longitudes[track.next] = longitude;
+        track.fixTimes[track.next] = fixTime;
+        track.next = (track.next + 1) % HISTORY_SIZE;
+        if(track.count < HISTORY_SIZE){
+            track.count++;
+        }
+        track.latitude = latitude;
+        track.longitude = longitude;
+        track.fixTime = fixTime;
+        track.receivedAt = nowMillis;
+        estimateVelocity(track);
+        return true;
+    }
+
+    /** Writes the predicted position of a walker to out as {latitude, longitude}.
+     *
+     * @param key
+     * @param nowMillis
+     * @param out
+     * @return true if the walker is known
+     */
+    public boolean predict(String key, long nowMillis, double[] out) {
+        Track track = tracks.get(key);
+        if(track == null){
+            return false;
+        }
+        long elapsed = Math.max(0, Math.min(MAX_EXTRAPOLATION_MILLIS,
+                nowMillis - track.receivedAt));
+        out[0] = track.latitude + track.latitudeVelocity * elapsed;
+        out[1] = track.longitude + track.longitudeVelocity * elapsed;
+        return true;
+    }
+
+    /** Tells the mover where each moving walker is predicted to be, up to the animation limit.
+     *
+     * @param nowMillis
+     * @param mover
+     * @return the number of walkers still moving, so the caller knows whether to go again
+     */
+    public int animate(long nowMillis, Mover mover) {
+        int moving = 0;
+        for(Map.Entry<String, Track> entry : tracks.entrySet()){
+            Track track = entry.getValue();
+            if(!isMoving(track, nowMillis)){
+                continue;
+            }
+            if(moving >= maxAnimated){
+                break;
+            }
+            long elapsed = nowMillis - track.receivedAt;
+            mover.onPredicted(entry.getKey(),
+                    track.latitude + track.latitudeVelocity * elapsed,
+                    track.longitude + track.longitudeVelocity * elapsed);
+            moving++;
+        }
+        return moving;
+    }
+
+    /** Stops tracking a walker.
+     *
+     * @param key
+     */
+    public void remove(String key) {
+        tracks.remove(key);
+        updatedThisPass.remove(key);
+    }
+
+    /** Starts a full pass. Walkers not updated again before endPass() stop being tracked.
+     *
+     */
+    public void beginPass() {
+        updatedThisPass.clear();
+    }
+
+    /** Ends a full pass, dropping every walker that was not updated since beginPass().
+     *
+     */
+    public void endPass() {
+        toRemove.clear();
+        for(String key : tracks.keySet()){
+            if(!updatedThisPass.contains(key)){
+                toRemove.add(key);
+            }
+        }
+        for(String key : toRemove){
+            tracks.remove(key);
+        }
+        updatedThisPass.clear();
+    }
+
+    /** Returns the number of walkers tracked.
+     *
+     * @return
+     */
+    public int size() {
+        return tracks.size();
+    }
+
+    /** Stops tracking every walker.
+     *
+     */
+    public void clear() {
+        tracks.clear();
+        updatedThisPass.clear();
+    }
+
+    /** Returns whether a walker's predicted position is still changing.
+     *
+     * @param track
+     * @param nowMillis
+     * @return
+     */
+    private static boolean isMoving(Track track, long nowMillis) {
+        if(track.latitudeVelocity == 0 && track.longitudeVelocity == 0){
+            return false;
+        }
+        long elapsed = nowMillis - track.receivedAt;
+        return elapsed >= 0 && elapsed < MAX_EXTRAPOLATION_MILLIS;
+    }
+
+    /** Works out a track's velocity from its oldest and newest fixes.
+     *
+     * @param track
+     */
+    private static void estimateVelocity(Track track) {
+        track.latitudeVelocity = 0;
+        track.longitudeVelocity = 0;
+        if(track.count < 2){
+            return;
+        }
+        int oldest = track.count < HISTORY_SIZE ? 0 : track.next;
+        long elapsed = track.fixTime - track.fixTimes[oldest];
+        if(elapsed <= 0){
+            return;
+        }
+        double oldestLatitude = track.latitudes[oldest];
+        double oldestLongitude = track.longitudes[oldest];
+        double longitudeChange = track.longitude - oldestLongitude;
+        if(longitudeChange > 180){
+            // Crossed the antimeridian.
+            longitudeChange -= 360;
+        }else if(longitudeChange < -180){
+            longitudeChange += 360;
+        }
+        track.latitudeVelocity = (track.latitude - oldestLatitude) / elapsed;
+        track.longitudeVelocity = longitudeChange / elapsed;
+
+        double speed = GeoMath.distanceMeters(oldestLatitude, oldestLongitude, track.latitude,
+                track.longitude) * 1000 / elapsed;
+        if(speed > MAX_SPEED_METERS_PER_SECOND){
+            double scale = MAX_SPEED_METERS_PER_SECOND / speed;
+            track.latitudeVelocity *= scale;
+            track.longitudeVelocity *= scale;
+        }
+    }
+}
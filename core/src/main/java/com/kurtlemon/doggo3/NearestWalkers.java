@@ -0,0 +1,330 @@
+/**
+ * NearestWalkers keeps the walkers closest to the dog petter, by great-circle distance, sorted
+ *  nearest first. Walkers are kept in a LocationGrid so the nearest can be found by searching
+ *  outward from the petter instead of looking at every walker. Once found, the list is kept up
+ *  to date as walkers move: a walker that moves in ahead of the farthest one takes its place, and
+ *  the grid is only searched again when a walker in the list moves out past the farthest one or
+ *  leaves, or the petter moves. Not thread safe; meant to be used from a single background thread.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+
+public class NearestWalkers {
+    // Number of walkers kept by default.
+    public static final int DEFAULT_COUNT = 10;
+
+    // Radius the first search covers, and how much it grows each time too few walkers are found.
+    private static final double FIRST_SEARCH_METERS = 1000;
+    private static final double SEARCH_GROWTH = 4;
+
+    // Every walker, by position.
+    private final LocationGrid locationGrid;
+
+    // The nearest walkers and their distances, nearest first.
+    private final int capacity;
+    private final DogLocation[] nearest;
+    private final double[] distances;
+    private int count;
+
+    // Where the petter is, and whether it is known yet.
+    private double latitude;
+    private double longitude;
+    private boolean hasOrigin;
+
+    // Whether the list has to be found again from the grid, and whether it changed since
+    //  takeChanged() was last called.
+    private boolean searchNeeded;
+    private boolean changed;
+
+    // Reused by search().
+    private final ArrayList<DogLocation> candidates;
+
+    /** Default Value Constructor.
+     *
+     */
+    public NearestWalkers() {
+        this(DEFAULT_COUNT);
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param capacity the number of walkers kept
+     */
+    public NearestWalkers(int capacity) {
+        if(capacity <= 0){
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        locationGrid = new LocationGrid();
+        nearest = new DogLocation[capacity];
+        distances = new double[capacity];
+        candidates = new ArrayList<>();
+    }
+
+    /** Moves the point distances are measured from to the petter's latest fix.
+     *
+     * @param latitude
+     * @param longitude
+     */
+    public void setOrigin(double latitude, double longitude) {
+        if(hasOrigin && this.latitude == latitude && this.longitude == longitude){
+            return;
+        }
+        this.latitude = latitude;
+        this.longitude = longitude;
+        hasOrigin = true;
+        searchNeeded = true;
+        changed = true;
+    }
+
+    /** Adds a walker, or moves it if it is already known.
+     *
+     * @param dogLocation
+     */
+    public void put(DogLocation dogLocation) {
+        locationGrid.put(dogLocation);
+        if(!hasOrigin || searchNeeded){
+            return;
+        }
+        double distance = distanceTo(dogLocation);
+        int index = indexOf(dogLocation.getId());
+        if(index >= 0){
+            // Every walker not in the list is at least as far as the farthest one was, so the
+            //  walker only keeps its place if it hasn't moved out past that.
+            if(count == capacity && distance > distances[count - 1]){
+                searchNeeded = true;
+            }else{
+                removeAt(index);
+                insert(dogLocation, distance);
+            }
+            changed = true;
+        }else if(count < capacity || distance < distances[count - 1]){
+            insert(dogLocation, distance);
+            changed = true;
+        }
+    }
+
+    /** Removes a walker.
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        if(locationGrid.remove(id) == null || !hasOrigin || searchNeeded){
+            return;
+        }
+        int index = indexOf(id);
+        if(index >= 0){
+            // A full list may have a walker outside it that should now be in it.
+            if(count == capacity){
+                searchNeeded = true;
+            }
+            removeAt(index);
+            changed = true;
+        }
+    }
+
+    /** Forgets every walker.
+     *
+     */
+    public void clear() {
+        locationGrid.clear();
+        for(int i = 0; i < count; i++){
+            nearest[i] = null;
+        }
+        count = 0;
+        searchNeeded = false;
+        changed = true;
+    }
+
+    /** Returns the number of nearest walkers, which is less than the capacity only if fewer
+     *      walkers are known.
+     *
+     * @return
+     */
+    public int getCount() {
+        update();
+        return count;
+    }
+
+    /** Returns one of the nearest walkers.
+     *
+     * @param index 0 for the nearest
+     * @return
+     */
+    public DogLocation get(int index) {
+        update();
+        if(index >= count){
+            throw new IndexOutOfBoundsException("Index " + index + ", count " + count);
+        }
+        return nearest[index];
+    }
+
+    /** Returns the distance to one of the nearest walkers in meters.
+     *
+     * @param index 0 for the nearest
+     * @return
+     */
+    public double getDistance(int index) {
+        update();
+        if(index >= count){
+            throw new IndexOutOfBoundsException("Index " + index + ", count " + count);
+        }
+        return distances[index];
+    }
+
+    /** Returns whether the nearest walkers or their distances have changed since the last call.
+     *
+     * @return
+     */
+    public boolean takeChanged() {
+        update();
+        boolean wasChanged = changed;
+        changed = false;
+        return wasChanged;
+    }
+
+    /** Returns the number of walkers known.
+     *
+     * @return
+     */
+    public int size() {
+        return locationGrid.size();
+    }
+
+    /** Finds the nearest walkers again if the list can't be kept up to date from the changes
+     *      alone.
+     *
+     */
+    private void update() {
+        if(searchNeeded){
+            searchNeeded = false;
+            search();
+        }
+    }
+
+    /** Finds the nearest walkers from the grid, searching a box around the petter that grows
+     *      until it holds enough walkers that none outside it can be nearer.
+     *
+     */
+    private void search() {
+        for(int i = 0; i < count; i++){
+            nearest[i] = null;
+        }
+        count = 0;
+        if(!hasOrigin || locationGrid.size() == 0){
+            return;
+        }
+        double radius = FIRST_SEARCH_METERS;
+        while(true){
+            candidates.clear();
+            boolean wholeWorld = queryAround(radius, candidates);
+            count = 0;
+            for(int i = 0; i < candidates.size(); i++){
+                DogLocation dogLocation = candidates.get(i);
+                double distance = distanceTo(dogLocation);
+                if(count < capacity || distance < distances[count - 1]){
+                    insert(dogLocation, distance);
+                }
+            }
+            candidates.clear();
+            // The box holds every walker within radius, so a list that is full within radius
+            //  can't be beaten by one outside.
+            if(wholeWorld || (count == capacity && distances[count - 1] <= radius)){
+                return;
+            }
+            radius *= SEARCH_GROWTH;
+        }
+    }
+
+    /** Adds every walker in the smallest latitude/longitude box around the petter that holds
+     *      every point within a radius.
+     *
+     * @param radiusMeters
+     * @param out
+     * @return true if the box covers the whole world
+     */
+    private boolean queryAround(double radiusMeters, ArrayList<DogLocation> out) {
+        double angle = radiusMeters / GeoMath.EARTH_RADIUS_METERS;
+        double latitudeSpan = Math.toDegrees(angle);
+        double south = latitude - latitudeSpan;
+        double north = latitude + latitudeSpan;
+        if(south <= -90 || north >= 90 || angle >= Math.PI / 2){
+            // The circle takes in a pole, and with it every longitude.
+            locationGrid.query(Math.max(-90, south), -180, Math.min(90, north), 180, out);
+            return south <= -90 && north >= 90;
+        }
+        // The meridians farthest from the petter that the circle still touches.
+        double ratio = Math.sin(angle) / Math.cos(Math.toRadians(latitude));
+        if(ratio >= 1){
+            locationGrid.query(south, -180, north, 180, out);
+            return false;
+        }
+        double longitudeSpan = Math.toDegrees(Math.asin(ratio));
+        double west = longitude - longitudeSpan;
+        double east = longitude + longitudeSpan;
+        if(west < -180){
+            west += 360;
+        }
+        if(east > 180){
+            east -= 360;
+        }
+        locationGrid.query(south, west, north, east, out);
+        return false;
+    }
+
+    /** Inserts a walker into the list in order of distance, dropping the farthest if the list
+     *      is full.
+     *
+     * @param dogLocation
+     * @param distance
+     */
+    private void insert(DogLocation dogLocation, double distance) {
+        int index = count < capacity ? count : capacity - 1;
+        while(index > 0 && distances[index - 1] > distance){
+            nearest[index] = nearest[index - 1];
+            distances[index] = distances[index - 1];
+            index--;
+        }
+        nearest[index] = dogLocation;
+        distances[index] = distance;
+        if(count < capacity){
+            count++;
+        }
+    }
+
+    /** Removes the walker at an index of the list.
+     *
+     * @param index
+     */
+    private void removeAt(int index) {
+        count--;
+        System.arraycopy(nearest, index + 1, nearest, index, count - index);
+        System.arraycopy(distances, index + 1, distances, index, count - index);
+        nearest[count] = null;
+    }
+
+    /** Returns where a walker is in the list.
+     *
+     * @param id
+     * @return the index, or -1 if the walker isn't in the list
+     */
+    private int indexOf(String id) {
+        for(int i = 0; i < count; i++){
+            if(nearest[i].getId().equals(id)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the distance from the petter to a walker in meters.
+     *
+     * @param dogLocation
+     * @return
+     */
+    private double distanceTo(DogLocation dogLocation) {
+        return GeoMath.distanceMeters(latitude, longitude, dogLocation.getLatitude(),
+                dogLocation.getLongitude());
+    }
+}
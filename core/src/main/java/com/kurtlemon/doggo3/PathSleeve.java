@@ -0,0 +1,108 @@
+/**
+ * PathSleeve decides where a path of fixes can be simplified to a straight line. It keeps the range
+ *  of directions a straight line from the start of a stretch can take and still pass within a
+ *  tolerance of every fix since, and how far from the start the stretch has come. A fix
+ *  continues the stretch only if the line from the start to it passes near every fix since:
+ *  it has to be in one of the directions left, and no nearer the start than the farthest fix
+ *  before it, so a walk that doubles back keeps its turn. Each fix narrows the directions, so
+ *  deciding takes the same time however long the stretch is. Coordinates are in the fixed point
+ *  units of CompactLocationCodec.
+ */
+package com.kurtlemon.doggo3;
+
+public class PathSleeve {
+    // Meters in a degree of latitude.
+    private static final double METERS_PER_DEGREE = Math.toRadians(GeoMath.EARTH_RADIUS_METERS);
+
+    // Start of the stretch, and meters per fixed point unit there.
+    private int startLatitude;
+    private int startLongitude;
+    private double metersPerUnitLatitude;
+    private double metersPerUnitLongitude;
+    private double toleranceMeters;
+
+    // The directions left, in radians either side of the first fix outside the tolerance.
+    private boolean narrowed;
+    private double direction;
+    private double low;
+    private double high;
+
+    // Meters from the start to the farthest fix in the stretch.
+    private double farthest;
+
+    /** Default Value Constructor. A stretch has to be started before fixes are added.
+     *
+     */
+    public PathSleeve() {
+    }
+
+    /** Starts a stretch at a point.
+     *
+     * @param latitude
+     * @param longitude
+     * @param toleranceMeters
+     */
+    public void start(int latitude, int longitude, double toleranceMeters) {
+        startLatitude = latitude;
+        startLongitude = longitude;
+        this.toleranceMeters = toleranceMeters;
+        metersPerUnitLatitude = METERS_PER_DEGREE / CompactLocationCodec.UNITS_PER_DEGREE;
+        metersPerUnitLongitude = metersPerUnitLatitude
+                * Math.cos(Math.toRadians(latitude / CompactLocationCodec.UNITS_PER_DEGREE));
+        narrowed = false;
+        farthest = 0;
+    }
+
+    /** Narrows the directions left to those that pass near a fix, if the line from the start
+     *      to the fix passes near every fix since the start.
+     *
+     * @param latitude
+     * @param longitude
+     * @return false if the line from the start to the fix would leave a fix behind, in which
+     *      case nothing changes
+     */
+    public boolean extend(int latitude, int longitude) {
+        long longitudeUnits = (long) longitude - startLongitude;
+        // Go the short way around across the antimeridian.
+        long fullTurn = Math.round(360 * CompactLocationCodec.UNITS_PER_DEGREE);
+        if(longitudeUnits > fullTurn / 2){
+            longitudeUnits -= fullTurn;
+        }else if(longitudeUnits < -fullTurn / 2){
+            longitudeUnits += fullTurn;
+        }
+        double x = longitudeUnits * metersPerUnitLongitude;
+        double y = ((long) latitude - startLatitude) * metersPerUnitLatitude;
+        double distance = Math.sqrt(x * x + y * y);
+        if(!narrowed && distance <= toleranceMeters){
+            // Every fix so far is near the start, so any line from it passes near enough.
+            farthest = Math.max(farthest, distance);
+            return true;
+        }
+        if(distance < farthest){
+            // Stopping short would leave the farther fixes past the end of the line.
+            return false;
+        }
+        double halfWidth = Math.asin(toleranceMeters / distance);
+        if(!narrowed){
+            direction = Math.atan2(y, x);
+            low = -halfWidth;
+            high = halfWidth;
+            narrowed = true;
+            farthest = distance;
+            return true;
+        }
+        double angle = Math.atan2(y, x) - direction;
+        if(angle > Math.PI){
+            angle -= 2 * Math.PI;
+        }else if(angle < -Math.PI){
+            angle += 2 * Math.PI;
+        }
+        if(angle < low || angle > high){
+            return false;
+        }
+        low = Math.max(low, angle - halfWidth);
+        high = Math.min(high, angle + halfWidth);
+        farthest = distance;
+        return true;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * PublishPolicy decides which location fixes a walker writes to the database. Fixes that moved
+ *  less than a minimum distance, or came too soon after the last write, are suppressed, so the
+ *  number of writes follows how much the walker actually moves.
+ */
+package com.kurtlemon.doggo3;
+
+public class PublishPolicy {
+    // Defaults: at least 5 meters of movement, at most one write every 2 seconds, and a write at
+    //  least every 30 seconds so petters know the walker is still there.
+    public static final double DEFAULT_MIN_DISTANCE_METERS = 5;
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 2000;
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = 30000;
+
+    // Thresholds.
+    private final double minDistanceMeters;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+
+    // The last fix written and the last fix seen.
+    private boolean hasSent;
+    private double sentLatitude;
+    private double sentLongitude;
+    private long sentTime;
+    private boolean hasPrevious;
+    private double previousLatitude;
+    private double previousLongitude;
+
+    // Counters of fixes written and suppressed.
+    private long sentCount;
+    private long suppressedCount;
+
+    /** Default Value Constructor.
+     *
+     */
+    public PublishPolicy() {
+        this(DEFAULT_MIN_DISTANCE_METERS, DEFAULT_MIN_INTERVAL_MILLIS, DEFAULT_MAX_INTERVAL_MILLIS);
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param minDistanceMeters
+     * @param minIntervalMillis
+     * @param maxIntervalMillis
+     */
+    public PublishPolicy(double minDistanceMeters, long minIntervalMillis,
+                         long maxIntervalMillis) {
+        this.minDistanceMeters = minDistanceMeters;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    /** Decides whether a fix should be written, and counts it as sent or suppressed.
+     *
+     *  A fix is written if it is the first one, if it is at least the minimum interval after the
+     *      last write and has moved at least the minimum distance, if the walker has come to a
+     *      stop somewhere other than the last written position, or if the maximum interval has
+     *      passed since the last write.
+     *
+     * @param latitude
+     * @param longitude
+     * @param timeMillis
+     * @return true if the fix should be written
+     */
+    public boolean shouldPublish(double latitude, double longitude, long timeMillis) {
+        boolean publish;
+        if(!hasSent){
+            publish = true;
+        }else{
+            long elapsed = timeMillis - sentTime;
+            if(elapsed < minIntervalMillis){
+                publish = false;
+            }else if(elapsed >= maxIntervalMillis){
+                publish = true;
+            }else{
+                double moved = GeoMath.distanceMeters(sentLatitude, sentLongitude, latitude,
+                        longitude);
+                // Stopped: this fix is where the last one was, but not where the last write was.
+                boolean stopped = hasPrevious && moved > minDistanceMeters / 5
+                        && GeoMath.distanceMeters(previousLatitude, previousLongitude, latitude,
+                        longitude) < minDistanceMeters / 5;
+                publish = moved >= minDistanceMeters || stopped;
+            }
+        }
+
+        hasPrevious = true;
+        previousLatitude = latitude;
+        previousLongitude = longitude;
+        if(publish){
+            hasSent = true;
+            sentLatitude = latitude;
+            sentLongitude = longitude;
+            sentTime = timeMillis;
+            sentCount++;
+        }else{
+            suppressedCount++;
+        }
+        return publish;
+    }
+
+    /** Forgets the last written fix so the next fix is always written. Counters are kept.
+     *
+     */
+    public void reset() {
+        hasSent = false;
+        hasPrevious = false;
+    }
+
+    /** Returns the number of fixes that should have been written.
+     *
+     * @return
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    /** Returns the number of fixes that were suppressed.
+     *
+     * @return
+     */
+    public long getSuppressedCount() {
+        return suppressedCount;
+    }
+}
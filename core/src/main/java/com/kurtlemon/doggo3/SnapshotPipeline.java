@@ -0,0 +1,237 @@
+/**
+ * SnapshotPipeline moves decoding of raw database snapshots, and everything their listeners do
+ *  with the result, off the thread the database calls back on. Snapshots wait in a bounded queue
+ *  and only the latest one for each walker and listener is kept, so a burst of updates never
+ *  builds up a backlog. Removals are never dropped, since a walker whose removal is lost would
+ *  stay on the map until it expired.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class SnapshotPipeline {
+
+    /**
+     * Decoder turns a raw snapshot into a walker's location.
+     */
+    public interface Decoder {
+        /** Returns the location in a snapshot, or null if it can't be read. */
+        DogLocation decode(Object snapshot);
+    }
+
+    /**
+     * PendingKey identifies the snapshots that replace each other: those for the same child key
+     *  going to the same listener.
+     */
+    private static class PendingKey {
+        final WalkerDatabase.Listener listener;
+        final String key;
+
+        PendingKey(WalkerDatabase.Listener listener, String key) {
+            this.listener = listener;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof PendingKey)){
+                return false;
+            }
+            PendingKey pendingKey = (PendingKey) other;
+            return listener == pendingKey.listener && key.equals(pendingKey.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(listener) + key.hashCode();
+        }
+    }
+
+    /**
+     * Event is a snapshot waiting to be decoded and passed on.
+     */
+    private static class Event {
+        final WalkerDatabase.Listener listener;
+        final Decoder decoder;
+        final Object snapshot;
+        final boolean removed;
+
+        Event(WalkerDatabase.Listener listener, Decoder decoder, Object snapshot,
+              boolean removed) {
+            this.listener = listener;
+            this.decoder = decoder;
+            this.snapshot = snapshot;
+            this.removed = removed;
+        }
+    }
+
+    // Most snapshots waiting at once by default.
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // Where snapshots are decoded and passed on.
+    private final Executor executor;
+
+    // Most snapshots waiting at once.
+    private final int capacity;
+
+    // Snapshots waiting, oldest first, guarded by this.
+    private final LinkedHashMap<PendingKey, Event> pending;
+
+    // Whether a drain has been handed to the executor and not started yet, guarded by this.
+    private boolean drainScheduled;
+    private boolean closed;
+
+    // Counters, guarded by this.
+    private long submittedCount;
+    private long replacedCount;
+    private long droppedCount;
+    private long deliveredCount;
+
+    // Reused by the drain, only touched on the executor.
+    private final ArrayList<Event> draining;
+
+    // Runs one drain.
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /** Explicit Value Constructor.
+     *
+     * @param executor should run one task at a time, on the thread the listeners expect
+     * @param capacity
+     */
+    public SnapshotPipeline(Executor executor, int capacity) {
+        if(capacity < 1){
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+        pending = new LinkedHashMap<>();
+        draining = new ArrayList<>();
+    }
+
+    /** Queues a snapshot to be decoded and passed to a listener on the executor. A snapshot
+     *      still waiting for the same key and listener is replaced. If the queue is full the
+     *      oldest change is dropped; removals are kept even past the capacity.
+     *
+     * @param listener
+     * @param key the child key of the snapshot
+     * @param snapshot
+     * @param decoder
+     * @param removed whether the child was removed rather than added or changed
+     */
+    public void submit(WalkerDatabase.Listener listener, String key, Object snapshot,
+                       Decoder decoder, boolean removed) {
+        boolean schedule;
+        synchronized(this){
+            if(closed){
+                return;
+            }
+            submittedCount++;
+            PendingKey pendingKey = new PendingKey(listener, key);
+            Event event = new Event(listener, decoder, snapshot, removed);
+            if(pending.put(pendingKey, event) != null){
+                replacedCount++;
+            }else if(pending.size() > capacity){
+                Iterator<Event> oldest = pending.values().iterator();
+                while(oldest.hasNext()){
+                    if(!oldest.next().removed){
+                        oldest.remove();
+                        droppedCount++;
+                        break;
+                    }
+                }
+            }
+            schedule = !drainScheduled;
+            drainScheduled = true;
+        }
+        if(schedule){
+            try{
+                executor.execute(drainTask);
+            }catch(RejectedExecutionException e){
+                // The executor has been shut down, so nothing more will be delivered.
+                close();
+            }
+        }
+    }
+
+    /** Stops accepting snapshots and drops the ones waiting.
+     *
+     */
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    /** Returns the number of snapshots waiting.
+     *
+     * @return
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Returns the number of snapshots submitted.
+     *
+     * @return
+     */
+    public synchronized long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    /** Returns the number of snapshots replaced by a newer one before they were decoded.
+     *
+     * @return
+     */
+    public synchronized long getReplacedCount() {
+        return replacedCount;
+    }
+
+    /** Returns the number of changes dropped because the queue was full.
+     *
+     * @return
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Returns the number of snapshots decoded and passed on.
+     *
+     * @return
+     */
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /** Takes every waiting snapshot, then decodes and passes each one on.
+     *
+     */
+    private void drain() {
+        synchronized(this){
+            drainScheduled = false;
+            draining.addAll(pending.values());
+            pending.clear();
+            deliveredCount += draining.size();
+        }
+        for(int i = 0; i < draining.size(); i++){
+            Event event = draining.get(i);
+            DogLocation dogLocation = event.decoder.decode(event.snapshot);
+            if(dogLocation == null){
+                continue;
+            }
+            if(event.removed){
+                event.listener.onWalkerRemoved(dogLocation);
+            }else{
+                event.listener.onWalkerChanged(dogLocation);
+            }
+        }
+        draining.clear();
+    }
+}
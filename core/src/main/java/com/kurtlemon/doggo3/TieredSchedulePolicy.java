@@ -0,0 +1,83 @@
+/**
+ * TieredSchedulePolicy is a LocationSchedulePolicy with one schedule for moving, one for moving
+ *  slowly and one for standing still.
+ */
+package com.kurtlemon.doggo3;
+
+public class TieredSchedulePolicy implements LocationSchedulePolicy {
+    // Below this speed the user counts as moving slowly.
+    private final double slowSpeedMetersPerSecond;
+
+    // Schedules for each tier.
+    private final LocationSchedule moving;
+    private final LocationSchedule slow;
+    private final LocationSchedule stationary;
+
+    /** Explicit Value Constructor.
+     *
+     * @param slowSpeedMetersPerSecond
+     * @param moving
+     * @param slow
+     * @param stationary
+     */
+    public TieredSchedulePolicy(double slowSpeedMetersPerSecond, LocationSchedule moving,
+                                LocationSchedule slow, LocationSchedule stationary) {
+        this.slowSpeedMetersPerSecond = slowSpeedMetersPerSecond;
+        this.moving = moving;
+        this.slow = slow;
+        this.stationary = stationary;
+    }
+
+    /** Returns the policy for dog walkers, whose position is shown to everyone: every second
+     *      while walking, every five seconds while dawdling, and every fifteen seconds at balanced
+     *      accuracy while standing still.
+     *
+     * @return
+     */
+    public static TieredSchedulePolicy forWalker() {
+        return new TieredSchedulePolicy(0.5,
+                new LocationSchedule(1000, 500, LocationSchedule.PRIORITY_HIGH_ACCURACY),
+                new LocationSchedule(5000, 2000, LocationSchedule.PRIORITY_HIGH_ACCURACY),
+                new LocationSchedule(15000, 5000,
+                        LocationSchedule.PRIORITY_BALANCED_POWER_ACCURACY));
+    }
+
+    /** Returns the policy for dog petters, whose position only moves their own camera.
+     *
+     * @return
+     */
+    public static TieredSchedulePolicy forPetter() {
+        return new TieredSchedulePolicy(0.5,
+                new LocationSchedule(2000, 1000, LocationSchedule.PRIORITY_HIGH_ACCURACY),
+                new LocationSchedule(10000, 5000,
+                        LocationSchedule.PRIORITY_BALANCED_POWER_ACCURACY),
+                new LocationSchedule(30000, 10000,
+                        LocationSchedule.PRIORITY_BALANCED_POWER_ACCURACY));
+    }
+
+    /** Starts out on the moving schedule.
+     *
+     * @return
+     */
+    @Override
+    public LocationSchedule initial() {
+        return moving;
+    }
+
+    /** Picks the tier for the user's movement.
+     *
+     * @param speedMetersPerSecond
+     * @param stationary
+     * @return
+     */
+    @Override
+    public LocationSchedule choose(double speedMetersPerSecond, boolean stationary) {
+        if(stationary){
+            return this.stationary;
+        }
+        if(speedMetersPerSecond < slowSpeedMetersPerSecond){
+            return slow;
+        }
+        return moving;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * TimingWheel is a hashed timing wheel of deadlines keyed by string. Deadlines are hashed into a
+ *  ring of slots by tick, so advancing the wheel only looks at the slots for the ticks that have
+ *  passed instead of every key. Rescheduling or cancelling a key is constant time.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+public class TimingWheel {
+
+    /**
+     * Timer is a key's deadline, the tick it expires on, and the slot it is kept in.
+     */
+    private static final class Timer {
+        long deadline;
+        long tick;
+        int slot;
+    }
+
+    // Length of a tick and the ring of slots, each holding the keys that expire on its ticks.
+    private final long tickMillis;
+    private final ArrayList<HashSet<String>> slots;
+
+    // Timer of each scheduled key.
+    private final HashMap<String, Timer> timers;
+
+    // Last tick advanced to, if the wheel has been advanced.
+    private boolean started;
+    private long currentTick;
+
+    // Number of keys looked at while advancing.
+    private long visitedCount;
+
+    /** Explicit Value Constructor.
+     *
+     * @param tickMillis
+     * @param slotCount
+     */
+    public TimingWheel(long tickMillis, int slotCount) {
+        this.tickMillis = tickMillis;
+        slots = new ArrayList<>(slotCount);
+        for(int i = 0; i < slotCount; i++){
+            slots.add(new HashSet<String>());
+        }
+        timers = new HashMap<>();
+    }
+
+    /** Schedules a key to expire at a deadline, replacing any deadline it had. A deadline that
+     *      has already passed expires on the next advance.
+     *
+     * @param key
+     * @param deadline in milliseconds
+     */
+    public void schedule(String key, long deadline) {
+        long tick = ceilDiv(deadline, tickMillis);
+        if(started && tick <= currentTick){
+            tick = currentTick + 1;
+        }
+        int slot = slotOf(tick);
+        Timer timer = timers.get(key);
+        if(timer == null){
+            timer = new Timer();
+            timers.put(key, timer);
+            slots.get(slot).add(key);
+        }else if(timer.slot != slot){
+            slots.get(timer.slot).remove(key);
+            slots.get(slot).add(key);
+        }
+        timer.deadline = deadline;
+        timer.tick = tick;
+        timer.slot = slot;
+    }
+
+    /** Cancels a key's deadline.
+     *
+     * @param key
+     * @return true if the key was scheduled
+     */
+    public boolean cancel(String key) {
+        Timer timer = timers.remove(key);
+        if(timer == null){
+            return false;
+        }
+        slots.get(timer.slot).remove(key);
+        return true;
+    }
+
+    /** Advances the wheel to a time, adding every key whose deadline has passed to expired and
+     *      forgetting it.
+     *
+     * @param nowMillis
+     * @param expired
+     * @return the number of keys expired
+     */
+    public int advance(long nowMillis, Collection<String> expired) {
+        long nowTick = nowMillis / tickMillis;
+        if(started && nowTick <= currentTick){
+            return 0;
+        }
+        // A slot is never visited more than once per advance, however much time passed.
+        long from = started ? currentTick + 1 : nowTick - slots.size() + 1;
+        if(nowTick - from >= slots.size()){
+            from = nowTick - slots.size() + 1;
+        }
+        int count = 0;
+        for(long tick = from; tick <= nowTick; tick++){
+            Iterator<String> iterator = slots.get(slotOf(tick)).iterator();
+            while(iterator.hasNext()){
+                String key = iterator.next();
+                visitedCount++;
+                // Keys a whole lap or more away stay for a later pass.
+                if(timers.get(key).tick <= nowTick){
+                    iterator.remove();
+                    timers.remove(key);
+                    expired.add(key);
+                    count++;
+                }
+            }
+        }
+        started = true;
+        currentTick = nowTick;
+        return count;
+    }
+
+    /** Returns the deadline of a key.
+     *
+     * @param key
+     * @return the deadline, or -1 if the key isn't scheduled
+     */
+    public long getDeadline(String key) {
+        Timer timer = timers.get(key);
+        return timer == null ? -1 : timer.deadline;
+    }
+
+    /** Returns the number of keys scheduled.
+     *
+     * @return
+     */
+    public int size() {
+        return timers.size();
+    }
+
+    /** Returns the number of keys looked at while advancing.
+     *
+     * @return
+     */
+    public long getVisitedCount() {
+        return visitedCount;
+    }
+
+    /** Cancels every deadline.
+     *
+     */
+    public void clear() {
+        for(HashSet<String> slot : slots){
+            slot.clear();
+        }
+        timers.clear();
+    }
+
+    /** Returns the slot a tick is kept in.
+     *
+     * @param tick
+     * @return
+     */
+    private int slotOf(long tick) {
+        int slot = (int) (tick % slots.size());
+        return slot < 0 ? slot + slots.size() : slot;
+    }
+
+    /** Divides, rounding up for positive values.
+     *
+     * @param value
+     * @param divisor
+     * @return
+     */
+    private static long ceilDiv(long value, long divisor) {
+        long quotient = value / divisor;
+        return quotient * divisor < value ? quotient + 1 : quotient;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * TrailDelta is the set of trail changes produced by one pass of WalkerTrails, ready to be applied
+ *  to the map. Each changed trail says how many points to drop from its start, how many of the
+ *  rest to keep, and the points to add after them, so a drawn trail is trimmed and extended
+ *  instead of rebuilt.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+
+public class TrailDelta {
+
+    /**
+     * Change is what happened to one trail since it was last drawn.
+     */
+    public static final class Change {
+        private final String id;
+        private final int trimmed;
+        private final int kept;
+        private final double[] latitudes;
+        private final double[] longitudes;
+
+        /** Explicit Value Constructor.
+         *
+         * @param id the walker's ID
+         * @param trimmed points to drop from the start of the drawn trail
+         * @param kept points to keep after those; any more are dropped
+         * @param latitudes of the points to add after them
+         * @param longitudes of the points to add after them
+         */
+        public Change(String id, int trimmed, int kept, double[] latitudes, double[] longitudes) {
+            this.id = id;
+            this.trimmed = trimmed;
+            this.kept = kept;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+        }
+
+        /** Returns the walker's ID.
+         *
+         * @return
+         */
+        public String getId() {
+            return id;
+        }
+
+        /** Returns the number of points to drop from the start of the drawn trail.
+         *
+         * @return
+         */
+        public int getTrimmed() {
+            return trimmed;
+        }
+
+        /** Returns the number of points to keep after those dropped.
+         *
+         * @return
+         */
+        public int getKept() {
+            return kept;
+        }
+
+        /** Returns the latitudes of the points to add.
+         *
+         * @return
+         */
+        public double[] getLatitudes() {
+            return latitudes;
+        }
+
+        /** Returns the longitudes of the points to add.
+         *
+         * @return
+         */
+        public double[] getLongitudes() {
+            return longitudes;
+        }
+    }
+
+    // Trails to change or add, and IDs of trails to remove. Removals are applied first.
+    private final ArrayList<Change> changed;
+    private final ArrayList<String> removed;
+
+    /** Default Value Constructor.
+     *
+     */
+    public TrailDelta() {
+        changed = new ArrayList<>();
+        removed = new ArrayList<>();
+    }
+
+    /** Returns the trails to change or add.
+     *
+     * @return
+     */
+    public ArrayList<Change> getChanged() {
+        return changed;
+    }
+
+    /** Returns the IDs of trails to remove.
+     *
+     * @return
+     */
+    public ArrayList<String> getRemoved() {
+        return removed;
+    }
+
+    /** Returns whether there is nothing to apply.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+
+    /** Empties the delta so it can be reused.
+     *
+     */
+    public void clear() {
+        changed.clear();
+        removed.clear();
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * WalkTrajectory records the path of a walk. Fixes are simplified as they come in, so only the
+ *  points where the path turns by more than a tolerance are kept, and the points are stored in
+ *  columns of primitives: latitude and longitude in the fixed point units of
+ *  CompactLocationCodec, and time in milliseconds. A walk never takes more than a set number of
+ *  points; when it reaches them the points kept so far are simplified again with twice the
+ *  tolerance, so memory stays bounded however long the walk is. Not thread safe.
+ */
+package com.kurtlemon.doggo3;
+
+public class WalkTrajectory {
+    // How far the simplified path may be from a fix, to begin with, in meters.
+    public static final double DEFAULT_TOLERANCE_METERS = 5;
+
+    // Most points kept, and the number room is made for at first.
+    public static final int DEFAULT_MAX_POINTS = 4096;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Bytes each point takes in the columns.
+    private static final int BYTES_PER_POINT = 4 + 4 + 8;
+
+    // The points kept, as columns.
+    private int[] latitudes;
+    private int[] longitudes;
+    private long[] times;
+    private int count;
+    private final int maxPoints;
+
+    // The latest fix, which isn't kept until the fix after it shows whether the path turned
+    //  there.
+    private int pendingLatitude;
+    private int pendingLongitude;
+    private long pendingTime;
+    private boolean hasPending;
+
+    // How far the simplified path may be from a fix, which doubles each time the points are
+    //  simplified again.
+    private double toleranceMeters;
+
+    // The fixes the path can still go straight through from the last point kept.
+    private final PathSleeve sleeve;
+
+    // Number of fixes added.
+    private long fixCount;
+
+    /** Default Value Constructor.
+     *
+     */
+    public WalkTrajectory() {
+        this(DEFAULT_TOLERANCE_METERS, DEFAULT_MAX_POINTS);
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param toleranceMeters how far the simplified path may be from a fix
+     * @param maxPoints most points kept, at least 3
+     */
+    public WalkTrajectory(double toleranceMeters, int maxPoints) {
+        if(toleranceMeters <= 0){
+            throw new IllegalArgumentException("toleranceMeters must be positive");
+        }
+        if(maxPoints < 3){
+            throw new IllegalArgumentException("maxPoints must be at least 3");
+        }
+        this.toleranceMeters = toleranceMeters;
+        this.maxPoints = maxPoints;
+        int capacity = Math.min(INITIAL_CAPACITY, maxPoints);
+        latitudes = new int[capacity];
+        longitudes = new int[capacity];
+        times = new long[capacity];
+        sleeve = new PathSleeve();
+    }
+
+    /** Adds a fix to the walk.
+     *
+     * @param latitude
+     * @param longitude
+     * @param time in milliseconds since the epoch
+     */
+    public void add(double latitude, double longitude, long time) {
+        addFixed(toFixed(latitude), toFixed(longitude), time);
+        fixCount++;
+    }
+
+    /** Keeps the latest fix, so the walk ends where the walker stopped. Fixes can still be added
+     *      afterwards.
+     *
+     */
+    public void finish() {
+        if(hasPending){
+            keep(pendingLatitude, pendingLongitude, pendingTime);
+            hasPending = false;
+        }
+    }
+
+    /** Returns the number of points in the walk, including the latest fix.
+     *
+     * @return
+     */
+    public int size() {
+        return hasPending ? count + 1 : count;
+    }
+
+    /** Returns the latitude of a point.
+     *
+     * @param index
+     * @return
+     */
+    public double getLatitude(int index) {
+        return fromFixed(index == count && hasPending ? pendingLatitude : latitudes[check(index)]);
+    }
+
+    /** Returns the longitude of a point.
+     *
+     * @param index
+     * @return
+     */
+    public double getLongitude(int index) {
+        return fromFixed(index == count && hasPending ? pendingLongitude
+                : longitudes[check(index)]);
+    }
+
+    /** Returns the time of a point, in milliseconds since the epoch.
+     *
+     * @param index
+     * @return
+     */
+    public long getTime(int index) {
+        return index == count && hasPending ? pendingTime : times[check(index)];
+    }
+
+    /** Returns the number of fixes added, before simplifying.
+     *
+     * @return
+     */
+    public long getFixCount() {
+        return fixCount;
+    }
+
+    /** Returns how far the simplified path may be from the line through each stretch of fixes
+     *      it replaced. Points simplified again may be up to twice this from the fixes.
+     *
+     * @return
+     */
+    public double getToleranceMeters() {
+        return toleranceMeters;
+    }
+
+    /** Returns the bytes the columns take up, which is never more than the most points kept
+     *      allow.
+     *
+     * @return
+     */
+    public long getMemoryBytes() {
+        return (long) latitudes.length * BYTES_PER_POINT;
+    }
+
+    /** Adds a point in fixed point units.
+     *
+     * @param latitude
+     * @param longitude
+     * @param time
+     */
+    private void addFixed(int latitude, int longitude, long time) {
+        if(count == 0 && !hasPending){
+            keep(latitude, longitude, time);
+            return;
+        }
+        if(hasPending && !sleeve.extend(latitude, longitude)){
+            // The path turned at the pending fix; it becomes the start of the next stretch.
+            keep(pendingLatitude, pendingLongitude, pendingTime);
+            sleeve.extend(latitude, longitude);
+        }
+        pendingLatitude = latitude;
+        pendingLongitude = longitude;
+        pendingTime = time;
+        hasPending = true;
+    }
+
+    /** Keeps a point as it is, without simplifying, as when reading a saved walk back.
+     *
+     * @param latitude in fixed point units
+     * @param longitude in fixed point units
+     * @param time
+     */
+    void restore(int latitude, int longitude, long time) {
+        finish();
+        keep(latitude, longitude, time);
+    }
+
+    /** Sets the number of fixes added, as when reading a saved walk back.
+     *
+     * @param fixCount
+     */
+    void setFixCount(long fixCount) {
+        this.fixCount = fixCount;
+    }
+
+    /** Keeps a point, and starts the next stretch of the path there.
+     *
+     * @param latitude
+     * @param longitude
+     * @param time
+     */
+    private void keep(int latitude, int longitude, long time) {
+        if(count == maxPoints){
+            simplifyAgain();
+        }
+        if(count == latitudes.length){
+            grow();
+        }
+        latitudes[count] = latitude;
+        longitudes[count] = longitude;
+        times[count] = time;
+        count++;
+        sleeve.start(latitude, longitude, toleranceMeters);
+    }
+
+    /** Makes room by simplifying the points kept with twice the tolerance, as many times as it
+     *      takes to free at least one.
+     *
+     */
+    private void simplifyAgain() {
+        while(count == maxPoints){
+            toleranceMeters *= 2;
+            sleeve.start(latitudes[0], longitudes[0], toleranceMeters);
+            sleeve.extend(latitudes[1], longitudes[1]);
+            int kept = 1;
+            for(int i = 1; i < count - 1; i++){
+                if(!sleeve.extend(latitudes[i + 1], longitudes[i + 1])){
+                    // Keep the turn. Nothing after i has been overwritten, since kept <= i.
+                    latitudes[kept] = latitudes[i];
+                    longitudes[kept] = longitudes[i];
+                    times[kept] = times[i];
+                    kept++;
+                    sleeve.start(latitudes[i], longitudes[i], toleranceMeters);
+                    sleeve.extend(latitudes[i + 1], longitudes[i + 1]);
+                }
+            }
+            // The last point is where the current stretch starts, so it always stays.
+            latitudes[kept] = latitudes[count - 1];
+            longitudes[kept] = longitudes[count - 1];
+            times[kept] = times[count - 1];
+            count = kept + 1;
+        }
+    }
+
+    /** Doubles the room in the columns, up to the most points kept.
+     *
+     */
+    private void grow() {
+        int capacity = Math.min(latitudes.length * 2, maxPoints);
+        int[] newLatitudes = new int[capacity];
+        int[] newLongitudes = new int[capacity];
+        long[] newTimes = new long[capacity];
+        System.arraycopy(latitudes, 0, newLatitudes, 0, count);
+        System.arraycopy(longitudes, 0, newLongitudes, 0, count);
+        System.arraycopy(times, 0, newTimes, 0, count);
+        latitudes = newLatitudes;
+        longitudes = newLongitudes;
+        times = newTimes;
+    }
+
+    /** Checks that an index is of a point kept.
+     *
+     * @param index
+     * @return the index
+     */
+    private int check(int index) {
+        if(index < 0 || index >= count){
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        return index;
+    }
+
+    /** Returns a coordinate in fixed point units.
+     *
+     * @param degrees
+     * @return
+     */
+    static int toFixed(double degrees) {
+        return (int) Math.round(degrees * CompactLocationCodec.UNITS_PER_DEGREE);
+    }
+
+    /** Returns a coordinate in degrees.
+     *
+     * @param fixed
+     * @return
+     */
+    static double fromFixed(int fixed) {
+        return fixed / CompactLocationCodec.UNITS_PER_DEGREE;
+    }
+}
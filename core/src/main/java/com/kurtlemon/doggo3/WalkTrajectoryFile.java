@@ -0,0 +1,145 @@
+/**
+ * WalkTrajectoryFile saves a finished walk to a small binary file on the device. The first point
+ *  is written whole and each point after it as the change from the one before, in variable length
+ *  integers, so a point on foot usually takes 5 to 7 bytes. Files are written to a temporary file
+ *  and renamed into place, so a reader never sees half a walk.
+ */
+package com.kurtlemon.doggo3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class WalkTrajectoryFile {
+    // Marks the start of a walk file, and the layout version.
+    private static final int MAGIC = 0x44475754;
+    private static final int FORMAT_VERSION = 1;
+
+    // Where the walk is kept.
+    private final File file;
+
+    /** Explicit Value Constructor.
+     *
+     * @param file
+     */
+    public WalkTrajectoryFile(File file) {
+        this.file = file;
+    }
+
+    /** Replaces the file with a walk.
+     *
+     * @param walkTrajectory
+     * @throws IOException
+     */
+    public void write(WalkTrajectory walkTrajectory) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temporary)));
+        try{
+            int size = walkTrajectory.size();
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeDouble(walkTrajectory.getToleranceMeters());
+            out.writeLong(walkTrajectory.getFixCount());
+            out.writeInt(size);
+            int latitude = 0;
+            int longitude = 0;
+            long time = 0;
+            for(int i = 0; i < size; i++){
+                int nextLatitude = WalkTrajectory.toFixed(walkTrajectory.getLatitude(i));
+                int nextLongitude = WalkTrajectory.toFixed(walkTrajectory.getLongitude(i));
+                long nextTime = walkTrajectory.getTime(i);
+                writeVarLong(out, (long) nextLatitude - latitude);
+                writeVarLong(out, (long) nextLongitude - longitude);
+                writeVarLong(out, nextTime - time);
+                latitude = nextLatitude;
+                longitude = nextLongitude;
+                time = nextTime;
+            }
+        }finally{
+            out.close();
+        }
+        if(!temporary.renameTo(file)){
+            // Some file systems won't rename over an existing file.
+            file.delete();
+            if(!temporary.renameTo(file)){
+                throw new IOException("Could not replace " + file);
+            }
+        }
+    }
+
+    /** Reads the walk.
+     *
+     * @return
+     * @throws IOException if the file is missing, damaged, or not a walk
+     */
+    public WalkTrajectory read() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try{
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+                throw new IOException(file + " is not a walk");
+            }
+            double toleranceMeters = in.readDouble();
+            long fixCount = in.readLong();
+            int size = in.readInt();
+            if(size < 0 || !(toleranceMeters > 0)){
+                throw new IOException(file + " is damaged");
+            }
+            WalkTrajectory walkTrajectory = new WalkTrajectory(toleranceMeters,
+                    Math.max(size, WalkTrajectory.DEFAULT_MAX_POINTS));
+            int latitude = 0;
+            int longitude = 0;
+            long time = 0;
+            for(int i = 0; i < size; i++){
+                latitude += (int) readVarLong(in);
+                longitude += (int) readVarLong(in);
+                time += readVarLong(in);
+                walkTrajectory.restore(latitude, longitude, time);
+            }
+            walkTrajectory.setFixCount(fixCount);
+            return walkTrajectory;
+        }finally{
+            in.close();
+        }
+    }
+
+    /** Writes a number in as few bytes as its size needs, seven bits to a byte, with small
+     *      negative numbers taking as few bytes as small positive ones.
+     *
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while((zigZag & ~0x7fL) != 0){
+            out.writeByte((int) ((zigZag & 0x7f) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+
+    /** Reads a number written by writeVarLong().
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigZag = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = in.readUnsignedByte();
+            zigZag |= (long) (b & 0x7f) << shift;
+            if((b & 0x80) == 0){
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IOException("Number longer than 64 bits");
+    }
+}
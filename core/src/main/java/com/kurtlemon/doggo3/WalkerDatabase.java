@@ -0,0 +1,62 @@
+/**
+ * WalkerDatabase is the part of the realtime database the app uses: listening to the walkers under
+ *  a path and writing several paths at once. It lets the map logic run against Firebase or a local
+ *  stand-in.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.Map;
+
+public interface WalkerDatabase {
+
+    /**
+     * Listener is told about each walker directly under the path it listens to. Every walker
+     *  already there is reported as changed when the listener is added.
+     */
+    interface Listener {
+        void onWalkerChanged(DogLocation dogLocation);
+
+        void onWalkerRemoved(DogLocation dogLocation);
+    }
+
+    /** Starts listening to the walkers directly under a path.
+     *
+     * @param path
+     * @param listener
+     */
+    void addListener(String path, Listener listener);
+
+    /** Stops listening to a path.
+     *
+     * @param path
+     * @param listener
+     */
+    void removeListener(String path, Listener listener);
+
+    /** Writes every path in the map at once. A null value deletes the path.
+     *
+     * @param values
+     */
+    void update(Map<String, Object> values);
+
+    /** Has the database write every path in the map at once if this client loses its connection,
+     *      so a walker that crashes or drops off the network doesn't stay on the map. Replaces
+     *      nothing queued before; call cancelOnDisconnect() first to do that.
+     *
+     * @param values
+     */
+    void updateOnDisconnect(Map<String, Object> values);
+
+    /** Cancels every write queued by updateOnDisconnect().
+     *
+     */
+    void cancelOnDisconnect();
+
+    /** Returns the number of times this client has connected to the database. The database makes
+     *      the writes queued by updateOnDisconnect() when the connection drops and then forgets
+     *      them, so they have to be queued again whenever this changes.
+     *
+     * @return
+     */
+    long getConnectionCount();
+}
@@ -0,0 +1,259 @@
+/**
+ * WalkerMap is what the dog petter's map knows about the walkers: the latest location of each,
+ *  the clusters built from them, the walkers nearest the petter, their recent trails if kept,
+ *  and when each should be dropped if it isn't seen again. Updates from the database are applied
+ *  here before anything is drawn. Not thread safe; meant to be used from a single background
+ *  thread.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+public class WalkerMap {
+    // Walkers are dropped once they haven't been seen for this long, in case they crashed or lost
+    //  their connection before removing themselves.
+    public static final long DEFAULT_PRESENCE_TTL_MILLIS = 2 * 60 * 1000;
+
+    // How often expire() is meant to be called, and the number of slots in the wheel of
+    //  deadlines, enough to cover the default time to live in one lap.
+    public static final long PRESENCE_SWEEP_MILLIS = 5000;
+    private static final int PRESENCE_WHEEL_SLOTS = 64;
+
+    // The latest location of each walker, and the clusters built from them.
+    private final DogLocationStore dogLocationStore;
+    private final ClusterEngine clusterEngine;
+
+    // The walkers nearest the petter, kept up to date as walkers move.
+    private final NearestWalkers nearestWalkers;
+
+    // Where each walker has been lately, or null if trails aren't kept.
+    private WalkerTrails walkerTrails;
+
+    // How long a walker is kept without being seen, and each walker's deadline.
+    private final long presenceTtlMillis;
+    private final TimingWheel presenceWheel;
+
+    // Reused by expire().
+    private final ArrayList<String> expiredIds;
+
+    /** Default Value Constructor.
+     *
+     */
+    public WalkerMap() {
+        this(DEFAULT_PRESENCE_TTL_MILLIS);
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param presenceTtlMillis
+     */
+    public WalkerMap(long presenceTtlMillis) {
+        this.presenceTtlMillis = presenceTtlMillis;
+        dogLocationStore = new DogLocationStore();
+        clusterEngine = new ClusterEngine();
+        nearestWalkers = new NearestWalkers();
+        presenceWheel = new TimingWheel(PRESENCE_SWEEP_MILLIS, PRESENCE_WHEEL_SLOTS);
+        expiredIds = new ArrayList<>();
+    }
+
+    /** Applies a walker's location, unless it is out of date or the walker hasn't been seen for
+     *      too long.
+     *
+     * @param dogLocation
+     * @param nowMillis wall clock time
+     * @return true if the location was stored and the clusters changed
+     */
+    public boolean apply(DogLocation dogLocation, long nowMillis) {
+        long deadline = presenceDeadline(dogLocation, nowMillis);
+        return deadline > nowMillis && store(dogLocation, deadline);
+    }
+
+    /** Applies a walker's location from a saved snapshot, however long ago the walker was seen,
+     *      unless it is out of date. The walker gets a full time to live from now, so it stays
+     *      until the database confirms it or the caller removes it.
+     *
+     * @param dogLocation
+     * @param nowMillis wall clock time
+     * @return true if the location was stored and the clusters changed
+     */
+    public boolean applyProvisional(DogLocation dogLocation, long nowMillis) {
+        return store(dogLocation, nowMillis + presenceTtlMillis);
+    }
+
+    /** Applies every location in a snapshot of walkers.
+     *
+     * @param dogLocations
+     * @param nowMillis
+     * @return the number of locations applied
+     */
+    public int applySnapshot(Collection<DogLocation> dogLocations, long nowMillis) {
+        int count = 0;
+        for(DogLocation dogLocation : dogLocations){
+            if(apply(dogLocation, nowMillis)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Removes a walker, unless a newer location than the given version has been applied.
+     *
+     * @param id
+     * @param version
+     * @return true if the walker was removed
+     */
+    public boolean remove(String id, long version) {
+        if(dogLocationStore.remove(id, version) == null){
+            return false;
+        }
+        clusterEngine.remove(id);
+        nearestWalkers.remove(id);
+        if(walkerTrails != null){
+            walkerTrails.remove(id);
+        }
+        presenceWheel.cancel(id);
+        return true;
+    }
+
+    /** Removes every walker that hasn't been seen within the time to live. Only the walkers due
+     *      since the last call are looked at.
+     *
+     * @param nowMillis
+     * @param removed the IDs of the walkers removed are added here, if not null
+     * @return the number of walkers removed
+     */
+    public int expire(long nowMillis, Collection<String> removed) {
+        expiredIds.clear();
+        presenceWheel.advance(nowMillis, expiredIds);
+        int count = 0;
+        for(String id : expiredIds){
+            if(dogLocationStore.remove(id) != null){
+                clusterEngine.remove(id);
+                nearestWalkers.remove(id);
+                if(walkerTrails != null){
+                    walkerTrails.remove(id);
+                }
+                count++;
+                if(removed != null){
+                    removed.add(id);
+                }
+            }
+        }
+        expiredIds.clear();
+        return count;
+    }
+
+    /** Emits the clusters in view at a zoom level, as ClusterEngine.emit() does.
+     *
+     * @param mapViewport
+     * @param cameraZoom
+     * @param full
+     * @param out
+     */
+    public void emit(MapViewport mapViewport, float cameraZoom, boolean full, ClusterDelta out) {
+        clusterEngine.setZoom(cameraZoom);
+        clusterEngine.emit(mapViewport, full, out);
+    }
+
+    /** Keeps a trail for each walker from now on, or stops keeping them.
+     *
+     * @param walkerTrails the trails, or null to stop
+     */
+    public void setWalkerTrails(WalkerTrails walkerTrails) {
+        this.walkerTrails = walkerTrails;
+    }
+
+    /** Emits the trails in view, as WalkerTrails.emit() does. Nothing is emitted if trails
+     *      aren't kept.
+     *
+     * @param mapViewport
+     * @param full
+     * @param out
+     */
+    public void emitTrails(MapViewport mapViewport, boolean full, TrailDelta out) {
+        if(walkerTrails == null){
+            out.clear();
+            return;
+        }
+        walkerTrails.emit(mapViewport, full, out);
+    }
+
+    /** Returns the walkers nearest the petter. Set where the petter is with
+     *      NearestWalkers.setOrigin().
+     *
+     * @return
+     */
+    public NearestWalkers getNearestWalkers() {
+        return nearestWalkers;
+    }
+
+    /** Returns whether a walker was last seen too long ago to show.
+     *
+     * @param dogLocation
+     * @param nowMillis
+     * @return
+     */
+    public boolean isStale(DogLocation dogLocation, long nowMillis) {
+        return presenceDeadline(dogLocation, nowMillis) <= nowMillis;
+    }
+
+    /** Returns the latest location of a walker.
+     *
+     * @param id
+     * @return the location, or null if the walker isn't known
+     */
+    public DogLocation get(String id) {
+        return dogLocationStore.get(id);
+    }
+
+    /** Adds the latest location of every walker to out.
+     *
+     * @param out
+     * @return the number of walkers added
+     */
+    public int snapshot(Collection<DogLocation> out) {
+        return dogLocationStore.snapshot(out);
+    }
+
+    /** Returns the number of walkers known.
+     *
+     * @return
+     */
+    public int size() {
+        return dogLocationStore.size();
+    }
+
+    /** Stores a walker's location and schedules when it should be dropped.
+     *
+     * @param dogLocation
+     * @param deadline
+     * @return true if the location was stored and the clusters changed
+     */
+    private boolean store(DogLocation dogLocation, long deadline) {
+        if(!dogLocationStore.upsert(dogLocation)){
+            return false;
+        }
+        clusterEngine.update(dogLocation.getId(), dogLocation.getLatitude(),
+                dogLocation.getLongitude(), dogLocation.getTime());
+        nearestWalkers.put(dogLocation);
+        if(walkerTrails != null){
+            walkerTrails.add(dogLocation);
+        }
+        presenceWheel.schedule(dogLocation.getId(), deadline);
+        return true;
+    }
+
+    /** Returns when a walker should be dropped if it isn't seen again. Locations without a time,
+     *      or from a clock ahead of this one, count as seen now.
+     *
+     * @param dogLocation
+     * @param nowMillis
+     * @return
+     */
+    private long presenceDeadline(DogLocation dogLocation, long nowMillis) {
+        long lastSeen = dogLocation.getTime() > 0
+                ? Math.min(dogLocation.getTime(), nowMillis) : nowMillis;
+        return lastSeen + presenceTtlMillis;
+    }
+}
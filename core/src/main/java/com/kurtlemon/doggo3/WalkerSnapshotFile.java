@@ -0,0 +1,127 @@
+/**
+ * WalkerSnapshotFile saves the last known walker locations to a small binary file on the device,
+ *  so the map can show them as soon as it opens instead of waiting for the database. Files are
+ *  written to a temporary file and renamed into place, so a reader never sees half a snapshot.
+ */
+package com.kurtlemon.doggo3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+public class WalkerSnapshotFile {
+    // Marks the start of a snapshot file, and the layout version.
+    private static final int MAGIC = 0x444f4753;
+    private static final int FORMAT_VERSION = 1;
+
+    // Most walkers a snapshot file is trusted to hold.
+    private static final int MAX_WALKERS = 1000000;
+
+    // Where the snapshot is kept.
+    private final File file;
+
+    /** Explicit Value Constructor.
+     *
+     * @param file
+     */
+    public WalkerSnapshotFile(File file) {
+        this.file = file;
+    }
+
+    /** Replaces the snapshot with the given walkers.
+     *
+     * @param dogLocations
+     * @param savedAt when the snapshot was taken, in milliseconds since the epoch
+     * @throws IOException
+     */
+    public void write(Collection<DogLocation> dogLocations, long savedAt) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temporary)));
+        try{
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(savedAt);
+            out.writeInt(dogLocations.size());
+            for(DogLocation dogLocation : dogLocations){
+                out.writeUTF(dogLocation.getId());
+                out.writeDouble(dogLocation.getLatitude());
+                out.writeDouble(dogLocation.getLongitude());
+                out.writeLong(dogLocation.getTime());
+            }
+        }finally{
+            out.close();
+        }
+        if(!temporary.renameTo(file)){
+            // Some file systems won't rename over an existing file.
+            file.delete();
+            if(!temporary.renameTo(file)){
+                throw new IOException("Could not replace " + file);
+            }
+        }
+    }
+
+    /** Reads the snapshot into out, unless it is missing, unreadable, or older than maxAge.
+     *
+     * @param now in milliseconds since the epoch
+     * @param maxAge
+     * @param out
+     * @return the number of walkers read
+     */
+    public int read(long now, long maxAge, Collection<DogLocation> out) {
+        if(!file.exists()){
+            return 0;
+        }
+        DataInputStream in = null;
+        try{
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+                return 0;
+            }
+            long savedAt = in.readLong();
+            if(now - savedAt > maxAge){
+                return 0;
+            }
+            int count = in.readInt();
+            if(count < 0 || count > MAX_WALKERS){
+                return 0;
+            }
+            // Nothing is handed out unless the whole snapshot reads.
+            ArrayList<DogLocation> read = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                String id = in.readUTF();
+                double latitude = in.readDouble();
+                double longitude = in.readDouble();
+                long time = in.readLong();
+                read.add(new DogLocation(latitude, longitude, id, time));
+            }
+            out.addAll(read);
+            return count;
+        }catch(IOException e){
+            // A damaged snapshot is no worse than none at all.
+            return 0;
+        }finally{
+            if(in != null){
+                try{
+                    in.close();
+                }catch(IOException e){
+                    // Nothing more to do.
+                }
+            }
+        }
+    }
+
+    /** Deletes the snapshot.
+     *
+     */
+    public void delete() {
+        file.delete();
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * WalkerSubscriptions shares database listeners between the parts of the app that listen to the
+ *  same paths, and ties them to the lifecycle of whatever opened them. Each component listens
+ *  through its own Scope, and however many scopes listen to a path the database only has one
+ *  listener on it, counted by reference and removed with the last. The walkers under each path
+ *  are remembered, so a scope that starts listening to a path already listened to is told about
+ *  them without asking the database again. A scope can be paused while what it draws isn't
+ *  visible: the latest change to each walker is held and passed on when it resumes, and closing
+ *  it removes every listener it added. Not thread safe; meant to be used from the thread the
+ *  database calls listeners on.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class WalkerSubscriptions {
+
+    /**
+     * Scope is one component's view of the database. Listeners added through it share the
+     *  database's listeners with every other scope, and are all removed when it is closed.
+     */
+    public final class Scope implements WalkerDatabase {
+        // Listeners added through the scope.
+        private final ArrayList<Registration> registrations;
+
+        // Whether walkers are being held instead of passed on, and whether the scope is closed.
+        private boolean paused;
+        private boolean closed;
+
+        /** Default Value Constructor.
+         *
+         */
+        private Scope() {
+            registrations = new ArrayList<>();
+        }
+
+        /** Starts listening to the walkers directly under a path, reporting every walker already
+         *      there.
+         *
+         * @param path
+         * @param listener
+         */
+        @Override
+        public void addListener(String path, Listener listener) {
+            if(closed){
+                throw new IllegalStateException("Scope is closed");
+            }
+            for(Registration registration : registrations){
+                if(registration.path.equals(path) && registration.listener == listener){
+                    return;
+                }
+            }
+            Registration registration = new Registration(this, path, listener);
+            registrations.add(registration);
+            subscribe(registration);
+        }
+
+        /** Stops listening to a path.
+         *
+         * @param path
+         * @param listener
+         */
+        @Override
+        public void removeListener(String path, Listener listener) {
+            for(int i = 0; i < registrations.size(); i++){
+                Registration registration = registrations.get(i);
+                if(registration.path.equals(path) && registration.listener == listener){
+                    registrations.remove(i);
+                    unsubscribe(registration);
+                    return;
+                }
+            }
+        }
+
+        /** Writes every path in the map at once.
+         *
+         * @param values
+         */
+        @Override
+        public void update(Map<String, Object> values) {
+            walkerDatabase.update(values);
+        }
+
+        /** Queues writes for when this client disconnects.
+         *
+         * @param values
+         */
+        @Override
+        public void updateOnDisconnect(Map<String, Object> values) {
+            walkerDatabase.updateOnDisconnect(values);
+        }
+
+        /** Cancels every queued disconnect write.
+         *
+         */
+        @Override
+        public void cancelOnDisconnect() {
+            walkerDatabase.cancelOnDisconnect();
+        }
+
+        /** Returns the number of times the client has connected to the database.
+         *
+         * @return
+         */
+        @Override
+        public long getConnectionCount() {
+            return walkerDatabase.getConnectionCount();
+        }
+
+        /** Holds walkers instead of passing them on, until resume() is called.
+         *
+         */
+        public void pause() {
+            paused = true;
+        }
+
+        /** Passes on the latest change to each walker held while paused, and passes walkers on
+         *      as they come again.
+         *
+         */
+        public void resume() {
+            if(!paused){
+                return;
+            }
+            paused = false;
+            // A listener may add or remove listeners as it is told about walkers.
+            for(Registration registration : registrations.toArray(
+                    new Registration[registrations.size()])){
+                registration.flush();
+            }
+        }
+
+        /** Returns whether walkers are being held.
+         *
+         * @return
+         */
+        public boolean isPaused() {
+            return paused;
+        }
+
+        /** Removes every listener added through the scope. The scope can't be used afterwards.
+         *
+         */
+        public void close() {
+            closed = true;
+            for(Registration registration : registrations){
+                unsubscribe(registration);
+            }
+            registrations.clear();
+        }
+    }
+
+    /**
+     * Registration is one scope's listener on a path, with the changes held for it while the
+     *  scope is paused.
+     */
+    private static final class Registration {
+        final Scope scope;
+        final String path;
+        final WalkerDatabase.Listener listener;
+        boolean active = true;
+
+        // Latest change and removal held for each walker while paused; made when first needed.
+        LinkedHashMap<String, DogLocation> heldChanges;
+        LinkedHashMap<String, DogLocation> heldRemovals;
+
+        Registration(Scope scope, String path, WalkerDatabase.Listener listener) {
+            this.scope = scope;
+            this.path = path;
+            this.listener = listener;
+        }
+
+        /** Passes on a walker that changed, or holds it if the scope is paused.
+         *
+         * @param dogLocation
+         */
+        void changed(DogLocation dogLocation) {
+            if(!scope.paused){
+                listener.onWalkerChanged(dogLocation);
+                return;
+            }
+            if(heldChanges == null){
+                heldChanges = new LinkedHashMap<>();
+                heldRemovals = new LinkedHashMap<>();
+            }
+            heldRemovals.remove(dogLocation.getId());
+            heldChanges.put(dogLocation.getId(), dogLocation);
+        }
+
+        /** Passes on a walker that was removed, or holds it if the scope is paused.
+         *
+         * @param dogLocation
+         */
+        void removed(DogLocation dogLocation) {
+            if(!scope.paused){
+                listener.onWalkerRemoved(dogLocation);
+                return;
+            }
+            if(heldChanges == null){
+                heldChanges = new LinkedHashMap<>();
+                heldRemovals = new LinkedHashMap<>();
+            }
+            heldChanges.remove(dogLocation.getId());
+            heldRemovals.put(dogLocation.getId(), dogLocation);
+        }
+
+        /** Passes on everything held, removals first.
+         *
+         */
+        void flush() {
+            if(heldChanges == null){
+                return;
+            }
+            LinkedHashMap<String, DogLocation> removals = heldRemovals;
+            LinkedHashMap<String, DogLocation> changes = heldChanges;
+            heldRemovals = null;
+            heldChanges = null;
+            for(DogLocation dogLocation : removals.values()){
+                if(active){
+                    listener.onWalkerRemoved(dogLocation);
+                }
+            }
+            for(DogLocation dogLocation : changes.values()){
+                if(active){
+                    listener.onWalkerChanged(dogLocation);
+                }
+            }
+        }
+    }
+
+    /**
+     * PathListener is the one database listener on a path. It remembers the walkers under the
+     *  path and passes each change on to every registration.
+     */
+    private static final class PathListener implements WalkerDatabase.Listener {
+        final String path;
+        final HashMap<String, DogLocation> walkers = new HashMap<>();
+        final ArrayList<Registration> registrations = new ArrayList<>();
+
+        // The registrations as of the last change, so they can be told about walkers while
+        //  registrations come and go.
+        Registration[] delivering = new Registration[0];
+
+        PathListener(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void onWalkerChanged(DogLocation dogLocation) {
+            walkers.put(dogLocation.getId(), dogLocation);
+            for(Registration registration : delivering){
+                if(registration.active){
+                    registration.changed(dogLocation);
+                }
+            }
+        }
+
+        @Override
+        public void onWalkerRemoved(DogLocation dogLocation) {
+            walkers.remove(dogLocation.getId());
+            for(Registration registration : delivering){
+                if(registration.active){
+                    registration.removed(dogLocation);
+                }
+            }
+        }
+    }
+
+    // Where the shared listeners are added.
+    private final WalkerDatabase walkerDatabase;
+
+    // The database listener on each path listened to.
+    private final HashMap<String, PathListener> pathListeners;
+
+    /** Explicit Value Constructor.
+     *
+     * @param walkerDatabase
+     */
+    public WalkerSubscriptions(WalkerDatabase walkerDatabase) {
+        this.walkerDatabase = walkerDatabase;
+        pathListeners = new HashMap<>();
+    }
+
+    /** Opens a scope for a component to listen through.
+     *
+     * @return
+     */
+    public Scope openScope() {
+        return new Scope();
+    }
+
+    /** Returns the number of listeners on the database, one for each path listened to.
+     *
+     * @return
+     */
+    public int getListenerCount() {
+        return pathListeners.size();
+    }
+
+    /** Returns the number of listeners added through every scope.
+     *
+     * @return
+     */
+    public int getRegistrationCount() {
+        int count = 0;
+        for(PathListener pathListener : pathListeners.values()){
+            count += pathListener.registrations.size();
+        }
+        return count;
+    }
+
+    /** Adds a registration to the listener on its path, adding that listener to the database if
+     *      it is the first, or else telling the registration about the walkers already known.
+     *
+     * @param registration
+     */
+    private void subscribe(Registration registration) {
+        PathListener pathListener = pathListeners.get(registration.path);
+        boolean first = pathListener == null;
+        if(first){
+            pathListener = new PathListener(registration.path);
+            pathListeners.put(registration.path, pathListener);
+        }
+        pathListener.registrations.add(registration);
+        pathListener.delivering = pathListener.registrations.toArray(
+                new Registration[pathListener.registrations.size()]);
+        if(first){
+            // The database reports the walkers already there itself.
+            walkerDatabase.addListener(registration.path, pathListener);
+        }else{
+            for(DogLocation dogLocation : new ArrayList<>(pathListener.walkers.values())){
+                if(registration.active){
+                    registration.changed(dogLocation);
+                }
+            }
+        }
+    }
+
+    /** Removes a registration from the listener on its path, removing that listener from the
+     *      database if it was the last.
+     *
+     * @param registration
+     */
+    private void unsubscribe(Registration registration) {
+        registration.active = false;
+        PathListener pathListener = pathListeners.get(registration.path);
+        if(pathListener == null || !pathListener.registrations.remove(registration)){
+            return;
+        }
+        if(pathListener.registrations.isEmpty()){
+            pathListeners.remove(registration.path);
+            walkerDatabase.removeListener(registration.path, pathListener);
+        }else{
+            pathListener.delivering = pathListener.registrations.toArray(
+                    new Registration[pathListener.registrations.size()]);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * WalkerTrails keeps where each walker has been over the last few minutes, so the petter's map can
+ *  draw a trail behind them. Each trail is a ring of a fixed number of points in primitive
+ *  columns, simplified as fixes come in so a walker going straight only moves the end of the
+ *  trail. The number of trails is capped; past it, the trail of a walker that is off screen and
+ *  hasn't moved for the longest is reused, and only if every trail is on screen is one that is
+ *  showing taken. Passes only report what changed since the last one, as a TrailDelta. Not thread
+ *  safe; meant to be used from a single background thread.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class WalkerTrails {
+    // How much of each walker's path is kept.
+    public static final long DEFAULT_WINDOW_MILLIS = 5 * 60 * 1000;
+
+    // Most points in a trail, and most trails, which together cap memory at about 1MB.
+    public static final int DEFAULT_POINTS_PER_TRAIL = 32;
+    public static final int DEFAULT_MAX_TRAILS = 2048;
+
+    // How far a trail may be from the fixes it was simplified from, in meters.
+    public static final double DEFAULT_TOLERANCE_METERS = 3;
+
+    // Bytes each point takes in the columns.
+    private static final int BYTES_PER_POINT = 4 + 4 + 8;
+
+    /**
+     * Trail is one walker's recent points, oldest first from head, and what the map was last
+     *  sent of them.
+     */
+    private static final class Trail {
+        String id;
+        final int[] latitudes;
+        final int[] longitudes;
+        final long[] times;
+        int head;
+        int count;
+
+        // The last point is only where the walker is for now; the sleeve starts at the point
+        //  before it and says whether the next fix can replace it.
+        final PathSleeve sleeve;
+
+        // Points dropped from the start of what the map has since the last pass, how many of
+        //  the points after them the map still has right, and whether the trail is drawn.
+        int trimmed;
+        int stable;
+        boolean drawn;
+
+        Trail(int capacity) {
+            latitudes = new int[capacity];
+            longitudes = new int[capacity];
+            times = new long[capacity];
+            sleeve = new PathSleeve();
+        }
+
+        /** Returns where in the columns a point is.
+         *
+         * @param index 0 for the oldest
+         * @return
+         */
+        int slot(int index) {
+            return (head + index) % latitudes.length;
+        }
+
+        /** Forgets every point, so the trail can be used for another walker.
+         *
+         * @param id
+         */
+        void reset(String id) {
+            this.id = id;
+            head = 0;
+            count = 0;
+            trimmed = 0;
+            stable = 0;
+            drawn = false;
+        }
+    }
+
+    // How much of each path is kept, and how closely.
+    private final long windowMillis;
+    private final int pointsPerTrail;
+    private final int maxTrails;
+    private final double toleranceMeters;
+
+    // Trails by walker ID, the one updated longest ago first.
+    private final LinkedHashMap<String, Trail> trails;
+
+    // Trails changed since the last pass, and drawn trails that have since been dropped.
+    private final HashSet<Trail> dirtyTrails;
+    private final ArrayList<String> droppedIds;
+
+    /** Default Value Constructor.
+     *
+     */
+    public WalkerTrails() {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_POINTS_PER_TRAIL, DEFAULT_MAX_TRAILS,
+                DEFAULT_TOLERANCE_METERS);
+    }
+
+    /** Explicit Value Constructor.
+     *
+     * @param windowMillis how much of each walker's path is kept
+     * @param pointsPerTrail most points in a trail, at least 2
+     * @param maxTrails most trails kept
+     * @param toleranceMeters how far a trail may be from the fixes it was simplified from
+     */
+    public WalkerTrails(long windowMillis, int pointsPerTrail, int maxTrails,
+                        double toleranceMeters) {
+        if(pointsPerTrail < 2 || maxTrails < 1){
+            throw new IllegalArgumentException("Trails need at least 2 points and 1 trail");
+        }
+        this.windowMillis = windowMillis;
+        this.pointsPerTrail = pointsPerTrail;
+        this.maxTrails = maxTrails;
+        this.toleranceMeters = toleranceMeters;
+        trails = new LinkedHashMap<>(16, 0.75f, true);
+        dirtyTrails = new HashSet<>();
+        droppedIds = new ArrayList<>();
+    }
+
+    /** Adds a walker's latest fix to the end of their trail. Fixes older than the end of the
+     *      trail are ignored.
+     *
+     * @param dogLocation
+     */
+    public void add(DogLocation dogLocation) {
+        int latitude = WalkTrajectory.toFixed(dogLocation.getLatitude());
+        int longitude = WalkTrajectory.toFixed(dogLocation.getLongitude());
+        long time = dogLocation.getTime();
+        Trail trail = trails.get(dogLocation.getId());
+        if(trail == null){
+            trail = newTrail(dogLocation.getId());
+        }else if(trail.count > 0){
+            long lastTime = trail.times[trail.slot(trail.count - 1)];
+            if(time != 0 && time <= lastTime){
+                return;
+            }
+        }
+
+        if(trail.count >= 2 && trail.sleeve.extend(latitude, longitude)){
+            // Still going straight, so the fix replaces the end of the trail.
+            trail.count--;
+            trail.stable = Math.min(trail.stable, trail.count);
+        }else if(trail.count >= 1){
+            int last = trail.slot(trail.count - 1);
+            trail.sleeve.start(trail.latitudes[last], trail.longitudes[last], toleranceMeters);
+            trail.sleeve.extend(latitude, longitude);
+        }
+        if(trail.count == pointsPerTrail){
+            trimHead(trail);
+        }
+        int slot = trail.slot(trail.count);
+        trail.latitudes[slot] = latitude;
+        trail.longitudes[slot] = longitude;
+        trail.times[slot] = time;
+        trail.count++;
+
+        // Drop the points that have aged out, keeping at least the end of the trail.
+        if(time != 0){
+            while(trail.count > 2 && trail.times[trail.head] != 0
+                    && trail.times[trail.head] < time - windowMillis){
+                trimHead(trail);
+            }
+        }
+        dirtyTrails.add(trail);
+    }
+
+    /** Removes a walker's trail.
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        Trail trail = trails.remove(id);
+        if(trail != null){
+            drop(trail);
+        }
+    }
+
+    /** Removes every trail. The map is told to remove the ones drawn by the next pass.
+     *
+     */
+    public void clear() {
+        for(Trail trail : trails.values()){
+            drop(trail);
+        }
+        trails.clear();
+    }
+
+    /** Emits the trails of walkers in view that changed since the last pass, and the IDs of
+     *      drawn trails to remove. A full pass looks at every trail, as after the camera moves;
+     *      otherwise only the trails changed since the last pass are looked at.
+     *
+     * @param mapViewport
+     * @param full
+     * @param out
+     */
+    public void emit(MapViewport mapViewport, boolean full, TrailDelta out) {
+        out.clear();
+        out.getRemoved().addAll(droppedIds);
+        droppedIds.clear();
+        if(full){
+            for(Trail trail : trails.values()){
+                emitTrail(trail, mapViewport, out);
+            }
+        }else{
+            for(Trail trail : dirtyTrails){
+                emitTrail(trail, mapViewport, out);
+            }
+        }
+        dirtyTrails.clear();
+    }
+
+    /** Returns the number of trails kept.
+     *
+     * @return
+     */
+    public int size() {
+        return trails.size();
+    }
+
+    /** Returns the bytes the trails' points take up, which is never more than the most trails
+     *      allow.
+     *
+     * @return
+     */
+    public long getMemoryBytes() {
+        return (long) trails.size() * pointsPerTrail * BYTES_PER_POINT;
+    }
+
+    /** Adds the changes to a trail to a pass, if it is in view, or its removal if it was drawn
+     *      and no longer is.
+     *
+     * @param trail
+     * @param mapViewport
+     * @param out
+     */
+    private void emitTrail(Trail trail, MapViewport mapViewport, TrailDelta out) {
+        int last = trail.slot(trail.count - 1);
+        boolean visible = trail.count >= 2 && mapViewport.contains(
+                WalkTrajectory.fromFixed(trail.latitudes[last]),
+                WalkTrajectory.fromFixed(trail.longitudes[last]));
+        if(!visible){
+            if(trail.drawn){
+                out.getRemoved().add(trail.id);
+                trail.drawn = false;
+            }
+            return;
+        }
+        if(!trail.drawn){
+            // Drawn from scratch.
+            trail.trimmed = 0;
+            trail.stable = 0;
+        }else if(trail.trimmed == 0 && trail.stable == trail.count){
+            return;
+        }
+        int added = trail.count - trail.stable;
+        double[] latitudes = new double[added];
+        double[] longitudes = new double[added];
+        for(int i = 0; i < added; i++){
+            int slot = trail.slot(trail.stable + i);
+            latitudes[i] = WalkTrajectory.fromFixed(trail.latitudes[slot]);
+            longitudes[i] = WalkTrajectory.fromFixed(trail.longitudes[slot]);
+        }
+        out.getChanged().add(new TrailDelta.Change(trail.id, trail.trimmed, trail.stable,
+                latitudes, longitudes));
+        trail.drawn = true;
+        trail.trimmed = 0;
+        trail.stable = trail.count;
+    }
+
+    /** Drops the oldest point of a trail.
+     *
+     * @param trail
+     */
+    private void trimHead(Trail trail) {
+        trail.head = (trail.head + 1) % trail.latitudes.length;
+        trail.count--;
+        if(trail.stable > 0){
+            // The map has the point, so it has to drop it too.
+            trail.stable--;
+            trail.trimmed++;
+        }
+    }
+
+    /** Starts a trail for a walker, reusing an old trail if there are as many as allowed.
+     *
+     * @param id
+     * @return
+     */
+    private Trail newTrail(String id) {
+        Trail trail;
+        if(trails.size() < maxTrails){
+            trail = new Trail(pointsPerTrail);
+        }else{
+            trail = evict();
+        }
+        trail.reset(id);
+        trails.put(id, trail);
+        return trail;
+    }
+
+    /** Removes the trail to reuse for a new walker: the one off screen updated longest ago, or if
+     *      every trail is on screen, the one updated longest ago.
+     *
+     * @return
+     */
+    private Trail evict() {
+        Iterator<Trail> iterator = trails.values().iterator();
+        Trail oldest = null;
+        while(iterator.hasNext()){
+            Trail trail = iterator.next();
+            if(oldest == null){
+                oldest = trail;
+            }
+            if(!trail.drawn){
+                iterator.remove();
+                dirtyTrails.remove(trail);
+                return trail;
+            }
+        }
+        trails.remove(oldest.id);
+        drop(oldest);
+        return oldest;
+    }
+
+    /** Forgets a trail that has been removed, and has the next pass remove it from the map if it
+     *      is drawn.
+     *
+     * @param trail
+     */
+    private void drop(Trail trail) {
+        dirtyTrails.remove(trail);
+        if(trail.drawn){
+            droppedIds.add(trail.id);
+            trail.drawn = false;
+        }
+    }
+}
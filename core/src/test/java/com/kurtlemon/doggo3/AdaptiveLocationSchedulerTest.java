@@ -0,0 +1,87 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AdaptiveLocationScheduler.
+ */
+public class AdaptiveLocationSchedulerTest {
+    // About 1.1 meters of latitude.
+    private static final double METER = 0.00001;
+
+    private final TieredSchedulePolicy policy = TieredSchedulePolicy.forWalker();
+    private final ArrayList<LocationSchedule> changes = new ArrayList<>();
+    private final AdaptiveLocationScheduler scheduler = new AdaptiveLocationScheduler(policy,
+            new AdaptiveLocationScheduler.Listener() {
+                @Override
+                public void onScheduleChanged(LocationSchedule schedule) {
+                    changes.add(schedule);
+                }
+            });
+
+    @Test
+    public void walking_keepsMovingSchedule() throws Exception {
+        for(int i = 0; i < 120; i++){
+            scheduler.onFix(47.6670 + i * 1.3 * METER, -117.4020, i * 1000);
+        }
+
+        assertTrue(changes.isEmpty());
+        assertEquals(policy.initial(), scheduler.getSchedule());
+    }
+
+    @Test
+    public void standingStill_rampsDownAfterDwell() throws Exception {
+        for(int i = 0; i <= 20; i++){
+            scheduler.onFix(47.6670, -117.4020, i * 1000);
+        }
+        // Still on the moving schedule until the slower one has been chosen for 20 seconds.
+        assertTrue(changes.isEmpty());
+
+        for(int i = 21; i <= 120; i++){
+            scheduler.onFix(47.6670, -117.4020, i * 1000);
+        }
+
+        assertEquals(2, changes.size());
+        assertEquals(policy.choose(0, false), changes.get(0));
+        assertEquals(policy.choose(0, true), changes.get(1));
+        assertEquals(policy.choose(0, true), scheduler.getSchedule());
+    }
+
+    @Test
+    public void shortStop_doesNotRampDown() throws Exception {
+        long time = 0;
+        for(int i = 0; i < 30; i++, time += 1000){
+            scheduler.onFix(47.6670 + i * 1.3 * METER, -117.4020, time);
+        }
+        double stopLatitude = 47.6670 + 29 * 1.3 * METER;
+        for(int i = 0; i < 10; i++, time += 1000){
+            scheduler.onFix(stopLatitude, -117.4020, time);
+        }
+        for(int i = 0; i < 30; i++, time += 1000){
+            scheduler.onFix(stopLatitude + i * 1.3 * METER, -117.4020, time);
+        }
+
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void startingToWalk_rampsUpRightAway() throws Exception {
+        long time = 0;
+        for(; time <= 120000; time += 1000){
+            scheduler.onFix(47.6670, -117.4020, time);
+        }
+        assertEquals(policy.choose(0, true), scheduler.getSchedule());
+        changes.clear();
+
+        for(int i = 1; i <= 12; i++, time += 1000){
+            scheduler.onFix(47.6670 + i * 1.3 * METER, -117.4020, time);
+        }
+
+        assertEquals(policy.initial(), scheduler.getSchedule());
+        assertTrue(changes.size() <= 2);
+    }
+}
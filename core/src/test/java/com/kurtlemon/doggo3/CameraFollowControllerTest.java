@@ -0,0 +1,70 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for CameraFollowController.
+ */
+public class CameraFollowControllerTest {
+    // About 1.1 meters of latitude.
+    private static final double METER = 0.00001;
+
+    @Test
+    public void shouldMove_skipsShiftsBelowThreshold() throws Exception {
+        // At zoom 17 and density 2, a pixel is about 0.4m at this latitude.
+        CameraFollowController controller = new CameraFollowController(2, 8);
+
+        assertTrue(controller.shouldMove(47.6670, -117.4020, 17, 0));
+        assertFalse(controller.shouldMove(47.6670 + METER, -117.4020, 17, 1000));
+        assertFalse(controller.shouldMove(47.6670 + 2 * METER, -117.4020, 17, 2000));
+        assertTrue(controller.shouldMove(47.6670 + 5 * METER, -117.4020, 17, 3000));
+
+        assertEquals(2, controller.getMovedCount());
+        assertEquals(2, controller.getSkippedCount());
+    }
+
+    @Test
+    public void gesture_pausesUntilTimeout() throws Exception {
+        CameraFollowController controller = new CameraFollowController(2, 8);
+        controller.shouldMove(47.6670, -117.4020, 17, 0);
+
+        controller.onUserGesture(1000);
+        assertTrue(controller.isPaused());
+        assertFalse(controller.shouldMove(47.6680, -117.4020, 17, 2000));
+
+        long resumeTime = 1000 + CameraFollowController.RESUME_AFTER_MILLIS;
+        assertTrue(controller.shouldMove(47.6680, -117.4020, 17, resumeTime));
+        assertFalse(controller.isPaused());
+    }
+
+    @Test
+    public void pause_holdsUntilResumed() throws Exception {
+        CameraFollowController controller = new CameraFollowController(2, 8);
+        controller.shouldMove(47.6670, -117.4020, 17, 0);
+
+        controller.pause();
+        long later = 10 * CameraFollowController.RESUME_AFTER_MILLIS;
+        assertFalse(controller.shouldMove(47.6680, -117.4020, 17, later));
+        // A gesture while paused doesn't shorten the pause.
+        controller.onUserGesture(later);
+        assertFalse(controller.shouldMove(47.6680, -117.4020, 17,
+                later + CameraFollowController.RESUME_AFTER_MILLIS));
+        controller.resume();
+
+        assertTrue(controller.shouldMove(47.6680, -117.4020, 17, later + 1000));
+    }
+
+    @Test
+    public void resume_movesOnNextFix() throws Exception {
+        CameraFollowController controller = new CameraFollowController(2, 8);
+        controller.shouldMove(47.6670, -117.4020, 17, 0);
+        controller.onUserGesture(1000);
+
+        controller.resume();
+
+        // Moves even though the user hasn't moved, since the camera was panned away.
+        assertTrue(controller.shouldMove(47.6670, -117.4020, 17, 1500));
+    }
+}
@@ -0,0 +1,162 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ClusterEngine.
+ */
+public class ClusterEngineTest {
+    private ClusterEngine engine;
+    private MapViewport viewport;
+    private ClusterDelta delta;
+
+    @Before
+    public void setUp() throws Exception {
+        engine = new ClusterEngine();
+        engine.setZoom(15);
+        viewport = new MapViewport();
+        viewport.set(47.60, -117.50, 47.70, -117.30, 0);
+        delta = new ClusterDelta();
+    }
+
+    @Test
+    public void emit_groupsNearbyDogs() throws Exception {
+        for(int i = 0; i < 50; i++){
+            engine.update("walker" + i, 47.6670 + i * 0.000001, -117.4020);
+        }
+        engine.update("alone", 47.6200, -117.3500);
+
+        engine.emit(viewport, true, delta);
+
+        assertTrue(delta.isFull());
+        assertEquals(2, delta.getPlaced().size());
+        int total = 0;
+        for(Cluster cluster : delta.getPlaced()){
+            total += cluster.getCount();
+            if(cluster.getCount() == 1){
+                assertEquals("alone", cluster.getKey());
+            }else{
+                assertTrue(cluster.getKey().startsWith(ClusterEngine.CLUSTER_KEY_PREFIX));
+            }
+        }
+        assertEquals(51, total);
+    }
+
+    @Test
+    public void emit_onlyChangedClustersAfterFullPass() throws Exception {
+        engine.update("a", 47.6670, -117.4020);
+        engine.update("b", 47.6200, -117.3500);
+        engine.emit(viewport, true, delta);
+
+        engine.update("a", 47.6671, -117.4021);
+        engine.emit(viewport, false, delta);
+
+        assertFalse(delta.isFull());
+        assertEquals(1, delta.getPlaced().size());
+        assertEquals("a", delta.getPlaced().get(0).getKey());
+        assertTrue(delta.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void emit_dogMovingAcrossCells_isOnlyPlaced() throws Exception {
+        engine.update("a", 47.6670, -117.4020);
+        engine.emit(viewport, true, delta);
+
+        // About 280 map pixels east at zoom 15, a few cells over.
+        engine.update("a", 47.6670, -117.3900);
+        engine.emit(viewport, false, delta);
+
+        assertTrue(delta.getRemoved().isEmpty());
+        assertEquals(1, delta.getPlaced().size());
+        assertEquals("a", delta.getPlaced().get(0).getKey());
+
+        // The cell it left is tracked as empty, so leaving the view still removes it once.
+        engine.update("a", 48.0000, -117.3900);
+        engine.emit(viewport, false, delta);
+
+        assertEquals(1, delta.getRemoved().size());
+        assertEquals("a", delta.getRemoved().get(0));
+        assertTrue(delta.getPlaced().isEmpty());
+    }
+
+    @Test
+    public void emit_replacesSingleMarkerWhenClusterForms() throws Exception {
+        engine.update("a", 47.6670, -117.4020);
+        engine.emit(viewport, true, delta);
+
+        engine.update("b", 47.6670, -117.4020);
+        engine.emit(viewport, false, delta);
+
+        assertEquals(1, delta.getRemoved().size());
+        assertEquals("a", delta.getRemoved().get(0));
+        assertEquals(2, delta.getPlaced().get(0).getCount());
+
+        engine.remove("b");
+        engine.emit(viewport, false, delta);
+
+        assertEquals(1, delta.getRemoved().size());
+        assertEquals("a", delta.getPlaced().get(0).getKey());
+    }
+
+    @Test
+    public void emit_removesDogsThatLeaveTheView() throws Exception {
+        engine.update("a", 47.6670, -117.4020);
+        engine.emit(viewport, true, delta);
+
+        engine.update("a", 10, 10);
+        engine.emit(viewport, false, delta);
+
+        assertEquals(1, delta.getRemoved().size());
+        assertTrue(delta.getPlaced().isEmpty());
+    }
+
+    @Test
+    public void emit_smallViewportAmongManyCells_placesOnlyCellsInView() throws Exception {
+        // Far more occupied cells than there are in view, so only the view's cells are looked up.
+        for(int i = 0; i < 10000; i++){
+            engine.update("far" + i, 40 + i * 0.003, -100 + i * 0.003);
+        }
+        engine.update("a", 47.6670, -117.4020);
+        engine.update("b", 47.6200, -117.3500);
+
+        engine.emit(viewport, true, delta);
+
+        assertEquals(2, delta.getPlaced().size());
+        for(Cluster cluster : delta.getPlaced()){
+            assertFalse(cluster.getKey().startsWith("far"));
+        }
+    }
+
+    @Test
+    public void emit_viewportAcrossAntimeridian_placesBothSides() throws Exception {
+        for(int i = 0; i < 2000; i++){
+            engine.update("far" + i, 40 + i * 0.003, -100 + i * 0.003);
+        }
+        engine.update("east", -17.50, 179.999);
+        engine.update("west", -17.50, -179.999);
+        MapViewport fiji = new MapViewport();
+        fiji.set(-17.52, 179.99, -17.48, -179.99, 0);
+
+        engine.emit(fiji, true, delta);
+
+        assertEquals(2, delta.getPlaced().size());
+    }
+
+    @Test
+    public void setZoom_reclustersAndForcesFullPass() throws Exception {
+        engine.setZoom(10);
+        engine.update("a", 47.6670, -117.4020);
+        engine.update("b", 47.6690, -117.4000);
+        engine.emit(viewport, true, delta);
+        assertEquals(1, delta.getPlaced().size());
+
+        engine.setZoom(20);
+        engine.emit(viewport, false, delta);
+
+        assertTrue(delta.isFull());
+        assertEquals(2, delta.getPlaced().size());
+    }
+}
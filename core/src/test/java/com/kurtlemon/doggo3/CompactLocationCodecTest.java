@@ -0,0 +1,99 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for CompactLocationCodec.
+ */
+public class CompactLocationCodecTest {
+    // 2017-12-08T12:00:00.250Z
+    private static final long TIME = 1512734400250L;
+
+    @Test
+    public void encode_roundTripsToWithinACentimeter() throws Exception {
+        DogLocation dogLocation = new DogLocation(47.66701234567, -117.40201234567, "user", TIME);
+
+        Map<String, Object> values = CompactLocationCodec.encode(dogLocation);
+        DogLocation decoded = CompactLocationCodec.decode("user", values);
+
+        assertFalse(values.containsKey("id"));
+        assertTrue(CompactLocationCodec.isCompact(values));
+        assertFalse(CompactLocationCodec.isDelta(values));
+        assertEquals("user", decoded.getId());
+        assertEquals(dogLocation.getLatitude(), decoded.getLatitude(), 1e-7);
+        assertEquals(dogLocation.getLongitude(), decoded.getLongitude(), 1e-7);
+        assertEquals(TIME - 250, decoded.getTime());
+    }
+
+    @Test
+    public void encodeDelta_decodesAgainstSameBase() throws Exception {
+        DogLocation base = new DogLocation(47.6670, -117.4020, "user", TIME);
+        DogLocation moved = new DogLocation(47.66705, -117.40195, "user", TIME + 2000);
+
+        Map<String, Object> values = CompactLocationCodec.encodeDelta(moved, base);
+        DogLocation decoded = CompactLocationCodec.decode("user", values, base);
+
+        assertTrue(CompactLocationCodec.isDelta(values));
+        assertEquals(500L, values.get(CompactLocationCodec.KEY_LATITUDE));
+        assertEquals(500L, values.get(CompactLocationCodec.KEY_LONGITUDE));
+        assertEquals(2L, values.get(CompactLocationCodec.KEY_TIME));
+        assertEquals(moved.getLatitude(), decoded.getLatitude(), 1e-7);
+        assertEquals(moved.getLongitude(), decoded.getLongitude(), 1e-7);
+        assertEquals(TIME - 250 + 2000, decoded.getTime());
+    }
+
+    @Test
+    public void decodeDelta_withoutMatchingBase_returnsNull() throws Exception {
+        DogLocation base = new DogLocation(47.6670, -117.4020, "user", TIME);
+        DogLocation other = new DogLocation(47.6670, -117.4020, "user", TIME + 5000);
+        Map<String, Object> values = CompactLocationCodec.encodeDelta(
+                new DogLocation(47.6671, -117.4020, "user", TIME + 2000), base);
+
+        assertNull(CompactLocationCodec.decode("user", values));
+        assertNull(CompactLocationCodec.decode("user", values, other));
+    }
+
+    @Test
+    public void encode_writtenAt_roundTripsAsDelay() throws Exception {
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", TIME);
+        dogLocation.setWrittenAt(TIME + 1500);
+
+        Map<String, Object> values = CompactLocationCodec.encode(dogLocation);
+        DogLocation decoded = CompactLocationCodec.decode("user", values);
+
+        // The stored time is truncated to the second, so the delay counts from there.
+        assertEquals(1750L, values.get(CompactLocationCodec.KEY_WRITE_DELAY));
+        assertEquals(TIME + 1500, decoded.getWrittenAt());
+    }
+
+    @Test
+    public void encode_withoutWrittenAt_leavesDelayOut() throws Exception {
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", TIME);
+
+        Map<String, Object> values = CompactLocationCodec.encode(dogLocation);
+
+        assertFalse(values.containsKey(CompactLocationCodec.KEY_WRITE_DELAY));
+        assertEquals(0, CompactLocationCodec.decode("user", values).getWrittenAt());
+    }
+
+    @Test
+    public void compactWrite_isReadBackByLocalDatabase() throws Exception {
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", TIME);
+        HashMap<String, Object> values = new HashMap<>();
+        String cell = GeoCellIndex.addWrite(dogLocation, null, true, values);
+
+        database.update(values);
+        DogLocation stored = database.get(GeoCellIndex.cellPath(cell) + "/"
+                + GeoCellIndex.keyFor("user"));
+
+        assertEquals("user", stored.getId());
+        assertEquals(47.6670, stored.getLatitude(), 1e-7);
+        assertEquals(-117.4020, stored.getLongitude(), 1e-7);
+    }
+}
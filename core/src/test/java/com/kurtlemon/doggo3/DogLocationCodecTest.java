@@ -0,0 +1,183 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for DogLocationCodec.
+ */
+public class DogLocationCodecTest {
+    /**
+     * ReflectiveDecoder maps a value onto a bean the way the database's class mapper does: it
+     *  creates the bean with its no-argument constructor and calls a setter, looked up once per
+     *  class, for each field.
+     */
+    private static class ReflectiveDecoder {
+        private final HashMap<String, Method> setters = new HashMap<>();
+
+        ReflectiveDecoder(Class<?> beanClass) {
+            for(Method method : beanClass.getMethods()){
+                String name = method.getName();
+                if(name.startsWith("set") && name.length() > 3
+                        && method.getParameterTypes().length == 1){
+                    setters.put(Character.toLowerCase(name.charAt(3)) + name.substring(4),
+                            method);
+                }
+            }
+        }
+
+        DogLocation decode(Map<String, Object> values) throws Exception {
+            DogLocation dogLocation = DogLocation.class.getDeclaredConstructor().newInstance();
+            for(Map.Entry<String, Object> entry : values.entrySet()){
+                Method setter = setters.get(entry.getKey());
+                if(setter == null){
+                    continue;
+                }
+                Class<?> type = setter.getParameterTypes()[0];
+                Object value = entry.getValue();
+                if(type == double.class){
+                    value = ((Number) value).doubleValue();
+                }else if(type == float.class){
+                    value = ((Number) value).floatValue();
+                }else if(type == long.class){
+                    value = ((Number) value).longValue();
+                }
+                setter.invoke(dogLocation, value);
+            }
+            return dogLocation;
+        }
+    }
+
+    @Test
+    public void decode_beanValue_keepsFullPrecision() throws Exception {
+        HashMap<String, Object> values = new HashMap<>();
+        values.put("latitude", 47.66701234567);
+        values.put("longitude", -117.40201234567);
+        values.put("id", "user");
+        values.put("time", 1512734400250L);
+
+        DogLocation dogLocation = DogLocationCodec.decode("dogLocationuser", values);
+
+        assertEquals(47.66701234567, dogLocation.getLatitude(), 0);
+        assertEquals(-117.40201234567, dogLocation.getLongitude(), 0);
+        assertEquals("user", dogLocation.getId());
+        assertEquals(1512734400250L, dogLocation.getTime());
+        assertEquals(0, dogLocation.getWrittenAt());
+    }
+
+    @Test
+    public void decode_writtenAt_isKept() throws Exception {
+        HashMap<String, Object> values = new HashMap<>();
+        values.put("latitude", 47.6670);
+        values.put("longitude", -117.4020);
+        values.put("time", 1512734400250L);
+        values.put("writtenAt", 1512734400900L);
+
+        DogLocation dogLocation = DogLocationCodec.decode("dogLocationuser", values);
+
+        assertEquals(1512734400900L, dogLocation.getWrittenAt());
+    }
+
+    @Test
+    public void decode_wholeNumbersAndMissingId_useKey() throws Exception {
+        // The database hands back whole numbers as Longs.
+        HashMap<String, Object> values = new HashMap<>();
+        values.put("latitude", 47L);
+        values.put("longitude", -117L);
+
+        DogLocation dogLocation = DogLocationCodec.decode("dogLocationuser", values);
+
+        assertEquals(47, dogLocation.getLatitude(), 0);
+        assertEquals(-117, dogLocation.getLongitude(), 0);
+        assertEquals("user", dogLocation.getId());
+        assertEquals(0, dogLocation.getTime());
+    }
+
+    @Test
+    public void decode_compactValue() throws Exception {
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", 1512734400000L);
+
+        DogLocation decoded = DogLocationCodec.decode("dogLocationuser",
+                CompactLocationCodec.encode(dogLocation));
+
+        assertEquals("user", decoded.getId());
+        assertEquals(47.6670, decoded.getLatitude(), 1e-7);
+        assertEquals(1512734400000L, decoded.getTime());
+    }
+
+    @Test
+    public void decode_notALocation_returnsNull() throws Exception {
+        HashMap<String, Object> values = new HashMap<>();
+        values.put("latitude", "north");
+        values.put("longitude", -117.4020);
+
+        assertNull(DogLocationCodec.decode("dogLocationuser", values));
+        assertNull(DogLocationCodec.decode("dogLocationuser", "text"));
+        assertNull(DogLocationCodec.decode("dogLocationuser", null));
+    }
+
+    @Test
+    public void encode_withoutWrittenAt_leavesItOut() throws Exception {
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", 1512734400250L);
+
+        Map<String, Object> values = DogLocationCodec.encode(dogLocation);
+
+        assertEquals(4, values.size());
+        assertFalse(values.containsKey("writtenAt"));
+        assertEquals(47.6670, (Double) values.get("latitude"), 0);
+        assertEquals("user", values.get("id"));
+        assertEquals(1512734400250L, values.get("time"));
+    }
+
+    @Test
+    public void encode_followsReusedLocation() throws Exception {
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", 1512734400250L);
+        Map<String, Object> values = DogLocationCodec.encode(dogLocation);
+
+        dogLocation.setLatitude(47.6671);
+        dogLocation.setWrittenAt(1512734400900L);
+        DogLocation decoded = DogLocationCodec.decode("dogLocationuser", new HashMap<>(values));
+
+        assertEquals(5, values.size());
+        assertEquals(47.6671, decoded.getLatitude(), 0);
+        assertEquals(1512734400900L, decoded.getWrittenAt());
+    }
+
+    @Test
+    public void decode_matchesReflectiveBeanMapping() throws Exception {
+        ReflectiveDecoder reflectiveDecoder = new ReflectiveDecoder(DogLocation.class);
+        ArrayList<Map<String, Object>> values = values(100);
+        for(int i = 0; i < values.size(); i++){
+            DogLocation codec = DogLocationCodec.decode("dogLocation" + i, values.get(i));
+            DogLocation reflective = reflectiveDecoder.decode(values.get(i));
+            assertEquals(reflective.getId(), codec.getId());
+            assertEquals(reflective.getLatitude(), codec.getLatitude(), 0);
+            assertEquals(reflective.getLongitude(), codec.getLongitude(), 0);
+            assertEquals(reflective.getTime(), codec.getTime());
+        }
+    }
+
+    /** Returns values shaped like DogLocation snapshots from the database.
+     *
+     * @param count
+     * @return
+     */
+    private static ArrayList<Map<String, Object>> values(int count) {
+        ArrayList<Map<String, Object>> values = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            HashMap<String, Object> value = new HashMap<>();
+            value.put("latitude", 47.6670 + i * 1e-6);
+            value.put("longitude", -117.4020 - i * 1e-6);
+            value.put("id", String.valueOf(i));
+            value.put("time", 1512734400000L + i);
+            values.add(value);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,82 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for DogLocationStore and DogLocation identity.
+ */
+public class DogLocationStoreTest {
+    @Test
+    public void dogLocation_equalityIsById() throws Exception {
+        DogLocation a = new DogLocation(1, 2, "walker", 10);
+        DogLocation b = new DogLocation(3, 4, "walker", 20);
+        DogLocation c = new DogLocation(1, 2, "other", 10);
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, c);
+        assertEquals(0, a.compareTo(b));
+        assertTrue(a.compareTo(c) * c.compareTo(a) < 0);
+
+        HashSet<DogLocation> set = new HashSet<>();
+        set.add(a);
+        set.add(b);
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void upsert_dropsOutOfOrderUpdates() throws Exception {
+        DogLocationStore store = new DogLocationStore();
+
+        assertTrue(store.upsert(new DogLocation(1, 1, "walker", 20)));
+        assertFalse(store.upsert(new DogLocation(2, 2, "walker", 10)));
+        assertEquals(1, store.get("walker").getLatitude(), 0);
+        assertTrue(store.upsert(new DogLocation(3, 3, "walker", 30)));
+        assertEquals(3, store.get("walker").getLatitude(), 0);
+        assertEquals(30, store.getVersion("walker"));
+    }
+
+    @Test
+    public void remove_keepsNewerLocation() throws Exception {
+        DogLocationStore store = new DogLocationStore();
+        store.upsert(new DogLocation(1, 1, "walker", 20));
+
+        assertNull(store.remove("walker", 10));
+        assertNotNull(store.get("walker"));
+        assertNotNull(store.remove("walker", 20));
+        assertNull(store.get("walker"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void concurrentUpserts_keepNewestVersion() throws Exception {
+        final DogLocationStore store = new DogLocationStore();
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++){
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = offset; i < 10000; i += 4){
+                        store.upsert(new DogLocation(i, i, "walker" + (i % 10), i));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads){
+            thread.join();
+        }
+
+        ArrayList<DogLocation> out = new ArrayList<>();
+        assertEquals(10, store.snapshot(out));
+        for(DogLocation dogLocation : out){
+            assertTrue(dogLocation.getTime() >= 9990);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for GeoHash.
+ */
+public class GeoHashTest {
+    @Test
+    public void encode_matchesKnownHashes() throws Exception {
+        assertEquals("ezs42", GeoHash.encode(42.6, -5.6, 5));
+        assertEquals("c2kx", GeoHash.encode(47.6670, -117.4020, 4));
+    }
+
+    @Test
+    public void covering_containsCellOfEveryCorner() throws Exception {
+        HashSet<String> cells = new HashSet<>();
+        GeoHash.covering(47.60, -117.50, 47.70, -117.30, 5, 100, cells);
+
+        assertEquals(GeoHash.countCovering(47.60, -117.50, 47.70, -117.30, 5), cells.size());
+        assertTrue(cells.contains(GeoHash.encode(47.60, -117.50, 5)));
+        assertTrue(cells.contains(GeoHash.encode(47.70, -117.30, 5)));
+        assertTrue(cells.contains(GeoHash.encode(47.65, -117.40, 5)));
+    }
+
+    @Test
+    public void covering_wrapsAroundAntimeridian() throws Exception {
+        HashSet<String> cells = new HashSet<>();
+        GeoHash.covering(-1, 179, 1, -179, 3, 100, cells);
+
+        assertTrue(cells.contains(GeoHash.encode(0, 179.5, 3)));
+        assertTrue(cells.contains(GeoHash.encode(0, -179.5, 3)));
+    }
+
+    @Test
+    public void covering_keepsToMaxCells() throws Exception {
+        HashSet<String> cells = new HashSet<>();
+        GeoHash.covering(-80, -170, 80, 170, 2, 16, cells);
+
+        assertTrue(cells.size() <= 16);
+        assertTrue(cells.contains(GeoHash.encode(0, 0, 2)));
+    }
+}
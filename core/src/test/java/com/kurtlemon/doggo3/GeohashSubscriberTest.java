@@ -0,0 +1,115 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for GeohashSubscriber against the local database stand-in.
+ */
+public class GeohashSubscriberTest {
+    private LocalWalkerDatabase database;
+    private DogLocationStore store;
+    private GeohashSubscriber subscriber;
+    private HashMap<String, String> lastCells;
+
+    @Before
+    public void setUp() throws Exception {
+        database = new LocalWalkerDatabase();
+        store = new DogLocationStore();
+        lastCells = new HashMap<>();
+        subscriber = new GeohashSubscriber(database, new WalkerDatabase.Listener() {
+            @Override
+            public void onWalkerChanged(DogLocation dogLocation) {
+                store.upsert(dogLocation);
+            }
+
+            @Override
+            public void onWalkerRemoved(DogLocation dogLocation) {
+                store.remove(dogLocation.getId(), dogLocation.getTime());
+            }
+        });
+    }
+
+    private void walk(String id, double latitude, double longitude, long time) {
+        HashMap<String, Object> values = new HashMap<>();
+        lastCells.put(id, GeoCellIndex.addWrite(new DogLocation(latitude, longitude, id, time),
+                lastCells.get(id), values));
+        database.update(values);
+    }
+
+    private void stop(String id) {
+        HashMap<String, Object> values = new HashMap<>();
+        GeoCellIndex.addRemoval(id, lastCells.remove(id), values);
+        database.update(values);
+    }
+
+    private static MapViewport viewport(double south, double west, double north, double east) {
+        MapViewport mapViewport = new MapViewport();
+        mapViewport.set(south, west, north, east, 0);
+        return mapViewport;
+    }
+
+    @Test
+    public void setViewport_onlyReceivesWalkersInView() throws Exception {
+        walk("spokane", 47.6670, -117.4020, 1);
+        walk("seattle", 47.6062, -122.3321, 1);
+
+        subscriber.setViewport(viewport(47.66, -117.41, 47.67, -117.40));
+
+        assertNotNull(store.get("spokane"));
+        assertNull(store.get("seattle"));
+        assertTrue(subscriber.getCells().size() <= GeohashSubscriber.MAX_CELLS);
+        assertEquals(GeoCellIndex.MAX_PRECISION, subscriber.getPrecision());
+    }
+
+    @Test
+    public void walkerMovingBetweenCells_staysInStore() throws Exception {
+        subscriber.setViewport(viewport(47.60, -117.50, 47.70, -117.30));
+        walk("walker", 47.6100, -117.4900, 1);
+        assertNotNull(store.get("walker"));
+
+        walk("walker", 47.6900, -117.3100, 2);
+
+        assertNotNull(store.get("walker"));
+        assertEquals(47.69, store.get("walker").getLatitude(), 0.001);
+    }
+
+    @Test
+    public void panningAway_dropsCellsAndWalkers() throws Exception {
+        walk("spokane", 47.6670, -117.4020, 1);
+        subscriber.setViewport(viewport(47.66, -117.41, 47.67, -117.40));
+        int listeners = database.getListenerCount();
+
+        subscriber.setViewport(viewport(47.60, -122.34, 47.61, -122.33));
+
+        assertNull(store.get("spokane"));
+        assertEquals(subscriber.getCells().size(), database.getListenerCount());
+        assertTrue(listeners > 0);
+    }
+
+    @Test
+    public void stoppedWalker_isRemoved() throws Exception {
+        walk("spokane", 47.6670, -117.4020, 1);
+        subscriber.setViewport(viewport(47.66, -117.41, 47.67, -117.40));
+
+        stop("spokane");
+
+        assertNull(store.get("spokane"));
+        assertNull(database.get(GeoCellIndex.walkerPath("spokane")));
+    }
+
+    @Test
+    public void zoomingOut_usesCoarserCells() throws Exception {
+        subscriber.setViewport(viewport(40, -125, 50, -110));
+
+        assertTrue(subscriber.getPrecision() < GeoCellIndex.MAX_PRECISION);
+        assertTrue(subscriber.getCells().size() <= GeohashSubscriber.MAX_CELLS);
+
+        subscriber.clear();
+        assertEquals(0, database.getListenerCount());
+    }
+}
@@ -0,0 +1,67 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketOf_staysWithinItsBounds() throws Exception {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 100, 1000, 123456789L, Long.MAX_VALUE};
+        for(long value : values){
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+            if(bucket > 0){
+                assertTrue(value > LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+        }
+        assertEquals(Long.MAX_VALUE,
+                LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void getPercentile_isWithinAnEighth() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("test", "ms");
+        for(int i = 1; i <= 1000; i++){
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500, histogram.getPercentile(50), 500 / 8);
+        assertEquals(950, histogram.getPercentile(95), 950 / 8);
+        assertEquals(990, histogram.getPercentile(99), 990 / 8);
+        assertTrue(histogram.getPercentile(50) >= 500);
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void record_negative_countsAsZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("test", "ms");
+
+        histogram.record(-40);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void reset_forgetsEverything() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("test", "ms");
+        histogram.record(12);
+        histogram.record(300);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+}
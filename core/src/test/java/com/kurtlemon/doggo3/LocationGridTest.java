@@ -0,0 +1,71 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the LocationGrid spatial index.
+ */
+public class LocationGridTest {
+    @Test
+    public void query_returnsOnlyLocationsInBox() throws Exception {
+        LocationGrid grid = new LocationGrid();
+        grid.put(new DogLocation(47.6670, -117.4020, "inside"));
+        grid.put(new DogLocation(47.7000, -117.4020, "north"));
+        grid.put(new DogLocation(47.6670, -117.5000, "west"));
+
+        ArrayList<DogLocation> out = new ArrayList<>();
+        int added = grid.query(47.66, -117.41, 47.67, -117.40, out);
+
+        assertEquals(1, added);
+        assertEquals("inside", out.get(0).getId());
+    }
+
+    @Test
+    public void put_movesExistingId() throws Exception {
+        LocationGrid grid = new LocationGrid();
+        grid.put(new DogLocation(47.6670, -117.4020, "walker"));
+        grid.put(new DogLocation(10.0, 10.0, "walker"));
+
+        ArrayList<DogLocation> out = new ArrayList<>();
+        assertEquals(1, grid.size());
+        assertEquals(0, grid.query(47.66, -117.41, 47.67, -117.40, out));
+        assertEquals(1, grid.query(9.9, 9.9, 10.1, 10.1, out));
+    }
+
+    @Test
+    public void remove_dropsLocation() throws Exception {
+        LocationGrid grid = new LocationGrid();
+        grid.put(new DogLocation(47.6670, -117.4020, "walker"));
+
+        assertNotNull(grid.remove("walker"));
+        assertNull(grid.remove("walker"));
+        assertNull(grid.get("walker"));
+        assertEquals(0, grid.size());
+    }
+
+    @Test
+    public void query_handlesAntimeridian() throws Exception {
+        LocationGrid grid = new LocationGrid();
+        grid.put(new DogLocation(0, 179.95, "east"));
+        grid.put(new DogLocation(0, -179.95, "west"));
+        grid.put(new DogLocation(0, 0, "far"));
+
+        ArrayList<DogLocation> out = new ArrayList<>();
+        assertEquals(2, grid.query(-1, 179.9, 1, -179.9, out));
+    }
+
+    @Test
+    public void query_worldViewScansOccupiedCells() throws Exception {
+        LocationGrid grid = new LocationGrid();
+        for(int i = 0; i < 100; i++){
+            grid.put(new DogLocation(i * 0.5 - 25, i * 1.5 - 75, "walker" + i));
+        }
+
+        ArrayList<DogLocation> out = new ArrayList<>();
+        assertEquals(100, grid.query(-90, -180, 90, 180, out));
+    }
+}
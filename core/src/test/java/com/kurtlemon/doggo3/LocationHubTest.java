@@ -0,0 +1,214 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LocationHub.
+ */
+public class LocationHubTest {
+    private static final LocationSchedule PETTER = new LocationSchedule(10000, 5000,
+            LocationSchedule.PRIORITY_BALANCED_POWER_ACCURACY);
+    private static final LocationSchedule WALKER = new LocationSchedule(2000, 1000,
+            LocationSchedule.PRIORITY_HIGH_ACCURACY);
+
+    /**
+     * FakeSource counts the requests running, the way the fused provider would.
+     */
+    private static final class FakeSource implements LocationHub.Source {
+        int active;
+        int requests;
+        LocationSchedule schedule;
+
+        @Override
+        public void requestUpdates(LocationSchedule schedule) {
+            assertEquals("a request is already running", 0, active);
+            active++;
+            requests++;
+            this.schedule = schedule;
+        }
+
+        @Override
+        public void removeUpdates() {
+            assertEquals("no request is running", 1, active);
+            active--;
+            schedule = null;
+        }
+
+        @Override
+        public void requestLastFix(LocationHub.Consumer consumer) {
+            consumer.onFix(1, 2, 3);
+        }
+    }
+
+    /**
+     * RecordingConsumer keeps the times of the fixes it is handed.
+     */
+    private static class RecordingConsumer implements LocationHub.Consumer {
+        final ArrayList<Long> times = new ArrayList<>();
+
+        @Override
+        public void onFix(double latitude, double longitude, long time) {
+            times.add(time);
+        }
+    }
+
+    @Test
+    public void subscribe_repeatedRotations_keepOneRequest() throws Exception {
+        FakeSource source = new FakeSource();
+        LocationHub locationHub = new LocationHub(source);
+        RecordingConsumer walker = new RecordingConsumer();
+        locationHub.subscribe(walker, WALKER);
+
+        // Each rotation destroys the activity and subscribes a new one, in either order.
+        RecordingConsumer petter = new RecordingConsumer();
+        locationHub.subscribe(petter, PETTER);
+        for(int i = 0; i < 50; i++){
+            RecordingConsumer recreated = new RecordingConsumer();
+            if(i % 2 == 0){
+                locationHub.unsubscribe(petter);
+                locationHub.subscribe(recreated, PETTER);
+            }else{
+                locationHub.subscribe(recreated, PETTER);
+                locationHub.unsubscribe(petter);
+            }
+            petter = recreated;
+            assertEquals(1, source.active);
+        }
+
+        assertEquals(1, source.active);
+        assertEquals(1, source.requests);
+        assertEquals(2, locationHub.getConsumerCount());
+        assertEquals(WALKER, source.schedule);
+    }
+
+    @Test
+    public void subscribe_lastConsumerRotating_restartsOneRequest() throws Exception {
+        FakeSource source = new FakeSource();
+        LocationHub locationHub = new LocationHub(source);
+        RecordingConsumer petter = new RecordingConsumer();
+        locationHub.subscribe(petter, PETTER);
+        for(int i = 0; i < 50; i++){
+            locationHub.unsubscribe(petter);
+            assertEquals(0, source.active);
+            petter = new RecordingConsumer();
+            locationHub.subscribe(petter, PETTER);
+            assertEquals(1, source.active);
+        }
+    }
+
+    @Test
+    public void subscribe_mergesMostDemandingSchedule() throws Exception {
+        FakeSource source = new FakeSource();
+        LocationHub locationHub = new LocationHub(source);
+        RecordingConsumer petter = new RecordingConsumer();
+        RecordingConsumer walker = new RecordingConsumer();
+        locationHub.subscribe(petter, PETTER);
+        locationHub.subscribe(walker, new LocationSchedule(2000, 8000,
+                LocationSchedule.PRIORITY_LOW_POWER));
+
+        assertEquals(new LocationSchedule(2000, 5000,
+                LocationSchedule.PRIORITY_BALANCED_POWER_ACCURACY), source.schedule);
+
+        // Leaving relaxes the request back to what is left.
+        locationHub.unsubscribe(walker);
+        assertEquals(PETTER, source.schedule);
+        assertEquals(3, source.requests);
+    }
+
+    @Test
+    public void subscribe_sameSchedule_doesNotReissue() throws Exception {
+        FakeSource source = new FakeSource();
+        LocationHub locationHub = new LocationHub(source);
+        RecordingConsumer walker = new RecordingConsumer();
+        RecordingConsumer petter = new RecordingConsumer();
+        locationHub.subscribe(walker, WALKER);
+        locationHub.subscribe(walker, WALKER);
+        // Asks for less than the walker, so nothing changes.
+        locationHub.subscribe(petter, PETTER);
+
+        assertEquals(1, source.requests);
+        assertEquals(WALKER, locationHub.getSchedule());
+    }
+
+    @Test
+    public void unsubscribe_lastConsumer_removesRequest() throws Exception {
+        FakeSource source = new FakeSource();
+        LocationHub locationHub = new LocationHub(source);
+        RecordingConsumer walker = new RecordingConsumer();
+        RecordingConsumer petter = new RecordingConsumer();
+        locationHub.subscribe(walker, WALKER);
+        locationHub.subscribe(petter, PETTER);
+        locationHub.unsubscribe(walker);
+        locationHub.unsubscribe(petter);
+        locationHub.unsubscribe(petter);
+
+        assertEquals(0, source.active);
+        assertNull(locationHub.getSchedule());
+        assertEquals(0, locationHub.getConsumerCount());
+    }
+
+    @Test
+    public void unsubscribe_bothActivitiesStopped_leavesNoRequest() throws Exception {
+        FakeSource source = new FakeSource();
+        LocationHub locationHub = new LocationHub(source);
+        RecordingConsumer walker = new RecordingConsumer();
+        RecordingConsumer petter = new RecordingConsumer();
+        // Each activity subscribes in onStart and unsubscribes in onStop.
+        locationHub.subscribe(walker, WALKER);
+        locationHub.subscribe(petter, PETTER);
+        locationHub.unsubscribe(walker);
+        locationHub.unsubscribe(petter);
+
+        assertEquals(0, source.active);
+        assertEquals(0, locationHub.getConsumerCount());
+        // A fix already on its way when both stopped reaches neither.
+        locationHub.onFix(47.6670, -117.4020, 1000);
+        assertTrue(walker.times.isEmpty());
+        assertTrue(petter.times.isEmpty());
+
+        locationHub.subscribe(walker, WALKER);
+        assertEquals(1, source.active);
+    }
+
+    @Test
+    public void onFix_fansOutToEveryConsumer() throws Exception {
+        FakeSource source = new FakeSource();
+        final LocationHub locationHub = new LocationHub(source);
+        final RecordingConsumer walker = new RecordingConsumer();
+        // Leaves as soon as it gets a fix, taking the walker with it.
+        RecordingConsumer petter = new RecordingConsumer() {
+            @Override
+            public void onFix(double latitude, double longitude, long time) {
+                super.onFix(latitude, longitude, time);
+                locationHub.unsubscribe(this);
+                locationHub.unsubscribe(walker);
+            }
+        };
+        RecordingConsumer late = new RecordingConsumer();
+        locationHub.subscribe(petter, PETTER);
+        locationHub.subscribe(walker, WALKER);
+        locationHub.onFix(47.6670, -117.4020, 1000);
+        locationHub.subscribe(late, PETTER);
+        locationHub.onFix(47.6671, -117.4020, 2000);
+
+        assertEquals(1, petter.times.size());
+        assertTrue(walker.times.isEmpty());
+        assertEquals(1, late.times.size());
+        assertEquals(2000L, (long) late.times.get(0));
+        assertEquals(1, source.active);
+    }
+
+    @Test
+    public void requestLastFix_handsFixToConsumer() throws Exception {
+        LocationHub locationHub = new LocationHub(new FakeSource());
+        RecordingConsumer petter = new RecordingConsumer();
+        locationHub.requestLastFix(petter);
+
+        assertEquals(3L, (long) petter.times.get(0));
+        assertEquals(0, locationHub.getConsumerCount());
+    }
+}
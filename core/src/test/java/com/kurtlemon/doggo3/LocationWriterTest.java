@@ -0,0 +1,226 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for LocationWriter, including how much handling a fix allocates.
+ */
+public class LocationWriterTest {
+    // About 1.1 meters of latitude.
+    private static final double METER = 0.00001;
+
+    /**
+     * CountingDatabase only counts writes, so the writer's own allocations can be measured.
+     */
+    private static class CountingDatabase implements WalkerDatabase {
+        int updates;
+        int lastSize;
+
+        @Override
+        public void addListener(String path, Listener listener) {
+        }
+
+        @Override
+        public void removeListener(String path, Listener listener) {
+        }
+
+        @Override
+        public void update(Map<String, Object> values) {
+            updates++;
+            lastSize = values.size();
+        }
+
+        @Override
+        public void updateOnDisconnect(Map<String, Object> values) {
+        }
+
+        @Override
+        public void cancelOnDisconnect() {
+        }
+
+        @Override
+        public long getConnectionCount() {
+            return 1;
+        }
+    }
+
+    @Test
+    public void onLocation_inSameCell_allocatesNothing() throws Exception {
+        assumeTrue("Allocation counting is unsupported",
+                ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue("Allocation counting is unsupported",
+                threadMXBean.isThreadAllocatedMemorySupported());
+
+        // Everything WalkActivity does with a fix, except moving the map's camera.
+        CountingDatabase database = new CountingDatabase();
+        LocationWriter writer = new LocationWriter(database, "user", false);
+        PublishPolicy publishPolicy = new PublishPolicy();
+        WalkTrajectory walkTrajectory = new WalkTrajectory();
+        CameraFollowController cameraFollowController = new CameraFollowController(2);
+        AdaptiveLocationScheduler locationScheduler = new AdaptiveLocationScheduler(
+                TieredSchedulePolicy.forWalker(), new AdaptiveLocationScheduler.Listener() {
+                    @Override
+                    public void onScheduleChanged(LocationSchedule schedule) {
+                    }
+                });
+        int fixes = 20000;
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up, then measure. A second a fix, up and down a street within one 1km cell.
+        long before = 0;
+        for(int i = 0; i < 2 * fixes; i++){
+            if(i == fixes){
+                before = threadMXBean.getThreadAllocatedBytes(threadId);
+            }
+            double latitude = 47.6670 + Math.abs(i % 200 - 100) * 2 * METER;
+            long time = i * 1000L;
+            cameraFollowController.shouldMove(latitude, -117.4020, 17, time);
+            locationScheduler.onFix(latitude, -117.4020, time);
+            walkTrajectory.add(latitude, -117.4020, time);
+            if(publishPolicy.shouldPublish(latitude, -117.4020, time)){
+                writer.write(latitude, -117.4020, time);
+            }
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(1, writer.getRebuildCount());
+        assertTrue(database.updates > fixes / 10);
+        // The trajectory's arrays grow now and then as the walk turns.
+        assertTrue(allocated + " bytes", (double) allocated / fixes < 1);
+    }
+
+    @Test
+    public void write_changingCells_deletesOldCellOnce() throws Exception {
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        LocationWriter writer = new LocationWriter(database, "user", false);
+        writer.write(47.6670, -117.4020, 1000);
+        String firstCell = writer.getCell();
+        String firstPath = GeoCellIndex.cellPath(firstCell) + "/" + GeoCellIndex.keyFor("user");
+
+        // About 2km north, in a different finest cell.
+        writer.write(47.6850, -117.4020, 2000);
+        String secondCell = writer.getCell();
+        assertNotEquals(firstCell, secondCell);
+        assertNull(database.get(firstPath));
+
+        CountingDatabase counting = new CountingDatabase();
+        LocationWriter countingWriter = new LocationWriter(counting, "user", false);
+        countingWriter.write(47.6670, -117.4020, 1000);
+        int sameCellSize = counting.lastSize;
+        countingWriter.write(47.6850, -117.4020, 2000);
+        assertTrue(counting.lastSize > sameCellSize);
+        countingWriter.write(47.6851, -117.4020, 3000);
+        assertEquals(sameCellSize, counting.lastSize);
+        assertEquals(2, countingWriter.getRebuildCount());
+    }
+
+    @Test
+    public void write_compact_updatesSharedValue() throws Exception {
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        LocationWriter writer = new LocationWriter(database, "user", true);
+        writer.write(47.6670, -117.4020, CompactLocationCodec.EPOCH_MILLIS + 1000);
+        writer.write(47.6671, -117.4020, CompactLocationCodec.EPOCH_MILLIS + 2000);
+
+        DogLocation stored = database.get(GeoCellIndex.cellPath(writer.getCell()) + "/"
+                + GeoCellIndex.keyFor("user"));
+        assertEquals(47.6671, stored.getLatitude(), 1e-7);
+        assertEquals(CompactLocationCodec.EPOCH_MILLIS + 2000, stored.getTime());
+    }
+
+    @Test
+    public void write_leavesRootEmpty() throws Exception {
+        // Older versions listen to the root and read everything under it as a walker.
+        final ArrayList<DogLocation> rootCallbacks = new ArrayList<>();
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        database.addListener("", new WalkerDatabase.Listener() {
+            @Override
+            public void onWalkerChanged(DogLocation dogLocation) {
+                rootCallbacks.add(dogLocation);
+            }
+
+            @Override
+            public void onWalkerRemoved(DogLocation dogLocation) {
+                rootCallbacks.add(dogLocation);
+            }
+        });
+        LocationWriter writer = new LocationWriter(database, "user", false);
+        writer.write(47.6670, -117.4020, 1000);
+        writer.write(47.6850, -117.4020, 2000);
+        writer.remove();
+
+        assertTrue(rootCallbacks.isEmpty());
+    }
+
+    @Test
+    public void remove_deletesEverything() throws Exception {
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        LocationWriter writer = new LocationWriter(database, "user", false);
+        writer.write(47.6670, -117.4020, 1000);
+        String path = GeoCellIndex.cellPath(writer.getCell()) + "/" + GeoCellIndex.keyFor("user");
+
+        writer.remove();
+
+        assertNull(database.get(path));
+        assertNull(database.get(GeoCellIndex.walkerPath("user")));
+        assertNull(writer.getCell());
+    }
+
+    @Test
+    public void disconnect_deletesCurrentCellOnly() throws Exception {
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        LocationWriter writer = new LocationWriter(database, "user", false);
+        writer.write(47.6670, -117.4020, 1000);
+        writer.write(47.6850, -117.4020, 2000);
+        String path = GeoCellIndex.cellPath(writer.getCell()) + "/" + GeoCellIndex.keyFor("user");
+        assertNotNull(database.get(path));
+
+        database.disconnect();
+
+        assertNull(database.get(path));
+        assertNull(database.get(GeoCellIndex.walkerPath("user")));
+    }
+
+    @Test
+    public void disconnect_afterRemove_writesNothing() throws Exception {
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        LocationWriter writer = new LocationWriter(database, "user", false);
+        writer.write(47.6670, -117.4020, 1000);
+        writer.remove();
+
+        // Someone else now walks under the same cell path.
+        database.update(java.util.Collections.<String, Object>singletonMap(
+                GeoCellIndex.walkerPath("user"),
+                new DogLocation(47.6670, -117.4020, "user", 3000)));
+        database.disconnect();
+
+        assertNotNull(database.get(GeoCellIndex.walkerPath("user")));
+    }
+
+    @Test
+    public void disconnect_afterReconnectInSameCell_deletesAgain() throws Exception {
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        LocationWriter writer = new LocationWriter(database, "user", false);
+        writer.write(47.6670, -117.4020, 1000);
+        database.disconnect();
+        database.reconnect();
+
+        // Back online a meter away, then the app crashes.
+        writer.write(47.6670 + METER, -117.4020, 2000);
+        String path = GeoCellIndex.cellPath(writer.getCell()) + "/" + GeoCellIndex.keyFor("user");
+        assertNotNull(database.get(path));
+        assertEquals(1, writer.getRebuildCount());
+        database.disconnect();
+
+        assertNull(database.get(path));
+        assertNull(database.get(GeoCellIndex.walkerPath("user")));
+    }
+}
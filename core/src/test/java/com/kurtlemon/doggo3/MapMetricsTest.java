@@ -0,0 +1,104 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MapMetrics.
+ */
+public class MapMetricsTest {
+    private static final long FIX = 1512734400000L;
+
+    @Test
+    public void onCallback_recordsStagesFromStampedTimes() throws Exception {
+        MapMetrics mapMetrics = new MapMetrics();
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", FIX);
+        dogLocation.setWrittenAt(FIX + 40);
+
+        mapMetrics.onCallback(dogLocation, FIX + 140);
+
+        assertEquals(1, mapMetrics.getCallbacks());
+        assertEquals(40, mapMetrics.getFixToWrite().getMax());
+        assertEquals(100, mapMetrics.getWriteToCallback().getMax());
+    }
+
+    @Test
+    public void onCallback_withoutWrittenAt_onlyCounts() throws Exception {
+        MapMetrics mapMetrics = new MapMetrics();
+
+        mapMetrics.onCallback(new DogLocation(47.6670, -117.4020, "user", FIX), FIX + 140);
+
+        assertEquals(1, mapMetrics.getCallbacks());
+        assertEquals(0, mapMetrics.getFixToWrite().getCount());
+        assertEquals(0, mapMetrics.getWriteToCallback().getCount());
+    }
+
+    @Test
+    public void awaitingDraw_keepsFirstApplyUntilDrawn() throws Exception {
+        MapMetrics mapMetrics = new MapMetrics();
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", FIX);
+        mapMetrics.onApplied(dogLocation, 1000000L);
+        mapMetrics.onApplied(new DogLocation(47.6671, -117.4020, "user", FIX + 1000), 5000000L);
+
+        long[] awaiting = mapMetrics.takeAwaitingDraw();
+        mapMetrics.onDrawn(awaiting, 21000000L, FIX + 300);
+
+        assertArrayEquals(new long[]{1000000L, FIX}, awaiting);
+        assertEquals(0, mapMetrics.takeAwaitingDraw().length);
+        assertEquals(20, mapMetrics.getCallbackToVisible().getMax());
+        assertEquals(300, mapMetrics.getFixToVisible().getMax());
+    }
+
+    @Test
+    public void tick_worksOutCallbacksPerSecond() throws Exception {
+        MapMetrics mapMetrics = new MapMetrics();
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", FIX);
+
+        assertEquals(0, mapMetrics.tick(0));
+        for(int i = 0; i < 30; i++){
+            mapMetrics.onCallback(dogLocation, FIX);
+        }
+        assertEquals(0, mapMetrics.tick(500));
+        assertEquals(15, mapMetrics.tick(2000));
+        assertEquals(1, mapMetrics.getCallbacksPerSecond().getCount());
+    }
+
+    @Test
+    public void reset_forgetsCallbacksAndWalkersAwaitingDraw() throws Exception {
+        MapMetrics mapMetrics = new MapMetrics();
+        DogLocation dogLocation = new DogLocation(47.6670, -117.4020, "user", FIX);
+        mapMetrics.tick(0);
+        for(int i = 0; i < 30; i++){
+            mapMetrics.onCallback(dogLocation, FIX);
+        }
+        mapMetrics.onApplied(dogLocation, 1000000L);
+
+        mapMetrics.reset();
+
+        assertEquals(0, mapMetrics.getCallbacks());
+        assertEquals(0, mapMetrics.takeAwaitingDraw().length);
+        // The rate window starts again instead of counting callbacks from before.
+        assertEquals(0, mapMetrics.tick(5000));
+        mapMetrics.onCallback(dogLocation, FIX);
+        assertEquals(1, mapMetrics.tick(6000));
+    }
+
+    @Test
+    public void dump_listsEveryHistogram() throws Exception {
+        MapMetrics mapMetrics = new MapMetrics();
+        mapMetrics.onRedraw(2500000L, 42);
+        mapMetrics.onFrame(1);
+        mapMetrics.onFrame(12);
+
+        String dump = mapMetrics.dump();
+
+        assertEquals(8, dump.split("\n").length);
+        assertTrue(dump.contains("updates/frame"));
+        assertTrue(dump.contains("fix->visible"));
+        assertTrue(dump.contains("redraw"));
+        assertEquals(2500, mapMetrics.getRedrawMicros().getMax());
+        assertEquals(42, mapMetrics.getMarkerCount().getMax());
+        assertEquals(12, mapMetrics.getUpdatesPerFrame().getMax());
+    }
+}
@@ -0,0 +1,109 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MotionPredictor.
+ */
+public class MotionPredictorTest {
+    // About 1.1 meters of latitude.
+    private static final double METER = 0.00001;
+
+    private final double[] position = new double[2];
+
+    @Test
+    public void predict_carriesPositionAlongVelocity() throws Exception {
+        MotionPredictor predictor = new MotionPredictor();
+        predictor.onUpdate("a", 47.6670, -117.4020, 0, 1000);
+        predictor.onUpdate("a", 47.6670 + 2 * METER, -117.4020, 2000, 3000);
+
+        predictor.predict("a", 4000, position);
+
+        // Another second at the same speed.
+        assertEquals(47.6670 + 3 * METER, position[0], 1e-9);
+        assertEquals(-117.4020, position[1], 1e-9);
+    }
+
+    @Test
+    public void predict_stopsAtExtrapolationLimit() throws Exception {
+        MotionPredictor predictor = new MotionPredictor();
+        predictor.onUpdate("a", 47.6670, -117.4020, 0, 0);
+        predictor.onUpdate("a", 47.6670 + 2 * METER, -117.4020, 2000, 2000);
+        long limit = 2000 + MotionPredictor.MAX_EXTRAPOLATION_MILLIS;
+
+        double[] atLimit = new double[2];
+        predictor.predict("a", limit, atLimit);
+        predictor.predict("a", limit + 60000, position);
+
+        assertEquals(atLimit[0], position[0], 0);
+        assertEquals(0, predictor.animate(limit + 1, recordingMover(new ArrayList<String>())));
+    }
+
+    @Test
+    public void onUpdate_sameFixAgain_keepsPrediction() throws Exception {
+        MotionPredictor predictor = new MotionPredictor();
+        predictor.onUpdate("a", 47.6670, -117.4020, 0, 0);
+        predictor.onUpdate("a", 47.6670 + 2 * METER, -117.4020, 2000, 2000);
+
+        assertFalse(predictor.onUpdate("a", 47.6670 + 2 * METER, -117.4020, 2000, 3000));
+        predictor.predict("a", 3000, position);
+        assertEquals(47.6670 + 3 * METER, position[0], 1e-9);
+
+        // A new fix snaps the prediction back to it.
+        assertTrue(predictor.onUpdate("a", 47.6670 + 2.5 * METER, -117.4020, 3000, 3500));
+        predictor.predict("a", 3500, position);
+        assertEquals(47.6670 + 2.5 * METER, position[0], 1e-9);
+    }
+
+    @Test
+    public void onUpdate_withoutTimes_snapsWithoutMoving() throws Exception {
+        MotionPredictor predictor = new MotionPredictor();
+        predictor.onUpdate("a", 47.6670, -117.4020, 0, 0);
+
+        assertTrue(predictor.onUpdate("a", 47.6671, -117.4020, 0, 1000));
+        predictor.predict("a", 5000, position);
+
+        assertEquals(47.6671, position[0], 0);
+    }
+
+    @Test
+    public void animate_isBounded() throws Exception {
+        MotionPredictor predictor = new MotionPredictor(50);
+        for(int i = 0; i < 1000; i++){
+            predictor.onUpdate("w" + i, 47.6670, -117.4020 + i * METER, 0, 0);
+            predictor.onUpdate("w" + i, 47.6670 + METER, -117.4020 + i * METER, 1000, 1000);
+        }
+        ArrayList<String> moved = new ArrayList<>();
+
+        assertEquals(50, predictor.animate(1500, recordingMover(moved)));
+        assertEquals(50, moved.size());
+    }
+
+    @Test
+    public void endPass_dropsWalkersNotUpdated() throws Exception {
+        MotionPredictor predictor = new MotionPredictor();
+        predictor.onUpdate("a", 47.6670, -117.4020, 0, 0);
+        predictor.onUpdate("b", 47.6670, -117.4020, 0, 0);
+
+        predictor.beginPass();
+        predictor.onUpdate("a", 47.6670, -117.4020, 0, 100);
+        predictor.endPass();
+
+        assertEquals(1, predictor.size());
+        assertTrue(predictor.predict("a", 100, position));
+        assertFalse(predictor.predict("b", 100, position));
+    }
+
+    private static MotionPredictor.Mover recordingMover(final ArrayList<String> moved) {
+        return new MotionPredictor.Mover() {
+            @Override
+            public void onPredicted(String key, double latitude, double longitude) {
+                moved.add(key);
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for NearestWalkers.
+ */
+public class NearestWalkersTest {
+    private static final double LATITUDE = 47.6670;
+    private static final double LONGITUDE = -117.4020;
+
+    @Test
+    public void getNearest_matchesSortingEveryWalker() throws Exception {
+        Random random = new Random(7);
+        NearestWalkers nearestWalkers = new NearestWalkers(5);
+        HashMap<String, DogLocation> walkers = new HashMap<>();
+        double[] origin = {LATITUDE, LONGITUDE};
+        nearestWalkers.setOrigin(origin[0], origin[1]);
+        for(int i = 0; i < 2000; i++){
+            DogLocation dogLocation = randomWalker(random, "walker" + i, 0.5);
+            walkers.put(dogLocation.getId(), dogLocation);
+            nearestWalkers.put(dogLocation);
+        }
+        assertNearest(walkers, nearestWalkers, origin, 5);
+
+        // Walkers move, arrive and leave, and the user moves.
+        for(int step = 0; step < 5000; step++){
+            String id = "walker" + random.nextInt(2500);
+            int action = random.nextInt(20);
+            if(action == 0){
+                walkers.remove(id);
+                nearestWalkers.remove(id);
+            }else if(action == 1){
+                origin[0] = LATITUDE + (random.nextDouble() - 0.5) * 0.1;
+                origin[1] = LONGITUDE + (random.nextDouble() - 0.5) * 0.1;
+                nearestWalkers.setOrigin(origin[0], origin[1]);
+            }else{
+                DogLocation dogLocation = randomWalker(random, id, 0.05);
+                walkers.put(id, dogLocation);
+                nearestWalkers.put(dogLocation);
+            }
+            if(step % 50 == 0){
+                assertNearest(walkers, nearestWalkers, origin, 5);
+            }
+        }
+        assertNearest(walkers, nearestWalkers, origin, 5);
+    }
+
+    @Test
+    public void getNearest_fewerWalkersThanCount_listsAll() throws Exception {
+        NearestWalkers nearestWalkers = new NearestWalkers(5);
+        nearestWalkers.setOrigin(LATITUDE, LONGITUDE);
+        nearestWalkers.put(new DogLocation(LATITUDE, LONGITUDE + 1, "far", 0));
+        nearestWalkers.put(new DogLocation(-LATITUDE, LONGITUDE, "otherSide", 0));
+        nearestWalkers.put(new DogLocation(LATITUDE + 0.001, LONGITUDE, "near", 0));
+
+        assertEquals(3, nearestWalkers.getCount());
+        assertEquals("near", nearestWalkers.get(0).getId());
+        assertEquals("far", nearestWalkers.get(1).getId());
+        assertEquals("otherSide", nearestWalkers.get(2).getId());
+        assertEquals(111, nearestWalkers.getDistance(0), 1);
+    }
+
+    @Test
+    public void getNearest_acrossAntimeridian_findsNearest() throws Exception {
+        NearestWalkers nearestWalkers = new NearestWalkers(1);
+        nearestWalkers.setOrigin(-17.0, 179.999);
+        nearestWalkers.put(new DogLocation(-17.0, -179.999, "acrossTheLine", 0));
+        nearestWalkers.put(new DogLocation(-17.0, 179.9, "sameSide", 0));
+
+        assertEquals("acrossTheLine", nearestWalkers.get(0).getId());
+    }
+
+    @Test
+    public void getNearest_withoutOrigin_isEmpty() throws Exception {
+        NearestWalkers nearestWalkers = new NearestWalkers();
+        nearestWalkers.put(new DogLocation(LATITUDE, LONGITUDE, "walker", 0));
+
+        assertEquals(0, nearestWalkers.getCount());
+        assertEquals(1, nearestWalkers.size());
+        assertFalse(nearestWalkers.takeChanged());
+    }
+
+    @Test
+    public void takeChanged_onlyWhenListChanges() throws Exception {
+        NearestWalkers nearestWalkers = new NearestWalkers(1);
+        nearestWalkers.setOrigin(LATITUDE, LONGITUDE);
+        nearestWalkers.put(new DogLocation(LATITUDE + 0.001, LONGITUDE, "near", 0));
+        assertTrue(nearestWalkers.takeChanged());
+        assertFalse(nearestWalkers.takeChanged());
+
+        nearestWalkers.put(new DogLocation(LATITUDE + 0.01, LONGITUDE, "far", 0));
+        assertFalse(nearestWalkers.takeChanged());
+
+        nearestWalkers.remove("near");
+        assertTrue(nearestWalkers.takeChanged());
+        assertEquals("far", nearestWalkers.get(0).getId());
+    }
+
+    /** Makes a walker somewhere within a span of degrees of the origin.
+     *
+     * @param random
+     * @param id
+     * @param span
+     * @return
+     */
+    private static DogLocation randomWalker(Random random, String id, double span) {
+        return new DogLocation(LATITUDE + (random.nextDouble() - 0.5) * span,
+                LONGITUDE + (random.nextDouble() - 0.5) * span, id, 0);
+    }
+
+    /** Checks the nearest walkers against the distances to every walker, sorted.
+     *
+     * @param walkers
+     * @param nearestWalkers
+     * @param origin {latitude, longitude}
+     * @param count
+     */
+    private static void assertNearest(HashMap<String, DogLocation> walkers,
+                                      NearestWalkers nearestWalkers, double[] origin, int count) {
+        double[] expected = new double[walkers.size()];
+        int i = 0;
+        for(DogLocation dogLocation : walkers.values()){
+            expected[i++] = GeoMath.distanceMeters(origin[0], origin[1],
+                    dogLocation.getLatitude(), dogLocation.getLongitude());
+        }
+        Arrays.sort(expected);
+
+        assertEquals(Math.min(count, walkers.size()), nearestWalkers.getCount());
+        for(i = 0; i < nearestWalkers.getCount(); i++){
+            DogLocation dogLocation = nearestWalkers.get(i);
+            assertSame(walkers.get(dogLocation.getId()), dogLocation);
+            assertEquals(expected[i], nearestWalkers.getDistance(i), 1e-6);
+        }
+    }
+}
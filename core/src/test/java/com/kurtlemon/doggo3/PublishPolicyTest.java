@@ -0,0 +1,71 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for PublishPolicy.
+ */
+public class PublishPolicyTest {
+    // About 1.1 meters of latitude.
+    private static final double METER = 0.00001;
+
+    @Test
+    public void standingStill_onlySendsHeartbeats() throws Exception {
+        PublishPolicy policy = new PublishPolicy(5, 2000, 30000);
+        int sent = 0;
+        for(long time = 0; time <= 60000; time += 500){
+            if(policy.shouldPublish(47.6670, -117.4020, time)){
+                sent++;
+            }
+        }
+
+        assertEquals(3, sent);
+        assertEquals(3, policy.getSentCount());
+        assertEquals(118, policy.getSuppressedCount());
+    }
+
+    @Test
+    public void walking_sendsAtMostOncePerMinInterval() throws Exception {
+        PublishPolicy policy = new PublishPolicy(5, 2000, 30000);
+        int sent = 0;
+        for(int i = 0; i < 20; i++){
+            // 1.5 m/s, fixes every 500ms.
+            if(policy.shouldPublish(47.6670 + i * 0.7 * METER, -117.4020, i * 500)){
+                sent++;
+            }
+        }
+
+        assertEquals(5, sent);
+    }
+
+    @Test
+    public void smallMoves_areSuppressed() throws Exception {
+        PublishPolicy policy = new PublishPolicy(5, 2000, 30000);
+        assertTrue(policy.shouldPublish(47.6670, -117.4020, 0));
+
+        assertFalse(policy.shouldPublish(47.6670 + 2 * METER, -117.4020, 3000));
+        assertFalse(policy.shouldPublish(47.6670 + 3 * METER, -117.4020, 6000));
+    }
+
+    @Test
+    public void stopping_sendsFinalPosition() throws Exception {
+        PublishPolicy policy = new PublishPolicy(5, 2000, 30000);
+        assertTrue(policy.shouldPublish(47.6670, -117.4020, 0));
+        // Moved 3 meters, then stayed put.
+        assertFalse(policy.shouldPublish(47.6670 + 3 * METER, -117.4020, 2500));
+
+        assertTrue(policy.shouldPublish(47.6670 + 3 * METER, -117.4020, 3000));
+        assertFalse(policy.shouldPublish(47.6670 + 3 * METER, -117.4020, 6000));
+    }
+
+    @Test
+    public void reset_sendsNextFix() throws Exception {
+        PublishPolicy policy = new PublishPolicy();
+        assertTrue(policy.shouldPublish(47.6670, -117.4020, 0));
+        policy.reset();
+
+        assertTrue(policy.shouldPublish(47.6670, -117.4020, 100));
+    }
+}
@@ -0,0 +1,133 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SnapshotPipeline.
+ */
+public class SnapshotPipelineTest {
+    // Runs queued tasks only when asked to.
+    private final ArrayList<Runnable> tasks = new ArrayList<>();
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            tasks.add(runnable);
+        }
+    };
+
+    // The snapshots in these tests are already DogLocations.
+    private final SnapshotPipeline.Decoder decoder = new SnapshotPipeline.Decoder() {
+        @Override
+        public DogLocation decode(Object snapshot) {
+            return (DogLocation) snapshot;
+        }
+    };
+
+    // Everything the listener was told, with removals marked by a leading '-'.
+    private final ArrayList<String> received = new ArrayList<>();
+    private final WalkerDatabase.Listener listener = new WalkerDatabase.Listener() {
+        @Override
+        public void onWalkerChanged(DogLocation dogLocation) {
+            received.add(dogLocation.getId() + "@" + dogLocation.getTime());
+        }
+
+        @Override
+        public void onWalkerRemoved(DogLocation dogLocation) {
+            received.add("-" + dogLocation.getId() + "@" + dogLocation.getTime());
+        }
+    };
+
+    @Test
+    public void submit_keepsLatestPerWalker() throws Exception {
+        SnapshotPipeline pipeline = new SnapshotPipeline(executor, 16);
+        for(int time = 1; time <= 3; time++){
+            submit(pipeline, "a", time, false);
+        }
+        submit(pipeline, "b", 1, false);
+
+        assertEquals(1, tasks.size());
+        runTasks();
+
+        assertEquals(2, received.size());
+        assertEquals("a@3", received.get(0));
+        assertEquals("b@1", received.get(1));
+        assertEquals(2, pipeline.getReplacedCount());
+        assertEquals(2, pipeline.getDeliveredCount());
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void submit_removalReplacesPendingChange() throws Exception {
+        SnapshotPipeline pipeline = new SnapshotPipeline(executor, 16);
+        submit(pipeline, "a", 1, false);
+        submit(pipeline, "a", 1, true);
+        runTasks();
+
+        assertEquals(1, received.size());
+        assertEquals("-a@1", received.get(0));
+    }
+
+    @Test
+    public void submit_whenFull_dropsOldest() throws Exception {
+        SnapshotPipeline pipeline = new SnapshotPipeline(executor, 2);
+        submit(pipeline, "a", 1, false);
+        submit(pipeline, "b", 1, false);
+        submit(pipeline, "c", 1, false);
+
+        assertEquals(2, pipeline.getPendingCount());
+        runTasks();
+
+        assertEquals(2, received.size());
+        assertEquals("b@1", received.get(0));
+        assertEquals("c@1", received.get(1));
+        assertEquals(1, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void submit_whenFullWithRemovalOldest_dropsOldestChange() throws Exception {
+        SnapshotPipeline pipeline = new SnapshotPipeline(executor, 2);
+        submit(pipeline, "a", 1, true);
+        submit(pipeline, "b", 1, false);
+        submit(pipeline, "c", 1, false);
+        submit(pipeline, "d", 1, true);
+        // Nothing left to drop, so the removals go past the capacity.
+        submit(pipeline, "e", 1, true);
+
+        assertEquals(3, pipeline.getPendingCount());
+        runTasks();
+
+        assertEquals(3, received.size());
+        assertEquals("-a@1", received.get(0));
+        assertEquals("-d@1", received.get(1));
+        assertEquals("-e@1", received.get(2));
+        assertEquals(2, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void close_dropsWaitingSnapshots() throws Exception {
+        SnapshotPipeline pipeline = new SnapshotPipeline(executor, 16);
+        submit(pipeline, "a", 1, false);
+        pipeline.close();
+        submit(pipeline, "b", 1, false);
+        runTasks();
+
+        assertTrue(received.isEmpty());
+        assertEquals(1, pipeline.getSubmittedCount());
+    }
+
+    private void submit(SnapshotPipeline pipeline, String id, long time, boolean removed) {
+        pipeline.submit(listener, id, new DogLocation(47.6670, -117.4020, id, time), decoder,
+                removed);
+    }
+
+    private void runTasks() {
+        while(!tasks.isEmpty()){
+            tasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TimingWheel.
+ */
+public class TimingWheelTest {
+    private static final long START = 1512700000000L;
+
+    @Test
+    public void advance_expiresPassedDeadlinesOnly() throws Exception {
+        TimingWheel wheel = new TimingWheel(1000, 64);
+        wheel.schedule("a", START + 1500);
+        wheel.schedule("b", START + 5000);
+        ArrayList<String> expired = new ArrayList<>();
+
+        wheel.advance(START + 1000, expired);
+        assertTrue(expired.isEmpty());
+        wheel.advance(START + 2000, expired);
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0));
+        assertEquals(1, wheel.size());
+        assertEquals(-1, wheel.getDeadline("a"));
+    }
+
+    @Test
+    public void schedule_again_movesDeadline() throws Exception {
+        TimingWheel wheel = new TimingWheel(1000, 64);
+        wheel.schedule("a", START + 1000);
+        wheel.schedule("a", START + 10000);
+        ArrayList<String> expired = new ArrayList<>();
+
+        wheel.advance(START + 5000, expired);
+        assertTrue(expired.isEmpty());
+        wheel.advance(START + 10000, expired);
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void cancel_keepsKeyFromExpiring() throws Exception {
+        TimingWheel wheel = new TimingWheel(1000, 64);
+        wheel.schedule("a", START + 1000);
+
+        assertTrue(wheel.cancel("a"));
+        assertFalse(wheel.cancel("a"));
+        ArrayList<String> expired = new ArrayList<>();
+        wheel.advance(START + 5000, expired);
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    public void advance_pastWholeLaps_expiresEverythingDue() throws Exception {
+        TimingWheel wheel = new TimingWheel(1000, 8);
+        wheel.advance(START, new ArrayList<String>());
+        for(int i = 0; i < 100; i++){
+            wheel.schedule("w" + i, START + i * 1000L);
+        }
+        ArrayList<String> expired = new ArrayList<>();
+
+        // Keys more than a lap away stay until their own tick comes round.
+        wheel.advance(START + 49000, expired);
+        assertEquals(50, expired.size());
+        wheel.advance(START + 200000, expired);
+        assertEquals(100, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void schedule_passedDeadline_expiresOnNextAdvance() throws Exception {
+        TimingWheel wheel = new TimingWheel(1000, 64);
+        wheel.advance(START, new ArrayList<String>());
+        wheel.schedule("a", START - 60000);
+        ArrayList<String> expired = new ArrayList<>();
+
+        wheel.advance(START + 1000, expired);
+
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void advance_visitsOnlyDueSlots() throws Exception {
+        TimingWheel wheel = new TimingWheel(1000, 128);
+        wheel.advance(START, new ArrayList<String>());
+        for(int i = 0; i < 12000; i++){
+            // Spread over two minutes.
+            wheel.schedule("w" + i, START + 1000 + (i % 120) * 1000L);
+        }
+        ArrayList<String> expired = new ArrayList<>();
+
+        wheel.advance(START + 1000, expired);
+
+        assertEquals(100, expired.size());
+        assertEquals(100, wheel.getVisitedCount());
+    }
+}
@@ -0,0 +1,78 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WalkTrajectoryFile.
+ */
+public class WalkTrajectoryFileTest {
+    private static final long TIME = 1512734400000L;
+
+    private File file;
+    private WalkTrajectoryFile walkTrajectoryFile;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("walk", ".trk");
+        file.delete();
+        walkTrajectoryFile = new WalkTrajectoryFile(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void read_afterWrite_returnsWalk() throws Exception {
+        WalkTrajectory walkTrajectory = new WalkTrajectory();
+        Random random = new Random(1);
+        double latitude = 47.6670;
+        double longitude = -117.4020;
+        for(int i = 0; i < 1000; i++){
+            // Every fix a turn, so every fix is kept.
+            latitude += (i % 2 == 0 ? 1 : -1) * 0.0002 + random.nextDouble() * 0.00001;
+            longitude += 0.0002;
+            walkTrajectory.add(latitude, longitude, TIME + i * 1000 + random.nextInt(100));
+        }
+        walkTrajectory.finish();
+
+        walkTrajectoryFile.write(walkTrajectory);
+        WalkTrajectory read = walkTrajectoryFile.read();
+
+        assertEquals(walkTrajectory.size(), read.size());
+        assertEquals(walkTrajectory.getFixCount(), read.getFixCount());
+        assertEquals(walkTrajectory.getToleranceMeters(), read.getToleranceMeters(), 0);
+        for(int i = 0; i < walkTrajectory.size(); i++){
+            assertEquals(walkTrajectory.getLatitude(i), read.getLatitude(i), 0);
+            assertEquals(walkTrajectory.getLongitude(i), read.getLongitude(i), 0);
+            assertEquals(walkTrajectory.getTime(i), read.getTime(i));
+        }
+        // About 22 meters between fixes takes 3 bytes a coordinate and 2 for the time.
+        assertTrue(file.length() < 32 + walkTrajectory.size() * 9);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_notAWalk_throws() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        out.close();
+
+        walkTrajectoryFile.read();
+    }
+
+    @Test(expected = IOException.class)
+    public void read_missing_throws() throws Exception {
+        walkTrajectoryFile.read();
+    }
+}
@@ -0,0 +1,232 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WalkTrajectory.
+ */
+public class WalkTrajectoryTest {
+    private static final double LATITUDE = 47.6670;
+    private static final double LONGITUDE = -117.4020;
+    private static final long TIME = 1512734400000L;
+
+    // Meters in a degree of latitude, and of longitude where the walks are.
+    private static final double METERS_PER_DEGREE = Math.toRadians(GeoMath.EARTH_RADIUS_METERS);
+    private static final double METERS_PER_DEGREE_LONGITUDE =
+            METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE));
+
+    @Test
+    public void add_straightLine_keepsEnds() throws Exception {
+        WalkTrajectory walkTrajectory = new WalkTrajectory();
+        Random random = new Random(3);
+        for(int i = 0; i < 100; i++){
+            // A meter and a half a fix heading north east, wobbling less than a meter.
+            walkTrajectory.add(latitudeAt(i + random.nextDouble() - 0.5),
+                    longitudeAt(i + random.nextDouble() - 0.5), TIME + i * 1000);
+        }
+
+        assertEquals(2, walkTrajectory.size());
+        assertEquals(TIME, walkTrajectory.getTime(0));
+        assertEquals(TIME + 99000, walkTrajectory.getTime(1));
+        assertEquals(100, walkTrajectory.getFixCount());
+    }
+
+    @Test
+    public void add_corner_keepsTurn() throws Exception {
+        // Tight enough that cutting the corner by a fix would be too far off.
+        WalkTrajectory walkTrajectory = new WalkTrajectory(1, WalkTrajectory.DEFAULT_MAX_POINTS);
+        for(int i = 0; i <= 50; i++){
+            walkTrajectory.add(LATITUDE + i * 2 / METERS_PER_DEGREE, LONGITUDE, TIME + i * 1000);
+        }
+        double cornerLatitude = LATITUDE + 100 / METERS_PER_DEGREE;
+        for(int i = 1; i <= 50; i++){
+            walkTrajectory.add(cornerLatitude, LONGITUDE + i * 2 / METERS_PER_DEGREE_LONGITUDE,
+                    TIME + (50 + i) * 1000);
+        }
+        walkTrajectory.finish();
+
+        assertEquals(3, walkTrajectory.size());
+        assertEquals(TIME + 50000, walkTrajectory.getTime(1));
+        assertEquals(cornerLatitude, walkTrajectory.getLatitude(1), 1e-7);
+        assertEquals(LONGITUDE, walkTrajectory.getLongitude(1), 1e-7);
+    }
+
+    @Test
+    public void add_outAndBack_keepsFarEnd() throws Exception {
+        WalkTrajectory walkTrajectory = new WalkTrajectory();
+        double[][] fixes = new double[1001][];
+        for(int i = 0; i < fixes.length; i++){
+            // A kilometer north two meters a fix, and back the same way.
+            int meters = i <= 500 ? i * 2 : (1000 - i) * 2;
+            fixes[i] = new double[]{LATITUDE + meters / METERS_PER_DEGREE, LONGITUDE};
+            walkTrajectory.add(fixes[i][0], fixes[i][1], TIME + i * 1000);
+        }
+        walkTrajectory.finish();
+
+        assertEquals(3, walkTrajectory.size());
+        assertEquals(TIME + 500000, walkTrajectory.getTime(1));
+        assertEquals(LATITUDE + 1000 / METERS_PER_DEGREE, walkTrajectory.getLatitude(1), 1e-7);
+        assertPathNear(walkTrajectory, fixes, WalkTrajectory.DEFAULT_TOLERANCE_METERS);
+    }
+
+    @Test
+    public void add_uTurn_keepsBothCorners() throws Exception {
+        WalkTrajectory walkTrajectory = new WalkTrajectory();
+        double[][] fixes = new double[211][];
+        for(int i = 0; i < fixes.length; i++){
+            // Two hundred meters north, ten east, and two hundred back south alongside.
+            double north = i <= 100 ? i * 2 : i <= 110 ? 200 : (210 - i) * 2;
+            double east = i <= 100 ? 0 : i <= 110 ? i - 100 : 10;
+            fixes[i] = new double[]{LATITUDE + north / METERS_PER_DEGREE,
+                    LONGITUDE + east / METERS_PER_DEGREE_LONGITUDE};
+            walkTrajectory.add(fixes[i][0], fixes[i][1], TIME + i * 1000);
+        }
+        walkTrajectory.finish();
+
+        assertTrue(walkTrajectory.size() >= 3);
+        assertTrue(walkTrajectory.size() <= 4);
+        double farthest = 0;
+        for(int i = 0; i < walkTrajectory.size(); i++){
+            farthest = Math.max(farthest, walkTrajectory.getLatitude(i));
+        }
+        assertEquals(LATITUDE + 200 / METERS_PER_DEGREE, farthest, 1e-7);
+        assertPathNear(walkTrajectory, fixes, WalkTrajectory.DEFAULT_TOLERANCE_METERS);
+    }
+
+    @Test
+    public void add_wanderingWalk_staysWithinTolerance() throws Exception {
+        WalkTrajectory walkTrajectory = new WalkTrajectory();
+        double[][] fixes = wander(new Random(11), 2000);
+        for(int i = 0; i < fixes.length; i++){
+            walkTrajectory.add(fixes[i][0], fixes[i][1], TIME + i * 1000);
+        }
+        walkTrajectory.finish();
+
+        assertTrue(walkTrajectory.size() < fixes.length / 4);
+        assertPathNear(walkTrajectory, fixes, WalkTrajectory.DEFAULT_TOLERANCE_METERS);
+    }
+
+    @Test
+    public void add_anHourOfFixes_staysWithinMaxPoints() throws Exception {
+        WalkTrajectory walkTrajectory = new WalkTrajectory();
+        double[][] fixes = wander(new Random(5), 3600);
+        for(int i = 0; i < fixes.length; i++){
+            walkTrajectory.add(fixes[i][0], fixes[i][1], TIME + i * 1000);
+        }
+        walkTrajectory.finish();
+
+        assertTrue(walkTrajectory.getMemoryBytes() <= WalkTrajectory.DEFAULT_MAX_POINTS * 16);
+    }
+
+    @Test
+    public void add_pastMaxPoints_simplifiesAgain() throws Exception {
+        WalkTrajectory walkTrajectory = new WalkTrajectory(WalkTrajectory.DEFAULT_TOLERANCE_METERS,
+                40);
+        double[][] fixes = wander(new Random(17), 5000);
+        for(int i = 0; i < fixes.length; i++){
+            walkTrajectory.add(fixes[i][0], fixes[i][1], TIME + i * 1000);
+            assertTrue(walkTrajectory.size() <= 41);
+        }
+        walkTrajectory.finish();
+
+        assertTrue(walkTrajectory.size() <= 40);
+        assertTrue(walkTrajectory.getToleranceMeters() > WalkTrajectory.DEFAULT_TOLERANCE_METERS);
+        assertEquals(40 * 16, walkTrajectory.getMemoryBytes());
+        assertEquals(TIME, walkTrajectory.getTime(0));
+        assertEquals(TIME + (fixes.length - 1) * 1000, walkTrajectory.getTime(
+                walkTrajectory.size() - 1));
+        // Each pass stays within its own tolerance, so together within twice the last.
+        assertPathNear(walkTrajectory, fixes, 2 * walkTrajectory.getToleranceMeters());
+    }
+
+    /** Makes up a walk of fixes a second apart, turning a little at each one and now and then
+     *      sharply.
+     *
+     * @param random
+     * @param count
+     * @return {latitude, longitude} of each fix
+     */
+    private static double[][] wander(Random random, int count) {
+        double[][] fixes = new double[count][];
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        for(int i = 0; i < count; i++){
+            fixes[i] = new double[]{LATITUDE + y / METERS_PER_DEGREE,
+                    LONGITUDE + x / METERS_PER_DEGREE_LONGITUDE};
+            heading += random.nextInt(30) == 0 ? (random.nextDouble() - 0.5) * Math.PI
+                    : (random.nextDouble() - 0.5) * 0.1;
+            x += 1.4 * Math.cos(heading) + random.nextGaussian();
+            y += 1.4 * Math.sin(heading) + random.nextGaussian();
+        }
+        return fixes;
+    }
+
+    /** Checks that every fix is within a distance of the line through the points kept either
+     *      side of it.
+     *
+     * @param walkTrajectory
+     * @param fixes one a second from TIME
+     * @param toleranceMeters
+     */
+    private static void assertPathNear(WalkTrajectory walkTrajectory, double[][] fixes,
+                                       double toleranceMeters) {
+        int stretch = 0;
+        for(int i = 0; i < fixes.length; i++){
+            long time = TIME + i * 1000;
+            while(walkTrajectory.getTime(stretch + 1) < time){
+                stretch++;
+            }
+            double distance = distanceToLine(fixes[i],
+                    walkTrajectory.getLatitude(stretch), walkTrajectory.getLongitude(stretch),
+                    walkTrajectory.getLatitude(stretch + 1),
+                    walkTrajectory.getLongitude(stretch + 1));
+            assertTrue("Fix " + i + " is " + distance + " m away", distance <= toleranceMeters
+                    + 0.01);
+        }
+    }
+
+    /** Returns the distance in meters from a fix to the line through two points.
+     *
+     * @param fix
+     * @param latitude1
+     * @param longitude1
+     * @param latitude2
+     * @param longitude2
+     * @return
+     */
+    private static double distanceToLine(double[] fix, double latitude1, double longitude1,
+                                         double latitude2, double longitude2) {
+        double x = (fix[1] - longitude1) * METERS_PER_DEGREE_LONGITUDE;
+        double y = (fix[0] - latitude1) * METERS_PER_DEGREE;
+        double dx = (longitude2 - longitude1) * METERS_PER_DEGREE_LONGITUDE;
+        double dy = (latitude2 - latitude1) * METERS_PER_DEGREE;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if(length == 0){
+            return Math.sqrt(x * x + y * y);
+        }
+        return Math.abs(x * dy - y * dx) / length;
+    }
+
+    /** Returns the latitude after walking north east along a line.
+     *
+     * @param meters
+     * @return
+     */
+    private static double latitudeAt(double meters) {
+        return LATITUDE + meters * 1.5 * Math.sqrt(0.5) / METERS_PER_DEGREE;
+    }
+
+    /** Returns the longitude after walking north east along a line.
+     *
+     * @param meters
+     * @return
+     */
+    private static double longitudeAt(double meters) {
+        return LONGITUDE + meters * 1.5 * Math.sqrt(0.5) / METERS_PER_DEGREE_LONGITUDE;
+    }
+}
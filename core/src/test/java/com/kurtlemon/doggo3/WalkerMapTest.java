@@ -0,0 +1,70 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WalkerMap.
+ */
+public class WalkerMapTest {
+    private static final long NOW = 1512700000000L;
+
+    @Test
+    public void apply_storesAndClusters() throws Exception {
+        WalkerMap walkerMap = new WalkerMap();
+        assertTrue(walkerMap.apply(new DogLocation(47.6670, -117.4020, "a", NOW), NOW));
+        assertFalse(walkerMap.apply(new DogLocation(47.6680, -117.4020, "a", NOW - 1), NOW));
+
+        ClusterDelta clusterDelta = new ClusterDelta();
+        MapViewport mapViewport = new MapViewport();
+        mapViewport.set(47.6, -117.5, 47.7, -117.3, 0);
+        walkerMap.emit(mapViewport, 18, true, clusterDelta);
+
+        assertEquals(1, clusterDelta.getPlaced().size());
+        assertEquals(47.6670, clusterDelta.getPlaced().get(0).getLatitude(), 1e-9);
+        assertEquals(1, walkerMap.size());
+    }
+
+    @Test
+    public void apply_stale_isIgnored() throws Exception {
+        WalkerMap walkerMap = new WalkerMap(60000);
+        DogLocation stale = new DogLocation(47.6670, -117.4020, "a", NOW - 60000);
+
+        assertTrue(walkerMap.isStale(stale, NOW));
+        assertFalse(walkerMap.apply(stale, NOW));
+        assertEquals(0, walkerMap.size());
+    }
+
+    @Test
+    public void expire_dropsWalkersNotSeenAgain() throws Exception {
+        WalkerMap walkerMap = new WalkerMap(60000);
+        walkerMap.applySnapshot(Arrays.asList(
+                new DogLocation(47.6670, -117.4020, "a", NOW),
+                new DogLocation(47.6671, -117.4020, "b", NOW)), NOW);
+        walkerMap.expire(NOW, null);
+
+        // Only b is seen again.
+        walkerMap.apply(new DogLocation(47.6672, -117.4020, "b", NOW + 50000), NOW + 50000);
+        ArrayList<String> removed = new ArrayList<>();
+
+        assertEquals(1, walkerMap.expire(NOW + 65000, removed));
+        assertEquals(Arrays.asList("a"), removed);
+        assertNull(walkerMap.get("a"));
+        assertNotNull(walkerMap.get("b"));
+    }
+
+    @Test
+    public void remove_olderVersion_keepsNewerLocation() throws Exception {
+        WalkerMap walkerMap = new WalkerMap();
+        walkerMap.apply(new DogLocation(47.6670, -117.4020, "a", NOW), NOW);
+
+        assertFalse(walkerMap.remove("a", NOW - 1));
+        assertTrue(walkerMap.remove("a", NOW));
+        assertEquals(0, walkerMap.size());
+        assertEquals(0, walkerMap.expire(NOW + WalkerMap.DEFAULT_PRESENCE_TTL_MILLIS, null));
+    }
+}
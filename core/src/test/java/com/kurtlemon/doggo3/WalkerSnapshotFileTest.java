@@ -0,0 +1,126 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WalkerSnapshotFile.
+ */
+public class WalkerSnapshotFileTest {
+    private static final long NOW = 1512700000000L;
+    private static final long MAX_AGE = 10 * 60 * 1000;
+
+    private File file;
+    private WalkerSnapshotFile snapshotFile;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("walkers", ".snapshot");
+        file.delete();
+        snapshotFile = new WalkerSnapshotFile(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void read_afterWrite_returnsWalkers() throws Exception {
+        ArrayList<DogLocation> walkers = walkers(10000);
+        snapshotFile.write(walkers, NOW);
+        // Writing again replaces the first snapshot.
+        snapshotFile.write(walkers, NOW);
+
+        ArrayList<DogLocation> read = new ArrayList<>();
+        int count = snapshotFile.read(NOW + 1000, MAX_AGE, read);
+
+        assertEquals(10000, count);
+        assertEquals(10000, read.size());
+        DogLocation last = read.get(9999);
+        assertEquals("walker9999", last.getId());
+        assertEquals(walkers.get(9999).getLatitude(), last.getLatitude(), 0);
+        assertEquals(walkers.get(9999).getLongitude(), last.getLongitude(), 0);
+        assertEquals(walkers.get(9999).getTime(), last.getTime());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void read_tooOld_returnsNothing() throws Exception {
+        snapshotFile.write(walkers(10), NOW);
+        ArrayList<DogLocation> read = new ArrayList<>();
+
+        assertEquals(0, snapshotFile.read(NOW + MAX_AGE + 1, MAX_AGE, read));
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    public void read_olderThanPresenceTtl_showsWalkersProvisionally() throws Exception {
+        long fiveMinutes = 5 * 60 * 1000;
+        snapshotFile.write(walkers(10), NOW);
+        ArrayList<DogLocation> read = new ArrayList<>();
+        assertEquals(10, snapshotFile.read(NOW + fiveMinutes, MAX_AGE, read));
+
+        WalkerMap walkerMap = new WalkerMap();
+        for(DogLocation dogLocation : read){
+            assertFalse(walkerMap.apply(dogLocation, NOW + fiveMinutes));
+            assertTrue(walkerMap.applyProvisional(dogLocation, NOW + fiveMinutes));
+        }
+
+        assertEquals(10, walkerMap.size());
+        assertEquals(0, walkerMap.expire(NOW + fiveMinutes
+                + WalkerMap.DEFAULT_PRESENCE_TTL_MILLIS - WalkerMap.PRESENCE_SWEEP_MILLIS, null));
+    }
+
+    @Test
+    public void read_truncated_returnsNothing() throws Exception {
+        snapshotFile.write(walkers(10), NOW);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 5);
+        raf.close();
+        ArrayList<DogLocation> read = new ArrayList<>();
+
+        assertEquals(0, snapshotFile.read(NOW, MAX_AGE, read));
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    public void read_notASnapshot_returnsNothing() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeBytes("not a snapshot at all");
+        raf.close();
+        ArrayList<DogLocation> read = new ArrayList<>();
+
+        assertEquals(0, snapshotFile.read(NOW, MAX_AGE, read));
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    public void read_missingOrDeleted_returnsNothing() throws Exception {
+        ArrayList<DogLocation> read = new ArrayList<>();
+        assertEquals(0, snapshotFile.read(NOW, MAX_AGE, read));
+
+        snapshotFile.write(walkers(3), NOW);
+        snapshotFile.delete();
+
+        assertEquals(0, snapshotFile.read(NOW, MAX_AGE, read));
+        assertTrue(read.isEmpty());
+    }
+
+    private static ArrayList<DogLocation> walkers(int count) {
+        ArrayList<DogLocation> walkers = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            walkers.add(new DogLocation(47.6 + i * 1e-5, -117.4 - i * 1e-5, "walker" + i,
+                    NOW - i));
+        }
+        return walkers;
+    }
+}
@@ -0,0 +1,215 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WalkerSubscriptions against the local database stand-in.
+ */
+public class WalkerSubscriptionsTest {
+    private static final String PATH = "walkers";
+
+    private LocalWalkerDatabase database;
+    private WalkerSubscriptions subscriptions;
+
+    /**
+     * RecordingListener keeps what it is told, as "changed id" and "removed id".
+     */
+    private static final class RecordingListener implements WalkerDatabase.Listener {
+        final ArrayList<String> events = new ArrayList<>();
+        final ArrayList<DogLocation> changes = new ArrayList<>();
+
+        @Override
+        public void onWalkerChanged(DogLocation dogLocation) {
+            events.add("changed " + dogLocation.getId());
+            changes.add(dogLocation);
+        }
+
+        @Override
+        public void onWalkerRemoved(DogLocation dogLocation) {
+            events.add("removed " + dogLocation.getId());
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        database = new LocalWalkerDatabase();
+        subscriptions = new WalkerSubscriptions(database);
+    }
+
+    private void walk(String id, double latitude, long time) {
+        HashMap<String, Object> values = new HashMap<>();
+        values.put(PATH + "/" + id, new DogLocation(latitude, -117.4020, id, time));
+        database.update(values);
+    }
+
+    private void stop(String id) {
+        HashMap<String, Object> values = new HashMap<>();
+        values.put(PATH + "/" + id, null);
+        database.update(values);
+    }
+
+    @Test
+    public void addListener_samePathInTwoScopes_sharesOneListener() throws Exception {
+        walk("spokane", 47.6670, 1);
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        subscriptions.openScope().addListener(PATH, first);
+        long callbacks = database.getCallbackCount();
+        subscriptions.openScope().addListener(PATH, second);
+
+        assertEquals(1, database.getListenerCount());
+        assertEquals(1, subscriptions.getListenerCount());
+        assertEquals(2, subscriptions.getRegistrationCount());
+        // The second scope is told about the walker already there without asking the database.
+        assertEquals(callbacks, database.getCallbackCount());
+        assertEquals(first.events, second.events);
+
+        walk("spokane", 47.6671, 2);
+        assertEquals(callbacks + 1, database.getCallbackCount());
+        assertEquals(2, second.events.size());
+    }
+
+    @Test
+    public void close_repeatedRotations_keepListenersConstant() throws Exception {
+        WalkerSubscriptions.Scope scope = subscriptions.openScope();
+        scope.addListener(PATH, new RecordingListener());
+        scope.addListener("cells/c2kw", new RecordingListener());
+        for(int i = 0; i < 50; i++){
+            // Each recreated activity listens to the same paths, before or after the old one
+            //  closes.
+            WalkerSubscriptions.Scope recreated = subscriptions.openScope();
+            if(i % 2 == 0){
+                scope.close();
+            }
+            recreated.addListener(PATH, new RecordingListener());
+            recreated.addListener("cells/c2kw", new RecordingListener());
+            if(i % 2 == 1){
+                scope.close();
+            }
+            scope = recreated;
+            assertEquals(2, database.getListenerCount());
+            assertEquals(2, subscriptions.getRegistrationCount());
+        }
+
+        scope.close();
+        assertEquals(0, database.getListenerCount());
+        assertEquals(0, subscriptions.getListenerCount());
+    }
+
+    @Test
+    public void removeListener_lastOnPath_removesDatabaseListener() throws Exception {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        WalkerSubscriptions.Scope firstScope = subscriptions.openScope();
+        WalkerSubscriptions.Scope secondScope = subscriptions.openScope();
+        firstScope.addListener(PATH, first);
+        firstScope.addListener(PATH, first);
+        secondScope.addListener(PATH, second);
+
+        firstScope.removeListener(PATH, first);
+        walk("spokane", 47.6670, 1);
+        assertTrue(first.events.isEmpty());
+        assertEquals(1, second.events.size());
+        assertEquals(1, database.getListenerCount());
+
+        secondScope.removeListener(PATH, second);
+        assertEquals(0, database.getListenerCount());
+    }
+
+    @Test
+    public void pause_holdsLatestChangePerWalker() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        WalkerSubscriptions.Scope scope = subscriptions.openScope();
+        scope.addListener(PATH, listener);
+        walk("spokane", 47.6670, 1);
+        walk("cheney", 47.4874, 1);
+        listener.events.clear();
+        listener.changes.clear();
+
+        scope.pause();
+        for(int i = 2; i < 100; i++){
+            walk("spokane", 47.6670 + i * 0.0001, i);
+        }
+        stop("cheney");
+        // Gone and back again is only a change.
+        walk("deerPark", 47.9543, 1);
+        stop("deerPark");
+        walk("deerPark", 47.9544, 2);
+        assertTrue(listener.events.isEmpty());
+
+        scope.resume();
+        assertEquals(3, listener.events.size());
+        assertEquals("removed cheney", listener.events.get(0));
+        assertTrue(listener.events.contains("changed spokane"));
+        assertTrue(listener.events.contains("changed deerPark"));
+        for(DogLocation dogLocation : listener.changes){
+            if(dogLocation.getId().equals("spokane")){
+                assertEquals(99, dogLocation.getTime());
+            }
+        }
+
+        walk("spokane", 47.6, 100);
+        assertEquals(4, listener.events.size());
+    }
+
+    @Test
+    public void pause_onlyHoldsForThatScope() throws Exception {
+        RecordingListener hidden = new RecordingListener();
+        RecordingListener visible = new RecordingListener();
+        WalkerSubscriptions.Scope hiddenScope = subscriptions.openScope();
+        hiddenScope.addListener(PATH, hidden);
+        subscriptions.openScope().addListener(PATH, visible);
+
+        hiddenScope.pause();
+        walk("spokane", 47.6670, 1);
+        assertTrue(hidden.events.isEmpty());
+        assertEquals(1, visible.events.size());
+
+        // Closing a paused scope drops what it was holding.
+        hiddenScope.close();
+        hiddenScope.resume();
+        assertTrue(hidden.events.isEmpty());
+        assertEquals(1, database.getListenerCount());
+    }
+
+    @Test
+    public void addListener_whilePaused_holdsKnownWalkers() throws Exception {
+        walk("spokane", 47.6670, 1);
+        subscriptions.openScope().addListener(PATH, new RecordingListener());
+        RecordingListener listener = new RecordingListener();
+        WalkerSubscriptions.Scope scope = subscriptions.openScope();
+        scope.pause();
+        scope.addListener(PATH, listener);
+        assertTrue(listener.events.isEmpty());
+
+        scope.resume();
+        assertEquals("changed spokane", listener.events.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addListener_closedScope_throws() throws Exception {
+        WalkerSubscriptions.Scope scope = subscriptions.openScope();
+        scope.close();
+        scope.addListener(PATH, new RecordingListener());
+    }
+
+    @Test
+    public void geohashSubscriber_throughScope_closesWithIt() throws Exception {
+        WalkerSubscriptions.Scope scope = subscriptions.openScope();
+        GeohashSubscriber subscriber = new GeohashSubscriber(scope, new RecordingListener());
+        MapViewport mapViewport = new MapViewport();
+        mapViewport.set(47.66, -117.41, 47.67, -117.40, 0);
+        subscriber.setViewport(mapViewport);
+        assertTrue(database.getListenerCount() > 0);
+        assertEquals(subscriber.getCells().size(), subscriptions.getListenerCount());
+
+        scope.close();
+        assertEquals(0, database.getListenerCount());
+    }
+}
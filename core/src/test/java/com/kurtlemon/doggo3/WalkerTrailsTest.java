@@ -0,0 +1,222 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WalkerTrails.
+ */
+public class WalkerTrailsTest {
+    private static final double LATITUDE = 47.6670;
+    private static final double LONGITUDE = -117.4020;
+    private static final long TIME = 1512734400000L;
+
+    // About 11 meters of latitude.
+    private static final double STEP = 0.0001;
+
+    @Test
+    public void add_straightWalk_movesEndOfTrail() throws Exception {
+        WalkerTrails walkerTrails = new WalkerTrails();
+        MapViewport mapViewport = viewport();
+        HashMap<String, List<double[]>> drawn = new HashMap<>();
+        for(int i = 0; i < 20; i++){
+            walkerTrails.add(new DogLocation(LATITUDE + i * STEP, LONGITUDE, "walker",
+                    TIME + i * 1000));
+            TrailDelta trailDelta = new TrailDelta();
+            walkerTrails.emit(mapViewport, false, trailDelta);
+            apply(trailDelta, drawn);
+        }
+
+        List<double[]> trail = drawn.get("walker");
+        assertEquals(2, trail.size());
+        assertEquals(LATITUDE, trail.get(0)[0], 1e-7);
+        assertEquals(LATITUDE + 19 * STEP, trail.get(1)[0], 1e-7);
+    }
+
+    @Test
+    public void add_reversal_keepsTurnPoint() throws Exception {
+        WalkerTrails walkerTrails = new WalkerTrails();
+        for(int i = 0; i <= 20; i++){
+            // Ten fixes up the street and ten back down the same way.
+            int steps = i <= 10 ? i : 20 - i;
+            walkerTrails.add(new DogLocation(LATITUDE + steps * STEP, LONGITUDE, "walker",
+                    TIME + i * 1000));
+        }
+        TrailDelta trailDelta = new TrailDelta();
+        walkerTrails.emit(viewport(), true, trailDelta);
+
+        double[] latitudes = trailDelta.getChanged().get(0).getLatitudes();
+        assertEquals(3, latitudes.length);
+        assertEquals(LATITUDE, latitudes[0], 1e-7);
+        assertEquals(LATITUDE + 10 * STEP, latitudes[1], 1e-7);
+        assertEquals(LATITUDE, latitudes[2], 1e-7);
+    }
+
+    @Test
+    public void emit_changes_matchDrawingFromScratch() throws Exception {
+        Random random = new Random(9);
+        WalkerTrails incremental = new WalkerTrails(WalkerTrails.DEFAULT_WINDOW_MILLIS, 8, 100,
+                WalkerTrails.DEFAULT_TOLERANCE_METERS);
+        WalkerTrails fromScratch = new WalkerTrails(WalkerTrails.DEFAULT_WINDOW_MILLIS, 8, 100,
+                WalkerTrails.DEFAULT_TOLERANCE_METERS);
+        MapViewport mapViewport = viewport();
+        HashMap<String, List<double[]>> drawn = new HashMap<>();
+        double[][] positions = new double[20][];
+        for(int i = 0; i < positions.length; i++){
+            positions[i] = new double[]{LATITUDE, LONGITUDE};
+        }
+        for(int step = 0; step < 3000; step++){
+            int walker = random.nextInt(positions.length);
+            positions[walker][0] += (random.nextDouble() - 0.3) * STEP;
+            positions[walker][1] += (random.nextDouble() - 0.5) * STEP;
+            DogLocation dogLocation = new DogLocation(positions[walker][0], positions[walker][1],
+                    "walker" + walker, TIME + step * 1000);
+            incremental.add(dogLocation);
+            fromScratch.add(dogLocation);
+            if(random.nextInt(5) == 0){
+                TrailDelta trailDelta = new TrailDelta();
+                incremental.emit(mapViewport, false, trailDelta);
+                apply(trailDelta, drawn);
+            }
+        }
+        TrailDelta trailDelta = new TrailDelta();
+        incremental.emit(mapViewport, false, trailDelta);
+        apply(trailDelta, drawn);
+        HashMap<String, List<double[]>> expected = new HashMap<>();
+        trailDelta = new TrailDelta();
+        fromScratch.emit(mapViewport, true, trailDelta);
+        apply(trailDelta, expected);
+
+        assertEquals(expected.keySet(), drawn.keySet());
+        for(String id : expected.keySet()){
+            List<double[]> expectedTrail = expected.get(id);
+            List<double[]> drawnTrail = drawn.get(id);
+            assertEquals(expectedTrail.size(), drawnTrail.size());
+            assertTrue(drawnTrail.size() <= 8);
+            for(int i = 0; i < expectedTrail.size(); i++){
+                assertArrayEquals(expectedTrail.get(i), drawnTrail.get(i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void add_pastWindow_trimsOldPoints() throws Exception {
+        WalkerTrails walkerTrails = new WalkerTrails();
+        for(int i = 0; i < 40; i++){
+            // A zigzag, so every fix is kept, every 30 seconds for 20 minutes.
+            walkerTrails.add(new DogLocation(LATITUDE + i * STEP,
+                    LONGITUDE + (i % 2) * STEP, "walker", TIME + i * 30000));
+        }
+        TrailDelta trailDelta = new TrailDelta();
+        walkerTrails.emit(viewport(), true, trailDelta);
+
+        // Five minutes back from the last fix, inclusive.
+        assertEquals(11, trailDelta.getChanged().get(0).getLatitudes().length);
+        assertEquals(LATITUDE + 29 * STEP, trailDelta.getChanged().get(0).getLatitudes()[0],
+                1e-7);
+    }
+
+    @Test
+    public void add_pastMaxTrails_reusesOffScreenTrailFirst() throws Exception {
+        WalkerTrails walkerTrails = new WalkerTrails(WalkerTrails.DEFAULT_WINDOW_MILLIS, 8, 2,
+                WalkerTrails.DEFAULT_TOLERANCE_METERS);
+        MapViewport mapViewport = viewport();
+        addWalk(walkerTrails, "onScreen", LATITUDE);
+        addWalk(walkerTrails, "offScreen", LATITUDE + 1);
+        TrailDelta trailDelta = new TrailDelta();
+        walkerTrails.emit(mapViewport, true, trailDelta);
+        assertEquals(1, trailDelta.getChanged().size());
+
+        // The on screen trail is older, but the off screen one goes.
+        addWalk(walkerTrails, "arrived", LATITUDE);
+        walkerTrails.emit(mapViewport, false, trailDelta);
+        assertEquals(2, walkerTrails.size());
+        assertTrue(trailDelta.getRemoved().isEmpty());
+        assertEquals("arrived", trailDelta.getChanged().get(0).getId());
+
+        // With every trail on screen, the one updated longest ago goes.
+        addWalk(walkerTrails, "another", LATITUDE);
+        walkerTrails.emit(mapViewport, false, trailDelta);
+        assertEquals(2, walkerTrails.size());
+        assertEquals("onScreen", trailDelta.getRemoved().get(0));
+    }
+
+    @Test
+    public void getMemoryBytes_staysWithinMaxTrails() throws Exception {
+        WalkerTrails walkerTrails = new WalkerTrails();
+        for(int i = 0; i < 5000; i++){
+            walkerTrails.add(new DogLocation(LATITUDE, LONGITUDE, "walker" + i, TIME));
+        }
+
+        assertEquals(WalkerTrails.DEFAULT_MAX_TRAILS, walkerTrails.size());
+        assertEquals((long) WalkerTrails.DEFAULT_MAX_TRAILS
+                * WalkerTrails.DEFAULT_POINTS_PER_TRAIL * 16, walkerTrails.getMemoryBytes());
+    }
+
+    @Test
+    public void remove_drawnTrail_isRemovedByNextPass() throws Exception {
+        WalkerTrails walkerTrails = new WalkerTrails();
+        addWalk(walkerTrails, "walker", LATITUDE);
+        TrailDelta trailDelta = new TrailDelta();
+        walkerTrails.emit(viewport(), true, trailDelta);
+
+        walkerTrails.remove("walker");
+        walkerTrails.emit(viewport(), false, trailDelta);
+
+        assertEquals(0, walkerTrails.size());
+        assertEquals("walker", trailDelta.getRemoved().get(0));
+        assertTrue(trailDelta.getChanged().isEmpty());
+    }
+
+    /** Adds a short walk with a turn in it.
+     *
+     * @param walkerTrails
+     * @param id
+     * @param latitude
+     */
+    private static void addWalk(WalkerTrails walkerTrails, String id, double latitude) {
+        walkerTrails.add(new DogLocation(latitude, LONGITUDE, id, TIME));
+        walkerTrails.add(new DogLocation(latitude + STEP, LONGITUDE, id, TIME + 1000));
+        walkerTrails.add(new DogLocation(latitude + STEP, LONGITUDE + STEP, id, TIME + 2000));
+    }
+
+    /** Returns a viewport a few kilometers across around the walks.
+     *
+     * @return
+     */
+    private static MapViewport viewport() {
+        MapViewport mapViewport = new MapViewport();
+        mapViewport.set(LATITUDE - 0.05, LONGITUDE - 0.05, LATITUDE + 0.05, LONGITUDE + 0.05, 0);
+        return mapViewport;
+    }
+
+    /** Applies a delta to trails drawn as lists of {latitude, longitude}, as TrailRenderer does.
+     *
+     * @param trailDelta
+     * @param drawn
+     */
+    private static void apply(TrailDelta trailDelta, HashMap<String, List<double[]>> drawn) {
+        for(String id : trailDelta.getRemoved()){
+            drawn.remove(id);
+        }
+        for(TrailDelta.Change change : trailDelta.getChanged()){
+            List<double[]> points = drawn.get(change.getId());
+            if(points == null){
+                points = new ArrayList<>();
+                drawn.put(change.getId(), points);
+            }
+            assertTrue(change.getTrimmed() + change.getKept() <= points.size());
+            points.subList(0, change.getTrimmed()).clear();
+            points.subList(change.getKept(), points.size()).clear();
+            for(int i = 0; i < change.getLatitudes().length; i++){
+                points.add(new double[]{change.getLatitudes()[i], change.getLongitudes()[i]});
+            }
+        }
+    }
+}
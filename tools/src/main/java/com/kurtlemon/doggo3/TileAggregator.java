@@ -0,0 +1,194 @@
+/**
+ * TileAggregator sits between the walkers and the petters. Instead of every petter listening to
+ *  the geohash cells on its screen, petters subscribe to tiles, which are the same cells, and
+ *  the aggregator listens to each tile once for all of them. The walkers written to a tile are
+ *  folded into its snapshot as they come, and at a fixed cadence each tile that changed
+ *  publishes one batch to its subscribers with the latest location of every walker that moved
+ *  and every walker that left, however many fixes arrived in between. A new subscriber gets the
+ *  tile's whole snapshot as its first batch. Not thread safe; listeners, subscriptions and
+ *  publish() have to be on one thread.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+public class TileAggregator {
+    // How often tiles publish by default.
+    public static final long DEFAULT_PUBLISH_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Subscriber is handed the batches of the tiles it subscribes to. The lists are shared by
+     *  every subscriber of the tile and must not be changed.
+     */
+    public interface Subscriber {
+        void onTileBatch(String tile, List<DogLocation> changed, List<DogLocation> removed);
+    }
+
+    /**
+     * Tile is one cell's snapshot, the changes to it since it last published, and who it
+     *  publishes to. It is the database listener on its cell.
+     */
+    private final class Tile implements WalkerDatabase.Listener {
+        final String cell;
+        final HashMap<String, DogLocation> walkers = new HashMap<>();
+        final LinkedHashMap<String, DogLocation> changed = new LinkedHashMap<>();
+        final LinkedHashMap<String, DogLocation> removed = new LinkedHashMap<>();
+        final ArrayList<Subscriber> subscribers = new ArrayList<>();
+
+        Tile(String cell) {
+            this.cell = cell;
+        }
+
+        @Override
+        public void onWalkerChanged(DogLocation dogLocation) {
+            updatesReceived++;
+            DogLocation known = walkers.get(dogLocation.getId());
+            if(known != null && known.getTime() > dogLocation.getTime()){
+                return;
+            }
+            walkers.put(dogLocation.getId(), dogLocation);
+            removed.remove(dogLocation.getId());
+            changed.put(dogLocation.getId(), dogLocation);
+        }
+
+        @Override
+        public void onWalkerRemoved(DogLocation dogLocation) {
+            updatesReceived++;
+            if(walkers.remove(dogLocation.getId()) == null){
+                return;
+            }
+            changed.remove(dogLocation.getId());
+            removed.put(dogLocation.getId(), dogLocation);
+        }
+    }
+
+    // Where walkers are written.
+    private final WalkerDatabase walkerDatabase;
+
+    // Tiles with at least one subscriber.
+    private final HashMap<String, Tile> tiles;
+
+    // Walker updates received from the database, batches published, and walkers in them.
+    private long updatesReceived;
+    private long batchesPublished;
+    private long walkersPublished;
+
+    /** Explicit Value Constructor.
+     *
+     * @param walkerDatabase where walkers are written
+     */
+    public TileAggregator(WalkerDatabase walkerDatabase) {
+        this.walkerDatabase = walkerDatabase;
+        tiles = new HashMap<>();
+    }
+
+    /** Subscribes to a tile, starting to listen to its cell if no one else is. The subscriber is
+     *      handed the walkers already known in the tile right away.
+     *
+     * @param tile a geohash cell at an indexed precision
+     * @param subscriber
+     */
+    public void subscribe(String tile, Subscriber subscriber) {
+        Tile known = tiles.get(tile);
+        if(known == null){
+            known = new Tile(tile);
+            tiles.put(tile, known);
+            known.subscribers.add(subscriber);
+            // The walkers already there arrive as changes, and go out with the next publish.
+            walkerDatabase.addListener(GeoCellIndex.cellPath(tile), known);
+            return;
+        }
+        if(known.subscribers.contains(subscriber)){
+            return;
+        }
+        known.subscribers.add(subscriber);
+        if(!known.walkers.isEmpty()){
+            List<DogLocation> snapshot = new ArrayList<>(known.walkers.values());
+            List<DogLocation> none = Collections.emptyList();
+            batchesPublished++;
+            walkersPublished += snapshot.size();
+            subscriber.onTileBatch(tile, snapshot, none);
+        }
+    }
+
+    /** Unsubscribes from a tile, and stops listening to its cell if no one else is subscribed.
+     *
+     * @param tile
+     * @param subscriber
+     */
+    public void unsubscribe(String tile, Subscriber subscriber) {
+        Tile known = tiles.get(tile);
+        if(known == null || !known.subscribers.remove(subscriber)){
+            return;
+        }
+        if(known.subscribers.isEmpty()){
+            tiles.remove(tile);
+            walkerDatabase.removeListener(GeoCellIndex.cellPath(tile), known);
+        }
+    }
+
+    /** Publishes one batch to every subscriber of each tile that changed since the last call.
+     *      Meant to be called at a fixed cadence.
+     *
+     * @return the number of batches published
+     */
+    public int publish() {
+        int batches = 0;
+        // A subscriber may subscribe or unsubscribe as it is handed a batch.
+        for(Tile tile : new ArrayList<>(tiles.values())){
+            if(tile.changed.isEmpty() && tile.removed.isEmpty()){
+                continue;
+            }
+            List<DogLocation> changed = Collections.unmodifiableList(
+                    new ArrayList<>(tile.changed.values()));
+            List<DogLocation> removed = Collections.unmodifiableList(
+                    new ArrayList<>(tile.removed.values()));
+            tile.changed.clear();
+            tile.removed.clear();
+            for(Subscriber subscriber : tile.subscribers.toArray(
+                    new Subscriber[tile.subscribers.size()])){
+                subscriber.onTileBatch(tile.cell, changed, removed);
+                batches++;
+                walkersPublished += changed.size() + removed.size();
+            }
+        }
+        batchesPublished += batches;
+        return batches;
+    }
+
+    /** Returns the number of tiles listened to.
+     *
+     * @return
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /** Returns the number of walker updates received from the database.
+     *
+     * @return
+     */
+    public long getUpdatesReceived() {
+        return updatesReceived;
+    }
+
+    /** Returns the number of batches handed to subscribers, snapshots included.
+     *
+     * @return
+     */
+    public long getBatchesPublished() {
+        return batchesPublished;
+    }
+
+    /** Returns the number of walkers in the batches handed to subscribers.
+     *
+     * @return
+     */
+    public long getWalkersPublished() {
+        return walkersPublished;
+    }
+}
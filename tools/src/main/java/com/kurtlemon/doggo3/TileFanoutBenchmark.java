@@ -0,0 +1,430 @@
+/**
+ * TileFanoutBenchmark compares two ways of getting walkers to petters on the same walk. In the
+ *  direct model every petter listens to the geohash cells on its screen, so the database sends
+ *  each write once to every petter watching that cell. In the aggregated model a TileAggregator
+ *  listens to each cell once and petters subscribe to it, getting one batch per tile at a fixed
+ *  cadence. Both run against a LocalWalkerDatabase on a simulated clock, so runs are repeatable
+ *  and take no longer than the work itself. It reports the messages each model sends and how
+ *  long updates wait before a petter gets them; network time isn't modeled, so that is only the
+ *  wait the aggregator adds.
+ */
+package com.kurtlemon.doggo3;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class TileFanoutBenchmark {
+    // Defaults: the simulator's walkers, a couple of hundred petters each looking at about a
+    //  kilometer of map, for a minute.
+    public static final int DEFAULT_WALKERS = WalkerSimulator.DEFAULT_WALKERS;
+    public static final int DEFAULT_PETTERS = 200;
+    public static final long DEFAULT_DURATION_MILLIS = 60000;
+    private static final double DEFAULT_LATITUDE = 47.6588;
+    private static final double DEFAULT_LONGITUDE = -117.4260;
+    private static final double DEFAULT_RADIUS_METERS = 3000;
+    private static final double VIEW_METERS = 1000;
+
+    // Walkers walk at about this speed, give or take 30%.
+    private static final double WALKING_SPEED_METERS_PER_SECOND = 1.4;
+
+    // Step of the simulated clock, and when it starts.
+    private static final long TICK_MILLIS = 50;
+    private static final long START_MILLIS = 1512734400000L;
+
+    /**
+     * Model is what one way of getting walkers to petters cost.
+     */
+    public static class Model {
+        private final String name;
+        private final long serverMessages;
+        private final long petterMessages;
+        private final long walkersDelivered;
+        private final LatencyHistogram latency;
+        private final long runMillis;
+
+        /** Explicit Value Constructor.
+         *
+         * @param name
+         * @param serverMessages walker updates the database sent
+         * @param petterMessages messages petters got
+         * @param walkersDelivered walkers in the messages petters got
+         * @param latency how long petters waited for updates, in milliseconds
+         * @param runMillis how long the model took to run
+         */
+        Model(String name, long serverMessages, long petterMessages, long walkersDelivered,
+              LatencyHistogram latency, long runMillis) {
+            this.name = name;
+            this.serverMessages = serverMessages;
+            this.petterMessages = petterMessages;
+            this.walkersDelivered = walkersDelivered;
+            this.latency = latency;
+            this.runMillis = runMillis;
+        }
+
+        /** Returns the number of walker updates the database sent, to petters or the aggregator.
+         *
+         * @return
+         */
+        public long getServerMessages() {
+            return serverMessages;
+        }
+
+        /** Returns the number of messages petters got.
+         *
+         * @return
+         */
+        public long getPetterMessages() {
+            return petterMessages;
+        }
+
+        /** Returns the number of walkers in the messages petters got.
+         *
+         * @return
+         */
+        public long getWalkersDelivered() {
+            return walkersDelivered;
+        }
+
+        /** Returns how long petters waited for updates after they were written, in milliseconds.
+         *
+         * @return
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /** Returns the model as a few lines of text.
+         *
+         * @param seconds how long was simulated
+         * @return
+         */
+        String describe(double seconds) {
+            return String.format("  %-10s database sent %10d  (%.0f/s)%n"
+                            + "  %-10s petters got   %10d  (%.0f/s), %d walkers%n"
+                            + "  %-10s wait          p50 %d ms, p95 %d ms, p99 %d ms, max %d ms"
+                            + " over %d updates, ran in %d ms",
+                    name, serverMessages, serverMessages / seconds,
+                    "", petterMessages, petterMessages / seconds, walkersDelivered,
+                    "", latency.getPercentile(50), latency.getPercentile(95),
+                    latency.getPercentile(99), latency.getMax(), latency.getCount(), runMillis);
+        }
+    }
+
+    /**
+     * Report is what a run measured for both models.
+     */
+    public static class Report {
+        private final int walkers;
+        private final int petters;
+        private final long durationMillis;
+        private final long writes;
+        private final Model direct;
+        private final Model aggregated;
+
+        /** Explicit Value Constructor.
+         *
+         * @param walkers
+         * @param petters
+         * @param durationMillis
+         * @param writes
+         * @param direct
+         * @param aggregated
+         */
+        Report(int walkers, int petters, long durationMillis, long writes, Model direct,
+               Model aggregated) {
+            this.walkers = walkers;
+            this.petters = petters;
+            this.durationMillis = durationMillis;
+            this.writes = writes;
+            this.direct = direct;
+            this.aggregated = aggregated;
+        }
+
+        /** Returns the number of locations walkers wrote in each model.
+         *
+         * @return
+         */
+        public long getWrites() {
+            return writes;
+        }
+
+        /** Returns what every petter listening to the database cost.
+         *
+         * @return
+         */
+        public Model getDirect() {
+            return direct;
+        }
+
+        /** Returns what petters subscribing to the aggregator cost.
+         *
+         * @return
+         */
+        public Model getAggregated() {
+            return aggregated;
+        }
+
+        /** Returns the report as a few lines of text.
+         *
+         * @return
+         */
+        @Override
+        public String toString() {
+            double seconds = durationMillis / 1000.0;
+            return String.format("%d walkers, %d petters for %.1f s%n"
+                            + "  writes     %10d  (%.0f/s)%n%s%n%s",
+                    walkers, petters, seconds, writes, writes / seconds,
+                    direct.describe(seconds), aggregated.describe(seconds));
+        }
+    }
+
+    /**
+     * CountingSubscriber is a petter in the aggregated model.
+     */
+    private static final class CountingSubscriber implements TileAggregator.Subscriber {
+        final long[] clock;
+        final LatencyHistogram latency;
+        long messages;
+        long walkers;
+
+        CountingSubscriber(long[] clock, LatencyHistogram latency) {
+            this.clock = clock;
+            this.latency = latency;
+        }
+
+        @Override
+        public void onTileBatch(String tile, List<DogLocation> changed,
+                                List<DogLocation> removed) {
+            messages++;
+            walkers += changed.size() + removed.size();
+            for(DogLocation dogLocation : changed){
+                latency.record(clock[0] - dogLocation.getTime());
+            }
+        }
+    }
+
+    // What to simulate.
+    private final List<WalkerRoute> routes;
+    private final int walkerCount;
+    private final int petterCount;
+    private final long fixIntervalMillis;
+    private final long publishIntervalMillis;
+    private final long seed;
+
+    /** Explicit Value Constructor.
+     *
+     * @param routes walkers are shared out over these in turn
+     * @param walkerCount
+     * @param petterCount
+     * @param fixIntervalMillis how often each walker gets a location fix
+     * @param publishIntervalMillis how often the aggregator publishes
+     * @param seed
+     */
+    public TileFanoutBenchmark(List<WalkerRoute> routes, int walkerCount, int petterCount,
+                               long fixIntervalMillis, long publishIntervalMillis, long seed) {
+        if(routes.isEmpty()){
+            throw new IllegalArgumentException("No routes to walk");
+        }
+        this.routes = new ArrayList<>(routes);
+        this.walkerCount = walkerCount;
+        this.petterCount = petterCount;
+        this.fixIntervalMillis = fixIntervalMillis;
+        this.publishIntervalMillis = publishIntervalMillis;
+        this.seed = seed;
+    }
+
+    /** Runs the same walk through both models.
+     *
+     * @param durationMillis how long to simulate
+     * @return what was measured
+     */
+    public Report run(long durationMillis) {
+        long[] writes = new long[1];
+        Model direct = runModel(false, durationMillis, writes);
+        Model aggregated = runModel(true, durationMillis, writes);
+        return new Report(walkerCount, petterCount, durationMillis, writes[0], direct,
+                aggregated);
+    }
+
+    /** Runs the walk through one model.
+     *
+     * @param aggregate whether petters subscribe to the aggregator instead of the database
+     * @param durationMillis
+     * @param writes set to the number of locations written
+     * @return
+     */
+    private Model runModel(boolean aggregate, long durationMillis, long[] writes) {
+        long runStart = System.nanoTime();
+        LocalWalkerDatabase database = new LocalWalkerDatabase();
+        final long[] clock = {START_MILLIS};
+        final LatencyHistogram latency = new LatencyHistogram(
+                aggregate ? "aggregated wait" : "direct wait", "ms");
+
+        // Petters, at the same places in both models.
+        Random petterRandom = new Random(seed + 1);
+        TileAggregator tileAggregator = aggregate ? new TileAggregator(database) : null;
+        ArrayList<CountingSubscriber> subscribers = new ArrayList<>();
+        WalkerDatabase.Listener directListener = new WalkerDatabase.Listener() {
+            @Override
+            public void onWalkerChanged(DogLocation dogLocation) {
+                latency.record(clock[0] - dogLocation.getTime());
+            }
+
+            @Override
+            public void onWalkerRemoved(DogLocation dogLocation) {
+
+            }
+        };
+        HashSet<String> cells = new HashSet<>();
+        for(int i = 0; i < petterCount; i++){
+            MapViewport mapViewport = randomView(petterRandom);
+            if(aggregate){
+                CountingSubscriber subscriber = new CountingSubscriber(clock, latency);
+                subscribers.add(subscriber);
+                cells.clear();
+                GeoHash.covering(mapViewport.getSouth(), mapViewport.getWest(),
+                        mapViewport.getNorth(), mapViewport.getEast(),
+                        GeohashSubscriber.choosePrecision(mapViewport.getSouth(),
+                                mapViewport.getWest(), mapViewport.getNorth(),
+                                mapViewport.getEast()),
+                        GeohashSubscriber.MAX_CELLS, cells);
+                for(String cell : cells){
+                    tileAggregator.subscribe(cell, subscriber);
+                }
+            }else{
+                new GeohashSubscriber(database, directListener).setViewport(mapViewport);
+            }
+        }
+
+        // Walkers, the same in both models.
+        Random random = new Random(seed);
+        LocationWriter[] locationWriters = new LocationWriter[walkerCount];
+        PublishPolicy[] publishPolicies = new PublishPolicy[walkerCount];
+        double[] speeds = new double[walkerCount];
+        double[] starts = new double[walkerCount];
+        long[] nextFixAt = new long[walkerCount];
+        for(int i = 0; i < walkerCount; i++){
+            WalkerRoute route = routes.get(i % routes.size());
+            locationWriters[i] = new LocationWriter(database, "walker" + i, false);
+            publishPolicies[i] = new PublishPolicy();
+            speeds[i] = WALKING_SPEED_METERS_PER_SECOND * (0.7 + 0.6 * random.nextDouble());
+            starts[i] = random.nextDouble() * 2 * route.getLength();
+            nextFixAt[i] = START_MILLIS + (long) (random.nextDouble() * fixIntervalMillis);
+        }
+
+        // The petters' listeners were told about walkers already there; only the walk counts.
+        long callbacksBefore = database.getCallbackCount();
+        latency.reset();
+        long written = 0;
+        long nextPublishAt = START_MILLIS + publishIntervalMillis;
+        double[] position = new double[2];
+        for(long now = START_MILLIS; now < START_MILLIS + durationMillis; now += TICK_MILLIS){
+            clock[0] = now;
+            for(int i = 0; i < walkerCount; i++){
+                if(nextFixAt[i] > now){
+                    continue;
+                }
+                nextFixAt[i] += fixIntervalMillis;
+                routes.get(i % routes.size()).positionAt(
+                        starts[i] + speeds[i] * (now - START_MILLIS) / 1000.0, position);
+                if(publishPolicies[i].shouldPublish(position[0], position[1], now)){
+                    locationWriters[i].write(position[0], position[1], now);
+                    written++;
+                }
+            }
+            if(aggregate && now >= nextPublishAt){
+                tileAggregator.publish();
+                nextPublishAt += publishIntervalMillis;
+            }
+        }
+        writes[0] = written;
+
+        // Every update the database sends in the direct model goes to a petter on its own.
+        long serverMessages = database.getCallbackCount() - callbacksBefore;
+        long petterMessages = serverMessages;
+        long walkersDelivered = serverMessages;
+        if(aggregate){
+            petterMessages = 0;
+            walkersDelivered = 0;
+            for(CountingSubscriber subscriber : subscribers){
+                petterMessages += subscriber.messages;
+                walkersDelivered += subscriber.walkers;
+            }
+        }
+        return new Model(aggregate ? "aggregated" : "direct", serverMessages, petterMessages,
+                walkersDelivered, latency, (System.nanoTime() - runStart) / 1000000);
+    }
+
+    /** Returns a petter's view of about VIEW_METERS across somewhere in the walkers' area.
+     *
+     * @param random
+     * @return
+     */
+    private static MapViewport randomView(Random random) {
+        double metersPerDegree = Math.toRadians(GeoMath.EARTH_RADIUS_METERS);
+        double angle = random.nextDouble() * 2 * Math.PI;
+        double distance = Math.sqrt(random.nextDouble()) * DEFAULT_RADIUS_METERS;
+        double latitude = DEFAULT_LATITUDE + distance * Math.sin(angle) / metersPerDegree;
+        double longitudeScale = metersPerDegree * Math.cos(Math.toRadians(latitude));
+        double longitude = DEFAULT_LONGITUDE + distance * Math.cos(angle) / longitudeScale;
+        double halfHeight = VIEW_METERS / 2 / metersPerDegree;
+        double halfWidth = VIEW_METERS / 2 / longitudeScale;
+        MapViewport mapViewport = new MapViewport();
+        mapViewport.set(latitude - halfHeight, longitude - halfWidth, latitude + halfHeight,
+                longitude + halfWidth, 0);
+        return mapViewport;
+    }
+
+    /** Runs the comparison from the command line and prints the report.
+     *
+     *  Options: --walkers N, --petters N, --seconds N, --fix-interval MILLIS,
+     *      --publish-interval MILLIS, --seed N.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        int walkers = DEFAULT_WALKERS;
+        int petters = DEFAULT_PETTERS;
+        long durationMillis = DEFAULT_DURATION_MILLIS;
+        long fixIntervalMillis = WalkerSimulator.DEFAULT_FIX_INTERVAL_MILLIS;
+        long publishIntervalMillis = TileAggregator.DEFAULT_PUBLISH_INTERVAL_MILLIS;
+        long seed = 1;
+        try{
+            for(int i = 0; i < args.length; i++){
+                String option = args[i];
+                if(i + 1 >= args.length){
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }else if(option.equals("--walkers")){
+                    walkers = Integer.parseInt(args[++i]);
+                }else if(option.equals("--petters")){
+                    petters = Integer.parseInt(args[++i]);
+                }else if(option.equals("--seconds")){
+                    durationMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+                }else if(option.equals("--fix-interval")){
+                    fixIntervalMillis = Long.parseLong(args[++i]);
+                }else if(option.equals("--publish-interval")){
+                    publishIntervalMillis = Long.parseLong(args[++i]);
+                }else if(option.equals("--seed")){
+                    seed = Long.parseLong(args[++i]);
+                }else{
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+        }catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.println("Usage: TileFanoutBenchmark [--walkers N] [--petters N]"
+                    + " [--seconds N] [--fix-interval MILLIS] [--publish-interval MILLIS]"
+                    + " [--seed N]");
+            System.exit(1);
+            return;
+        }
+
+        List<WalkerRoute> routes = WalkerSimulator.randomRoutes(walkers, DEFAULT_LATITUDE,
+                DEFAULT_LONGITUDE, DEFAULT_RADIUS_METERS, seed);
+        Report report = new TileFanoutBenchmark(routes, walkers, petters, fixIntervalMillis,
+                publishIntervalMillis, seed).run(durationMillis);
+        System.out.println(report);
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * WalkerRoute is a path a simulated dog walker follows, as a list of points. Walkers go to the end
+ *  of the route and back again. Routes are either made up at random around a point or read from a
+ *  text file of "latitude,longitude" lines, with a blank line between routes.
+ */
+package com.kurtlemon.doggo3;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class WalkerRoute {
+    // Meters in a degree of latitude.
+    private static final double METERS_PER_DEGREE = Math.toRadians(GeoMath.EARTH_RADIUS_METERS);
+
+    // Shortest and longest leg of a random route, in meters.
+    private static final double MIN_LEG_METERS = 50;
+    private static final double MAX_LEG_METERS = 250;
+
+    // The points of the route, and the distance along the route to each one.
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] distances;
+
+    /** Explicit Value Constructor.
+     *
+     * @param latitudes
+     * @param longitudes
+     */
+    public WalkerRoute(double[] latitudes, double[] longitudes) {
+        if(latitudes.length == 0 || latitudes.length != longitudes.length){
+            throw new IllegalArgumentException("A route needs at least one point");
+        }
+        this.latitudes = latitudes.clone();
+        this.longitudes = longitudes.clone();
+        distances = new double[latitudes.length];
+        for(int i = 1; i < latitudes.length; i++){
+            distances[i] = distances[i - 1] + GeoMath.distanceMeters(latitudes[i - 1],
+                    longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+    }
+
+    /** Returns the length of the route in meters.
+     *
+     * @return
+     */
+    public double getLength() {
+        return distances[distances.length - 1];
+    }
+
+    /** Writes where a walker is after walking a distance as {latitude, longitude}, turning around
+     *      at each end of the route.
+     *
+     * @param meters
+     * @param out
+     */
+    public void positionAt(double meters, double[] out) {
+        double length = getLength();
+        if(length == 0){
+            out[0] = latitudes[0];
+            out[1] = longitudes[0];
+            return;
+        }
+        double along = meters % (2 * length);
+        if(along < 0){
+            along += 2 * length;
+        }
+        if(along > length){
+            along = 2 * length - along;
+        }
+        // Find the leg the position is on.
+        int low = 0;
+        int high = distances.length - 1;
+        while(high - low > 1){
+            int middle = (low + high) >>> 1;
+            if(distances[middle] <= along){
+                low = middle;
+            }else{
+                high = middle;
+            }
+        }
+        double legLength = distances[high] - distances[low];
+        double fraction = legLength == 0 ? 0 : (along - distances[low]) / legLength;
+        out[0] = latitudes[low] + (latitudes[high] - latitudes[low]) * fraction;
+        out[1] = longitudes[low] + (longitudes[high] - longitudes[low]) * fraction;
+    }
+
+    /** Makes up a route that starts somewhere within a radius of a point, wanders for a number of
+     *      legs, and comes back to where it started.
+     *
+     * @param random
+     * @param latitude
+     * @param longitude
+     * @param radiusMeters
+     * @param legs
+     * @return
+     */
+    public static WalkerRoute randomLoop(Random random, double latitude, double longitude,
+                                         double radiusMeters, int legs) {
+        double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        double[] latitudes = new double[legs + 1];
+        double[] longitudes = new double[legs + 1];
+        // A uniformly random start in the circle.
+        double startDistance = radiusMeters * Math.sqrt(random.nextDouble());
+        double startHeading = random.nextDouble() * 2 * Math.PI;
+        latitudes[0] = latitude + startDistance * Math.cos(startHeading) / METERS_PER_DEGREE;
+        longitudes[0] = longitude
+                + startDistance * Math.sin(startHeading) / metersPerDegreeLongitude;
+        for(int i = 1; i < legs; i++){
+            double leg = MIN_LEG_METERS + random.nextDouble() * (MAX_LEG_METERS - MIN_LEG_METERS);
+            double heading = random.nextDouble() * 2 * Math.PI;
+            latitudes[i] = latitudes[i - 1] + leg * Math.cos(heading) / METERS_PER_DEGREE;
+            longitudes[i] = longitudes[i - 1] + leg * Math.sin(heading) / metersPerDegreeLongitude;
+        }
+        latitudes[legs] = latitudes[0];
+        longitudes[legs] = longitudes[0];
+        return new WalkerRoute(latitudes, longitudes);
+    }
+
+    /** Reads routes from text: one "latitude,longitude" point per line and a blank line between
+     *      routes. Lines starting with # are skipped.
+     *
+     * @param reader
+     * @return
+     * @throws IOException if the text can't be read or a line isn't a point
+     */
+    public static List<WalkerRoute> parse(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        ArrayList<WalkerRoute> routes = new ArrayList<>();
+        ArrayList<double[]> points = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while((line = in.readLine()) != null){
+            lineNumber++;
+            line = line.trim();
+            if(line.startsWith("#")){
+                continue;
+            }
+            if(line.isEmpty()){
+                addRoute(points, routes);
+                continue;
+            }
+            String[] parts = line.split(",");
+            try{
+                if(parts.length != 2){
+                    throw new NumberFormatException(line);
+                }
+                points.add(new double[]{Double.parseDouble(parts[0].trim()),
+                        Double.parseDouble(parts[1].trim())});
+            }catch(NumberFormatException e){
+                throw new IOException("Line " + lineNumber + " is not a point: " + line);
+            }
+        }
+        addRoute(points, routes);
+        return routes;
+    }
+
+    /** Adds a route through the points read so far, if any, and starts over.
+     *
+     * @param points
+     * @param routes
+     */
+    private static void addRoute(ArrayList<double[]> points, ArrayList<WalkerRoute> routes) {
+        if(points.isEmpty()){
+            return;
+        }
+        double[] latitudes = new double[points.size()];
+        double[] longitudes = new double[points.size()];
+        for(int i = 0; i < points.size(); i++){
+            latitudes[i] = points.get(i)[0];
+            longitudes[i] = points.get(i)[1];
+        }
+        routes.add(new WalkerRoute(latitudes, longitudes));
+        points.clear();
+    }
+}
@@ -0,0 +1,534 @@
+/**
+ * WalkerSimulator puts a busy city's worth of dog walkers on the petter's map without any devices
+ *  or network. Virtual walkers follow routes and write their locations through LocationWriter
+ *  into a LocalWalkerDatabase at the rate real walkers would. The map side listens through a
+ *  GeohashSubscriber and a SnapshotPipeline onto a clustering thread, applies each walker to a
+ *  WalkerMap and emits cluster deltas once per frame, as PetActivity does. At the end it reports
+ *  throughput and how long updates took from being written to being in a delta.
+ */
+package com.kurtlemon.doggo3;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class WalkerSimulator {
+    // Defaults: a couple of thousand walkers within 3km of downtown Spokane, each getting a fix
+    //  every second, for 30 seconds.
+    public static final int DEFAULT_WALKERS = 2000;
+    public static final long DEFAULT_DURATION_MILLIS = 30000;
+    public static final long DEFAULT_FIX_INTERVAL_MILLIS = 1000;
+    private static final double DEFAULT_LATITUDE = 47.6588;
+    private static final double DEFAULT_LONGITUDE = -117.4260;
+    private static final double DEFAULT_RADIUS_METERS = 3000;
+    private static final int RANDOM_ROUTE_LEGS = 12;
+
+    // Walkers walk at about this speed by default, give or take 30%.
+    private static final double WALKING_SPEED_METERS_PER_SECOND = 1.4;
+
+    // How often walkers are checked for a new fix, and how often a frame is drawn.
+    private static final long WRITER_TICK_MILLIS = 50;
+    private static final long FRAME_MILLIS = 16;
+
+    // Zoom the map is drawn at: close enough that most walkers are their own marker.
+    private static final float VIEW_ZOOM = 17;
+
+    // Most latency samples kept.
+    private static final int MAX_LATENCY_SAMPLES = 1 << 20;
+
+    // How long to wait for the map to catch up once walkers stop writing.
+    private static final long DRAIN_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Walker is a virtual dog walker: where it walks, how fast, and how it writes its location.
+     */
+    private static final class Walker {
+        final WalkerRoute route;
+        final double speedMetersPerSecond;
+        final double startMeters;
+        final LocationWriter locationWriter;
+        final PublishPolicy publishPolicy;
+        long nextFixAt;
+
+        Walker(WalkerRoute route, double speedMetersPerSecond, double startMeters,
+               LocationWriter locationWriter) {
+            this.route = route;
+            this.speedMetersPerSecond = speedMetersPerSecond;
+            this.startMeters = startMeters;
+            this.locationWriter = locationWriter;
+            publishPolicy = new PublishPolicy();
+        }
+    }
+
+    /**
+     * Report is what a run measured.
+     */
+    public static class Report {
+        private final int walkers;
+        private final long elapsedMillis;
+        private final long writes;
+        private final long delivered;
+        private final long replaced;
+        private final long dropped;
+        private final long applied;
+        private final long frames;
+        private final long markersPlaced;
+        private final long[] latencies;
+
+        /** Explicit Value Constructor.
+         *
+         * @param walkers
+         * @param elapsedMillis
+         * @param writes
+         * @param delivered
+         * @param replaced
+         * @param dropped
+         * @param applied
+         * @param frames
+         * @param markersPlaced
+         * @param latencies write-to-delta latencies in nanoseconds, sorted
+         */
+        Report(int walkers, long elapsedMillis, long writes, long delivered, long replaced,
+               long dropped, long applied, long frames, long markersPlaced, long[] latencies) {
+            this.walkers = walkers;
+            this.elapsedMillis = elapsedMillis;
+            this.writes = writes;
+            this.delivered = delivered;
+            this.replaced = replaced;
+            this.dropped = dropped;
+            this.applied = applied;
+            this.frames = frames;
+            this.markersPlaced = markersPlaced;
+            this.latencies = latencies;
+        }
+
+        /** Returns the number of locations written to the database.
+         *
+         * @return
+         */
+        public long getWrites() {
+            return writes;
+        }
+
+        /** Returns the number of updates handed to the map's listener.
+         *
+         * @return
+         */
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /** Returns the number of updates replaced by a newer one before the map got to them.
+         *
+         * @return
+         */
+        public long getReplaced() {
+            return replaced;
+        }
+
+        /** Returns the number of updates dropped because the map fell too far behind.
+         *
+         * @return
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /** Returns the number of updates applied to the walker map.
+         *
+         * @return
+         */
+        public long getApplied() {
+            return applied;
+        }
+
+        /** Returns the number of frames that emitted a cluster delta.
+         *
+         * @return
+         */
+        public long getFrames() {
+            return frames;
+        }
+
+        /** Returns the number of latency samples.
+         *
+         * @return
+         */
+        public int getLatencySamples() {
+            return latencies.length;
+        }
+
+        /** Returns a write-to-delta latency percentile.
+         *
+         * @param percentile between 0 and 100
+         * @return the latency in milliseconds, or 0 if nothing was measured
+         */
+        public double getLatencyMillis(double percentile) {
+            if(latencies.length == 0){
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e6;
+        }
+
+        /** Returns the report as a few lines of text.
+         *
+         * @return
+         */
+        @Override
+        public String toString() {
+            double seconds = elapsedMillis / 1000.0;
+            return String.format("%d walkers for %.1f s%n"
+                            + "  writes     %10d  (%.0f/s)%n"
+                            + "  delivered  %10d  (%.0f/s), %d replaced, %d dropped%n"
+                            + "  applied    %10d  (%.0f/s)%n"
+                            + "  frames     %10d  (%.0f/s), %d markers placed%n"
+                            + "  latency    p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms"
+                            + " over %d updates",
+                    walkers, seconds,
+                    writes, writes / seconds,
+                    delivered, delivered / seconds, replaced, dropped,
+                    applied, applied / seconds,
+                    frames, frames / seconds, markersPlaced,
+                    getLatencyMillis(50), getLatencyMillis(95), getLatencyMillis(99),
+                    getLatencyMillis(100), latencies.length);
+        }
+    }
+
+    // What to simulate.
+    private final List<WalkerRoute> routes;
+    private final int walkerCount;
+    private final long fixIntervalMillis;
+    private final boolean compact;
+    private final long seed;
+
+    // Average speed of the walkers.
+    private double speedMetersPerSecond;
+
+    /** Explicit Value Constructor.
+     *
+     * @param routes walkers are shared out over these in turn
+     * @param walkerCount
+     * @param fixIntervalMillis how often each walker gets a location fix
+     * @param compact whether walkers write the CompactLocationCodec format
+     * @param seed
+     */
+    public WalkerSimulator(List<WalkerRoute> routes, int walkerCount, long fixIntervalMillis,
+                           boolean compact, long seed) {
+        if(routes.isEmpty()){
+            throw new IllegalArgumentException("No routes to walk");
+        }
+        this.routes = new ArrayList<>(routes);
+        this.walkerCount = walkerCount;
+        this.fixIntervalMillis = fixIntervalMillis;
+        this.compact = compact;
+        this.seed = seed;
+        speedMetersPerSecond = WALKING_SPEED_METERS_PER_SECOND;
+    }
+
+    /** Sets how fast walkers go on average, give or take 30%. A walking pace by default; faster
+     *      walkers pass PublishPolicy's distance check sooner, so each writes more often.
+     *
+     * @param speedMetersPerSecond
+     */
+    public void setSpeedMetersPerSecond(double speedMetersPerSecond) {
+        this.speedMetersPerSecond = speedMetersPerSecond;
+    }
+
+    /** Makes up one random route per walker around a point.
+     *
+     * @param count
+     * @param latitude
+     * @param longitude
+     * @param radiusMeters
+     * @param seed
+     * @return
+     */
+    public static List<WalkerRoute> randomRoutes(int count, double latitude, double longitude,
+                                                 double radiusMeters, long seed) {
+        Random random = new Random(seed);
+        ArrayList<WalkerRoute> routes = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            routes.add(WalkerRoute.randomLoop(random, latitude, longitude, radiusMeters,
+                    RANDOM_ROUTE_LEGS));
+        }
+        return routes;
+    }
+
+    /** Runs the simulation in real time.
+     *
+     * @param durationMillis how long walkers write for
+     * @return what was measured
+     * @throws InterruptedException
+     */
+    public Report run(long durationMillis) throws InterruptedException {
+        final LocalWalkerDatabase database = new LocalWalkerDatabase();
+        final long start = System.currentTimeMillis();
+
+        // The walkers, and the time and nanoTime of each one's latest write not yet measured.
+        Random random = new Random(seed);
+        final Walker[] walkers = new Walker[walkerCount];
+        final HashMap<String, Integer> walkerIndexes = new HashMap<>();
+        for(int i = 0; i < walkerCount; i++){
+            WalkerRoute route = routes.get(i % routes.size());
+            String id = "walker" + i;
+            walkers[i] = new Walker(route,
+                    speedMetersPerSecond * (0.7 + 0.6 * random.nextDouble()),
+                    random.nextDouble() * 2 * route.getLength(),
+                    new LocationWriter(database, id, compact));
+            // Spread the first fixes out so walkers don't all write at once.
+            walkers[i].nextFixAt = start + (long) (random.nextDouble() * fixIntervalMillis);
+            walkerIndexes.put(id, i);
+        }
+        final AtomicReferenceArray<long[]> pendingWrites = new AtomicReferenceArray<>(walkerCount);
+        final AtomicLong writes = new AtomicLong();
+
+        // The map side, as PetActivity sets it up.
+        final ExecutorService clusterExecutor = Executors.newSingleThreadExecutor();
+        final SnapshotPipeline snapshotPipeline = new SnapshotPipeline(clusterExecutor,
+                SnapshotPipeline.DEFAULT_CAPACITY);
+        final WalkerMap walkerMap = new WalkerMap();
+        final AtomicBoolean renderRequested = new AtomicBoolean();
+        final AtomicLong applied = new AtomicLong();
+        // Walkers applied since the last delta. Only touched on the clustering thread.
+        final ArrayList<String> appliedSinceFrame = new ArrayList<>();
+        final WalkerDatabase.Listener mapListener = new WalkerDatabase.Listener() {
+            @Override
+            public void onWalkerChanged(DogLocation dogLocation) {
+                if(walkerMap.apply(dogLocation, System.currentTimeMillis())){
+                    applied.incrementAndGet();
+                    appliedSinceFrame.add(dogLocation.getId());
+                    renderRequested.set(true);
+                }
+            }
+
+            @Override
+            public void onWalkerRemoved(DogLocation dogLocation) {
+                if(walkerMap.remove(dogLocation.getId(), dogLocation.getTime())){
+                    renderRequested.set(true);
+                }
+            }
+        };
+        final SnapshotPipeline.Decoder decoder = new SnapshotPipeline.Decoder() {
+            @Override
+            public DogLocation decode(Object snapshot) {
+                return (DogLocation) snapshot;
+            }
+        };
+        GeohashSubscriber geohashSubscriber = new GeohashSubscriber(database,
+                new WalkerDatabase.Listener() {
+                    @Override
+                    public void onWalkerChanged(DogLocation dogLocation) {
+                        snapshotPipeline.submit(mapListener, dogLocation.getId(), dogLocation,
+                                decoder, false);
+                    }
+
+                    @Override
+                    public void onWalkerRemoved(DogLocation dogLocation) {
+                        snapshotPipeline.submit(mapListener, dogLocation.getId(), dogLocation,
+                                decoder, true);
+                    }
+                });
+        final MapViewport mapViewport = boundsOf(walkers);
+        geohashSubscriber.setViewport(mapViewport);
+
+        // Walkers write on one thread.
+        ScheduledExecutorService writerExecutor = Executors.newSingleThreadScheduledExecutor();
+        writerExecutor.scheduleAtFixedRate(new Runnable() {
+            private final double[] position = new double[2];
+
+            @Override
+            public void run() {
+                long now = System.currentTimeMillis();
+                for(int i = 0; i < walkers.length; i++){
+                    Walker walker = walkers[i];
+                    if(walker.nextFixAt > now){
+                        continue;
+                    }
+                    walker.nextFixAt += fixIntervalMillis;
+                    walker.route.positionAt(walker.startMeters
+                            + walker.speedMetersPerSecond * (now - start) / 1000.0, position);
+                    if(walker.publishPolicy.shouldPublish(position[0], position[1], now)){
+                        // The compact format only keeps whole seconds.
+                        long written = compact ? CompactLocationCodec.EPOCH_MILLIS
+                                + CompactLocationCodec.toSeconds(now) * 1000 : now;
+                        pendingWrites.set(i, new long[]{written, System.nanoTime()});
+                        walker.locationWriter.write(position[0], position[1], now);
+                        writes.incrementAndGet();
+                    }
+                }
+            }
+        }, 0, WRITER_TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Frames ask the clustering thread for a delta when something changed.
+        final long[] latencies = new long[MAX_LATENCY_SAMPLES];
+        final int[] latencyCount = new int[1];
+        final long[] frameCounts = new long[2];
+        final Runnable emitTask = new Runnable() {
+            private final ClusterDelta clusterDelta = new ClusterDelta();
+
+            @Override
+            public void run() {
+                walkerMap.emit(mapViewport, VIEW_ZOOM, false, clusterDelta);
+                long now = System.nanoTime();
+                // Every walker applied since the last delta is in this one, as a marker of its
+                //  own or as part of a cluster. Each write is measured once, if it is still the
+                //  walker's latest.
+                for(String id : appliedSinceFrame){
+                    int index = walkerIndexes.get(id);
+                    long[] pending = pendingWrites.get(index);
+                    DogLocation dogLocation = walkerMap.get(id);
+                    if(pending != null && dogLocation != null
+                            && pending[0] == dogLocation.getTime()
+                            && pendingWrites.compareAndSet(index, pending, null)
+                            && latencyCount[0] < latencies.length){
+                        latencies[latencyCount[0]++] = now - pending[1];
+                    }
+                }
+                appliedSinceFrame.clear();
+                frameCounts[0]++;
+                frameCounts[1] += clusterDelta.getPlaced().size();
+            }
+        };
+        ScheduledExecutorService frameExecutor = Executors.newSingleThreadScheduledExecutor();
+        frameExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if(renderRequested.getAndSet(false)){
+                    clusterExecutor.execute(emitTask);
+                }
+            }
+        }, FRAME_MILLIS, FRAME_MILLIS, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(durationMillis);
+        writerExecutor.shutdown();
+        writerExecutor.awaitTermination(DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // Let the map catch up with the last writes, and draw them.
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while(snapshotPipeline.getPendingCount() > 0 && System.currentTimeMillis() < drainDeadline){
+            Thread.sleep(FRAME_MILLIS);
+        }
+        Thread.sleep(4 * FRAME_MILLIS);
+        frameExecutor.shutdown();
+        frameExecutor.awaitTermination(DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        clusterExecutor.shutdown();
+        clusterExecutor.awaitTermination(DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        snapshotPipeline.close();
+
+        long[] sorted = Arrays.copyOf(latencies, latencyCount[0]);
+        Arrays.sort(sorted);
+        return new Report(walkerCount, elapsed, writes.get(),
+                snapshotPipeline.getDeliveredCount(), snapshotPipeline.getReplacedCount(),
+                snapshotPipeline.getDroppedCount(), applied.get(), frameCounts[0],
+                frameCounts[1], sorted);
+    }
+
+    /** Returns a viewport around every point the walkers can reach.
+     *
+     * @param walkers
+     * @return
+     */
+    private static MapViewport boundsOf(Walker[] walkers) {
+        double south = 90;
+        double west = 180;
+        double north = -90;
+        double east = -180;
+        double[] position = new double[2];
+        for(Walker walker : walkers){
+            WalkerRoute route = walker.route;
+            // Sampled every 10 meters, which is plenty for a viewport.
+            for(double meters = 0; meters <= route.getLength(); meters += 10){
+                route.positionAt(meters, position);
+                south = Math.min(south, position[0]);
+                north = Math.max(north, position[0]);
+                west = Math.min(west, position[1]);
+                east = Math.max(east, position[1]);
+            }
+        }
+        MapViewport mapViewport = new MapViewport();
+        mapViewport.set(south, west, north, east, 0.01);
+        return mapViewport;
+    }
+
+    /** Runs a simulation from the command line and prints the report.
+     *
+     *  Options: --walkers N, --seconds N, --fix-interval MILLIS, --radius METERS,
+     *      --routes FILE, --compact, --seed N.
+     *
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int walkers = DEFAULT_WALKERS;
+        long durationMillis = DEFAULT_DURATION_MILLIS;
+        long fixIntervalMillis = DEFAULT_FIX_INTERVAL_MILLIS;
+        double radiusMeters = DEFAULT_RADIUS_METERS;
+        String routesFile = null;
+        boolean compact = false;
+        long seed = 1;
+        try{
+            for(int i = 0; i < args.length; i++){
+                String option = args[i];
+                if(option.equals("--compact")){
+                    compact = true;
+                }else if(i + 1 >= args.length){
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }else if(option.equals("--walkers")){
+                    walkers = Integer.parseInt(args[++i]);
+                }else if(option.equals("--seconds")){
+                    durationMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+                }else if(option.equals("--fix-interval")){
+                    fixIntervalMillis = Long.parseLong(args[++i]);
+                }else if(option.equals("--radius")){
+                    radiusMeters = Double.parseDouble(args[++i]);
+                }else if(option.equals("--routes")){
+                    routesFile = args[++i];
+                }else if(option.equals("--seed")){
+                    seed = Long.parseLong(args[++i]);
+                }else{
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+        }catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.println("Usage: WalkerSimulator [--walkers N] [--seconds N]"
+                    + " [--fix-interval MILLIS] [--radius METERS] [--routes FILE] [--compact]"
+                    + " [--seed N]");
+            System.exit(1);
+            return;
+        }
+
+        List<WalkerRoute> routes;
+        if(routesFile == null){
+            routes = randomRoutes(walkers, DEFAULT_LATITUDE, DEFAULT_LONGITUDE, radiusMeters,
+                    seed);
+        }else{
+            FileReader reader = new FileReader(routesFile);
+            try{
+                routes = WalkerRoute.parse(reader);
+            }catch(IOException e){
+                System.err.println(e.getMessage());
+                System.exit(1);
+                return;
+            }finally{
+                reader.close();
+            }
+        }
+        Report report = new WalkerSimulator(routes, walkers, fixIntervalMillis, compact, seed)
+                .run(durationMillis);
+        System.out.println(report);
+    }
+}
@@ -0,0 +1,153 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TileAggregator against the local database stand-in.
+ */
+public class TileAggregatorTest {
+    private static final double LATITUDE = 47.6670;
+    private static final double LONGITUDE = -117.4020;
+
+    private LocalWalkerDatabase database;
+    private TileAggregator tileAggregator;
+    private HashMap<String, String> lastCells;
+    private String tile;
+
+    /**
+     * RecordingSubscriber keeps every batch it is handed.
+     */
+    private static final class RecordingSubscriber implements TileAggregator.Subscriber {
+        final ArrayList<List<DogLocation>> changed = new ArrayList<>();
+        final ArrayList<List<DogLocation>> removed = new ArrayList<>();
+
+        @Override
+        public void onTileBatch(String tile, List<DogLocation> changedWalkers,
+                                List<DogLocation> removedWalkers) {
+            changed.add(changedWalkers);
+            removed.add(removedWalkers);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        database = new LocalWalkerDatabase();
+        tileAggregator = new TileAggregator(database);
+        lastCells = new HashMap<>();
+        tile = GeoCellIndex.cellOf(LATITUDE, LONGITUDE).substring(0, 5);
+    }
+
+    private void walk(String id, double latitude, double longitude, long time) {
+        HashMap<String, Object> values = new HashMap<>();
+        lastCells.put(id, GeoCellIndex.addWrite(new DogLocation(latitude, longitude, id, time),
+                lastCells.get(id), values));
+        database.update(values);
+    }
+
+    private void stop(String id) {
+        HashMap<String, Object> values = new HashMap<>();
+        GeoCellIndex.addRemoval(id, lastCells.remove(id), values);
+        database.update(values);
+    }
+
+    @Test
+    public void publish_manyFixes_sendsOneBatchWithLatest() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        tileAggregator.subscribe(tile, subscriber);
+        for(int i = 0; i < 10; i++){
+            walk("spokane", LATITUDE + i * 0.00001, LONGITUDE, i);
+            walk("gonzaga", LATITUDE, LONGITUDE + i * 0.00001, i);
+        }
+        assertTrue(subscriber.changed.isEmpty());
+
+        assertEquals(1, tileAggregator.publish());
+        assertEquals(1, subscriber.changed.size());
+        assertEquals(2, subscriber.changed.get(0).size());
+        for(DogLocation dogLocation : subscriber.changed.get(0)){
+            assertEquals(9, dogLocation.getTime());
+        }
+        assertEquals(20, tileAggregator.getUpdatesReceived());
+
+        // Nothing changed, so nothing is sent.
+        assertEquals(0, tileAggregator.publish());
+    }
+
+    @Test
+    public void subscribe_sameTile_listensOnce() throws Exception {
+        walk("spokane", LATITUDE, LONGITUDE, 1);
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+        tileAggregator.subscribe(tile, first);
+        tileAggregator.publish();
+        tileAggregator.subscribe(tile, second);
+
+        assertEquals(1, database.getListenerCount());
+        assertEquals(1, tileAggregator.getTileCount());
+        // The late subscriber gets the snapshot right away.
+        assertEquals(1, second.changed.size());
+        assertEquals("spokane", second.changed.get(0).get(0).getId());
+
+        walk("spokane", LATITUDE + 0.00001, LONGITUDE, 2);
+        assertEquals(2, tileAggregator.publish());
+        assertEquals(2, first.changed.size());
+        assertEquals(2, second.changed.size());
+    }
+
+    @Test
+    public void publish_walkerLeaves_sendsRemoval() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        tileAggregator.subscribe(tile, subscriber);
+        walk("spokane", LATITUDE, LONGITUDE, 1);
+        walk("gonzaga", LATITUDE, LONGITUDE, 1);
+        tileAggregator.publish();
+
+        stop("spokane");
+        // Far enough to be in another tile.
+        walk("gonzaga", LATITUDE + 1, LONGITUDE, 2);
+        tileAggregator.publish();
+
+        assertTrue(subscriber.changed.get(1).isEmpty());
+        assertEquals(2, subscriber.removed.get(1).size());
+    }
+
+    @Test
+    public void publish_leftAndBack_sendsOnlyChange() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        tileAggregator.subscribe(tile, subscriber);
+        walk("spokane", LATITUDE, LONGITUDE, 1);
+        tileAggregator.publish();
+
+        stop("spokane");
+        walk("spokane", LATITUDE, LONGITUDE, 3);
+        tileAggregator.publish();
+
+        assertEquals(1, subscriber.changed.get(1).size());
+        assertTrue(subscriber.removed.get(1).isEmpty());
+    }
+
+    @Test
+    public void unsubscribe_lastSubscriber_stopsListening() throws Exception {
+        RecordingSubscriber first = new RecordingSubscriber();
+        RecordingSubscriber second = new RecordingSubscriber();
+        tileAggregator.subscribe(tile, first);
+        tileAggregator.subscribe(tile, second);
+        tileAggregator.unsubscribe(tile, first);
+        assertEquals(1, database.getListenerCount());
+
+        walk("spokane", LATITUDE, LONGITUDE, 1);
+        tileAggregator.publish();
+        assertTrue(first.changed.isEmpty());
+        assertEquals(1, second.changed.size());
+
+        tileAggregator.unsubscribe(tile, second);
+        assertEquals(0, database.getListenerCount());
+        assertEquals(0, tileAggregator.getTileCount());
+    }
+}
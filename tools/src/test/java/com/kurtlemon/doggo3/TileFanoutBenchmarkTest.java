@@ -0,0 +1,31 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TileFanoutBenchmark.
+ */
+public class TileFanoutBenchmarkTest {
+
+    @Test
+    public void run_aggregatorSendsFewerMessages() throws Exception {
+        TileFanoutBenchmark benchmark = new TileFanoutBenchmark(
+                WalkerSimulator.randomRoutes(300, 47.6588, -117.4260, 3000, 5), 300, 100, 1000,
+                1000, 5);
+
+        TileFanoutBenchmark.Report report = benchmark.run(20000);
+
+        TileFanoutBenchmark.Model direct = report.getDirect();
+        TileFanoutBenchmark.Model aggregated = report.getAggregated();
+        assertTrue(report.getWrites() > 0);
+        assertTrue(aggregated.getPetterMessages() < direct.getPetterMessages());
+        assertTrue(aggregated.getServerMessages() < direct.getServerMessages());
+        // Direct listeners hear about writes as they happen; the aggregator holds them for at
+        //  most one publish interval.
+        assertEquals(0, direct.getLatency().getMax());
+        assertTrue(aggregated.getLatency().getCount() > 0);
+        assertTrue(aggregated.getLatency().getMax() <= 1000);
+    }
+}
@@ -0,0 +1,60 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WalkerRoute.
+ */
+public class WalkerRouteTest {
+    private final double[] position = new double[2];
+
+    @Test
+    public void positionAt_walksThereAndBack() throws Exception {
+        WalkerRoute route = new WalkerRoute(new double[]{47.0, 47.001},
+                new double[]{-117.0, -117.0});
+        double length = route.getLength();
+        assertEquals(111.2, length, 0.1);
+
+        route.positionAt(length / 4, position);
+        assertEquals(47.00025, position[0], 1e-9);
+        route.positionAt(length * 1.75, position);
+        assertEquals(47.00025, position[0], 1e-9);
+        route.positionAt(length * 2, position);
+        assertEquals(47.0, position[0], 1e-9);
+    }
+
+    @Test
+    public void randomLoop_staysNearCenterAndCloses() throws Exception {
+        WalkerRoute route = WalkerRoute.randomLoop(new Random(7), 47.6588, -117.4260, 1000, 12);
+
+        route.positionAt(0, position);
+        double[] end = new double[2];
+        route.positionAt(route.getLength(), end);
+        assertEquals(position[0], end[0], 1e-9);
+        assertEquals(position[1], end[1], 1e-9);
+        // Twelve legs of at most 250m can't get further than this.
+        assertTrue(GeoMath.distanceMeters(47.6588, -117.4260, position[0], position[1]) <= 1000);
+        assertTrue(route.getLength() <= 12 * 250 + 1000 + 3000);
+    }
+
+    @Test
+    public void parse_splitsRoutesOnBlankLines() throws Exception {
+        List<WalkerRoute> routes = WalkerRoute.parse(new StringReader(
+                "# Two routes\n47.0,-117.0\n47.001, -117.0\n\n\n47.5,-117.5\n"));
+
+        assertEquals(2, routes.size());
+        assertEquals(0, routes.get(1).getLength(), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_badLine_throws() throws Exception {
+        WalkerRoute.parse(new StringReader("47.0,-117.0\nnot a point\n"));
+    }
+}
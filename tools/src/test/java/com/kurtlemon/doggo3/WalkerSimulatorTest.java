@@ -0,0 +1,35 @@
+package com.kurtlemon.doggo3;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for WalkerSimulator.
+ */
+public class WalkerSimulatorTest {
+
+    @Test
+    public void run_deliversEveryWriteToTheMap() throws Exception {
+        WalkerSimulator simulator = new WalkerSimulator(
+                WalkerSimulator.randomRoutes(200, 47.6588, -117.4260, 1000, 3), 200, 250,
+                false, 3);
+        // Fast enough to pass PublishPolicy's 5 m check at each 2 s interval, so every walker
+        //  writes again and the map has to replace walkers it already has.
+        simulator.setSpeedMetersPerSecond(10);
+
+        WalkerSimulator.Report report = simulator.run(4500);
+
+        assertTrue(report.getWrites() >= 2 * 200);
+        assertEquals(0, report.getDropped());
+        // Every write is applied or replaced by a newer one. A walker moving between two cells
+        //  can also be removed from the old one just before the write to the new one replaces
+        //  the removal, so there can be more replaced than writes lost.
+        assertTrue(report.getApplied() <= report.getWrites());
+        assertTrue(report.getApplied() + report.getReplaced() >= report.getWrites());
+        assertTrue(report.getFrames() > 0);
+        assertTrue(report.getLatencySamples() > 0);
+        assertTrue(report.getLatencySamples() <= report.getApplied());
+        assertTrue(report.getLatencyMillis(50) <= report.getLatencyMillis(100));
+    }
+}